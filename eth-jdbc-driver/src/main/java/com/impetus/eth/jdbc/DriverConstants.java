@@ -49,4 +49,45 @@ public class DriverConstants {
     
     public static final String KEYSTORE_PASSWORD = "KEYSTORE_PASSWORD";
 
+    public static final String SAMPLE_PERCENT = "SAMPLE_PERCENT";
+
+    public static final String SAMPLE_SEED = "SAMPLE_SEED";
+
+    public static final String PLAN_CACHE_SIZE = "PLAN_CACHE_SIZE";
+
+    public static final String STATISTICS_FILE = "STATISTICS_FILE";
+
+    /* Blocks sampled into the chain statistics in the background after connecting, 0 to skip */
+    public static final String STATISTICS_REFRESH_SAMPLES = "STATISTICS_REFRESH_SAMPLES";
+
+    public static final String QUERY_PARALLELISM = "QUERY_PARALLELISM";
+
+    public static final String TIMESTAMP_INDEX_FILE = "TIMESTAMP_INDEX_FILE";
+
+    public static final String ADDRESS_INDEX_FILE = "ADDRESS_INDEX_FILE";
+
+    public static final String ADDRESS_INDEX_START_BLOCK = "ADDRESS_INDEX_START_BLOCK";
+
+    public static final String LOG_CHUNK_SIZE = "LOG_CHUNK_SIZE";
+
+    public static final String STREAM_POLL_INTERVAL = "STREAM_POLL_INTERVAL";
+
+    public static final String RESULT_CACHE_SIZE = "RESULT_CACHE_SIZE";
+
+    public static final String FINALITY_DEPTH = "FINALITY_DEPTH";
+
+    public static final String SPILL_DIRECTORY = "SPILL_DIRECTORY";
+
+    public static final String SORT_SPILL_ROWS = "SORT_SPILL_ROWS";
+
+    public static final String AGGREGATE_SPILL_GROUPS = "AGGREGATE_SPILL_GROUPS";
+
+    public static final String MAX_SCAN_BLOCKS = "MAX_SCAN_BLOCKS";
+
+    public static final String MAX_RPC_CALLS = "MAX_RPC_CALLS";
+
+    public static final String MAX_BUFFERED_BYTES = "MAX_BUFFERED_BYTES";
+
+    public static final String MAX_QUERY_MILLIS = "MAX_QUERY_MILLIS";
+
 }
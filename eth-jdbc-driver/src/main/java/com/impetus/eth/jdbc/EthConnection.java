@@ -15,7 +15,10 @@
  ******************************************************************************/
 package com.impetus.eth.jdbc;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.ref.WeakReference;
+import java.math.BigInteger;
 import java.sql.Array;
 import java.sql.Blob;
 import java.sql.CallableStatement;
@@ -34,16 +37,33 @@ import java.util.ArrayList;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 import com.impetus.blkch.BlkchnException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.web3j.protocol.Web3j;
-import org.web3j.protocol.http.HttpService;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.Transaction;
 import org.web3j.protocol.ipc.UnixIpcService;
 import org.web3j.protocol.ipc.WindowsIpcService;
 
 import com.impetus.blkch.jdbc.BlkchnConnection;
+import com.impetus.blkch.sql.DataFrame;
+import com.impetus.eth.parser.AddressIndex;
+import com.impetus.eth.parser.ChainStatistics;
+import com.impetus.eth.parser.PlanCache;
+import com.impetus.eth.parser.QueryBudget;
+import com.impetus.eth.parser.ResultCache;
+import com.impetus.eth.parser.TimestampIndex;
+import com.impetus.eth.parser.TimestampRewriter;
 
 /**
  * The Class EthConnection.
@@ -55,6 +75,16 @@ public class EthConnection implements BlkchnConnection {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(EthConnection.class);
 
+    private static final int DEFAULT_REFRESH_SAMPLES = 16;
+
+    private static final int DEFAULT_QUERY_PARALLELISM = 4;
+
+    private static final int ADDRESS_INDEX_BATCH = 500;
+
+    private static final long ADDRESS_INDEX_INTERVAL_SECONDS = 15;
+
+    private static final long ADDRESS_INDEX_SAVE_MILLIS = 60000;
+
     private String url;
 
     private Properties props;
@@ -63,6 +93,41 @@ public class EthConnection implements BlkchnConnection {
 
     private ArrayList statementList = new ArrayList();
 
+    private PlanCache planCache;
+
+    private MeteredHttpService httpService;
+
+    private Web3jService web3jService;
+
+    private ChainStatistics statistics;
+
+    private File statisticsFile;
+
+    private ForkJoinPool queryPool;
+
+    private ResultCache resultCache;
+
+    private long finalityDepth;
+
+    /* Newest block number any query of this connection got from the node, -1 before any */
+    private final AtomicLong latestBlockSeen = new AtomicLong(-1);
+
+    private QueryBudget queryBudget;
+
+    private String chainId;
+
+    private TimestampIndex timestampIndex;
+
+    private File timestampIndexFile;
+
+    private AddressIndex addressIndex;
+
+    private File addressIndexFile;
+
+    private ScheduledExecutorService indexer;
+
+    private long addressIndexSavedAt;
+
     /** Has this connection been closed? */
     protected boolean isClosed = false;
 
@@ -74,6 +139,234 @@ public class EthConnection implements BlkchnConnection {
         this.web3jClient = web3jClient;
     }
 
+    /**
+     * Parsed plans shared by the statements of this connection, null when disabled with a PLAN_CACHE_SIZE of 0.
+     */
+    public PlanCache getPlanCache() {
+        return planCache;
+    }
+
+    /**
+     * Number of the newest block, what LATEST stands for in a query.
+     */
+    public long getLatestBlockNumber() {
+        try {
+            long latest = web3jClient.ethBlockNumber().send().getBlockNumber().longValue();
+            latestBlockSeen.accumulateAndGet(latest, Math::max);
+            return latest;
+        } catch (IOException e) {
+            throw new BlkchnException("Error getting height of ledger", e);
+        }
+    }
+
+    /**
+     * Hash of the block with the given number on the chain the node follows now, null past the head.
+     */
+    public String getBlockHash(long blockNumber) {
+        try {
+            EthBlock block = web3jClient.ethGetBlockByNumber(
+                    DefaultBlockParameter.valueOf(BigInteger.valueOf(blockNumber)), false).send();
+            return block == null || block.getBlock() == null ? null : block.getBlock().getHash();
+        } catch (IOException e) {
+            throw new BlkchnException("Error getting hash of block " + blockNumber, e);
+        }
+    }
+
+    /**
+     * The transport the client was built on, for requests web3j has no method for.
+     */
+    public Web3jService getWeb3jService() {
+        return web3jService;
+    }
+
+    /**
+     * Bytes read from the node since the connection was opened, -1 when connected over ipc.
+     */
+    public long getBytesReceived() {
+        return httpService == null ? -1 : httpService.getBytesReceived();
+    }
+
+    /**
+     * Block density statistics of the connected chain, shared by the statements of this connection.
+     */
+    public ChainStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Samples up to the given number of blocks into the statistics and saves them when a STATISTICS_FILE is set.
+     */
+    public int refreshStatistics(int budget) {
+        int sampled;
+        try {
+            long height = web3jClient.ethBlockNumber().send().getBlockNumber().longValue();
+            sampled = statistics.refresh(number -> {
+                if (isClosed) {
+                    throw new BlkchnException("Connection closed");
+                }
+                try {
+                    return web3jClient.ethGetBlockByNumber(DefaultBlockParameter.valueOf(number), false).send()
+                            .getBlock();
+                } catch (IOException e) {
+                    throw new BlkchnException("Error getting block " + number, e);
+                }
+            }, height, budget);
+        } catch (IOException | BlkchnException e) {
+            LOGGER.warn("Could not refresh chain statistics: " + e.getMessage());
+            return 0;
+        }
+        saveStatistics();
+        return sampled;
+    }
+
+    private void saveStatistics() {
+        if (statisticsFile != null) {
+            try {
+                statistics.save(statisticsFile);
+            } catch (IOException e) {
+                LOGGER.warn("Could not save chain statistics to " + statisticsFile + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Pool on which block ranges and OR branches of a query are fetched concurrently, null when QUERY_PARALLELISM is
+     * 1 or less.
+     */
+    public ForkJoinPool getQueryPool() {
+        return queryPool;
+    }
+
+    /**
+     * Results of queries over finalized blocks, null when disabled with a RESULT_CACHE_SIZE of 0.
+     */
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Limits of the queries run on this connection, statements may set their own.
+     */
+    public QueryBudget getQueryBudget() {
+        return queryBudget;
+    }
+
+    /**
+     * Key of the query in the result cache, null when the cache is disabled.
+     */
+    public String getResultCacheKey(String sql, Object[] parameters) {
+        return resultCache == null ? null : ResultCache.key(getChainId(), sql, parameters);
+    }
+
+    /**
+     * Keeps the result of a query when every block it read is at least FINALITY_DEPTH blocks below the head. The head
+     * is the newest one the query or earlier ones saw, the node is only asked when that doesn't show the blocks final.
+     *
+     * @param latestBlockSeen newest block number the query itself read, -1 for none
+     */
+    public void cacheResult(String key, long[] blockBounds, long latestBlockSeen, DataFrame dataframe,
+            Map<String, Integer> columnTypes) {
+        if (resultCache == null || key == null || blockBounds == null || blockBounds[1] == Long.MAX_VALUE) {
+            return;
+        }
+        long latest = this.latestBlockSeen.accumulateAndGet(latestBlockSeen, Math::max);
+        if (ResultCache.isFinal(blockBounds, latest, finalityDepth)
+                || ResultCache.isFinal(blockBounds, getLatestBlockNumber(), finalityDepth)) {
+            resultCache.put(key, dataframe, columnTypes);
+        }
+    }
+
+    /*
+     * web3j has no eth_chainId, the network id tells chains apart as well
+     */
+    private synchronized String getChainId() {
+        if (chainId == null) {
+            try {
+                chainId = web3jClient.netVersion().send().getNetVersion();
+            } catch (IOException e) {
+                throw new BlkchnException("Error getting network id", e);
+            }
+            if (chainId == null) {
+                chainId = String.valueOf(url);
+            }
+        }
+        return chainId;
+    }
+
+    public TimestampIndex getTimestampIndex() {
+        return timestampIndex;
+    }
+
+    /**
+     * Rewriter translating timestamp predicates to block numbers with the timestamp index of this connection.
+     */
+    public TimestampRewriter newTimestampRewriter() {
+        return new TimestampRewriter(timestampIndex, () -> getLatestBlockNumber() + 1, number -> {
+            try {
+                return web3jClient.ethGetBlockByNumber(DefaultBlockParameter.valueOf(BigInteger.valueOf(number)), false)
+                        .send().getBlock().getTimestamp().longValue();
+            } catch (IOException e) {
+                throw new BlkchnException("Error getting block " + number, e);
+            }
+        });
+    }
+
+    /**
+     * Address to transaction index kept up to date in the background, null unless ADDRESS_INDEX_FILE is set.
+     */
+    public AddressIndex getAddressIndex() {
+        return addressIndex;
+    }
+
+    private void startAddressIndex() {
+        addressIndexFile = new File(props.getProperty(DriverConstants.ADDRESS_INDEX_FILE));
+        long startBlock = props.containsKey(DriverConstants.ADDRESS_INDEX_START_BLOCK)
+                ? Long.parseLong(props.getProperty(DriverConstants.ADDRESS_INDEX_START_BLOCK)) : 0;
+        addressIndex = AddressIndex.load(addressIndexFile, startBlock);
+        addressIndexSavedAt = System.currentTimeMillis();
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "eth-address-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::catchUpAddressIndex, 0, ADDRESS_INDEX_INTERVAL_SECONDS,
+                TimeUnit.SECONDS);
+        indexer = executor;
+    }
+
+    /*
+     * Indexes batches of new blocks until the index is at the tip, saving it at most once a minute.
+     */
+    private void catchUpAddressIndex() {
+        try {
+            long height = web3jClient.ethBlockNumber().send().getBlockNumber().longValue() + 1;
+            while (!isClosed && addressIndex.catchUp(number -> {
+                try {
+                    return web3jClient.ethGetBlockByNumber(DefaultBlockParameter.valueOf(BigInteger.valueOf(number)),
+                            true).send().getBlock().getTransactions().stream()
+                            .map(txnResult -> (Transaction) txnResult.get()).collect(Collectors.toList());
+                } catch (IOException e) {
+                    throw new BlkchnException("Error getting block " + number, e);
+                }
+            }, height, ADDRESS_INDEX_BATCH) > 0) {
+                if (System.currentTimeMillis() - addressIndexSavedAt > ADDRESS_INDEX_SAVE_MILLIS) {
+                    saveAddressIndex();
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Address index catch up stopped: " + e.getMessage());
+        }
+    }
+
+    private synchronized void saveAddressIndex() {
+        try {
+            addressIndex.save(addressIndexFile);
+            addressIndexSavedAt = System.currentTimeMillis();
+        } catch (IOException e) {
+            LOGGER.warn("Could not save address index to " + addressIndexFile + ": " + e.getMessage());
+        }
+    }
+
     public void addNewStatement(EthStatement statement) {
         synchronized (statementList) {
             for (int i = 0; i < statementList.size(); i++) {
@@ -95,22 +388,69 @@ public class EthConnection implements BlkchnConnection {
             String path = props.getProperty(DriverConstants.IPC);
             if (props.getProperty(DriverConstants.IPC_OS) != null) {
                 LOGGER.info("Connecting to ethereum with ipc file on windows location : " + path);
-                web3jClient = Web3j.build(new WindowsIpcService(path));
+                web3jService = new WindowsIpcService(path);
             } else {
                 LOGGER.info("Connecting to ethereum with ipc file on unix location : " + path);
-                web3jClient = Web3j.build(new UnixIpcService(path));
+                web3jService = new UnixIpcService(path);
             }
+            web3jClient = Web3j.build(web3jService);
         } else if (props.containsKey(DriverConstants.INFURAURL)) {
             String httpsUrl = DriverConstants.HTTPPSREFIX + props.getProperty(DriverConstants.INFURAURL);
-            web3jClient = Web3j.build(new HttpService(httpsUrl));
+            httpService = new MeteredHttpService(httpsUrl);
+            web3jService = httpService;
+            web3jClient = Web3j.build(httpService);
 
         } else {
             String httpUrl = DriverConstants.HTTPPREFIX + props.getProperty(DriverConstants.HOSTNAME)
                     + DriverConstants.COLON + props.getProperty(DriverConstants.PORTNUMBER);
             LOGGER.info("Connecting to ethereum with rpcurl : " + httpUrl);
-            web3jClient = Web3j.build(new HttpService(httpUrl));
+            httpService = new MeteredHttpService(httpUrl);
+            web3jService = httpService;
+            web3jClient = Web3j.build(httpService);
         }
         verifyConnection();
+        int planCacheSize = props.containsKey(DriverConstants.PLAN_CACHE_SIZE)
+                ? Integer.parseInt(props.getProperty(DriverConstants.PLAN_CACHE_SIZE)) : PlanCache.DEFAULT_SIZE;
+        if (planCacheSize > 0) {
+            planCache = new PlanCache(planCacheSize);
+        }
+        int parallelism = props.containsKey(DriverConstants.QUERY_PARALLELISM)
+                ? Integer.parseInt(props.getProperty(DriverConstants.QUERY_PARALLELISM)) : DEFAULT_QUERY_PARALLELISM;
+        if (parallelism > 1) {
+            queryPool = new ForkJoinPool(parallelism);
+        }
+        long resultCacheSize = Long.parseLong(props.getProperty(DriverConstants.RESULT_CACHE_SIZE,
+                String.valueOf(ResultCache.DEFAULT_SIZE)));
+        if (resultCacheSize > 0) {
+            resultCache = new ResultCache(resultCacheSize);
+        }
+        finalityDepth = Long.parseLong(props.getProperty(DriverConstants.FINALITY_DEPTH,
+                String.valueOf(ResultCache.DEFAULT_FINALITY_DEPTH)));
+        queryBudget = QueryBudget.fromProperties(props);
+        if (props.containsKey(DriverConstants.TIMESTAMP_INDEX_FILE)) {
+            timestampIndexFile = new File(props.getProperty(DriverConstants.TIMESTAMP_INDEX_FILE));
+            timestampIndex = TimestampIndex.load(timestampIndexFile);
+        } else {
+            timestampIndex = new TimestampIndex();
+        }
+        if (props.containsKey(DriverConstants.ADDRESS_INDEX_FILE)) {
+            startAddressIndex();
+        }
+        if (props.containsKey(DriverConstants.STATISTICS_FILE)) {
+            statisticsFile = new File(props.getProperty(DriverConstants.STATISTICS_FILE));
+            statistics = ChainStatistics.load(statisticsFile);
+        } else {
+            statistics = new ChainStatistics();
+        }
+        int refreshSamples = props.containsKey(DriverConstants.STATISTICS_REFRESH_SAMPLES)
+                ? Integer.parseInt(props.getProperty(DriverConstants.STATISTICS_REFRESH_SAMPLES))
+                : DEFAULT_REFRESH_SAMPLES;
+        if (refreshSamples > 0) {
+            // sampling takes an rpc call per block, connecting doesn't wait for it
+            Thread refresh = new Thread(() -> refreshStatistics(refreshSamples), "eth-statistics-refresh");
+            refresh.setDaemon(true);
+            refresh.start();
+        }
         LOGGER.info("Connected to ethereum ");
     }
 
@@ -162,6 +502,24 @@ public class EthConnection implements BlkchnConnection {
             return;
         }
         try {
+            saveStatistics();
+            if (timestampIndexFile != null) {
+                try {
+                    timestampIndex.save(timestampIndexFile);
+                } catch (IOException e) {
+                    LOGGER.warn("Could not save timestamp index to " + timestampIndexFile + ": " + e.getMessage());
+                }
+            }
+            if (indexer != null) {
+                indexer.shutdownNow();
+                indexer.awaitTermination(ADDRESS_INDEX_INTERVAL_SECONDS, TimeUnit.SECONDS);
+                indexer = null;
+                saveAddressIndex();
+            }
+            if (queryPool != null) {
+                queryPool.shutdown();
+                queryPool = null;
+            }
             this.url = null;
             this.props = null;
             this.web3jClient = null;
@@ -37,7 +37,12 @@ import com.impetus.blkch.sql.query.Table;
 import com.impetus.blkch.util.placeholder.InsertPlaceholderHandler;
 import com.impetus.blkch.util.placeholder.PlaceholderHandler;
 import com.impetus.blkch.util.placeholder.QueryPlaceholderHandler;
+import com.impetus.eth.parser.BlockSampler;
+import com.impetus.eth.parser.EthPlanTemplate;
 import com.impetus.eth.parser.EthQueryExecutor;
+import com.impetus.eth.parser.QueryBudget;
+import com.impetus.eth.parser.QueryContext;
+import com.impetus.eth.parser.ResultCache;
 
 public class EthPreparedStatement extends AbstractPreparedStatement {
 
@@ -51,10 +56,16 @@ public class EthPreparedStatement extends AbstractPreparedStatement {
 
     protected String sql;
 
+    /* Query before LATEST and timestamps were resolved, null when it doesn't depend on the head */
+    private String tipRelativeSql;
+
     private ResultSet queryResultSet = null;
 
     protected boolean isClosed = false;
 
+    protected EthPlanTemplate template;
+
+    /* Unbound plan of the template, executions bind their own copy */
     protected LogicalPlan logicalPlan;
 
     protected Object[] placeholderValues;
@@ -67,13 +78,31 @@ public class EthPreparedStatement extends AbstractPreparedStatement {
 
     protected List<Object[]> batchList = new ArrayList<Object[]>();
 
+    /* Percent of a TABLESAMPLE clause, null when the query reads every block */
+    protected Double samplePercent;
+
+    /* Limits of this statement's queries, null to use the connection's */
+    private QueryBudget queryBudget;
+
+    /* Seconds an execution may run, 0 for no limit */
+    private int queryTimeout;
+
+    /* The execution running now, for cancel() from another thread */
+    private volatile QueryContext runningQuery;
+
     public EthPreparedStatement(EthConnection connection, String sql, int rSetType, int rSetConcurrency) {
         super();
         this.connection = connection;
         this.rSetType = rSetType;
         this.rSetConcurrency = rSetConcurrency;
-        this.sql = sql;
-        this.logicalPlan = getLogicalPlan(sql);
+        this.samplePercent = BlockSampler.extractPercent(sql);
+        String text = samplePercent == null ? sql : BlockSampler.stripClause(sql);
+        if (EthStatement.isTipRelative(connection, text)) {
+            this.tipRelativeSql = text;
+        }
+        this.sql = EthStatement.rewriteSql(connection, text);
+        this.template = EthPlanTemplate.compile(this.sql);
+        this.logicalPlan = template.getPrototype();
         LOGGER.info("Sql is " + sql);
         if (logicalPlan.getType() == SQLType.INSERT) {
             placeholderHandler = new InsertPlaceholderHandler(logicalPlan);
@@ -89,6 +118,39 @@ public class EthPreparedStatement extends AbstractPreparedStatement {
             this.placeholderValues = new Object[placeholderHandler.getIndexListCount()];
     }
 
+    /**
+     * Sets the blocks, rpc calls, buffered bytes and time each execution of this statement may use, overriding the
+     * limits of the connection. Null goes back to the connection's limits.
+     */
+    public void setQueryBudget(QueryBudget queryBudget) {
+        this.queryBudget = queryBudget;
+    }
+
+    public QueryBudget getQueryBudget() {
+        return queryBudget != null ? queryBudget : connection.getQueryBudget();
+    }
+
+    @Override
+    public void cancel() throws SQLException {
+        QueryContext running = runningQuery;
+        if (running != null) {
+            running.cancel();
+        }
+    }
+
+    @Override
+    public int getQueryTimeout() throws SQLException {
+        return queryTimeout;
+    }
+
+    @Override
+    public void setQueryTimeout(int seconds) throws SQLException {
+        if (seconds < 0) {
+            throw new SQLException("Query timeout can't be negative: " + seconds);
+        }
+        this.queryTimeout = seconds;
+    }
+
     @Override
     public void addBatch() throws SQLException {
         if (logicalPlan.getType() == SQLType.QUERY)
@@ -127,17 +189,53 @@ public class EthPreparedStatement extends AbstractPreparedStatement {
         if (isClosed)
             throw new BlkchnException("No operations allowed after statement closed.");
 
-        if (!placeholderHandler.isIndexListEmpty())
-            placeholderHandler.alterLogicalPlan(placeholderValues);
-
+        if (tipRelativeSql != null) {
+            resolveAgainstHead();
+        }
         switch (logicalPlan.getType()) {
             case QUERY:
                 Table table = logicalPlan.getQuery().getChildType(FromItem.class, 0).getChildType(Table.class, 0);
                 String tableName = table.getChildType(IdentifierNode.class, 0).getValue();
-                EthQueryExecutor executor = new EthQueryExecutor(logicalPlan, connection.getWeb3jClient(),
+                EthQueryExecutor executor = template.newExecutor(placeholderValues, connection.getWeb3jClient(),
                         connection.getInfo());
-                DataFrame dataframe = executor.executeQuery();
-                Map<String, Integer> dataTypeColumnMap = executor.computeDataTypeColumnMap();
+                if (samplePercent != null) {
+                    executor.setSamplePercent(samplePercent);
+                }
+                String cacheKey = executor.isSampling() ? null : connection.getResultCacheKey(sql, placeholderValues);
+                ResultCache.Entry cached = cacheKey == null ? null : connection.getResultCache().get(cacheKey);
+                if (cached != null) {
+                    queryResultSet = new EthResultSet(cached.getDataFrame(), rSetType, rSetConcurrency, tableName,
+                            cached.getColumnTypes());
+                    LOGGER.info("Exiting from executeQuery Block with a cached result");
+                    return queryResultSet;
+                }
+                executor.setStatistics(connection.getStatistics());
+                executor.setQueryPool(connection.getQueryPool());
+                executor.setAddressIndex(connection.getAddressIndex());
+                executor.setWeb3jService(connection.getWeb3jService());
+                QueryBudget budget = getQueryBudget();
+                if (budget != null && !budget.isUnlimited()) {
+                    executor.setBudget(budget.forQuery());
+                }
+                QueryContext context = new QueryContext(queryTimeout * 1000L);
+                executor.setContext(context);
+                runningQuery = context;
+                DataFrame dataframe;
+                try {
+                    dataframe = executor.executeQuery();
+                } catch (QueryContext.CancelledException e) {
+                    throw QueryContext.toSQLException(e);
+                } catch (BlkchnException e) {
+                    throw QueryBudget.toSQLException(e);
+                } finally {
+                    runningQuery = null;
+                    context.close();
+                }
+                Map<String, Integer> dataTypeColumnMap = template.executed(executor);
+                if (cacheKey != null) {
+                    connection.cacheResult(cacheKey, executor.getBlockBounds(), executor.getLatestBlockSeen(),
+                            dataframe, dataTypeColumnMap);
+                }
 
                 queryResultSet = new EthResultSet(dataframe, rSetType, rSetConcurrency, tableName, dataTypeColumnMap);
                 LOGGER.info("Exiting from executeQuery Block");
@@ -148,6 +246,19 @@ public class EthPreparedStatement extends AbstractPreparedStatement {
         }
     }
 
+    /*
+     * LATEST and timestamp windows move with the head, recompiles the template once the head has moved since the last
+     * execution
+     */
+    private void resolveAgainstHead() {
+        String rewritten = EthStatement.rewriteSql(connection, tipRelativeSql);
+        if (!rewritten.equals(sql)) {
+            sql = rewritten;
+            template = EthPlanTemplate.compile(rewritten);
+            logicalPlan = template.getPrototype();
+        }
+    }
+
     @Override
     public boolean execute() throws SQLException {
         LOGGER.error("ERROR : Method not supported");
@@ -162,14 +273,11 @@ public class EthPreparedStatement extends AbstractPreparedStatement {
 
         rowCount = 0;
 
-        if (!placeholderHandler.isIndexListEmpty())
-            placeholderHandler.alterLogicalPlan(placeholderValues);
-
         Object result = null;
         switch (logicalPlan.getType()) {
             case INSERT:
-                result = new EthQueryExecutor(logicalPlan, connection.getWeb3jClient(), connection.getInfo())
-                        .executeAndReturn();
+                result = new EthQueryExecutor(template.bind(placeholderValues), connection.getWeb3jClient(),
+                        connection.getInfo()).executeAndReturn();
                 rowCount++;
                 LOGGER.info("Exiting from execute Block with result: " + result);
                 LOGGER.info("Exiting from executeUpdate Block");
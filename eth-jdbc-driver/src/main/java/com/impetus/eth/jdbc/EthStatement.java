@@ -19,9 +19,25 @@ import java.io.IOException;
 import java.math.BigInteger;
 import java.sql.*;
 import java.util.*;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import com.impetus.blkch.BlkchnException;
 import com.impetus.blkch.sql.query.RangeNode;
+import com.impetus.eth.parser.BetweenRewriter;
+import com.impetus.eth.parser.BlockSampler;
+import com.impetus.eth.parser.BlockTailer;
 import com.impetus.eth.parser.EthPhysicalPlan;
+import com.impetus.eth.parser.PlanCache;
+import com.impetus.eth.parser.QueryBudget;
+import com.impetus.eth.parser.QueryContext;
+import com.impetus.eth.parser.QueryProfile;
+import com.impetus.eth.parser.ResultCache;
+import com.impetus.eth.parser.JoinRewriter;
+import com.impetus.eth.parser.LatestRewriter;
+import com.impetus.eth.parser.TimestampIndex;
+import com.impetus.eth.parser.TimestampRewriter;
+import com.impetus.eth.parser.WindowState;
 import org.antlr.v4.runtime.CommonTokenStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,7 +58,9 @@ import com.impetus.blkch.sql.parser.LogicalPlan;
 import com.impetus.blkch.sql.query.FromItem;
 import com.impetus.blkch.sql.query.IdentifierNode;
 import com.impetus.blkch.sql.query.Table;
+import com.impetus.blkch.util.Range;
 import com.impetus.eth.parser.EthQueryExecutor;
+import com.impetus.eth.query.EthColumns;
 
 /**
  * The Class EthStatement.
@@ -54,6 +72,11 @@ public class EthStatement implements BlkchnStatement {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(EthStatement.class);
 
+    private static final Pattern EXPLAIN_PATTERN = Pattern.compile("^\\s*explain\\s+(analyze\\s+)?",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern STREAM_PATTERN = Pattern.compile("\\s+stream\\s*;?\\s*$", Pattern.CASE_INSENSITIVE);
+
     protected EthConnection connection;
 
     /** Holds batched commands */
@@ -67,6 +90,18 @@ public class EthStatement implements BlkchnStatement {
 
     private ResultSet queryResultSet = null;
 
+    /* Partial aggregates of the last tip relative query, reused when the same query runs again */
+    private WindowState windowState;
+
+    /* Limits of this statement's queries, null to use the connection's */
+    private QueryBudget queryBudget;
+
+    /* Seconds a query may run, 0 for no limit */
+    private int queryTimeout;
+
+    /* The query running now, for cancel() from another thread */
+    private volatile QueryContext runningQuery;
+
     /** Has this statement been closed? */
     protected boolean isClosed = false;
 
@@ -86,6 +121,18 @@ public class EthStatement implements BlkchnStatement {
         this.rSetConcurrency = rSetConcurrency;
     }
 
+    /**
+     * Sets the blocks, rpc calls, buffered bytes and time each query of this statement may use, overriding the limits
+     * of the connection. Null goes back to the connection's limits.
+     */
+    public void setQueryBudget(QueryBudget queryBudget) {
+        this.queryBudget = queryBudget;
+    }
+
+    public QueryBudget getQueryBudget() {
+        return queryBudget != null ? queryBudget : connection.getQueryBudget();
+    }
+
     public void setConnection(EthConnection connection) {
         this.connection = connection;
     }
@@ -123,7 +170,10 @@ public class EthStatement implements BlkchnStatement {
 
     @Override
     public void cancel() throws SQLException {
-        throw new UnsupportedOperationException();
+        QueryContext running = runningQuery;
+        if (running != null) {
+            running.cancel();
+        }
     }
 
     @Override
@@ -152,6 +202,7 @@ public class EthStatement implements BlkchnStatement {
             if (queryResultSet != null)
                 queryResultSet.close();
             this.queryResultSet = null;
+            this.windowState = null;
             this.rSetType = 0;
             this.rSetConcurrency = 0;
             clearBatch();
@@ -235,12 +286,59 @@ public class EthStatement implements BlkchnStatement {
         }
     }
 
+    /**
+     * Rewrites a query into what the grammar and the executor take: joins, LATEST resolved against the head, timestamp
+     * predicates as block ranges and BETWEEN expanded. Statements and prepared statements both go through here.
+     */
+    static String rewriteSql(EthConnection connection, String sql) {
+        sql = JoinRewriter.rewrite(sql);
+        if (LatestRewriter.mentionsLatest(sql)) {
+            sql = LatestRewriter.rewrite(sql, connection.getLatestBlockNumber());
+        }
+        if (TimestampRewriter.mentionsTimestamp(sql) && connection.getTimestampIndex() != null) {
+            sql = connection.newTimestampRewriter().rewrite(sql);
+        }
+        return BetweenRewriter.rewrite(sql);
+    }
+
+    /**
+     * Whether {@link #rewriteSql(EthConnection, String)} depends on the head of the chain, so the rewritten query may
+     * change between executions.
+     */
+    static boolean isTipRelative(EthConnection connection, String sql) {
+        return LatestRewriter.mentionsLatest(sql)
+                || TimestampRewriter.mentionsTimestamp(sql) && connection.getTimestampIndex() != null;
+    }
+
     @Override
     public ResultSet executeQuery(String sql) throws SQLException {
         if (isClosed)
             throw new BlkchnException("No operations allowed after statement closed.");
         LOGGER.info("Entering into executeQuery Block");
+        Matcher streamMatcher = STREAM_PATTERN.matcher(sql);
+        boolean stream = streamMatcher.find();
+        if (stream) {
+            sql = sql.substring(0, streamMatcher.start());
+        }
+        Double samplePercent = BlockSampler.extractPercent(sql);
+        if (samplePercent != null) {
+            sql = BlockSampler.stripClause(sql);
+        }
+        String windowSql = LatestRewriter.mentionsLatest(sql) ? sql : null;
+        sql = rewriteSql(connection, sql);
+        Matcher explainMatcher = EXPLAIN_PATTERN.matcher(sql);
+        boolean explain = explainMatcher.lookingAt();
+        boolean analyze = explain && explainMatcher.group(1) != null;
+        if (explain) {
+            sql = sql.substring(explainMatcher.end());
+        }
         LogicalPlan logicalPlan = getLogicalPlan(sql);
+        if (explain && logicalPlan.getType() != LogicalPlan.SQLType.QUERY) {
+            throw new BlkchnException("EXPLAIN is only supported for select queries");
+        }
+        if (stream && (explain || logicalPlan.getType() != LogicalPlan.SQLType.QUERY)) {
+            throw new BlkchnException("STREAM is only supported for select queries");
+        }
         Object result = null;
         switch (logicalPlan.getType()) {
             case INSERT:
@@ -264,18 +362,153 @@ public class EthStatement implements BlkchnStatement {
             default:
                 Table table = logicalPlan.getQuery().getChildType(FromItem.class, 0).getChildType(Table.class, 0);
                 String tableName = table.getChildType(IdentifierNode.class, 0).getValue();
-                EthQueryExecutor executor = new EthQueryExecutor(logicalPlan, connection.getWeb3jClient(), connection.getInfo());
+                EthQueryExecutor executor = createQueryExecutor(logicalPlan);
+                if (stream) {
+                    queryResultSet = streamQuery(sql, tableName, executor);
+                    LOGGER.info("Exiting from executeQuery Block");
+                    return queryResultSet;
+                }
                 if(this.pageRange != null) {
                     executor.paginate(pageRange);
                 }
-                DataFrame dataframe = executor.executeQuery();
+                if (samplePercent != null) {
+                    executor.setSamplePercent(samplePercent);
+                }
+                if (analyze) {
+                    DataFrame profile = run(executor,
+                            () -> executor.explainAnalyze(new QueryProfile(connection::getBytesReceived)));
+                    queryResultSet = new EthResultSet(profile, rSetType, rSetConcurrency, tableName,
+                            QueryProfile.getColumnTypeMap());
+                    return queryResultSet;
+                } else if (explain) {
+                    Map<String, Integer> planTypeMap = new HashMap<>();
+                    planTypeMap.put(EthQueryExecutor.EXPLAIN_COLUMN, Types.VARCHAR);
+                    queryResultSet = new EthResultSet(executor.explain(), rSetType, rSetConcurrency, tableName,
+                            planTypeMap);
+                    return queryResultSet;
+                }
+                String cacheKey = windowSql == null && !executor.isSampling() && pageRange == null
+                        ? connection.getResultCacheKey(sql, null) : null;
+                ResultCache.Entry cached = cacheKey == null ? null : connection.getResultCache().get(cacheKey);
+                if (cached != null) {
+                    queryResultSet = new EthResultSet(cached.getDataFrame(), rSetType, rSetConcurrency, tableName,
+                            cached.getColumnTypes());
+                    LOGGER.info("Exiting from executeQuery Block with a cached result");
+                    return queryResultSet;
+                }
+                DataFrame dataframe;
+                if (windowSql != null) {
+                    if (windowState == null || !windowState.getSql().equals(windowSql)) {
+                        windowState = new WindowState(windowSql);
+                    }
+                    WindowState window = windowState;
+                    dataframe = run(executor, () -> executor.executeIncremental(window));
+                } else {
+                    dataframe = run(executor, executor::executeQuery);
+                }
                 Map<String, Integer> dataTypeColumnMap = executor.computeDataTypeColumnMap();
+                if (cacheKey != null) {
+                    connection.cacheResult(cacheKey, executor.getBlockBounds(), executor.getLatestBlockSeen(),
+                            dataframe, dataTypeColumnMap);
+                }
                 queryResultSet = new EthResultSet(dataframe, rSetType, rSetConcurrency, tableName, dataTypeColumnMap);
                 LOGGER.info("Exiting from executeQuery Block");
                 return queryResultSet;
         }
     }
 
+    private EthQueryExecutor createQueryExecutor(LogicalPlan logicalPlan) {
+        QueryBudget budget = getQueryBudget();
+        return createQueryExecutor(logicalPlan, budget == null || budget.isUnlimited() ? null : budget.forQuery());
+    }
+
+    private EthQueryExecutor createQueryExecutor(LogicalPlan logicalPlan, QueryBudget budget) {
+        EthQueryExecutor executor = new EthQueryExecutor(logicalPlan, connection.getWeb3jClient(),
+                connection.getInfo());
+        executor.setStatistics(connection.getStatistics());
+        executor.setQueryPool(connection.getQueryPool());
+        executor.setAddressIndex(connection.getAddressIndex());
+        executor.setWeb3jService(connection.getWeb3jService());
+        executor.setBudget(budget);
+        return executor;
+    }
+
+    /*
+     * Runs the query under the statement's timeout so that cancel() can stop it, reporting one that was cancelled,
+     * timed out or ran out of its budget as an SQLException.
+     */
+    private DataFrame run(EthQueryExecutor executor, Supplier<DataFrame> query) throws SQLException {
+        QueryContext context = new QueryContext(queryTimeout * 1000L);
+        executor.setContext(context);
+        runningQuery = context;
+        try {
+            return query.get();
+        } catch (QueryContext.CancelledException e) {
+            throw QueryContext.toSQLException(e);
+        } catch (BlkchnException e) {
+            throw QueryBudget.toSQLException(e);
+        } finally {
+            runningQuery = null;
+            context.close();
+        }
+    }
+
+    /*
+     * Runs the query once per block from the start of its block range as blocks arrive, a query without a range starts
+     * at the next block. Aggregates are computed per block. The whole stream runs under one context and one budget,
+     * so the timeout, cancel() and the block, rpc and time limits apply to it as a whole; buffered bytes are counted
+     * per block since each block's rows are released once handed over.
+     */
+    private ResultSet streamQuery(String sql, String tableName, EthQueryExecutor executor) {
+        EthPhysicalPlan physicalPlan = new EthPhysicalPlan(getLogicalPlan(sql));
+        List<String> columns = new ArrayList<>(physicalPlan.getColumns(tableName));
+        Map<String, Integer> dataTypeColumnMap = new HashMap<>(executor.computeDataTypeColumnMap());
+        long[] bounds = executor.getBlockBounds();
+        long firstBlock = bounds == null ? connection.getLatestBlockNumber() + 1 : bounds[0];
+        long lastBlock = bounds == null ? Long.MAX_VALUE : bounds[1];
+        QueryContext context = new QueryContext(queryTimeout * 1000L);
+        QueryBudget budget = getQueryBudget();
+        QueryBudget streamBudget = budget == null || budget.isUnlimited() ? null : budget.forQuery();
+        BlockTailer tailer = new BlockTailer(firstBlock, lastBlock, connection::getBlockHash,
+                number -> getBlockRows(sql, tableName, columns, number, streamBudget, context),
+                (int) TimestampIndex.UNCONFIRMED_BLOCKS);
+        DataFrame schema = new DataFrame(new ArrayList<>(), columns, physicalPlan.getColumnAliasMapping());
+        schema.getColumnNamesMap().put(EthStreamingResultSet.OP_COLUMN, columns.size());
+        dataTypeColumnMap.put(EthStreamingResultSet.OP_COLUMN, Types.VARCHAR);
+        Properties info = connection.getInfo();
+        long pollInterval = info == null ? EthStreamingResultSet.DEFAULT_POLL_INTERVAL
+                : Long.parseLong(info.getProperty(DriverConstants.STREAM_POLL_INTERVAL,
+                        String.valueOf(EthStreamingResultSet.DEFAULT_POLL_INTERVAL)));
+        runningQuery = context;
+        return new EthStreamingResultSet(schema, rSetConcurrency, tableName, dataTypeColumnMap,
+                connection.getWeb3jClient(), tailer, pollInterval, context);
+    }
+
+    private List<List<Object>> getBlockRows(String sql, String tableName, List<String> columns, long blockNumber,
+            QueryBudget streamBudget, QueryContext context) {
+        EthQueryExecutor executor = createQueryExecutor(getLogicalPlan(sql),
+                streamBudget == null ? null : streamBudget.forPart());
+        executor.setContext(context);
+        RangeNode<BigInteger> block = new RangeNode<>(tableName, EthColumns.BLOCKNUMBER);
+        block.getRangeList().addRange(new Range<>(BigInteger.valueOf(blockNumber), BigInteger.valueOf(blockNumber)));
+        executor.paginate(block);
+        DataFrame dataframe = executor.executeQuery();
+        List<List<Object>> rows = new ArrayList<>();
+        if (dataframe.isEmpty()) {
+            return rows;
+        }
+        Map<String, Integer> index = dataframe.getColumnNamesMap();
+        for (List<Object> row : dataframe.getData()) {
+            List<Object> projected = new ArrayList<>(columns.size());
+            for (String column : columns) {
+                Integer i = index.get(column);
+                projected.add(i == null ? null : row.get(i));
+            }
+            rows.add(projected);
+        }
+        return rows;
+    }
+
     @Override
     public ResultSetMetaData getSchema(String sql) {
         LOGGER.info("Entering into getSchema Block");
@@ -317,7 +550,10 @@ public class EthStatement implements BlkchnStatement {
             throw new BlkchnException("No operations allowed after statement closed.");
         LOGGER.info("Entering into executeQuery Block");
         LogicalPlan logicalPlan = getLogicalPlan(sql);
-        return new EthQueryExecutor(logicalPlan, connection.getWeb3jClient(), connection.getInfo()).getProbableRange();
+        EthQueryExecutor executor = new EthQueryExecutor(logicalPlan, connection.getWeb3jClient(),
+                connection.getInfo());
+        executor.setStatistics(connection.getStatistics());
+        return executor.getProbableRange();
     }
 
     @Override
@@ -382,7 +618,7 @@ public class EthStatement implements BlkchnStatement {
 
     @Override
     public int getQueryTimeout() throws SQLException {
-        throw new UnsupportedOperationException();
+        return queryTimeout;
     }
 
     @Override
@@ -469,10 +705,17 @@ public class EthStatement implements BlkchnStatement {
 
     @Override
     public void setQueryTimeout(int seconds) throws SQLException {
-        throw new UnsupportedOperationException();
+        if (seconds < 0) {
+            throw new SQLException("Query timeout can't be negative: " + seconds);
+        }
+        this.queryTimeout = seconds;
     }
 
     public LogicalPlan getLogicalPlan(String sqlText) {
+        PlanCache planCache = connection == null ? null : connection.getPlanCache();
+        if (planCache != null) {
+            return planCache.getLogicalPlan(sqlText);
+        }
         LogicalPlan logicalPlan = null;
         BlkchnSqlParser parser = getParser(sqlText);
         parser.removeErrorListeners();
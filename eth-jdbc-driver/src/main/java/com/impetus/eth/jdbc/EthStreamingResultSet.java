@@ -0,0 +1,226 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.jdbc;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.methods.response.EthFilter;
+import org.web3j.protocol.core.methods.response.EthLog;
+
+import com.impetus.blkch.BlkchnException;
+import com.impetus.blkch.sql.DataFrame;
+import com.impetus.eth.parser.BlockTailer;
+import com.impetus.eth.parser.QueryBudget;
+import com.impetus.eth.parser.QueryContext;
+
+/**
+ * Result set of a continuous query. A background thread follows the chain through a block filter and hands the rows
+ * of every new block to next(), which blocks until a row is there. The last column tells inserted rows from rows
+ * retracted by a reorganisation. Nodes without filter support are polled for the block number instead.
+ */
+public class EthStreamingResultSet extends EthResultSet {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EthStreamingResultSet.class);
+
+    public static final String OP_COLUMN = "stream_op";
+
+    public static final long DEFAULT_POLL_INTERVAL = 1000;
+
+    private static final int BUFFERED_ROWS = 10000;
+
+    private static final List<Object> END = new ArrayList<>();
+
+    private final BlockingQueue<List<Object>> rows = new LinkedBlockingQueue<>(BUFFERED_ROWS);
+
+    private final Web3j web3jClient;
+
+    private final BlockTailer tailer;
+
+    private final long pollInterval;
+
+    private final QueryContext context;
+
+    private final Thread follower;
+
+    private volatile boolean stopped;
+
+    private volatile Throwable failure;
+
+    private boolean finished;
+
+    private long lastHeight = -1;
+
+    /* Only touched by the follower thread */
+    private BigInteger filterId;
+
+    public EthStreamingResultSet(DataFrame schema, int rSetConcurrency, String tableName,
+            Map<String, Integer> colTypeMap, Web3j web3jClient, BlockTailer tailer, long pollInterval,
+            QueryContext context) {
+        super(schema, ResultSet.TYPE_FORWARD_ONLY, rSetConcurrency, tableName, colTypeMap);
+        this.web3jClient = web3jClient;
+        this.tailer = tailer;
+        this.pollInterval = pollInterval;
+        this.context = context;
+        this.follower = new Thread(this::follow, "eth-stream-" + tableName);
+        follower.setDaemon(true);
+        follower.start();
+    }
+
+    private void follow() {
+        try {
+            context.enter();
+            filterId = newBlockFilter();
+            Long head = Long.valueOf(getHeight());
+            while (!stopped && !tailer.isFinished()) {
+                if (head != null) {
+                    tailer.poll(head, this::put);
+                }
+                if (tailer.isFinished()) {
+                    break;
+                }
+                Thread.sleep(pollInterval);
+                context.check();
+                head = newHead();
+            }
+        } catch (InterruptedException e) {
+            if (context.isCancelled()) {
+                failure = context.cancelled(e);
+            }
+            Thread.currentThread().interrupt();
+        } catch (Throwable e) {
+            if (context.isCancelled()) {
+                failure = context.cancelled(e);
+            } else if (!stopped) {
+                LOGGER.error("Error following the chain from block " + tailer.getNextBlock(), e);
+                failure = e;
+            }
+        } finally {
+            context.exit();
+            uninstallFilter();
+            if (!stopped) {
+                rows.clear();
+                rows.offer(END);
+            }
+        }
+    }
+
+    private BigInteger newBlockFilter() {
+        try {
+            EthFilter filter = web3jClient.ethNewBlockFilter().send();
+            if (filter == null || filter.hasError()) {
+                LOGGER.info("Node has no block filters, polling the block number every " + pollInterval + " ms");
+                return null;
+            }
+            return filter.getFilterId();
+        } catch (IOException e) {
+            LOGGER.info("Node has no block filters, polling the block number every " + pollInterval + " ms");
+            return null;
+        }
+    }
+
+    /*
+     * The height of the chain when the filter saw new blocks or, without a filter, when the height moved. A filter
+     * also reports a new block that replaces the head at the same height.
+     */
+    private Long newHead() throws IOException {
+        if (filterId != null) {
+            EthLog changes = web3jClient.ethGetFilterChanges(filterId).send();
+            if (!changes.hasError()) {
+                return changes.getLogs() == null || changes.getLogs().isEmpty() ? null : Long.valueOf(getHeight());
+            }
+            LOGGER.info("Block filter " + filterId + " was dropped by the node, polling the block number instead");
+            filterId = null;
+            return Long.valueOf(getHeight());
+        }
+        long height = getHeight();
+        return height == lastHeight ? null : Long.valueOf(height);
+    }
+
+    private long getHeight() throws IOException {
+        lastHeight = web3jClient.ethBlockNumber().send().getBlockNumber().longValue();
+        return lastHeight;
+    }
+
+    private void uninstallFilter() {
+        if (filterId == null) {
+            return;
+        }
+        try {
+            web3jClient.ethUninstallFilter(filterId).send();
+        } catch (Exception e) {
+            LOGGER.info("Could not uninstall block filter " + filterId);
+        }
+    }
+
+    private void put(List<Object> row) {
+        try {
+            rows.put(row);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BlkchnException("Stream closed while buffering rows", e);
+        }
+    }
+
+    @Override
+    public boolean next() throws SQLException {
+        checkClosed();
+        if (finished) {
+            return false;
+        }
+        List<Object> row;
+        try {
+            row = rows.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BlkchnException("Interrupted while waiting for the next block", e);
+        }
+        if (row == END) {
+            finished = true;
+            currentRowCursor = AFTER_LAST_ROW;
+            currentRow = null;
+            if (failure instanceof QueryContext.CancelledException) {
+                throw QueryContext.toSQLException((QueryContext.CancelledException) failure);
+            } else if (failure != null) {
+                throw QueryBudget.toSQLException(new BlkchnException("Error following the chain", failure));
+            }
+            return false;
+        }
+        currentRowCursor++;
+        currentRow = row.toArray();
+        return true;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        stopped = true;
+        context.close();
+        follower.interrupt();
+        rows.clear();
+        rows.offer(END);
+        super.close();
+    }
+}
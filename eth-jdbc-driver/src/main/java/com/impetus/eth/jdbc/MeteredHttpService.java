@@ -0,0 +1,103 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.jdbc;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.http.HttpService;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.impetus.blkch.BlkchnException;
+
+/**
+ * Http transport that keeps a running count of the response bytes read from the node, reported by EXPLAIN ANALYZE.
+ */
+public class MeteredHttpService extends HttpService {
+
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    public MeteredHttpService(String url) {
+        super(url);
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    /**
+     * Sends the requests as one JSON-RPC batch in a single round trip. Responses are matched back to their requests by
+     * id, since nodes may answer a batch in any order, and returned in request order.
+     */
+    public <T extends Response<?>> List<T> sendBatch(List<? extends Request<?, ?>> requests, Class<T> responseType)
+            throws IOException {
+        if (requests.isEmpty()) {
+            return new ArrayList<>();
+        }
+        try (InputStream result = performIO(objectMapper.writeValueAsString(requests))) {
+            JsonNode batch = objectMapper.readTree(result);
+            if (batch == null || !batch.isArray()) {
+                throw new BlkchnException("Node did not answer the batch of " + requests.size() + " requests");
+            }
+            Map<Long, T> responses = new HashMap<>();
+            for (JsonNode node : batch) {
+                responses.put(node.get("id").asLong(), objectMapper.treeToValue(node, responseType));
+            }
+            List<T> ordered = new ArrayList<>(requests.size());
+            for (Request<?, ?> request : requests) {
+                T response = responses.get(request.getId());
+                if (response == null) {
+                    throw new BlkchnException("Batch response is missing request " + request.getId());
+                }
+                ordered.add(response);
+            }
+            return ordered;
+        }
+    }
+
+    @Override
+    protected InputStream performIO(String request) throws IOException {
+        InputStream response = super.performIO(request);
+        return response == null ? null : new FilterInputStream(response) {
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    bytesReceived.incrementAndGet();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int n = super.read(buffer, offset, length);
+                if (n > 0) {
+                    bytesReceived.addAndGet(n);
+                }
+                return n;
+            }
+        };
+    }
+}
@@ -0,0 +1,32 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import java.io.Serializable;
+
+/**
+ * Running state of one aggregate function for one group. Accumulators are serializable so that partial states built
+ * on separate partitions can be shipped and merged.
+ */
+public interface Accumulator extends Serializable {
+
+    void add(Object value);
+
+    /* Folds the state of another accumulator of the same kind into this one */
+    void merge(Accumulator other);
+
+    Object result();
+}
@@ -0,0 +1,281 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import java.util.function.Function;
+
+import com.impetus.blkch.BlkchnException;
+import com.impetus.blkch.util.Utilities;
+
+/**
+ * Factory and implementations of the accumulators used by {@link HashAggregator}. Counters and integral sums are kept
+ * in primitive longs and only promoted to BigInteger on overflow, so a group costs a few dozen bytes regardless of
+ * how many rows are folded into it.
+ */
+public final class Accumulators {
+
+    public static final String COUNT = "count";
+
+    public static final String SUM = "sum";
+
+    public static final String MIN = "min";
+
+    public static final String MAX = "max";
+
+    public static final String APPROX_COUNT_DISTINCT = "approx_count_distinct";
+
+    public static final String APPROX_PERCENTILE = "approx_percentile";
+
+    public static final String APPROX_TOP_K = "approx_top_k";
+
+    private Accumulators() {
+    }
+
+    public static boolean isSupported(String function) {
+        switch (function) {
+            case COUNT:
+            case SUM:
+            case MIN:
+            case MAX:
+            case APPROX_COUNT_DISTINCT:
+            case APPROX_PERCENTILE:
+            case APPROX_TOP_K:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public static boolean isApproximate(String function) {
+        return function.startsWith("approx_");
+    }
+
+    public static Accumulator create(String function) {
+        return create(function, new String[0]);
+    }
+
+    /**
+     * Creates an accumulator for the function. Params are the literal arguments following the column, like the
+     * percentile of approx_percentile or the k of approx_top_k.
+     */
+    public static Accumulator create(String function, String[] params) {
+        switch (function) {
+            case COUNT:
+                return new CountAccumulator();
+            case SUM:
+                return new SumAccumulator();
+            case MIN:
+                return new MinMaxAccumulator(false);
+            case MAX:
+                return new MinMaxAccumulator(true);
+            case APPROX_COUNT_DISTINCT:
+                return new HyperLogLog();
+            case APPROX_PERCENTILE:
+                return new TDigest(parseParam(function, params, Double::parseDouble));
+            case APPROX_TOP_K:
+                return new SpaceSaving(parseParam(function, params, Integer::parseInt));
+            default:
+                throw new BlkchnException("Aggregate function " + function + " is not supported");
+        }
+    }
+
+    private static <T> T parseParam(String function, String[] params, Function<String, T> parser) {
+        if (params.length != 1) {
+            throw new BlkchnException(function + " expects a column and one literal argument");
+        }
+        try {
+            return parser.apply(Utilities.unquote(params[0].trim()));
+        } catch (NumberFormatException e) {
+            throw new BlkchnException("Invalid argument " + params[0] + " for " + function, e);
+        }
+    }
+
+    public static final class CountAccumulator implements Accumulator {
+
+        private static final long serialVersionUID = 1L;
+
+        private long count;
+
+        @Override
+        public void add(Object value) {
+            if (value != null) {
+                count++;
+            }
+        }
+
+        @Override
+        public void merge(Accumulator other) {
+            count += ((CountAccumulator) other).count;
+        }
+
+        @Override
+        public Object result() {
+            if (count <= Integer.MAX_VALUE) {
+                return (int) count;
+            }
+            return count;
+        }
+    }
+
+    public static final class SumAccumulator implements Accumulator {
+
+        private static final long serialVersionUID = 1L;
+
+        private long longSum;
+
+        private BigInteger bigSum;
+
+        private double doubleSum;
+
+        private boolean floating;
+
+        private Class<?> inputType;
+
+        @Override
+        public void add(Object value) {
+            if (value == null) {
+                return;
+            }
+            if (inputType == null) {
+                inputType = value.getClass();
+            }
+            if (value instanceof Double || value instanceof Float || value instanceof BigDecimal) {
+                addDouble(((Number) value).doubleValue());
+            } else if (value instanceof BigInteger) {
+                BigInteger big = (BigInteger) value;
+                if (big.bitLength() < 64) {
+                    addLong(big.longValue());
+                } else {
+                    addBig(big);
+                }
+            } else if (value instanceof Number) {
+                addLong(((Number) value).longValue());
+            } else {
+                addBig(new BigInteger(value.toString()));
+            }
+        }
+
+        private void addLong(long value) {
+            if (floating) {
+                doubleSum += value;
+                return;
+            }
+            long sum = longSum + value;
+            if (((longSum ^ sum) & (value ^ sum)) < 0) {
+                addBig(BigInteger.valueOf(value));
+            } else {
+                longSum = sum;
+            }
+        }
+
+        private void addBig(BigInteger value) {
+            if (floating) {
+                doubleSum += value.doubleValue();
+                return;
+            }
+            bigSum = bigSum == null ? value : bigSum.add(value);
+        }
+
+        private void addDouble(double value) {
+            if (!floating) {
+                floating = true;
+                doubleSum = exactSum().doubleValue();
+            }
+            doubleSum += value;
+        }
+
+        private BigInteger exactSum() {
+            BigInteger sum = BigInteger.valueOf(longSum);
+            return bigSum == null ? sum : sum.add(bigSum);
+        }
+
+        @Override
+        public void merge(Accumulator other) {
+            SumAccumulator that = (SumAccumulator) other;
+            if (inputType == null) {
+                inputType = that.inputType;
+            }
+            if (that.floating) {
+                addDouble(that.doubleSum);
+            } else {
+                addLong(that.longSum);
+                if (that.bigSum != null) {
+                    addBig(that.bigSum);
+                }
+            }
+        }
+
+        @Override
+        public Object result() {
+            if (inputType == null) {
+                return null;
+            }
+            if (floating) {
+                return doubleSum;
+            }
+            BigInteger sum = exactSum();
+            if (Integer.class.equals(inputType) && sum.bitLength() < 32) {
+                return sum.intValue();
+            } else if (Long.class.equals(inputType) && sum.bitLength() < 64) {
+                return sum.longValue();
+            }
+            return sum;
+        }
+    }
+
+    public static final class MinMaxAccumulator implements Accumulator {
+
+        private static final long serialVersionUID = 1L;
+
+        private final boolean max;
+
+        private Comparable<Object> current;
+
+        MinMaxAccumulator(boolean max) {
+            this.max = max;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void add(Object value) {
+            if (value == null) {
+                return;
+            }
+            Comparable<Object> candidate = (Comparable<Object>) value;
+            if (current == null) {
+                current = candidate;
+                return;
+            }
+            int cmp = candidate.compareTo(current);
+            if (max ? cmp > 0 : cmp < 0) {
+                current = candidate;
+            }
+        }
+
+        @Override
+        public void merge(Accumulator other) {
+            add(((MinMaxAccumulator) other).current);
+        }
+
+        @Override
+        public Object result() {
+            return current;
+        }
+    }
+}
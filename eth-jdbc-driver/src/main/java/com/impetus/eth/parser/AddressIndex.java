@@ -0,0 +1,281 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.web3j.protocol.core.methods.response.Transaction;
+
+import com.impetus.blkch.BlkchnException;
+
+/**
+ * Local index from address to the transactions sending from or to it. Every address keeps a posting list of
+ * (blocknumber, txindex) pairs packed into one long, sorted and stored as varint deltas. Blocks are indexed in order
+ * from a start block up to a few blocks short of the tip, so lookups only cover the range the index has caught up
+ * with and anything outside it still has to be scanned.
+ */
+public class AddressIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AddressIndex.class);
+
+    private static final int MAGIC = 0x45544841;
+
+    private static final int VERSION = 1;
+
+    private static final int TX_INDEX_BITS = 16;
+
+    public static final long UNCONFIRMED_BLOCKS = 64;
+
+    private final long startBlock;
+
+    private long indexedUpTo;
+
+    private final Map<String, PostingList> postings = new HashMap<>();
+
+    public AddressIndex(long startBlock) {
+        this.startBlock = startBlock;
+        this.indexedUpTo = startBlock;
+    }
+
+    public static long posting(long blockNumber, int txIndex) {
+        return blockNumber << TX_INDEX_BITS | txIndex;
+    }
+
+    public static long blockNumber(long posting) {
+        return posting >>> TX_INDEX_BITS;
+    }
+
+    public static int txIndex(long posting) {
+        return (int) (posting & ((1 << TX_INDEX_BITS) - 1));
+    }
+
+    public long getStartBlock() {
+        return startBlock;
+    }
+
+    /**
+     * First block not yet in the index, the index covers startBlock until here.
+     */
+    public synchronized long getIndexedUpTo() {
+        return indexedUpTo;
+    }
+
+    public synchronized int size() {
+        return postings.size();
+    }
+
+    /**
+     * Adds the transactions of the next block, blocks have to come in order.
+     */
+    public synchronized void indexBlock(long blockNumber, List<Transaction> transactions) {
+        if (blockNumber != indexedUpTo) {
+            throw new BlkchnException("Address index expects block " + indexedUpTo + " but got " + blockNumber);
+        }
+        for (Transaction transaction : transactions) {
+            int txIndex = transaction.getTransactionIndex().intValue();
+            add(transaction.getFrom(), blockNumber, txIndex);
+            add(transaction.getTo(), blockNumber, txIndex);
+        }
+        indexedUpTo = blockNumber + 1;
+    }
+
+    /**
+     * Indexes up to maxBlocks confirmed blocks past the current end of the index.
+     * 
+     * @param fetcher returns the transactions of a block number
+     * @return number of blocks indexed
+     */
+    public int catchUp(LongFunction<List<Transaction>> fetcher, long height, int maxBlocks) {
+        int indexed = 0;
+        long next = getIndexedUpTo();
+        while (indexed < maxBlocks && next < height - UNCONFIRMED_BLOCKS) {
+            indexBlock(next, fetcher.apply(next));
+            next++;
+            indexed++;
+        }
+        return indexed;
+    }
+
+    /**
+     * Postings of the address inside the inclusive block range, in block and transaction order.
+     */
+    public synchronized long[] lookup(String address, long fromBlock, long toBlock) {
+        PostingList list = postings.get(address.toLowerCase());
+        if (list == null) {
+            return new long[0];
+        }
+        long[] all = list.decode();
+        int from = lowerBound(all, posting(fromBlock, 0));
+        int to = lowerBound(all, posting(toBlock + 1, 0));
+        return Arrays.copyOfRange(all, from, to);
+    }
+
+    /**
+     * Writes the index to a temporary file first and moves it over the old one, so a crash never leaves half an
+     * index behind.
+     */
+    public synchronized void save(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(startBlock);
+            out.writeLong(indexedUpTo);
+            out.writeInt(postings.size());
+            for (Map.Entry<String, PostingList> entry : postings.entrySet()) {
+                out.writeUTF(entry.getKey());
+                entry.getValue().write(out);
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Reads a saved index, or starts an empty one from startBlock when there is none or it can't be read.
+     */
+    public static AddressIndex load(File file, long startBlock) {
+        if (!file.exists()) {
+            return new AddressIndex(startBlock);
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("not an address index");
+            }
+            AddressIndex index = new AddressIndex(in.readLong());
+            index.indexedUpTo = in.readLong();
+            int addresses = in.readInt();
+            for (int i = 0; i < addresses; i++) {
+                index.postings.put(in.readUTF(), PostingList.read(in));
+            }
+            return index;
+        } catch (IOException e) {
+            LOGGER.warn("Ignoring unreadable address index in " + file + ": " + e.getMessage());
+            return new AddressIndex(startBlock);
+        }
+    }
+
+    private void add(String address, long blockNumber, int txIndex) {
+        if (address != null) {
+            postings.computeIfAbsent(address.toLowerCase(), k -> new PostingList())
+                    .append(posting(blockNumber, txIndex));
+        }
+    }
+
+    private static int lowerBound(long[] values, long key) {
+        int lo = 0;
+        int hi = values.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Sorted longs stored as varint encoded gaps.
+     */
+    static class PostingList {
+
+        private byte[] data = new byte[8];
+
+        private int length;
+
+        private int count;
+
+        private long last;
+
+        void append(long value) {
+            if (count > 0 && value == last) {
+                return;
+            }
+            long delta = count == 0 ? value : value - last;
+            while ((delta & ~0x7FL) != 0) {
+                put((byte) ((delta & 0x7F) | 0x80));
+                delta >>>= 7;
+            }
+            put((byte) delta);
+            last = value;
+            count++;
+        }
+
+        long[] decode() {
+            long[] values = new long[count];
+            long value = 0;
+            int pos = 0;
+            for (int i = 0; i < count; i++) {
+                long delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[pos++];
+                    delta |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                value += delta;
+                values[i] = value;
+            }
+            return values;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(count);
+            out.writeLong(last);
+            out.writeInt(length);
+            out.write(data, 0, length);
+        }
+
+        static PostingList read(DataInputStream in) throws IOException {
+            PostingList list = new PostingList();
+            list.count = in.readInt();
+            list.last = in.readLong();
+            list.length = in.readInt();
+            list.data = new byte[Math.max(list.length, 8)];
+            in.readFully(list.data, 0, list.length);
+            return list;
+        }
+
+        private void put(byte b) {
+            if (length == data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[length++] = b;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import java.util.regex.Pattern;
+
+/**
+ * Expands BETWEEN, which the grammar has no rule for, into the pair of comparisons it stands for so that numeric
+ * columns are filtered with the typed comparisons. Bounds are numbers, quoted strings or placeholders, placeholders
+ * keep their order.
+ */
+public class BetweenRewriter {
+
+    private static final String VALUE = "('[^']*'|-?(?:0x)?[\\w.]+|\\?)";
+
+    private static final Pattern BETWEEN = Pattern.compile(
+            "((?:\\w+\\.)?\\w+)\\s+(not\\s+)?between\\s+" + VALUE + "\\s+and\\s+" + VALUE, Pattern.CASE_INSENSITIVE);
+
+    public static boolean mentionsBetween(String sql) {
+        return sql.toLowerCase().contains("between");
+    }
+
+    /**
+     * Rewrites every BETWEEN outside quoted strings, a literal that reads like one is left as it is.
+     */
+    public static String rewrite(String sql) {
+        if (!mentionsBetween(sql)) {
+            return sql;
+        }
+        return SqlText.replaceOutsideQuotes(BETWEEN, sql, between -> {
+            String column = between.group(1);
+            return between.group(2) == null
+                    ? "(" + column + " >= " + between.group(3) + " and " + column + " <= " + between.group(4) + ")"
+                    : "(" + column + " < " + between.group(3) + " or " + column + " > " + between.group(4) + ")";
+        });
+    }
+}
@@ -0,0 +1,104 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.impetus.blkch.BlkchnException;
+
+/**
+ * Systematic block sampling for approximate queries. Of every step consecutive block numbers only the one at a random
+ * offset is fetched, so a 1 percent sample reads every hundredth block. The sampler also keeps track of how many
+ * blocks the scanned ranges covered and how many of them were sampled, which is what estimates are scaled by.
+ */
+public class BlockSampler {
+
+    private static final Pattern TABLESAMPLE = Pattern.compile(
+            "\\s+TABLESAMPLE\\s*(?:SYSTEM\\s*)?\\(\\s*([0-9]*\\.?[0-9]+)\\s*PERCENT\\s*\\)", Pattern.CASE_INSENSITIVE);
+
+    private final double percent;
+
+    private final long step;
+
+    private final long offset;
+
+    private long populationBlocks;
+
+    private long sampledBlocks;
+
+    public BlockSampler(double percent, Random random) {
+        if (!(percent > 0 && percent <= 100)) {
+            throw new BlkchnException("Sample percent should be in (0, 100], found " + percent);
+        }
+        this.percent = percent;
+        this.step = Math.max(1, Math.round(100 / percent));
+        this.offset = step == 1 ? 0 : (long) (random.nextDouble() * step);
+    }
+
+    /**
+     * Returns the percent of a <code>TABLESAMPLE (n PERCENT)</code> clause in the query, or null if it has none.
+     */
+    public static Double extractPercent(String sql) {
+        Matcher matcher = TABLESAMPLE.matcher(sql);
+        return matcher.find() ? Double.valueOf(matcher.group(1)) : null;
+    }
+
+    /* The grammar doesn't know TABLESAMPLE, so the clause is taken out before the query is parsed */
+    public static String stripClause(String sql) {
+        return TABLESAMPLE.matcher(sql).replaceFirst("");
+    }
+
+    public double getPercent() {
+        return percent;
+    }
+
+    public long getStep() {
+        return step;
+    }
+
+    /**
+     * First sampled block number not below min.
+     */
+    public BigInteger first(BigInteger min) {
+        long position = min.subtract(BigInteger.valueOf(offset)).mod(BigInteger.valueOf(step)).longValue();
+        return position == 0 ? min : min.add(BigInteger.valueOf(step - position));
+    }
+
+    /**
+     * Records a scanned range of block numbers, both ends inclusive.
+     */
+    public synchronized void recordRange(BigInteger min, BigInteger max) {
+        if (max.compareTo(min) < 0) {
+            return;
+        }
+        populationBlocks += max.subtract(min).longValue() + 1;
+        BigInteger first = first(min);
+        if (first.compareTo(max) <= 0) {
+            sampledBlocks += max.subtract(first).longValue() / step + 1;
+        }
+    }
+
+    public synchronized long getPopulationBlocks() {
+        return populationBlocks;
+    }
+
+    public synchronized long getSampledBlocks() {
+        return sampledBlocks;
+    }
+}
@@ -0,0 +1,138 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Follows the head of the chain for a continuous query. Every block past the last one read is queried once and its
+ * rows are emitted with an insert marker. The rows and hash of the recent blocks are kept, so when the chain
+ * reorganises below the last block read the rows of the replaced blocks are emitted again with a retract marker, in
+ * reverse order, before the blocks of the new branch.
+ */
+public class BlockTailer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BlockTailer.class);
+
+    public static final String INSERT = "insert";
+
+    public static final String RETRACT = "retract";
+
+    private final LongFunction<String> hashOf;
+
+    private final LongFunction<List<List<Object>>> rowsOf;
+
+    private final int maxDepth;
+
+    private final long lastBlock;
+
+    private long nextBlock;
+
+    private final TreeMap<Long, List<List<Object>>> emitted = new TreeMap<>();
+
+    private final LongObjectMap<String> hashes = new LongObjectMap<>();
+
+    /**
+     * @param firstBlock
+     *            first block to read
+     * @param lastBlock
+     *            last block to read, Long.MAX_VALUE to follow the chain forever
+     * @param hashOf
+     *            hash of the block with the given number on the current chain, null past the head
+     * @param rowsOf
+     *            rows the query returns for one block
+     * @param maxDepth
+     *            number of recent blocks whose rows are kept to be retracted
+     */
+    public BlockTailer(long firstBlock, long lastBlock, LongFunction<String> hashOf,
+            LongFunction<List<List<Object>>> rowsOf, int maxDepth) {
+        this.nextBlock = firstBlock;
+        this.lastBlock = lastBlock;
+        this.hashOf = hashOf;
+        this.rowsOf = rowsOf;
+        this.maxDepth = maxDepth;
+    }
+
+    public long getNextBlock() {
+        return nextBlock;
+    }
+
+    public boolean isFinished() {
+        return nextBlock > lastBlock;
+    }
+
+    /**
+     * Retracts the blocks that left the chain and emits the rows of the blocks up to the given head. Every row passed
+     * to the sink carries the marker as an extra last column.
+     */
+    public void poll(long head, Consumer<List<Object>> sink) {
+        int retracted = 0;
+        while (!emitted.isEmpty()) {
+            Long blockNumber = emitted.lastKey();
+            String hash = blockNumber <= head ? hashOf.apply(blockNumber) : null;
+            if (hash != null && hash.equals(hashes.get(blockNumber))) {
+                break;
+            }
+            List<List<Object>> rows = emitted.remove(blockNumber);
+            hashes.remove(blockNumber);
+            for (int i = rows.size() - 1; i >= 0; i--) {
+                sink.accept(mark(rows.get(i), RETRACT));
+            }
+            nextBlock = blockNumber;
+            retracted++;
+        }
+        if (retracted > 0) {
+            LOGGER.info("Retracted " + retracted + " reorganised blocks, reading again from block " + nextBlock);
+            if (emitted.isEmpty() && retracted >= maxDepth) {
+                LOGGER.warn("Reorganisation deeper than " + maxDepth + " blocks, older rows were not retracted");
+            }
+        }
+        long until = Math.min(head, lastBlock);
+        while (nextBlock <= until) {
+            // the hash is read before the rows, a reorg in between is seen on the next poll rather than missed
+            String hash = hashOf.apply(nextBlock);
+            if (hash == null) {
+                break;
+            }
+            List<List<Object>> rows = rowsOf.apply(nextBlock);
+            rows = rows == null ? Collections.emptyList() : rows;
+            for (List<Object> row : rows) {
+                sink.accept(mark(row, INSERT));
+            }
+            emitted.put(nextBlock, rows);
+            hashes.put(nextBlock, hash);
+            while (emitted.size() > maxDepth) {
+                hashes.remove(emitted.pollFirstEntry().getKey());
+            }
+            nextBlock++;
+        }
+    }
+
+    private static List<Object> mark(List<Object> row, String op) {
+        List<Object> marked = new ArrayList<>(row.size() + 1);
+        marked.addAll(row);
+        marked.add(op);
+        return marked;
+    }
+}
@@ -0,0 +1,42 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import org.web3j.protocol.core.methods.response.EthBlock.Block;
+import org.web3j.protocol.core.methods.response.Transaction;
+
+/**
+ * Row of the blocktransaction table, a transaction next to the block it was fetched with.
+ */
+public class BlockTransaction {
+
+    private final Block block;
+
+    private final Transaction transaction;
+
+    public BlockTransaction(Block block, Transaction transaction) {
+        this.block = block;
+        this.transaction = transaction;
+    }
+
+    public Block getBlock() {
+        return block;
+    }
+
+    public Transaction getTransaction() {
+        return transaction;
+    }
+}
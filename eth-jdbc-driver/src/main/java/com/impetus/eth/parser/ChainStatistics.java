@@ -0,0 +1,287 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.web3j.protocol.core.methods.response.EthBlock.Block;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Transactions per block and block size histograms by height bucket, used for cardinality estimates. Buckets fill up
+ * from blocks the queries fetch anyway, plus an explicit sampling refresh limited to a few calls at a time, and can be
+ * saved to a local file so the next connection starts warm.
+ */
+public class ChainStatistics implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChainStatistics.class);
+
+    public static final long DEFAULT_BUCKET_BLOCKS = 100000;
+
+    /* Once a bucket has this many samples the refresh leaves it alone */
+    public static final int SAMPLES_PER_BUCKET = 16;
+
+    private long bucketBlocks = DEFAULT_BUCKET_BLOCKS;
+
+    private long height;
+
+    private TreeMap<Long, Bucket> buckets = new TreeMap<>();
+
+    public ChainStatistics() {
+    }
+
+    public ChainStatistics(long bucketBlocks) {
+        this.bucketBlocks = bucketBlocks;
+    }
+
+    public static ChainStatistics load(File file) {
+        if (file.exists()) {
+            try {
+                return new ObjectMapper().readValue(file, ChainStatistics.class);
+            } catch (IOException e) {
+                LOGGER.warn("Ignoring unreadable chain statistics in " + file + ": " + e.getMessage());
+            }
+        }
+        return new ChainStatistics();
+    }
+
+    public synchronized void save(File file) throws IOException {
+        if (file.getAbsoluteFile().getParentFile() != null) {
+            file.getAbsoluteFile().getParentFile().mkdirs();
+        }
+        new ObjectMapper().writeValue(file, this);
+    }
+
+    public synchronized void record(long blockNumber, int transactions, long bytes) {
+        Bucket bucket = buckets.computeIfAbsent(blockNumber / bucketBlocks, k -> new Bucket());
+        bucket.samples++;
+        bucket.transactions += transactions;
+        bucket.bytes += bytes;
+        bucket.maxTransactions = Math.max(bucket.maxTransactions, transactions);
+        height = Math.max(height, blockNumber + 1);
+    }
+
+    public void record(Block block) {
+        if (block != null && block.getNumber() != null) {
+            long bytes = block.getSize() == null ? 0 : block.getSize().longValue();
+            record(block.getNumber().longValue(), block.getTransactions().size(), bytes);
+        }
+    }
+
+    /**
+     * Samples up to budget blocks, newest buckets first, skipping buckets that already have enough samples. Blocks
+     * inside a bucket are picked by a fixed stride so repeated refreshes keep spreading over the bucket.
+     * 
+     * @return number of blocks sampled
+     */
+    public int refresh(Function<BigInteger, Block> fetcher, long chainHeight, int budget) {
+        int sampled = 0;
+        for (long index = (chainHeight - 1) / bucketBlocks; index >= 0 && sampled < budget; index--) {
+            long start = index * bucketBlocks;
+            long size = Math.min(bucketBlocks, chainHeight - start);
+            while (sampled < budget) {
+                long samples = samples(index);
+                if (samples >= Math.min(SAMPLES_PER_BUCKET, size)) {
+                    break;
+                }
+                long block = start + (samples * 7919 + size / 2) % size;
+                Block fetched;
+                try {
+                    fetched = fetcher.apply(BigInteger.valueOf(block));
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Statistics refresh stopped at block " + block + ": " + e.getMessage());
+                    return sampled;
+                }
+                if (fetched == null) {
+                    record(block, 0, 0);
+                } else {
+                    record(fetched);
+                }
+                sampled++;
+            }
+        }
+        synchronized (this) {
+            height = Math.max(height, chainHeight);
+        }
+        return sampled;
+    }
+
+    /**
+     * Average transactions per block around the given height, from its own bucket when sampled, else from the whole
+     * chain, null when nothing is known.
+     */
+    public synchronized Double transactionsPerBlock(long blockNumber) {
+        Bucket bucket = buckets.get(blockNumber / bucketBlocks);
+        if (bucket != null && bucket.samples > 0) {
+            return (double) bucket.transactions / bucket.samples;
+        }
+        long samples = 0;
+        long transactions = 0;
+        for (Bucket each : buckets.values()) {
+            samples += each.samples;
+            transactions += each.transactions;
+        }
+        return samples == 0 ? null : (double) transactions / samples;
+    }
+
+    /**
+     * Expected number of transactions in the inclusive block range, null when nothing is known.
+     */
+    public Double estimateTransactions(long from, long to) {
+        return estimate(from, to, false);
+    }
+
+    /**
+     * Expected size in bytes of the blocks in the inclusive range, null when nothing is known.
+     */
+    public Double estimateBytes(long from, long to) {
+        return estimate(from, to, true);
+    }
+
+    /**
+     * Number of blocks from the given one that should hold the given number of transactions, with some slack so a
+     * single estimate is usually enough.
+     */
+    public long blocksFor(long rows, long fromBlock) {
+        Double perBlock = transactionsPerBlock(fromBlock);
+        if (perBlock == null || perBlock <= 0) {
+            return Math.max(rows, 1);
+        }
+        return Math.max(1, (long) Math.ceil(rows * 1.25 / perBlock));
+    }
+
+    private synchronized Double estimate(long from, long to, boolean bytes) {
+        Double fallback = null;
+        double total = 0;
+        for (long index = from / bucketBlocks; index <= to / bucketBlocks; index++) {
+            long start = Math.max(from, index * bucketBlocks);
+            long end = Math.min(to, (index + 1) * bucketBlocks - 1);
+            Bucket bucket = buckets.get(index);
+            double perBlock;
+            if (bucket != null && bucket.samples > 0) {
+                perBlock = (double) (bytes ? bucket.bytes : bucket.transactions) / bucket.samples;
+            } else {
+                if (fallback == null) {
+                    fallback = chainAverage(bytes);
+                    if (fallback == null) {
+                        return null;
+                    }
+                }
+                perBlock = fallback;
+            }
+            total += perBlock * (end - start + 1);
+        }
+        return total;
+    }
+
+    private Double chainAverage(boolean bytes) {
+        long samples = 0;
+        long sum = 0;
+        for (Bucket bucket : buckets.values()) {
+            samples += bucket.samples;
+            sum += bytes ? bucket.bytes : bucket.transactions;
+        }
+        return samples == 0 ? null : (double) sum / samples;
+    }
+
+    private synchronized long samples(long index) {
+        Bucket bucket = buckets.get(index);
+        return bucket == null ? 0 : bucket.samples;
+    }
+
+    public synchronized long getBucketBlocks() {
+        return bucketBlocks;
+    }
+
+    public synchronized void setBucketBlocks(long bucketBlocks) {
+        this.bucketBlocks = bucketBlocks;
+    }
+
+    public synchronized long getHeight() {
+        return height;
+    }
+
+    public synchronized void setHeight(long height) {
+        this.height = height;
+    }
+
+    public synchronized Map<Long, Bucket> getBuckets() {
+        return new TreeMap<>(buckets);
+    }
+
+    public synchronized void setBuckets(TreeMap<Long, Bucket> buckets) {
+        this.buckets = buckets;
+    }
+
+    /**
+     * Sampled totals of one height bucket.
+     */
+    public static class Bucket implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private long samples;
+
+        private long transactions;
+
+        private long bytes;
+
+        private long maxTransactions;
+
+        public long getSamples() {
+            return samples;
+        }
+
+        public void setSamples(long samples) {
+            this.samples = samples;
+        }
+
+        public long getTransactions() {
+            return transactions;
+        }
+
+        public void setTransactions(long transactions) {
+            this.transactions = transactions;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public void setBytes(long bytes) {
+            this.bytes = bytes;
+        }
+
+        public long getMaxTransactions() {
+            return maxTransactions;
+        }
+
+        public void setMaxTransactions(long maxTransactions) {
+            this.maxTransactions = maxTransactions;
+        }
+    }
+}
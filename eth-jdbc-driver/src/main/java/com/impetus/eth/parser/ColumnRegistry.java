@@ -0,0 +1,342 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import java.math.BigInteger;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.web3j.protocol.core.methods.response.EthBlock.Block;
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.protocol.core.methods.response.Transaction;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import com.impetus.blkch.BlkchnException;
+import com.impetus.eth.query.EthColumns;
+import com.impetus.eth.query.EthTables;
+
+/**
+ * The columns of every table in row order, each with its getter, Java and SQL type and, for quantities, the getter of
+ * the raw hex the node sent. Row building, filters and the physical plan's column and type maps all read from here,
+ * so a column is added in one place. Names are resolved to column objects once per query; rows are built by walking
+ * the getters by index.
+ */
+public final class ColumnRegistry {
+
+    private static final Map<String, TableColumns<?>> TABLES = new HashMap<>();
+
+    static {
+        TableColumns<Block> block = new TableColumns<>(EthTables.BLOCK, Block.class)
+                .add(EthColumns.BLOCKNUMBER, BigInteger.class, Block::getNumber, Block::getNumberRaw)
+                .add(EthColumns.HASH, String.class, Block::getHash)
+                .add(EthColumns.PARENTHASH, String.class, Block::getParentHash)
+                .add(EthColumns.NONCE, BigInteger.class, Block::getNonce, Block::getNonceRaw)
+                .add(EthColumns.SHA3UNCLES, String.class, Block::getSha3Uncles)
+                .add(EthColumns.LOGSBLOOM, String.class, Block::getLogsBloom)
+                .add(EthColumns.TRANSACTIONSROOT, String.class, Block::getTransactionsRoot)
+                .add(EthColumns.STATEROOT, String.class, Block::getStateRoot)
+                .add(EthColumns.RECEIPTSROOT, String.class, Block::getReceiptsRoot)
+                .add(EthColumns.AUTHOR, String.class, Block::getAuthor)
+                .add(EthColumns.MINER, String.class, Block::getMiner)
+                .add(EthColumns.MIXHASH, String.class, Block::getMixHash)
+                .add(EthColumns.TOTALDIFFICULTY, BigInteger.class, Block::getTotalDifficulty,
+                        Block::getTotalDifficultyRaw)
+                .add(EthColumns.EXTRADATA, String.class, Block::getExtraData)
+                .add(EthColumns.SIZE, BigInteger.class, Block::getSize, Block::getSizeRaw)
+                .add(EthColumns.GASLIMIT, BigInteger.class, Block::getGasLimit, Block::getGasLimitRaw)
+                .add(EthColumns.GASUSED, BigInteger.class, Block::getGasUsed, Block::getGasUsedRaw)
+                .add(EthColumns.TIMESTAMP, BigInteger.class, Block::getTimestamp, Block::getTimestampRaw)
+                .add(EthColumns.TRANSACTIONS, Object.class, Block::getTransactions)
+                .add(EthColumns.UNCLES, Object.class, Block::getUncles)
+                .add(EthColumns.SEALFIELDS, Object.class, Block::getSealFields);
+
+        TableColumns<Transaction> transaction = new TableColumns<>(EthTables.TRANSACTION, Transaction.class)
+                .add(EthColumns.BLOCKHASH, String.class, Transaction::getBlockHash)
+                .add(EthColumns.BLOCKNUMBER, BigInteger.class, Transaction::getBlockNumber,
+                        Transaction::getBlockNumberRaw)
+                .add(EthColumns.CREATES, String.class, Transaction::getCreates)
+                .add(EthColumns.FROM, String.class, Transaction::getFrom)
+                .add(EthColumns.GAS, String.class, txn -> String.valueOf(txn.getGas()), Transaction::getGasRaw)
+                .add(EthColumns.GASPRICE, BigInteger.class, Transaction::getGasPrice, Transaction::getGasPriceRaw)
+                .add(EthColumns.HASH, String.class, Transaction::getHash)
+                .add(EthColumns.INPUT, String.class, Transaction::getInput)
+                .add(EthColumns.NONCE, BigInteger.class, Transaction::getNonce, Transaction::getNonceRaw)
+                .add(EthColumns.PUBLICKEY, String.class, Transaction::getPublicKey)
+                .add(EthColumns.R, String.class, Transaction::getR)
+                .add(EthColumns.RAW, String.class, Transaction::getRaw)
+                .add(EthColumns.S, String.class, Transaction::getS)
+                .add(EthColumns.TO, String.class, Transaction::getTo)
+                .add(EthColumns.TRANSACTIONINDEX, BigInteger.class, Transaction::getTransactionIndex,
+                        Transaction::getTransactionIndexRaw)
+                .add(EthColumns.V, String.class, txn -> String.valueOf(txn.getV()))
+                .add(EthColumns.VALUE, BigInteger.class, Transaction::getValue, Transaction::getValueRaw);
+
+        TableColumns<Log> log = new TableColumns<>(EthTables.LOG, Log.class)
+                .add(EthColumns.ADDRESS, String.class, Log::getAddress)
+                .add(EthColumns.TOPICS, Object.class, row -> row.getTopics() == null ? Collections.emptyList()
+                        : row.getTopics())
+                .add(EthColumns.TOPIC0, String.class, row -> topic(row, 0))
+                .add(EthColumns.TOPIC1, String.class, row -> topic(row, 1))
+                .add(EthColumns.TOPIC2, String.class, row -> topic(row, 2))
+                .add(EthColumns.TOPIC3, String.class, row -> topic(row, 3))
+                .add(EthColumns.DATA, String.class, Log::getData)
+                .add(EthColumns.BLOCKNUMBER, BigInteger.class, Log::getBlockNumber, Log::getBlockNumberRaw)
+                .add(EthColumns.BLOCKHASH, String.class, Log::getBlockHash)
+                .add(EthColumns.TXHASH, String.class, Log::getTransactionHash)
+                .add(EthColumns.TRANSACTIONINDEX, BigInteger.class, Log::getTransactionIndex,
+                        Log::getTransactionIndexRaw)
+                .add(EthColumns.LOGINDEX, BigInteger.class, Log::getLogIndex, Log::getLogIndexRaw);
+
+        TableColumns<TransactionReceipt> receipt = new TableColumns<>(EthTables.RECEIPT, TransactionReceipt.class)
+                .add(EthColumns.TXHASH, String.class, TransactionReceipt::getTransactionHash)
+                .add(EthColumns.TRANSACTIONINDEX, BigInteger.class, TransactionReceipt::getTransactionIndex,
+                        TransactionReceipt::getTransactionIndexRaw)
+                .add(EthColumns.BLOCKHASH, String.class, TransactionReceipt::getBlockHash)
+                .add(EthColumns.BLOCKNUMBER, BigInteger.class, TransactionReceipt::getBlockNumber,
+                        TransactionReceipt::getBlockNumberRaw)
+                .add(EthColumns.FROM, String.class, TransactionReceipt::getFrom)
+                .add(EthColumns.TO, String.class, TransactionReceipt::getTo)
+                .add(EthColumns.GASUSED, BigInteger.class, TransactionReceipt::getGasUsed,
+                        TransactionReceipt::getGasUsedRaw)
+                .add(EthColumns.CUMULATIVEGASUSED, BigInteger.class, TransactionReceipt::getCumulativeGasUsed,
+                        TransactionReceipt::getCumulativeGasUsedRaw)
+                .add(EthColumns.CONTRACTADDRESS, String.class, TransactionReceipt::getContractAddress)
+                .add(EthColumns.STATUS, String.class, TransactionReceipt::getStatus, TransactionReceipt::getStatus)
+                .add(EthColumns.LOGSBLOOM, String.class, TransactionReceipt::getLogsBloom)
+                .add(EthColumns.LOGS, Object.class, TransactionReceipt::getLogs);
+
+        /* Transaction columns first, then the block's own columns with hash and nonce renamed */
+        TableColumns<BlockTransaction> blockTransaction = new TableColumns<>(EthTables.BLOCKTRANSACTION,
+                BlockTransaction.class);
+        for (Column column : transaction.getColumns()) {
+            blockTransaction.add(column, BlockTransaction::getTransaction);
+        }
+        for (String name : Arrays.asList(EthColumns.PARENTHASH, EthColumns.BLOCKNONCE, EthColumns.SHA3UNCLES,
+                EthColumns.LOGSBLOOM, EthColumns.TRANSACTIONSROOT, EthColumns.STATEROOT, EthColumns.RECEIPTSROOT,
+                EthColumns.AUTHOR, EthColumns.MINER, EthColumns.MIXHASH, EthColumns.TOTALDIFFICULTY,
+                EthColumns.EXTRADATA, EthColumns.SIZE, EthColumns.GASLIMIT, EthColumns.GASUSED, EthColumns.TIMESTAMP,
+                EthColumns.UNCLES, EthColumns.SEALFIELDS)) {
+            Column column = block.getColumn(EthColumns.BLOCKNONCE.equals(name) ? EthColumns.NONCE : name);
+            blockTransaction.add(column.rename(name), BlockTransaction::getBlock);
+        }
+
+        for (TableColumns<?> table : Arrays.asList(block, transaction, log, receipt, blockTransaction)) {
+            TABLES.put(table.getName(), table);
+        }
+    }
+
+    private ColumnRegistry() {
+    }
+
+    public static TableColumns<?> getTable(String table) {
+        return TABLES.get(table);
+    }
+
+    /**
+     * Columns of the table whose rows are of the given class.
+     */
+    public static TableColumns<?> forRowType(Class<?> rowType) {
+        TableColumns<?> table = findRowType(rowType);
+        if (table == null) {
+            throw new BlkchnException("Cannot create row from unknown object type");
+        }
+        return table;
+    }
+
+    /**
+     * Like forRowType but returns null for classes that aren't rows of any table.
+     */
+    public static TableColumns<?> findRowType(Class<?> rowType) {
+        for (TableColumns<?> table : TABLES.values()) {
+            if (table.rowType.isAssignableFrom(rowType)) {
+                return table;
+            }
+        }
+        return null;
+    }
+
+    public static TableColumns<?> forRow(Object row) {
+        return forRowType(row.getClass());
+    }
+
+    /* Map Class to SQL Types */
+    public static int getSQLType(Class<?> className) {
+        if (className.equals(String.class)) {
+            return Types.VARCHAR;
+        } else if (className.equals(int.class)) {
+            return Types.INTEGER;
+        } else if (className.equals(BigInteger.class) || className.equals(Long.class)) {
+            return Types.BIGINT;
+        } else if (className.equals(Float.class)) {
+            return Types.FLOAT;
+        } else if (className.equals(Double.class)) {
+            return Types.DOUBLE;
+        }
+        // else take object type
+        return Types.JAVA_OBJECT;
+    }
+
+    private static String topic(Log log, int position) {
+        List<String> topics = log.getTopics();
+        return topics != null && position < topics.size() ? topics.get(position) : null;
+    }
+
+    public static final class TableColumns<R> {
+
+        private final String name;
+
+        private final Class<R> rowType;
+
+        private final List<Column> columns = new ArrayList<>();
+
+        private final Map<String, Column> byName = new HashMap<>();
+
+        private final List<String> names = new ArrayList<>();
+
+        TableColumns(String name, Class<R> rowType) {
+            this.name = name;
+            this.rowType = rowType;
+        }
+
+        TableColumns<R> add(String column, Class<?> javaType, Function<R, Object> getter) {
+            return add(column, javaType, getter, null);
+        }
+
+        TableColumns<R> add(String column, Class<?> javaType, Function<R, Object> getter,
+                Function<R, String> rawGetter) {
+            return add(new Column(column, columns.size(), javaType, row -> getter.apply(rowType.cast(row)),
+                    rawGetter == null ? null : row -> rawGetter.apply(rowType.cast(row))));
+        }
+
+        /* Adds a column of a nested row, reached through the given function */
+        TableColumns<R> add(Column nested, Function<R, Object> parent) {
+            Function<Object, String> raw = nested.rawGetter == null ? null
+                    : row -> nested.rawGetter.apply(parent.apply(rowType.cast(row)));
+            return add(new Column(nested.name, columns.size(), nested.javaType,
+                    row -> nested.getter.apply(parent.apply(rowType.cast(row))), raw));
+        }
+
+        private TableColumns<R> add(Column column) {
+            columns.add(column);
+            byName.put(column.name, column);
+            names.add(column.name);
+            return this;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<Column> getColumns() {
+            return Collections.unmodifiableList(columns);
+        }
+
+        /**
+         * Column names in row order.
+         */
+        public List<String> getColumnNames() {
+            return Collections.unmodifiableList(names);
+        }
+
+        /**
+         * The column of the given name, null when the table has none.
+         */
+        public Column getColumn(String column) {
+            return byName.get(column);
+        }
+
+        public boolean hasColumn(String column) {
+            return byName.containsKey(column);
+        }
+
+        public List<Object> toRow(Object row) {
+            Object[] values = new Object[columns.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = columns.get(i).getter.apply(row);
+            }
+            return Arrays.asList(values);
+        }
+    }
+
+    public static final class Column {
+
+        private final String name;
+
+        private final int index;
+
+        private final Class<?> javaType;
+
+        private final int sqlType;
+
+        private final Function<Object, Object> getter;
+
+        private final Function<Object, String> rawGetter;
+
+        Column(String name, int index, Class<?> javaType, Function<Object, Object> getter,
+                Function<Object, String> rawGetter) {
+            this.name = name;
+            this.index = index;
+            this.javaType = javaType;
+            this.sqlType = getSQLType(javaType);
+            this.getter = getter;
+            this.rawGetter = rawGetter;
+        }
+
+        Column rename(String newName) {
+            return new Column(newName, index, javaType, getter, rawGetter);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Position of the column in the rows of its table.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public Class<?> getJavaType() {
+            return javaType;
+        }
+
+        public int getSqlType() {
+            return sqlType;
+        }
+
+        public Object get(Object row) {
+            return getter.apply(row);
+        }
+
+        /**
+         * Getter of the raw hex value of a quantity column, null for other columns.
+         */
+        public Function<Object, String> getRawGetter() {
+            return rawGetter;
+        }
+
+        public boolean isQuantity() {
+            return rawGetter != null;
+        }
+    }
+}
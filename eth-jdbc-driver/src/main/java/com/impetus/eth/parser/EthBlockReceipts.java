@@ -0,0 +1,32 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import java.util.List;
+
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+/**
+ * Response of eth_getBlockReceipts, the receipts of every transaction of a block in one call. Not every node serves
+ * it, web3j has no request method for it either.
+ */
+public class EthBlockReceipts extends Response<List<TransactionReceipt>> {
+
+    public List<TransactionReceipt> getReceipts() {
+        return getResult();
+    }
+}
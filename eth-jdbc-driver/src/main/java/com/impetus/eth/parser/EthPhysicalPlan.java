@@ -41,7 +41,8 @@ public class EthPhysicalPlan extends PhysicalPlan {
 
     private static Map<String, List<String>> queryColMap = new HashMap<>();
 
-    private static List<String> ethTables = Arrays.asList(EthTables.BLOCK, EthTables.TRANSACTION);
+    private static List<String> ethTables = Arrays.asList(EthTables.BLOCK, EthTables.TRANSACTION, EthTables.LOG,
+            EthTables.RECEIPT, EthTables.BLOCKTRANSACTION);
 
     private static Map<String, List<String>> ethTableColumnMap = new HashMap<>();
 
@@ -52,73 +53,32 @@ public class EthPhysicalPlan extends PhysicalPlan {
     static {
         rangeColMap.put(EthTables.BLOCK, Arrays.asList(EthColumns.BLOCKNUMBER));
         rangeColMap.put(EthTables.TRANSACTION, Arrays.asList(EthColumns.BLOCKNUMBER));
+        rangeColMap.put(EthTables.LOG, Arrays.asList(EthColumns.BLOCKNUMBER));
+        rangeColMap.put(EthTables.RECEIPT, Arrays.asList(EthColumns.BLOCKNUMBER));
+        rangeColMap.put(EthTables.BLOCKTRANSACTION, Arrays.asList(EthColumns.BLOCKNUMBER));
 
         queryColMap.put(EthTables.BLOCK, Arrays.asList(EthColumns.HASH));
         queryColMap.put(EthTables.TRANSACTION, Arrays.asList(EthColumns.HASH, EthColumns.BLOCKHASH));
+        queryColMap.put(EthTables.LOG, Arrays.asList(EthColumns.TXHASH));
+        queryColMap.put(EthTables.RECEIPT, Arrays.asList(EthColumns.TXHASH));
+        queryColMap.put(EthTables.BLOCKTRANSACTION, Arrays.asList(EthColumns.HASH, EthColumns.BLOCKHASH));
 
         rangeOpMap.put(new Tuple2<>(EthTables.BLOCK, EthColumns.BLOCKNUMBER), new BigIntegerRangeOperations());
         rangeOpMap.put(new Tuple2<>(EthTables.TRANSACTION, EthColumns.BLOCKNUMBER), new BigIntegerRangeOperations());
-
-        ethTableColumnMap.put(EthTables.BLOCK,
-            Arrays.asList(EthColumns.BLOCKNUMBER, EthColumns.HASH, EthColumns.PARENTHASH, EthColumns.NONCE,
-                EthColumns.SHA3UNCLES, EthColumns.LOGSBLOOM, EthColumns.TRANSACTIONSROOT, EthColumns.STATEROOT,
-                EthColumns.RECEIPTSROOT, EthColumns.AUTHOR, EthColumns.MINER, EthColumns.MIXHASH,
-                EthColumns.TOTALDIFFICULTY, EthColumns.EXTRADATA, EthColumns.SIZE, EthColumns.GASLIMIT,
-                EthColumns.GASUSED, EthColumns.TIMESTAMP, EthColumns.TRANSACTIONS, EthColumns.UNCLES,
-                EthColumns.SEALFIELDS));
-
-        ethTableColumnMap.put(EthTables.TRANSACTION,
-            Arrays.asList(EthColumns.BLOCKHASH, EthColumns.BLOCKNUMBER, EthColumns.CREATES, EthColumns.FROM,
-                EthColumns.GAS, EthColumns.GASPRICE, EthColumns.HASH, EthColumns.INPUT, EthColumns.NONCE,
-                EthColumns.PUBLICKEY, EthColumns.R, EthColumns.RAW, EthColumns.S, EthColumns.TO,
-                EthColumns.TRANSACTIONINDEX, EthColumns.V, EthColumns.VALUE));
-
-        Map ethColumnTypeBlckMap = new LinkedHashMap<String, Class>();
-
-        Map ethColumnTypeTransactionMap = new LinkedHashMap<String, Class>();
-
-        ethColumnTypeBlckMap.put(EthColumns.BLOCKNUMBER, BigInteger.class);
-        ethColumnTypeBlckMap.put(EthColumns.EXTRADATA, String.class);
-        ethColumnTypeBlckMap.put(EthColumns.SIZE, BigInteger.class);
-        ethColumnTypeBlckMap.put(EthColumns.GASLIMIT, BigInteger.class);
-        ethColumnTypeBlckMap.put(EthColumns.GASUSED, BigInteger.class);
-        ethColumnTypeBlckMap.put(EthColumns.TIMESTAMP, BigInteger.class);
-        ethColumnTypeBlckMap.put(EthColumns.TRANSACTIONS, Object.class);
-        ethColumnTypeBlckMap.put(EthColumns.SEALFIELDS, Object.class);
-        ethColumnTypeBlckMap.put(EthColumns.UNCLES, Object.class);
-        ethColumnTypeBlckMap.put(EthColumns.TOTALDIFFICULTY, BigInteger.class);
-        ethColumnTypeBlckMap.put(EthColumns.MIXHASH, String.class);
-        ethColumnTypeBlckMap.put(EthColumns.MINER, String.class);
-        ethColumnTypeBlckMap.put(EthColumns.AUTHOR, String.class);
-        ethColumnTypeBlckMap.put(EthColumns.RECEIPTSROOT, String.class);
-        ethColumnTypeBlckMap.put(EthColumns.STATEROOT, String.class);
-        ethColumnTypeBlckMap.put(EthColumns.TRANSACTIONSROOT, String.class);
-        ethColumnTypeBlckMap.put(EthColumns.LOGSBLOOM, String.class);
-        ethColumnTypeBlckMap.put(EthColumns.SHA3UNCLES, String.class);
-        ethColumnTypeBlckMap.put(EthColumns.NONCE, BigInteger.class);
-        ethColumnTypeBlckMap.put(EthColumns.PARENTHASH, String.class);
-        ethColumnTypeBlckMap.put(EthColumns.HASH, String.class);
-
-        ethColumnTypeTransactionMap.put(EthColumns.BLOCKHASH, String.class);
-        ethColumnTypeTransactionMap.put(EthColumns.BLOCKNUMBER, BigInteger.class);
-        ethColumnTypeTransactionMap.put(EthColumns.CREATES, String.class);
-        ethColumnTypeTransactionMap.put(EthColumns.FROM, String.class);
-        ethColumnTypeTransactionMap.put(EthColumns.GAS, String.class);
-        ethColumnTypeTransactionMap.put(EthColumns.GASPRICE, BigInteger.class);
-        ethColumnTypeTransactionMap.put(EthColumns.HASH, String.class);
-        ethColumnTypeTransactionMap.put(EthColumns.INPUT, String.class);
-        ethColumnTypeTransactionMap.put(EthColumns.NONCE, BigInteger.class);
-        ethColumnTypeTransactionMap.put(EthColumns.PUBLICKEY, String.class);
-        ethColumnTypeTransactionMap.put(EthColumns.R, String.class);
-        ethColumnTypeTransactionMap.put(EthColumns.RAW, String.class);
-        ethColumnTypeTransactionMap.put(EthColumns.S, String.class);
-        ethColumnTypeTransactionMap.put(EthColumns.TO, String.class);
-        ethColumnTypeTransactionMap.put(EthColumns.TRANSACTIONINDEX, BigInteger.class);
-        ethColumnTypeTransactionMap.put(EthColumns.V, String.class);
-        ethColumnTypeTransactionMap.put(EthColumns.VALUE, BigInteger.class);
-
-        ethTableTypeMap.put(EthTables.BLOCK, ethColumnTypeBlckMap);
-        ethTableTypeMap.put(EthTables.TRANSACTION, ethColumnTypeTransactionMap);
+        rangeOpMap.put(new Tuple2<>(EthTables.LOG, EthColumns.BLOCKNUMBER), new BigIntegerRangeOperations());
+        rangeOpMap.put(new Tuple2<>(EthTables.RECEIPT, EthColumns.BLOCKNUMBER), new BigIntegerRangeOperations());
+        rangeOpMap.put(new Tuple2<>(EthTables.BLOCKTRANSACTION, EthColumns.BLOCKNUMBER),
+            new BigIntegerRangeOperations());
+
+        for (String table : ethTables) {
+            ColumnRegistry.TableColumns<?> columns = ColumnRegistry.getTable(table);
+            ethTableColumnMap.put(table, columns.getColumnNames());
+            Map<String, Class> ethColumnTypeMap = new LinkedHashMap<>();
+            for (ColumnRegistry.Column column : columns.getColumns()) {
+                ethColumnTypeMap.put(column.getName(), column.getJavaType());
+            }
+            ethTableTypeMap.put(table, ethColumnTypeMap);
+        }
     }
 
     public EthPhysicalPlan(LogicalPlan logicalPlan) {
@@ -195,6 +155,31 @@ public class EthPhysicalPlan extends PhysicalPlan {
                     case "count":
                         mapType.put(functionString, getSQLType(int.class));
                         returnCols.add(functionString);
+                        break;
+                    case "min":
+                    case "max":
+                        FunctionNode function = (FunctionNode) col.getChildType(FunctionNode.class, 0);
+                        Class argType = Object.class;
+                        if (function.hasChildType(Column.class)) {
+                            String argName = ((IdentifierNode) ((Column) function.getChildType(Column.class, 0))
+                                    .getChildType(IdentifierNode.class, 0)).getValue();
+                            if (lclcolumnTypeMap.containsKey(argName))
+                                argType = lclcolumnTypeMap.get(argName);
+                        }
+                        mapType.put(functionString, getSQLType(argType));
+                        returnCols.add(functionString);
+                        break;
+                    case Accumulators.APPROX_COUNT_DISTINCT:
+                        mapType.put(functionString, getSQLType(Long.class));
+                        returnCols.add(functionString);
+                        break;
+                    case Accumulators.APPROX_PERCENTILE:
+                        mapType.put(functionString, getSQLType(Double.class));
+                        returnCols.add(functionString);
+                        break;
+                    case Accumulators.APPROX_TOP_K:
+                        mapType.put(functionString, getSQLType(Object.class));
+                        returnCols.add(functionString);
                 }
             }
         }
@@ -203,19 +188,7 @@ public class EthPhysicalPlan extends PhysicalPlan {
 
     /* Map Class to SQL Types */
     public int getSQLType(Class className) {
-        if (className.equals(String.class)) {
-            return Types.VARCHAR;
-        } else if (className.equals(int.class)) {
-            return Types.INTEGER;
-        } else if (className.equals(BigInteger.class) || className.equals(Long.class)) {
-            return Types.BIGINT;
-        } else if (className.equals(Float.class)) {
-            return Types.FLOAT;
-        } else if (className.equals(Double.class)) {
-            return Types.DOUBLE;
-        }
-        // else take object type
-        return Types.JAVA_OBJECT;
+        return ColumnRegistry.getSQLType(className);
     }
 
     public ArrayList<String> getColumns(String table){
@@ -0,0 +1,93 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.web3j.protocol.Web3j;
+
+import com.impetus.blkch.sql.generated.BlkchnSqlParser.SingleStatementContext;
+import com.impetus.blkch.sql.parser.LogicalPlan;
+import com.impetus.blkch.util.placeholder.PlaceholderHandler;
+
+/**
+ * Compiled form of a prepared statement. The parse tree is kept instead of a LogicalPlan because binding has to
+ * produce a plan the execution can own; re-visiting the tree is cheap next to lexing and parsing, and no state is
+ * shared between bound plans, so one template can be bound from several threads at once. Validation and the column
+ * type map don't depend on the bound values and are computed only for the first execution.
+ */
+public class EthPlanTemplate {
+
+    private final SingleStatementContext tree;
+
+    private final LogicalPlan prototype;
+
+    private volatile boolean validated;
+
+    private volatile Map<String, Integer> columnTypeMap;
+
+    private EthPlanTemplate(SingleStatementContext tree) {
+        this.tree = tree;
+        this.prototype = PlanCache.visit(tree);
+    }
+
+    public static EthPlanTemplate compile(String sql) {
+        return new EthPlanTemplate(PlanCache.parse(sql));
+    }
+
+    /**
+     * Unbound plan, only to be used for inspecting the statement. Executions go through {@link #bind(Object[])}.
+     */
+    public LogicalPlan getPrototype() {
+        return prototype;
+    }
+
+    public LogicalPlan bind(Object[] values) {
+        LogicalPlan logicalPlan = PlanCache.visit(tree);
+        if (values != null && values.length > 0) {
+            PlaceholderHandler handler = PlanCache.placeholderHandler(logicalPlan);
+            handler.setPlaceholderIndex();
+            handler.alterLogicalPlan(values);
+        }
+        return logicalPlan;
+    }
+
+    public EthQueryExecutor newExecutor(Object[] values, Web3j web3jClient, Properties properties) {
+        EthQueryExecutor executor = new EthQueryExecutor(bind(values), web3jClient, properties);
+        executor.setValidated(validated);
+        return executor;
+    }
+
+    /**
+     * Records a successful execution of one of the bound plans, later executions skip validation and reuse its type
+     * map.
+     */
+    public Map<String, Integer> executed(EthQueryExecutor executor) {
+        validated = true;
+        if (!executor.getErrorColumns().isEmpty()) {
+            return executor.computeDataTypeColumnMap();
+        }
+        Map<String, Integer> typeMap = columnTypeMap;
+        if (typeMap == null) {
+            typeMap = Collections.unmodifiableMap(new LinkedHashMap<>(executor.computeDataTypeColumnMap()));
+            columnTypeMap = typeMap;
+        }
+        return typeMap;
+    }
+}
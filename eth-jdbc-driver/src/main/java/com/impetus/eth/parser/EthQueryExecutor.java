@@ -15,13 +15,23 @@
 ******************************************************************************/
 package com.impetus.eth.parser;
 
+import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import com.impetus.blkch.sql.smartcontract.*;
 import java.util.*;
@@ -34,17 +44,25 @@ import org.web3j.crypto.CipherException;
 import org.web3j.crypto.Credentials;
 import org.web3j.crypto.WalletUtils;
 import org.web3j.protocol.Web3j;
+import org.web3j.protocol.Web3jService;
 import org.web3j.protocol.core.DefaultBlockParameter;
 import org.web3j.protocol.core.RemoteCall;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.methods.request.EthFilter;
 import org.web3j.protocol.core.methods.response.EthBlock;
 import org.web3j.protocol.core.methods.response.EthBlock.Block;
 import org.web3j.protocol.core.methods.response.EthBlock.TransactionResult;
 import org.web3j.protocol.core.methods.response.EthBlockNumber;
+import org.web3j.protocol.core.methods.response.EthGetTransactionReceipt;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.Log;
 import org.web3j.protocol.core.methods.response.Transaction;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
 import org.web3j.protocol.exceptions.TransactionException;
 import org.web3j.tx.Transfer;
 import org.web3j.tx.gas.DefaultGasProvider;
 import org.web3j.utils.Convert;
+import org.web3j.utils.Numeric;
 import com.impetus.blkch.BlkchnException;
 import com.impetus.blkch.sql.DataFrame;
 import com.impetus.blkch.sql.GroupedDataFrame;
@@ -72,6 +90,7 @@ import com.impetus.blkch.sql.query.LogicalOperation.Operator;
 import com.impetus.blkch.util.Range;
 import com.impetus.blkch.util.RangeOperations;
 import com.impetus.eth.jdbc.DriverConstants;
+import com.impetus.eth.jdbc.MeteredHttpService;
 import com.impetus.eth.query.EthColumns;
 import com.impetus.eth.query.EthTables;
 
@@ -83,6 +102,8 @@ public class EthQueryExecutor extends AbstractQueryExecutor {
 
     private static final String ASYNC = "async";
 
+    public static final String EXPLAIN_COLUMN = "plan";
+
     private BigInteger GAS = DefaultGasProvider.GAS_LIMIT;
 
     private BigInteger GAS_PRICE = DefaultGasProvider.GAS_PRICE;
@@ -97,7 +118,54 @@ public class EthQueryExecutor extends AbstractQueryExecutor {
 
     private Properties properties;
 
-    protected Map<String, List<String>> blkTxnHashMap = new HashMap<>();
+    /*
+     * Keys of the rows each block gave this query, per table and block number, so that a block is requested at most
+     * once however often the WHERE clause covers it. A read still running is shared with the threads asking for the
+     * same block. Guarded by itself.
+     */
+    private final Map<String, LongObjectMap<CompletableFuture<List<String>>>> blockRowKeys = new HashMap<>();
+
+    private BlockSampler sampler;
+
+    private List<String> errorColumns = Collections.emptyList();
+
+    private boolean validated;
+
+    private QueryProfile profile;
+
+    private QueryBudget budget;
+
+    private QueryContext context;
+
+    /* Newest block number this run got from the node, -1 before any */
+    private final AtomicLong latestBlockSeen = new AtomicLong(-1);
+
+    private ChainStatistics statistics;
+
+    private ForkJoinPool queryPool;
+
+    private AddressIndex addressIndex;
+
+    private static final List<String> LOG_FILTER_COLS = Arrays.asList(EthColumns.ADDRESS, EthColumns.TOPIC0,
+            EthColumns.TOPIC1, EthColumns.TOPIC2, EthColumns.TOPIC3);
+
+    private LogScanner logScanner;
+
+    private Web3jService web3jService;
+
+    private volatile boolean blockReceiptsSupported = true;
+
+    private static final int METHOD_NOT_FOUND = -32601;
+
+    /* Tables whose rows only hold serializable values and can be written out by the external sort */
+    private static final List<String> SPILLABLE_TABLES = Arrays.asList(EthTables.TRANSACTION, EthTables.LOG,
+            EthTables.BLOCKTRANSACTION);
+
+    /*
+     * Filters of the WHERE clause compiled on first use, keyed by their comparator node. Replaced on write so that scan
+     * threads read it without locking.
+     */
+    private volatile Map<Comparator, CompiledFilter> compiledFilters = new IdentityHashMap<>();
 
     public EthQueryExecutor(LogicalPlan logicalPlan, Web3j web3jClient, Properties properties) {
         this.logicalPlan = logicalPlan;
@@ -105,54 +173,140 @@ public class EthQueryExecutor extends AbstractQueryExecutor {
         this.properties = properties;
         this.originalPhysicalPlan = new EthPhysicalPlan(logicalPlan);
         this.physicalPlan = originalPhysicalPlan;
+        this.dataMap = new ConcurrentHashMap<>();
+        if (properties != null && properties.containsKey(DriverConstants.SAMPLE_PERCENT)) {
+            setSamplePercent(Double.parseDouble(properties.getProperty(DriverConstants.SAMPLE_PERCENT)));
+        }
+        this.logScanner = new LogScanner(properties == null ? LogScanner.DEFAULT_CHUNK_SIZE
+                : Integer.parseInt(properties.getProperty(DriverConstants.LOG_CHUNK_SIZE,
+                        String.valueOf(LogScanner.DEFAULT_CHUNK_SIZE))));
+    }
+
+    /**
+     * Makes range scans read only the given percent of blocks. Counts and sums are scaled up and get an extra column
+     * with the half width of their 95% confidence interval.
+     */
+    public void setSamplePercent(double percent) {
+        Random random = properties != null && properties.containsKey(DriverConstants.SAMPLE_SEED)
+                ? new Random(Long.parseLong(properties.getProperty(DriverConstants.SAMPLE_SEED))) : new Random();
+        this.sampler = new BlockSampler(percent, random);
+    }
+
+    /**
+     * Whether range scans read a sample, from a TABLESAMPLE clause or the SAMPLE_PERCENT of the connection. Such
+     * results are estimates and must not be cached as exact ones.
+     */
+    public boolean isSampling() {
+        return sampler != null;
     }
 
     public DataFrame executeQuery() {
-        logicalPlan.getQuery().traverse();
-        if (!physicalPlan.validateLogicalPlan()) {
-            throw new BlkchnException("This query can't be executed");
-        }
-        DataFrame dataframe = getFromTable();
-        if (dataframe.isEmpty()) {
-            return dataframe;
+        return cancellable(() -> {
+            DataFrame result = runQuery();
+            if (budget != null) {
+                budget.checkExceeded();
+            }
+            return result;
+        });
+    }
+
+    /*
+     * Runs the query body registered with the context, if any. Whatever a cancelled run fails with is reported as the
+     * cancellation, and the rows it buffered are let go. A run cancelled while the body still returned fails as well,
+     * its rows may be missing whatever the interrupted fetches would have read.
+     */
+    private DataFrame cancellable(Supplier<DataFrame> body) {
+        if (context == null) {
+            return body.get();
         }
-        List<OrderItem> orderItems = null;
-        if (logicalPlan.getQuery().hasChildType(OrderByClause.class)) {
-            OrderByClause orderByClause = logicalPlan.getQuery().getChildType(OrderByClause.class, 0);
-            orderItems = orderByClause.getChildType(OrderItem.class);
+        context.enter();
+        try {
+            DataFrame result = body.get();
+            context.check();
+            return result;
+        } catch (RuntimeException e) {
+            if (!context.isCancelled()) {
+                throw e;
+            }
+            dataMap.clear();
+            synchronized (blockRowKeys) {
+                blockRowKeys.clear();
+            }
+            throw context.cancelled(e);
+        } finally {
+            context.exit();
         }
-        LimitClause limitClause = null;
-        if (logicalPlan.getQuery().hasChildType(LimitClause.class)) {
-            limitClause = logicalPlan.getQuery().getChildType(LimitClause.class, 0);
+    }
+
+    private DataFrame runQuery() {
+        if (!validated) {
+            logicalPlan.getQuery().traverse();
+            if (!physicalPlan.validateLogicalPlan()) {
+                throw new BlkchnException("This query can't be executed");
+            }
         }
-        if (logicalPlan.getQuery().hasChildType(GroupByClause.class)) {
-            GroupByClause groupByClause = logicalPlan.getQuery().getChildType(GroupByClause.class, 0);
-            List<Column> groupColumns = groupByClause.getChildType(Column.class);
-            List<String> groupByCols = groupColumns.stream()
-                    .map(col -> col.getChildType(IdentifierNode.class, 0).getValue()).collect(Collectors.toList());
-            GroupedDataFrame groupedDF = dataframe.group(groupByCols);
+        checkBlockEstimate();
+        List<OrderItem> orderItems = getOrderItems();
+        LimitClause limitClause = getLimitClause();
+        List<String> groupByCols = getGroupByCols();
+        boolean hasAggregate = hasAggregate(false);
+        HashAggregator aggregator = compileAggregator(groupByCols);
+        if (aggregator != null) {
+            String tableName = getTableName();
             DataFrame afterSelect;
-            if (logicalPlan.getQuery().hasChildType(HavingClause.class)) {
-                afterSelect = groupedDF.having(logicalPlan.getQuery().getChildType(HavingClause.class, 0))
-                        .select(physicalPlan.getSelectItems());
-            } else {
-                afterSelect = groupedDF.select(physicalPlan.getSelectItems());
+            try {
+                afterSelect = profiled(isPlainRangeQuery() ? "streaming aggregate" : "hash aggregate", -1,
+                        () -> aggregate(tableName, aggregator));
+            } catch (RuntimeException e) {
+                aggregator.discard();
+                throw e;
+            }
+            if (afterSelect.isEmpty()) {
+                return afterSelect;
             }
+            DataFrame afterOrder = orderItems == null ? afterSelect
+                    : profiled("order by", afterSelect, () -> afterSelect.order(orderItems));
+            return limitClause == null ? afterOrder
+                    : profiled("limit", afterOrder, () -> afterOrder.limit(limitClause));
+        }
+        if (sampler != null && (groupByCols != null || hasAggregate)) {
+            throw new BlkchnException(
+                    "Sampling only supports count, sum, min, max and approx aggregates without HAVING");
+        }
+        java.util.Comparator<List<Object>> externalOrder = groupByCols == null && !hasAggregate
+                ? getExternalOrder(orderItems) : null;
+        if (externalOrder != null) {
+            return sortExternally(externalOrder, limitClause);
+        }
+        DataFrame dataframe = profiled(getScanName(), -1, this::getFromTable);
+        if (dataframe.isEmpty()) {
+            return dataframe;
+        }
+        if (groupByCols != null) {
+            DataFrame afterSelect = profiled("group by", dataframe, () -> {
+                GroupedDataFrame groupedDF = dataframe.group(groupByCols);
+                if (logicalPlan.getQuery().hasChildType(HavingClause.class)) {
+                    return groupedDF.having(logicalPlan.getQuery().getChildType(HavingClause.class, 0))
+                            .select(physicalPlan.getSelectItems());
+                } else {
+                    return groupedDF.select(physicalPlan.getSelectItems());
+                }
+            });
             DataFrame afterOrder;
             if (orderItems != null) {
-                afterOrder = afterSelect.order(orderItems);
+                afterOrder = profiled("order by", afterSelect, () -> afterSelect.order(orderItems));
             } else {
                 afterOrder = afterSelect;
             }
             if (limitClause == null) {
                 return afterOrder;
             } else {
-                return afterOrder.limit(limitClause);
+                return profiled("limit", afterOrder, () -> afterOrder.limit(limitClause));
             }
         }
         DataFrame preSelect;
         if (orderItems != null) {
-            preSelect = dataframe.order(orderItems);
+            preSelect = profiled("order by", dataframe, () -> dataframe.order(orderItems));
         } else {
             preSelect = dataframe;
         }
@@ -160,28 +314,751 @@ public class EthQueryExecutor extends AbstractQueryExecutor {
         if (limitClause == null) {
             afterOrder = preSelect;
         } else {
-            afterOrder = preSelect.limit(limitClause);
+            afterOrder = profiled("limit", preSelect, () -> preSelect.limit(limitClause));
+        }
+        return profiled("project", afterOrder, () -> afterOrder.select(physicalPlan.getSelectItems()));
+    }
+
+    /**
+     * Describes how the query would run: the filter tree after direct APIs are resolved and optimized, followed by the
+     * fetch strategy and the operators applied on top. Resolving direct APIs already talks to the node, so this is not
+     * free, but no range is scanned.
+     */
+    public DataFrame explain() {
+        logicalPlan.getQuery().traverse();
+        if (!physicalPlan.validateLogicalPlan()) {
+            throw new BlkchnException("This query can't be executed");
+        }
+        String tableName = getTableName();
+        TreeNode whereClause = physicalPlan.getWhereClause();
+        if (whereClause == null) {
+            throw new BlkchnException("Can't query without where clause. Data will be huge");
+        }
+        BigInteger height = null;
+        try {
+            height = getBlockHeight();
+        } catch (IOException e) {
+            LOGGER.warn("Could not get block height, ranges are shown open ended");
+        }
+        PlanPrinter printer = new PlanPrinter(physicalPlan, height, statistics);
+        List<String> lines = new ArrayList<>();
+        lines.add("Table " + tableName);
+        if (whereClause.hasChildType(LogicalOperation.class)) {
+            TreeNode directAPIOptimizedTree = executeDirectAPIs(tableName,
+                    whereClause.getChildType(LogicalOperation.class, 0));
+            TreeNode optimizedTree = optimize(directAPIOptimizedTree);
+            lines.add("Filter tree");
+            for (String line : printer.print(optimizedTree)) {
+                lines.add("  " + line);
+            }
+            lines.add("Fetch " + (optimizedTree instanceof RangeNode ? "range scan"
+                    : optimizedTree instanceof DataNode ? "direct API results" : "key lookup with residual filters"));
+        } else {
+            for (TreeNode child : whereClause.getChildNodes()) {
+                lines.addAll(printer.print(child));
+            }
+            lines.add("Fetch " + getScanName());
+        }
+        if (sampler != null) {
+            lines.add(String.format("Sample %s percent of blocks", sampler.getPercent()));
+        }
+        String indexedAddress = getIndexedAddress();
+        if (indexedAddress != null && sampler == null && EthTables.TRANSACTION.equals(tableName)) {
+            lines.add(String.format("Address index lookup for %s in blocks %d-%d", indexedAddress,
+                    addressIndex.getStartBlock(), addressIndex.getIndexedUpTo() - 1));
+        }
+        if (EthTables.LOG.equals(tableName)) {
+            lines.add(String.format("eth_getLogs in chunks of %d blocks with filter %s", logScanner.getChunkSize(),
+                    describeLogFilter(getLogFilterGroups())));
+        }
+        List<String> groupByCols = getGroupByCols();
+        if (compileAggregator(groupByCols) != null) {
+            int maxGroups = getIntProperty(DriverConstants.AGGREGATE_SPILL_GROUPS, HashAggregator.DEFAULT_MAX_GROUPS);
+            lines.add((isPlainRangeQuery() ? "Streaming hash aggregate" : "Hash aggregate")
+                    + (groupByCols == null ? "" : " by " + groupByCols + ", spilling past " + maxGroups + " groups"));
+        } else if (groupByCols != null) {
+            lines.add("Group by " + groupByCols
+                    + (logicalPlan.getQuery().hasChildType(HavingClause.class) ? " with having" : ""));
+        }
+        if (groupByCols == null && !hasAggregate(false) && getExternalOrder(getOrderItems()) != null) {
+            lines.add(String.format("Order by, external merge sort spilling runs of %d rows",
+                    getIntProperty(DriverConstants.SORT_SPILL_ROWS, ExternalSorter.DEFAULT_MAX_ROWS)));
+        } else if (getOrderItems() != null) {
+            lines.add("Order by, sorted in memory");
+        }
+        if (getPrefixLimit() != null) {
+            lines.add("Limit, range read in chunks until enough rows are found");
+        } else if (getLimitClause() != null) {
+            lines.add("Limit");
+        }
+        List<List<Object>> rows = lines.stream().map(line -> Arrays.<Object> asList(line))
+                .collect(Collectors.toList());
+        return new DataFrame(rows, new String[] { EXPLAIN_COLUMN }, new HashMap<>());
+    }
+
+    /**
+     * Runs a sliding window query keeping one partial aggregate per block in the window state, so a re-run only reads
+     * the blocks that entered the window and drops those that left it. A tail whose hashes changed since it was read
+     * is dropped and read again. Queries that aren't a streaming aggregate over one block range of the block,
+     * transaction or blocktransaction table run in full.
+     */
+    public DataFrame executeIncremental(WindowState window) {
+        return cancellable(() -> runIncremental(window));
+    }
+
+    @SuppressWarnings("unchecked")
+    private DataFrame runIncremental(WindowState window) {
+        if (!validated) {
+            logicalPlan.getQuery().traverse();
+            if (!physicalPlan.validateLogicalPlan()) {
+                throw new BlkchnException("This query can't be executed");
+            }
+        }
+        String tableName = getTableName();
+        List<String> groupByCols = getGroupByCols();
+        HashAggregator aggregator = compileAggregator(groupByCols);
+        List<Range<BigInteger>> ranges = aggregator == null || !isPlainRangeQuery() || sampler != null
+                || !(EthTables.BLOCK.equals(tableName) || EthTables.TRANSACTION.equals(tableName)
+                        || EthTables.BLOCKTRANSACTION.equals(tableName)) ? null
+                                : resolveRanges(physicalPlan.getWhereClause().getChildType(RangeNode.class, 0));
+        if (ranges == null || ranges.size() != 1) {
+            window.clear();
+            return executeQuery();
+        }
+        long from = ranges.get(0).getMin().longValue();
+        long to = ranges.get(0).getMax().longValue();
+        window.retain(from, to);
+        int dropped = window.rollback(this::getBlockHash, (int) TimestampIndex.UNCONFIRMED_BLOCKS);
+        if (dropped > 0) {
+            LOGGER.info("Reading " + dropped + " reorganised blocks of the window again");
+        }
+        List<Long> missing = window.missing(from, to);
+        if (budget != null) {
+            budget.checkEstimate(missing.size());
+        }
+        List<Object[]> partials = parallelMap(missing, number -> {
+            countBlocks(1);
+            Block block;
+            try {
+                block = getBlockByNumber(String.valueOf(number));
+            } catch (Exception e) {
+                throw new BlkchnException("Error query block by number " + number, e);
+            }
+            HashAggregator partial = compileAggregator(groupByCols);
+            for (Object row : getWindowRows(tableName, block)) {
+                if (profile != null) {
+                    profile.rowIn();
+                }
+                partial.add(toRow(row));
+            }
+            return new Object[] { block.getHash(), partial };
+        });
+        for (int i = 0; i < missing.size(); i++) {
+            window.put(missing.get(i), (String) partials.get(i)[0], (HashAggregator) partials.get(i)[1]);
+        }
+        for (HashAggregator partial : window.getPartials()) {
+            aggregator.merge(partial);
+        }
+        if (budget != null) {
+            budget.checkExceeded();
+        }
+        DataFrame afterSelect = aggregator.toDataFrame();
+        if (afterSelect.isEmpty()) {
+            return afterSelect;
+        }
+        List<OrderItem> orderItems = getOrderItems();
+        LimitClause limitClause = getLimitClause();
+        DataFrame afterOrder = orderItems == null ? afterSelect
+                : profiled("order by", afterSelect, () -> afterSelect.order(orderItems));
+        return limitClause == null ? afterOrder : profiled("limit", afterOrder, () -> afterOrder.limit(limitClause));
+    }
+
+    private List<Object> getWindowRows(String tableName, Block block) {
+        if (EthTables.BLOCK.equals(tableName)) {
+            return Arrays.asList(block);
+        }
+        List<Object> rows = new ArrayList<>();
+        for (TransactionResult<?> txnResult : block.getTransactions()) {
+            Transaction transaction = (Transaction) txnResult.get();
+            rows.add(EthTables.BLOCKTRANSACTION.equals(tableName) ? new BlockTransaction(block, transaction)
+                    : transaction);
+        }
+        return rows;
+    }
+
+    private String getBlockHash(long blockNumber) {
+        Block header = getHeader(blockNumber);
+        return header == null ? null : header.getHash();
+    }
+
+    /**
+     * Runs the query with the given profile collecting per operator costs, the result rows are dropped.
+     */
+    public DataFrame explainAnalyze(QueryProfile profile) {
+        this.profile = profile;
+        try {
+            executeQuery();
+        } finally {
+            this.profile = null;
+        }
+        return profile.toDataFrame();
+    }
+
+    public void setProfile(QueryProfile profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * Newest block number this run read from the node, -1 when it never asked for the head.
+     */
+    public long getLatestBlockSeen() {
+        return latestBlockSeen.get();
+    }
+
+    /**
+     * Cancellation and timeout of this run, checked before every rpc call and block read. Null when the run can't be
+     * cancelled.
+     */
+    public void setContext(QueryContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Limits on the blocks, rpc calls, buffered rows and time this run may use, null for none. Rows kept for the query
+     * are only sized when the budget limits them.
+     */
+    public void setBudget(QueryBudget budget) {
+        this.budget = budget;
+        if (budget != null && budget.limitsBufferedBytes()) {
+            this.dataMap = new BudgetedDataMap(dataMap);
+        }
+    }
+
+    /**
+     * Block density statistics used for estimates, also fed with every block this executor fetches.
+     */
+    public void setStatistics(ChainStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * Pool used to fetch the ranges of a range node and the branches of an OR concurrently, null to run them one after
+     * another.
+     */
+    public void setQueryPool(ForkJoinPool queryPool) {
+        this.queryPool = queryPool;
+    }
+
+    /**
+     * Index used to answer equality filters on from and to without scanning the blocks it covers.
+     */
+    public void setAddressIndex(AddressIndex addressIndex) {
+        this.addressIndex = addressIndex;
+    }
+
+    /**
+     * Transport used for eth_getBlockReceipts and batched receipt calls, receipts are fetched one call per
+     * transaction without it.
+     */
+    public void setWeb3jService(Web3jService web3jService) {
+        this.web3jService = web3jService;
+    }
+
+    /*
+     * Narrows the probable range of a LIMIT query without ORDER BY to the prefix that should hold enough rows.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public RangeNode<?> getProbableRange() {
+        RangeNode<?> probable = super.getProbableRange();
+        Long limit = getPrefixLimit();
+        if (probable == null || limit == null || statistics == null || probable.getRangeList().isEmpty()) {
+            return probable;
+        }
+        RangeNode<BigInteger> rangeNode = (RangeNode<BigInteger>) probable;
+        RangeNode<BigInteger> prefix = new RangeNode<>(rangeNode.getTable(), rangeNode.getColumn());
+        long needed = limit;
+        for (Range<BigInteger> range : resolveRanges(rangeNode)) {
+            long blocks = estimateBlocks(rangeNode.getTable(), needed, range.getMin().longValue());
+            BigInteger end = range.getMin().add(BigInteger.valueOf(blocks - 1));
+            if (end.compareTo(range.getMax()) >= 0) {
+                prefix.getRangeList().addRange(range);
+                needed -= estimateRows(rangeNode.getTable(), range);
+            } else {
+                prefix.getRangeList().addRange(new Range<>(range.getMin(), end));
+                needed = 0;
+            }
+            if (needed <= 0) {
+                break;
+            }
+        }
+        return prefix;
+    }
+
+    private DataFrame profiled(String operator, DataFrame input, Supplier<DataFrame> body) {
+        return profiled(operator, input.getData().size(), body);
+    }
+
+    private DataFrame profiled(String operator, long rowsIn, Supplier<DataFrame> body) {
+        if (profile == null) {
+            return body.get();
+        }
+        profile.begin(operator, rowsIn);
+        DataFrame result = body.get();
+        profile.end(result.getData().size());
+        return result;
+    }
+
+    private void countRpc() {
+        if (context != null) {
+            context.check();
+        }
+        if (profile != null) {
+            profile.rpc();
+        }
+        if (budget != null) {
+            budget.rpc();
+        }
+    }
+
+    private void countBlocks(long blocks) {
+        if (context != null) {
+            context.check();
+        }
+        if (budget != null) {
+            budget.blocks(blocks);
+        }
+    }
+
+    /*
+     * Rejects a plain range scan before any block is read when its ranges already cover more blocks than the budget
+     * allows. Other filters may not need the whole range, those are only held to the budget while they run.
+     */
+    @SuppressWarnings("unchecked")
+    private void checkBlockEstimate() {
+        if (budget == null || budget.getMaxBlocks() <= 0 || !isPlainRangeQuery()) {
+            return;
+        }
+        RangeNode<BigInteger> rangeNode = physicalPlan.getWhereClause().getChildType(RangeNode.class, 0);
+        long blocks = 0;
+        for (Range<BigInteger> range : resolveRanges(rangeNode)) {
+            blocks += range.getMax().subtract(range.getMin()).longValue() + 1;
+        }
+        if (sampler != null) {
+            blocks = (long) Math.ceil(blocks * sampler.getPercent() / 100);
+        }
+        budget.checkEstimate(blocks);
+    }
+
+    private void countCacheHit() {
+        if (profile != null) {
+            profile.cacheHit();
+        }
+    }
+
+    private String getScanName() {
+        TreeNode whereClause = physicalPlan.getWhereClause();
+        if (whereClause == null) {
+            return "scan";
+        } else if (whereClause.hasChildType(LogicalOperation.class)) {
+            return "filter tree";
+        } else if (whereClause.hasChildType(DirectAPINode.class)) {
+            return "direct API";
+        } else if (whereClause.hasChildType(GetRowsNode.class)) {
+            return "get rows";
+        }
+        return "range scan";
+    }
+
+    private List<OrderItem> getOrderItems() {
+        if (logicalPlan.getQuery().hasChildType(OrderByClause.class)) {
+            OrderByClause orderByClause = logicalPlan.getQuery().getChildType(OrderByClause.class, 0);
+            return orderByClause.getChildType(OrderItem.class);
+        }
+        return null;
+    }
+
+    private LimitClause getLimitClause() {
+        if (logicalPlan.getQuery().hasChildType(LimitClause.class)) {
+            return logicalPlan.getQuery().getChildType(LimitClause.class, 0);
+        }
+        return null;
+    }
+
+    /*
+     * The limit of a plain range query that has nothing needing all of its rows (ordering, grouping, aggregates or
+     * sampling), null for any other query.
+     */
+    private Long getPrefixLimit() {
+        LimitClause limitClause = getLimitClause();
+        if (limitClause == null || sampler != null || !isPlainRangeQuery()
+                || logicalPlan.getQuery().hasChildType(OrderByClause.class)
+                || logicalPlan.getQuery().hasChildType(GroupByClause.class)
+                || logicalPlan.getQuery().hasChildType(HavingClause.class) || hasAggregate(false)) {
+            return null;
+        }
+        return getLimitValue(limitClause);
+    }
+
+    private static Long getLimitValue(LimitClause limitClause) {
+        try {
+            return Long.parseLong(limitClause.getChildType(IdentifierNode.class, 0).getValue());
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private int getIntProperty(String key, int defaultValue) {
+        return properties == null ? defaultValue
+                : Integer.parseInt(properties.getProperty(key, String.valueOf(defaultValue)));
+    }
+
+    private File getSpillDirectory() {
+        String tmpDir = System.getProperty("java.io.tmpdir");
+        return new File(properties == null ? tmpDir : properties.getProperty(DriverConstants.SPILL_DIRECTORY, tmpDir));
+    }
+
+    /*
+     * Row order for sorting a plain range scan of a spillable table on disk, null when the query is sorted in memory
+     * instead.
+     */
+    private java.util.Comparator<List<Object>> getExternalOrder(List<OrderItem> orderItems) {
+        String tableName = getTableName();
+        if (orderItems == null || !isPlainRangeQuery() || !SPILLABLE_TABLES.contains(tableName)) {
+            return null;
+        }
+        return ExternalSorter.compileOrder(orderItems, ColumnRegistry.getTable(tableName).getColumnNames());
+    }
+
+    /*
+     * Streams the range into an external sort and only keeps the rows up to the limit, before projecting them.
+     */
+    private DataFrame sortExternally(java.util.Comparator<List<Object>> order, LimitClause limitClause) {
+        String tableName = getTableName();
+        Long limit = limitClause == null ? null : getLimitValue(limitClause);
+        int maxRows = getIntProperty(DriverConstants.SORT_SPILL_ROWS, ExternalSorter.DEFAULT_MAX_ROWS);
+        try (ExternalSorter sorter = new ExternalSorter(order, maxRows, getSpillDirectory())) {
+            DataFrame sorted = profiled("external sort", -1, () -> {
+                streamRangeNode(physicalPlan.getWhereClause().getChildType(RangeNode.class, 0), obj -> {
+                    if (profile != null) {
+                        profile.rowIn();
+                    }
+                    sorter.add(toRow(obj));
+                });
+                return new DataFrame(sorter.sorted(limit == null ? Long.MAX_VALUE : limit),
+                        ColumnRegistry.getTable(tableName).getColumnNames(), physicalPlan.getColumnAliasMapping());
+            });
+            if (sorted.isEmpty()) {
+                return sorted;
+            }
+            DataFrame afterLimit = limitClause == null || limit != null ? sorted
+                    : profiled("limit", sorted, () -> sorted.limit(limitClause));
+            return profiled("project", afterLimit, () -> afterLimit.select(physicalPlan.getSelectItems()));
+        }
+    }
+
+    /*
+     * A LIMIT without ORDER BY only needs the first rows of the range, so the range is read in chunks sized from the
+     * statistics until enough rows are found instead of being scanned whole and cut afterwards.
+     */
+    private DataNode<?> executeRangePrefix(RangeNode<BigInteger> rangeNode, long limit) {
+        List<Object> keys = new ArrayList<>();
+        for (Range<BigInteger> range : resolveRanges(rangeNode)) {
+            BigInteger current = range.getMin();
+            while (keys.size() < limit && current.compareTo(range.getMax()) <= 0) {
+                long blocks = estimateBlocks(rangeNode.getTable(), limit - keys.size(), current.longValue());
+                BigInteger end = current.add(BigInteger.valueOf(blocks - 1)).min(range.getMax());
+                RangeNode<BigInteger> chunk = new RangeNode<>(rangeNode.getTable(), rangeNode.getColumn());
+                chunk.getRangeList().addRange(new Range<>(current, end));
+                keys.addAll(executeRangeNode(chunk).getKeys());
+                current = end.add(BigInteger.ONE);
+            }
+        }
+        return new DataNode<>(rangeNode.getTable(), keys);
+    }
+
+    /**
+     * First and last block number the query reads for a continuous query, an open upper end is Long.MAX_VALUE. Null
+     * when the query has no block number range.
+     */
+    @SuppressWarnings("unchecked")
+    public long[] getBlockBounds() {
+        RangeNode<?> probable = super.getProbableRange();
+        if (probable == null || probable.getRangeList().isEmpty()) {
+            return null;
+        }
+        RangeNode<BigInteger> rangeNode = (RangeNode<BigInteger>) probable;
+        RangeOperations<BigInteger> rangeOps = (RangeOperations<BigInteger>) physicalPlan
+                .getRangeOperations(rangeNode.getTable(), rangeNode.getColumn());
+        List<Range<BigInteger>> ranges = rangeNode.getRangeList().getRanges();
+        BigInteger min = ranges.get(0).getMin();
+        BigInteger max = ranges.get(ranges.size() - 1).getMax();
+        return new long[] { min.equals(rangeOps.getMinValue()) ? 0 : min.longValue(),
+                max.equals(rangeOps.getMaxValue()) ? Long.MAX_VALUE : max.longValue() };
+    }
+
+    /*
+     * The ranges of the node with the open ends replaced by genesis and the last block, sorted and with overlapping or
+     * adjacent ranges coalesced so that no block is covered twice. Ranges left empty are dropped.
+     */
+    @SuppressWarnings("unchecked")
+    private List<Range<BigInteger>> resolveRanges(RangeNode<BigInteger> rangeNode) {
+        RangeOperations<BigInteger> rangeOps = (RangeOperations<BigInteger>) physicalPlan
+                .getRangeOperations(rangeNode.getTable(), rangeNode.getColumn());
+        BigInteger height = null;
+        List<Range<BigInteger>> ranges = new ArrayList<>();
+        for (Range<BigInteger> range : rangeNode.getRangeList().getRanges()) {
+            BigInteger min = range.getMin().equals(rangeOps.getMinValue()) ? BigInteger.ZERO : range.getMin();
+            BigInteger max = range.getMax();
+            if (max.equals(rangeOps.getMaxValue())) {
+                if (height == null) {
+                    try {
+                        height = getBlockHeight();
+                    } catch (IOException e) {
+                        throw new BlkchnException("Error getting height of ledger", e);
+                    }
+                }
+                max = height.subtract(BigInteger.ONE);
+            }
+            if (min.compareTo(max) <= 0) {
+                ranges.add(new Range<>(min, max));
+            }
+        }
+        ranges.sort((first, second) -> first.getMin().compareTo(second.getMin()));
+        List<Range<BigInteger>> coalesced = new ArrayList<>();
+        for (Range<BigInteger> range : ranges) {
+            int last = coalesced.size() - 1;
+            if (last >= 0 && range.getMin().compareTo(coalesced.get(last).getMax().add(BigInteger.ONE)) <= 0) {
+                if (range.getMax().compareTo(coalesced.get(last).getMax()) > 0) {
+                    coalesced.set(last, new Range<>(coalesced.get(last).getMin(), range.getMax()));
+                }
+            } else {
+                coalesced.add(range);
+            }
         }
-        return afterOrder.select(physicalPlan.getSelectItems());
+        return coalesced;
+    }
+
+    private long estimateBlocks(String table, long rows, long fromBlock) {
+        if (EthTables.LOG.equals(table)) {
+            return logScanner.getChunkSize();
+        }
+        if (statistics == null || !isPerTransaction(table)) {
+            return Math.max(rows, 1);
+        }
+        return statistics.blocksFor(rows, fromBlock);
+    }
+
+    private long estimateRows(String table, Range<BigInteger> range) {
+        long blocks = range.getMax().subtract(range.getMin()).longValue() + 1;
+        if (statistics == null || !isPerTransaction(table)) {
+            return blocks;
+        }
+        Double transactions = statistics.estimateTransactions(range.getMin().longValue(), range.getMax().longValue());
+        return transactions == null ? blocks : transactions.longValue();
+    }
+
+    /* Tables with one row per transaction, sized by the transaction statistics */
+    private static boolean isPerTransaction(String table) {
+        return EthTables.TRANSACTION.equals(table) || EthTables.RECEIPT.equals(table)
+                || EthTables.BLOCKTRANSACTION.equals(table);
+    }
+
+    private List<String> getGroupByCols() {
+        if (logicalPlan.getQuery().hasChildType(GroupByClause.class)) {
+            GroupByClause groupByClause = logicalPlan.getQuery().getChildType(GroupByClause.class, 0);
+            List<Column> groupColumns = groupByClause.getChildType(Column.class);
+            return groupColumns.stream().map(col -> col.getChildType(IdentifierNode.class, 0).getValue())
+                    .collect(Collectors.toList());
+        }
+        return null;
+    }
+
+    /*
+     * The streaming aggregator for this query, or null when it has to be grouped in memory instead.
+     */
+    private HashAggregator compileAggregator(List<String> groupByCols) {
+        boolean hasHaving = logicalPlan.getQuery().hasChildType(HavingClause.class);
+        if ((groupByCols == null && !hasAggregate(true) && (sampler == null || !hasAggregate(false))) || hasHaving) {
+            return null;
+        }
+        String tableName = getTableName();
+        List<String> rowColumns = ColumnRegistry.getTable(tableName).getColumnNames();
+        HashAggregator aggregator = HashAggregator.compile(physicalPlan.getSelectItems(),
+                groupByCols == null ? Collections.emptyList() : groupByCols, rowColumns,
+                physicalPlan.getColumnAliasMapping());
+        if (aggregator != null) {
+            aggregator.enableSpilling(
+                    getIntProperty(DriverConstants.AGGREGATE_SPILL_GROUPS, HashAggregator.DEFAULT_MAX_GROUPS),
+                    getSpillDirectory());
+        }
+        if (aggregator != null && sampler != null) {
+            aggregator.enableSampling(sampler, rowColumns.indexOf(EthColumns.BLOCKNUMBER));
+            errorColumns = aggregator.getErrorColumns();
+        }
+        return aggregator;
+    }
+
+    /**
+     * Skips traversal and validation of the plan, for plans bound from a template that already passed them.
+     */
+    public void setValidated(boolean validated) {
+        this.validated = validated;
+    }
+
+    public List<String> getErrorColumns() {
+        return errorColumns;
     }
 
     public Map<String, Integer> computeDataTypeColumnMap() {
         Table table = logicalPlan.getQuery().getChildType(FromItem.class, 0).getChildType(Table.class, 0);
         String tableName = table.getChildType(IdentifierNode.class, 0).getValue();
-        return physicalPlan.getColumnTypeMap(tableName);
+        Map<String, Integer> dataTypeColumnMap = physicalPlan.getColumnTypeMap(tableName);
+        for (String errorColumn : errorColumns) {
+            dataTypeColumnMap.put(errorColumn, java.sql.Types.DOUBLE);
+        }
+        return dataTypeColumnMap;
     }
 
-    private DataFrame getFromTable() {
+    /*
+     * Sketch aggregates and sampled estimates only exist in the streaming aggregator, so they route even ungrouped
+     * queries through it.
+     */
+    private boolean hasAggregate(boolean approximateOnly) {
+        for (SelectItem item : physicalPlan.getSelectItems()) {
+            if (item.hasChildType(FunctionNode.class)) {
+                String name = item.getChildType(FunctionNode.class, 0).getChildType(IdentifierNode.class, 0)
+                        .getValue();
+                if (!approximateOnly || Accumulators.isApproximate(name.toLowerCase())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private String getTableName() {
         Table table = logicalPlan.getQuery().getChildType(FromItem.class, 0).getChildType(Table.class, 0);
-        String tableName = table.getChildType(IdentifierNode.class, 0).getValue();
-        physicalPlan.getWhereClause().traverse();
+        return table.getChildType(IdentifierNode.class, 0).getValue();
+    }
+
+    private DataFrame getFromTable() {
+        String tableName = getTableName();
+        return createDataFrame(getFinalDataNode(tableName), tableName);
+    }
+
+    /*
+     * Feeds every row of the query into the aggregator. A plain block range is streamed straight from the node without
+     * being cached in dataMap, anything else is resolved through the usual key lookup first.
+     */
+    private DataFrame aggregate(String tableName, HashAggregator aggregator) {
+        if (isPlainRangeQuery()) {
+            streamRangeNode(physicalPlan.getWhereClause().getChildType(RangeNode.class, 0), obj -> {
+                if (profile != null) {
+                    profile.rowIn();
+                }
+                aggregator.add(toRow(obj));
+            });
+        } else {
+            for (Object key : getFinalDataNode(tableName).getKeys()) {
+                if (profile != null) {
+                    profile.rowIn();
+                }
+                aggregator.add(toRow(dataMap.get(key.toString())));
+            }
+        }
+        return aggregator.toDataFrame();
+    }
+
+    /*
+     * Runs the branches of an OR on the query pool when each of them can be evaluated on its own, merging their keys in
+     * branch order so the result doesn't depend on which branch finishes first. Anything else goes to execute.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private DataNode<?> evaluate(TreeNode node) {
+        if (queryPool == null || !(node instanceof LogicalOperation) || !((LogicalOperation) node).isOr()
+                || node.getChildNodes().size() < 2) {
+            return execute(node);
+        }
+        for (TreeNode child : node.getChildNodes()) {
+            if (!(child instanceof DataNode || child instanceof RangeNode || child instanceof LogicalOperation)) {
+                return execute(node);
+            }
+        }
+        List<DataNode<?>> branches = parallelMap(node.getChildNodes(), this::evaluate);
+        DataNode merged = branches.get(0);
+        for (int i = 1; i < branches.size(); i++) {
+            merged = mergeDataNodes(merged, (DataNode) branches.get(i), Operator.OR);
+        }
+        return merged;
+    }
+
+    /*
+     * Applies the task to every item on the query pool and returns the results in item order. Runs in the calling
+     * thread when there is no pool, a single item, or the caller already is a pool thread, so nested calls can't
+     * starve the pool. Pool threads register with the query context while they work, and on a failure or cancellation
+     * the tasks not yet started are dropped.
+     */
+    private <X, R> List<R> parallelMap(List<X> items, Function<X, R> task) {
+        Thread thread = Thread.currentThread();
+        if (queryPool == null || items.size() < 2 || (thread instanceof ForkJoinWorkerThread
+                && ((ForkJoinWorkerThread) thread).getPool() == queryPool)) {
+            return items.stream().map(task).collect(Collectors.toList());
+        }
+        QueryContext context = this.context;
+        List<CompletableFuture<R>> futures = items.stream()
+                .map(item -> CompletableFuture.supplyAsync(() -> {
+                    if (context == null) {
+                        return task.apply(item);
+                    }
+                    context.enter();
+                    try {
+                        return task.apply(item);
+                    } finally {
+                        context.exit();
+                    }
+                }, queryPool))
+                .collect(Collectors.toList());
+        List<R> results = new ArrayList<>(futures.size());
+        try {
+            for (CompletableFuture<R> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BlkchnException("Interrupted evaluating query", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new BlkchnException("Error evaluating query", e.getCause());
+        } finally {
+            if (results.size() < futures.size()) {
+                futures.forEach(future -> future.cancel(true));
+            }
+        }
+        return results;
+    }
+
+    private boolean isPlainRangeQuery() {
+        TreeNode whereClause = physicalPlan.getWhereClause();
+        return whereClause != null && whereClause.hasChildType(RangeNode.class)
+                && !whereClause.hasChildType(LogicalOperation.class) && !whereClause.hasChildType(DirectAPINode.class)
+                && !whereClause.hasChildType(GetRowsNode.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private DataNode<?> getFinalDataNode(String tableName) {
+        if (!validated) {
+            physicalPlan.getWhereClause().traverse();
+        }
         if (physicalPlan.getWhereClause() != null) {
             DataNode<?> finalData;
             if (physicalPlan.getWhereClause().hasChildType(LogicalOperation.class)) {
                 TreeNode directAPIOptimizedTree = executeDirectAPIs(tableName,
                         physicalPlan.getWhereClause().getChildType(LogicalOperation.class, 0));
                 TreeNode optimizedTree = optimize(directAPIOptimizedTree);
-                finalData = execute(optimizedTree);
+                finalData = evaluate(optimizedTree);
             } else if (physicalPlan.getWhereClause().hasChildType(DirectAPINode.class)) {
                 DirectAPINode node = physicalPlan.getWhereClause().getChildType(DirectAPINode.class, 0);
                 finalData = getDataNode(node.getTable(), node.getColumn(), node.getValue());
@@ -189,10 +1066,12 @@ public class EthQueryExecutor extends AbstractQueryExecutor {
                 finalData = createRowsDataNode(tableName);
             } else {
                 RangeNode<?> rangeNode = physicalPlan.getWhereClause().getChildType(RangeNode.class, 0);
-                finalData = executeRangeNode(rangeNode);
+                Long prefixLimit = getPrefixLimit();
+                finalData = prefixLimit == null ? executeRangeNode(rangeNode)
+                        : executeRangePrefix((RangeNode<BigInteger>) rangeNode, prefixLimit);
                 finalData.traverse();
             }
-            return createDataFrame(finalData, tableName);
+            return finalData;
         } else {
             throw new BlkchnException("Can't query without where clause. Data will be huge");
         }
@@ -244,6 +1123,17 @@ public class EthQueryExecutor extends AbstractQueryExecutor {
                 }
                 return rangeNode;
             }
+        } else if ((tableName.equalsIgnoreCase(EthTables.LOG) || tableName.equalsIgnoreCase(EthTables.RECEIPT)
+                || tableName.equalsIgnoreCase(EthTables.BLOCKTRANSACTION)) && !dataNode.getKeys().isEmpty()) {
+            RangeNode rangeNode = new RangeNode(tableName, EthColumns.BLOCKNUMBER);
+            Object row = dataMap.get(dataNode.getKeys().get(0).toString());
+            if (row instanceof Log || row instanceof TransactionReceipt || row instanceof BlockTransaction) {
+                BigInteger directBlock = getRowBlockNumber(row);
+                rangeNode.getRangeList().addRange(new Range(directBlock, directBlock));
+            } else {
+                rangeNode.getRangeList().addRange(new Range(rangeOps.getMinValue(), rangeOps.getMinValue()));
+            }
+            return rangeNode;
         } else {
             RangeNode rangeNode = new RangeNode<>(tableName, EthColumns.BLOCKNUMBER);
             rangeNode.getRangeList().addRange(new Range(rangeOps.getMinValue(), rangeOps.getMinValue()));
@@ -255,6 +1145,7 @@ public class EthQueryExecutor extends AbstractQueryExecutor {
     @Override
     protected DataNode<?> getDataNode(String table, String column, String value) {
         if (dataMap.containsKey(value)) {
+            countCacheHit();
             return new DataNode<>(table, Arrays.asList(value));
         }
 
@@ -275,127 +1166,533 @@ public class EthQueryExecutor extends AbstractQueryExecutor {
                     return new DataNode<>(table, Arrays.asList());
                 }
             }
-            dataMap.put(block.getNumber().toString(), block);
-            return new DataNode<>(table, Arrays.asList(block.getNumber().toString()));
+            dataMap.put(block.getNumber().toString(), block);
+            return new DataNode<>(table, Arrays.asList(block.getNumber().toString()));
+
+        } else if (table.equals(EthTables.TRANSACTION)) {
+
+            if (column.equals(EthColumns.HASH)) {
+                Transaction transaction = null;
+                try {
+                    transaction = getTransactionByHash(value.replace("'", ""));
+                    dataMap.put(transaction.getHash(), transaction);
+
+                } catch (Exception e) {
+                    LOGGER.warn(e.getMessage());
+                    return new DataNode<>(table, Arrays.asList());
+                }
+                return new DataNode<>(table, Arrays.asList(transaction.getHash()));
+            } else if (column.equals(EthColumns.BLOCKNUMBER)) {
+                List keys;
+                try {
+                    keys = readTransactionKeys(Long.parseLong(value.replace("'", "")));
+                } catch (Exception e) {
+                    LOGGER.warn(e.getMessage());
+                    return new DataNode<>(table, Arrays.asList());
+                }
+                return new DataNode<>(table, keys);
+            } else if (column.equals(EthColumns.BLOCKHASH)) {
+                List keys = new ArrayList();
+                try {
+                    Block block = getBlockByHash(value.replace("'", ""));
+                    List<?> txnList = block.getTransactions().stream().map(transactionResult -> transactionResult.get())
+                            .collect(Collectors.toList());
+                    for (Transaction txnInfo : (List<Transaction>) txnList) {
+                        dataMap.put(txnInfo.getHash(), txnInfo);
+                        keys.add(txnInfo.getHash());
+                    }
+
+                } catch (Exception e) {
+                    LOGGER.warn(e.getMessage());
+                    return new DataNode<>(table, Arrays.asList());
+                }
+                return new DataNode<>(table, keys);
+            } else
+                throw new BlkchnException(
+                        String.format("There is no direct API for table %s and column %s combination", table, column));
+
+        } else if (table.equals(EthTables.BLOCKTRANSACTION)
+                && (column.equals(EthColumns.HASH) || column.equals(EthColumns.BLOCKHASH))) {
+            List keys = new ArrayList();
+            try {
+                Block block;
+                String hash = null;
+                if (column.equals(EthColumns.HASH)) {
+                    hash = value.replace("'", "");
+                    block = getBlockByHash(getTransactionByHash(hash).getBlockHash());
+                } else {
+                    block = getBlockByHash(value.replace("'", ""));
+                }
+                for (TransactionResult txnResult : block.getTransactions()) {
+                    Transaction transaction = (Transaction) txnResult.get();
+                    if (hash == null || hash.equalsIgnoreCase(transaction.getHash())) {
+                        dataMap.put(transaction.getHash(), new BlockTransaction(block, transaction));
+                        keys.add(transaction.getHash());
+                    }
+                }
+            } catch (Exception e) {
+                LOGGER.warn(e.getMessage());
+                return new DataNode<>(table, Arrays.asList());
+            }
+            return new DataNode<>(table, keys);
+        } else if (table.equals(EthTables.RECEIPT) && column.equals(EthColumns.TXHASH)) {
+            TransactionReceipt receipt;
+            try {
+                receipt = getTransactionReceipt(value.replace("'", ""));
+            } catch (Exception e) {
+                LOGGER.warn(e.getMessage());
+                return new DataNode<>(table, Arrays.asList());
+            }
+            if (receipt == null) {
+                return new DataNode<>(table, Arrays.asList());
+            }
+            dataMap.put(receipt.getTransactionHash(), receipt);
+            return new DataNode<>(table, Arrays.asList(receipt.getTransactionHash()));
+        } else if (table.equals(EthTables.LOG) && column.equals(EthColumns.TXHASH)) {
+            List keys = new ArrayList();
+            try {
+                TransactionReceipt receipt = getTransactionReceipt(value.replace("'", ""));
+                if (receipt != null) {
+                    for (Log log : receipt.getLogs()) {
+                        dataMap.put(getLogKey(log), log);
+                        keys.add(getLogKey(log));
+                    }
+                }
+            } catch (Exception e) {
+                LOGGER.warn(e.getMessage());
+                return new DataNode<>(table, Arrays.asList());
+            }
+            return new DataNode<>(table, keys);
+        } else
+            throw new BlkchnException(
+                    String.format("There is no direct API for table %s and column %s combination", table, column));
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    protected <T extends Number & Comparable<T>> DataNode<?> executeRangeNode(RangeNode<T> rangeNode) {
+        if (rangeNode.getRangeList().getRanges().isEmpty()) {
+            return new DataNode<T>(rangeNode.getTable(), new ArrayList<>());
+        }
+        if (EthTables.LOG.equals(rangeNode.getTable())) {
+            List<String> keys = new ArrayList<>();
+            scanLogs(rangeNode, log -> {
+                dataMap.put(getLogKey(log), log);
+                keys.add(getLogKey(log));
+            });
+            return new DataNode<String>(rangeNode.getTable(), keys);
+        }
+        RangeOperations<T> rangeOps = (RangeOperations<T>) physicalPlan.getRangeOperations(rangeNode.getTable(),
+                rangeNode.getColumn());
+        String rangeCol = rangeNode.getColumn();
+        String rangeTable = rangeNode.getTable();
+        List<Range<BigInteger>> ranges = resolveRanges((RangeNode<BigInteger>) (RangeNode<?>) rangeNode);
+        List<List<String>> rangeKeys = parallelMap(ranges, range -> {
+
+            List<String> keys = new ArrayList<>();
+            T current = (T) range.getMin();
+            T max = (T) range.getMax();
+            long step = 1;
+            if (sampler != null) {
+                sampler.recordRange((BigInteger) current, (BigInteger) max);
+                current = (T) sampler.first((BigInteger) current);
+                step = sampler.getStep();
+            }
+            String address = EthTables.TRANSACTION.equals(rangeTable) && EthColumns.BLOCKNUMBER.equals(rangeCol)
+                    && sampler == null ? getIndexedAddress() : null;
+            long coveredFrom = address == null ? 0 : Math.max(current.longValue(), addressIndex.getStartBlock());
+            long coveredTo = address == null ? -1 : Math.min(max.longValue(), addressIndex.getIndexedUpTo() - 1);
+            if (coveredFrom <= coveredTo) {
+                scanRange(rangeTable, rangeCol, rangeOps, current, (T) BigInteger.valueOf(coveredFrom - 1), step, keys);
+                keys.addAll(fetchPostings(addressIndex.lookup(address, coveredFrom, coveredTo)));
+                scanRange(rangeTable, rangeCol, rangeOps, (T) BigInteger.valueOf(coveredTo + 1), max, step, keys);
+            } else {
+                scanRange(rangeTable, rangeCol, rangeOps, current, max, step, keys);
+            }
+
+            return keys;
+        });
+        // the ranges are disjoint, so are their keys
+        List<String> keys = new ArrayList<>();
+        rangeKeys.forEach(keys::addAll);
+        return new DataNode<String>(rangeTable, keys);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Number & Comparable<T>> void scanRange(String rangeTable, String rangeCol,
+            RangeOperations<T> rangeOps, T current, T max, long step, List<String> keys) {
+        while (max.compareTo(current) >= 0) {
+            countBlocks(1);
+            if (EthTables.BLOCK.equals(rangeTable) && EthColumns.BLOCKNUMBER.equals(rangeCol)) {
+                try {
+                    if (dataMap.get(current.toString()) != null) {
+                        countCacheHit();
+                        keys.add(current.toString());
+                    } else {
+                        String blockNumber = current.toString();
+                        keys.addAll(readBlockKeys(rangeTable, current.longValue(), () -> {
+                            Block block = getBlockByNumber(blockNumber);
+                            dataMap.put(block.getNumber().toString(), block);
+                            return Arrays.asList(blockNumber);
+                        }));
+                    }
+                } catch (Exception e) {
+                    LOGGER.warn("block "+current+" not found");
+                }
+            } else if (EthTables.TRANSACTION.equals(rangeTable) && EthColumns.BLOCKNUMBER.equals(rangeCol)) {
+                try {
+                    keys.addAll(readTransactionKeys(current.longValue()));
+                } catch (Exception e) {
+                    throw new BlkchnException("Error query transaction by number " + current, e);
+                }
+
+            } else if (EthTables.BLOCKTRANSACTION.equals(rangeTable) && EthColumns.BLOCKNUMBER.equals(rangeCol)) {
+                String blockNumber = current.toString();
+                try {
+                    keys.addAll(readBlockKeys(rangeTable, current.longValue(), () -> {
+                        List<String> rowKeys = new ArrayList<>();
+                        for (BlockTransaction row : getBlockTransactions(blockNumber)) {
+                            dataMap.put(row.getTransaction().getHash(), row);
+                            rowKeys.add(row.getTransaction().getHash());
+                        }
+                        return rowKeys;
+                    }));
+                } catch (Exception e) {
+                    LOGGER.warn("block " + current + " not found");
+                }
+            } else if (EthTables.RECEIPT.equals(rangeTable) && EthColumns.BLOCKNUMBER.equals(rangeCol)) {
+                String blockNumber = current.toString();
+                try {
+                    keys.addAll(readBlockKeys(rangeTable, current.longValue(), () -> {
+                        List<String> rowKeys = new ArrayList<>();
+                        for (TransactionReceipt receipt : getBlockReceipts(blockNumber)) {
+                            dataMap.put(receipt.getTransactionHash(), receipt);
+                            rowKeys.add(receipt.getTransactionHash());
+                        }
+                        return rowKeys;
+                    }));
+                } catch (Exception e) {
+                    throw new BlkchnException("Error query receipts by number " + current, e);
+                }
+            }
+            current = rangeOps.add(current, step);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> readTransactionKeys(long blockNumber) throws Exception {
+        return readBlockKeys(EthTables.TRANSACTION, blockNumber, () -> {
+            List<String> rowKeys = new ArrayList<>();
+            for (Transaction txnInfo : (List<Transaction>) (List<?>) getTransactions(String.valueOf(blockNumber))) {
+                dataMap.put(txnInfo.getHash(), txnInfo);
+                rowKeys.add(txnInfo.getHash());
+            }
+            return rowKeys;
+        });
+    }
+
+    /*
+     * The keys of the rows of one block of the table, read at most once per query. Threads asking for a block while it
+     * is read wait for that read, a read that failed, with an error too, is forgotten and fails the waiters as well.
+     */
+    private List<String> readBlockKeys(String table, long blockNumber, Callable<List<String>> read) throws Exception {
+        CompletableFuture<List<String>> keys;
+        boolean reader = false;
+        synchronized (blockRowKeys) {
+            LongObjectMap<CompletableFuture<List<String>>> blocks = blockRowKeys.computeIfAbsent(table,
+                    t -> new LongObjectMap<>());
+            keys = blocks.get(blockNumber);
+            if (keys == null) {
+                keys = new CompletableFuture<>();
+                blocks.put(blockNumber, keys);
+                reader = true;
+            }
+        }
+        if (!reader) {
+            countCacheHit();
+            try {
+                return keys.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw new BlkchnException("Error reading block " + blockNumber, e.getCause());
+            }
+        }
+        try {
+            List<String> rowKeys = read.call();
+            keys.complete(rowKeys);
+            return rowKeys;
+        } catch (Throwable e) {
+            synchronized (blockRowKeys) {
+                LongObjectMap<CompletableFuture<List<String>>> blocks = blockRowKeys.get(table);
+                if (blocks != null) {
+                    blocks.remove(blockNumber);
+                }
+            }
+            keys.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /*
+     * Answers an equality filter on from or to inside the indexed blocks by fetching just the transactions the index
+     * points at, a whole block when it holds several of them.
+     */
+    private List<String> fetchPostings(long[] postings) {
+        Map<Long, List<Integer>> byBlock = new LinkedHashMap<>();
+        for (long posting : postings) {
+            byBlock.computeIfAbsent(AddressIndex.blockNumber(posting), k -> new ArrayList<>())
+                    .add(AddressIndex.txIndex(posting));
+        }
+        List<List<String>> blockKeys = parallelMap(new ArrayList<>(byBlock.entrySet()), entry -> {
+            List<String> keys = new ArrayList<>();
+            String blockNumber = String.valueOf(entry.getKey());
+            try {
+                if (entry.getValue().size() == 1) {
+                    Transaction transaction = getTransactionByBlockNumberAndIndex(blockNumber, entry.getValue().get(0));
+                    if (transaction != null) {
+                        dataMap.put(transaction.getHash(), transaction);
+                        keys.add(transaction.getHash());
+                    }
+                } else {
+                    for (TransactionResult txnResult : getTransactions(blockNumber)) {
+                        Transaction transaction = (Transaction) txnResult.get();
+                        if (entry.getValue().contains(transaction.getTransactionIndex().intValue())) {
+                            dataMap.put(transaction.getHash(), transaction);
+                            keys.add(transaction.getHash());
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                throw new BlkchnException("Error query transaction by number " + blockNumber, e);
+            }
+            return keys;
+        });
+        return blockKeys.stream().flatMap(List::stream).collect(Collectors.toList());
+    }
+
+    /*
+     * The address of an equality filter on from or to that every row of the query has to pass, when the address index
+     * can answer it.
+     */
+    private String getIndexedAddress() {
+        if (addressIndex == null || physicalPlan.getWhereClause() == null) {
+            return null;
+        }
+        return findAddressFilter(physicalPlan.getWhereClause());
+    }
+
+    private static String findAddressFilter(TreeNode node) {
+        for (TreeNode child : node.getChildNodes()) {
+            if (child instanceof FilterItem && child.hasChildType(Column.class) && child.hasChildType(Comparator.class)
+                    && child.getChildType(Comparator.class, 0).isEQ()) {
+                String column = child.getChildType(Column.class, 0).getChildType(IdentifierNode.class, 0).getValue();
+                if ((EthColumns.FROM.equalsIgnoreCase(column) || EthColumns.TO.equalsIgnoreCase(column))
+                        && child.hasChildType(IdentifierNode.class)) {
+                    return Utilities.unquote(child.getChildType(IdentifierNode.class, 0).getValue());
+                }
+            } else if (child instanceof LogicalOperation && ((LogicalOperation) child).isAnd()) {
+                String address = findAddressFilter(child);
+                if (address != null) {
+                    return address;
+                }
+            }
+        }
+        return null;
+    }
 
-        } else if (table.equals(EthTables.TRANSACTION)) {
+    /*
+     * Hands every log of the range matching the pushed down filter to the sink in block order. The range is cut into
+     * chunks fetched with eth_getLogs on the query pool, the rest of the where clause is applied afterwards.
+     */
+    @SuppressWarnings("unchecked")
+    private void scanLogs(RangeNode<?> rangeNode, Consumer<Log> sink) {
+        if (sampler != null) {
+            throw new BlkchnException("Sampling is not supported on table " + EthTables.LOG);
+        }
+        List<List<String>> groups = getLogFilterGroups();
+        List<long[]> chunks = new ArrayList<>();
+        for (Range<BigInteger> range : resolveRanges((RangeNode<BigInteger>) rangeNode)) {
+            chunks.addAll(logScanner.chunks(range.getMin().longValue(), range.getMax().longValue()));
+        }
+        List<List<Log>> logs = parallelMap(chunks,
+                chunk -> logScanner.scan((from, to) -> getLogs(from, to, groups), chunk[0], chunk[1]));
+        for (List<Log> chunkLogs : logs) {
+            chunkLogs.forEach(sink);
+        }
+    }
 
-            if (column.equals(EthColumns.HASH)) {
-                Transaction transaction = null;
-                try {
-                    transaction = getTransactionByHash(value.replace("'", ""));
-                    dataMap.put(transaction.getHash(), transaction);
+    /*
+     * Equality filters on address and the topics that every row has to pass, one group of accepted values per position
+     * of LOG_FILTER_COLS. An OR of equalities on the same column adds all of its values, an empty group is unfiltered.
+     */
+    private List<List<String>> getLogFilterGroups() {
+        List<List<String>> groups = new ArrayList<>();
+        for (int i = 0; i < LOG_FILTER_COLS.size(); i++) {
+            groups.add(new ArrayList<>());
+        }
+        if (physicalPlan.getWhereClause() != null) {
+            collectLogFilters(physicalPlan.getWhereClause(), groups);
+        }
+        return groups;
+    }
 
-                } catch (Exception e) {
-                    LOGGER.warn(e.getMessage());
-                    return new DataNode<>(table, Arrays.asList());
+    private static void collectLogFilters(TreeNode node, List<List<String>> groups) {
+        for (TreeNode child : node.getChildNodes()) {
+            if (child instanceof FilterItem) {
+                String column = getEqualityColumn(child);
+                if (column != null && LOG_FILTER_COLS.contains(column)) {
+                    groups.get(LOG_FILTER_COLS.indexOf(column)).add(getEqualityValue(child));
                 }
-                return new DataNode<>(table, Arrays.asList(transaction.getHash()));
-            } else if (column.equals(EthColumns.BLOCKNUMBER)) {
-                List keys = new ArrayList();
-                try {
-
-                    List<?> txnList = getTransactions(value.replace("'", ""));
-                    for (Transaction txnInfo : (List<Transaction>) txnList) {
-                        dataMap.put(txnInfo.getHash(), txnInfo);
-                        keys.add(txnInfo.getHash());
+            } else if (child instanceof LogicalOperation && ((LogicalOperation) child).isAnd()) {
+                collectLogFilters(child, groups);
+            } else if (child instanceof LogicalOperation && ((LogicalOperation) child).isOr()) {
+                String column = null;
+                List<String> values = new ArrayList<>();
+                for (TreeNode branch : child.getChildNodes()) {
+                    String branchColumn = branch instanceof FilterItem ? getEqualityColumn(branch) : null;
+                    if (branchColumn == null || (column != null && !column.equals(branchColumn))) {
+                        column = null;
+                        break;
                     }
-
-                } catch (Exception e) {
-                    LOGGER.warn(e.getMessage());
-                    return new DataNode<>(table, Arrays.asList());
+                    column = branchColumn;
+                    values.add(getEqualityValue(branch));
                 }
-                return new DataNode<>(table, keys);
-            } else if (column.equals(EthColumns.BLOCKHASH)) {
-                List keys = new ArrayList();
-                try {
-                    Block block = getBlockByHash(value.replace("'", ""));
-                    List<?> txnList = block.getTransactions().stream().map(transactionResult -> transactionResult.get())
-                            .collect(Collectors.toList());
-                    for (Transaction txnInfo : (List<Transaction>) txnList) {
-                        dataMap.put(txnInfo.getHash(), txnInfo);
-                        keys.add(txnInfo.getHash());
-                    }
-
-                } catch (Exception e) {
-                    LOGGER.warn(e.getMessage());
-                    return new DataNode<>(table, Arrays.asList());
+                if (column != null && LOG_FILTER_COLS.contains(column)) {
+                    groups.get(LOG_FILTER_COLS.indexOf(column)).addAll(values);
                 }
-                return new DataNode<>(table, keys);
-            } else
-                throw new BlkchnException(
-                        String.format("There is no direct API for table %s and column %s combination", table, column));
+            }
+        }
+    }
 
-        } else
-            throw new BlkchnException(
-                    String.format("There is no direct API for table %s and column %s combination", table, column));
+    private static String getEqualityColumn(TreeNode filterItem) {
+        if (filterItem.hasChildType(Column.class) && filterItem.hasChildType(Comparator.class)
+                && filterItem.getChildType(Comparator.class, 0).isEQ()
+                && filterItem.hasChildType(IdentifierNode.class)) {
+            return filterItem.getChildType(Column.class, 0).getChildType(IdentifierNode.class, 0).getValue()
+                    .toLowerCase();
+        }
+        return null;
     }
 
-    @SuppressWarnings({ "unchecked", "rawtypes" })
-    protected <T extends Number & Comparable<T>> DataNode<?> executeRangeNode(RangeNode<T> rangeNode) {
-        if (rangeNode.getRangeList().getRanges().isEmpty()) {
-            return new DataNode<T>(rangeNode.getTable(), new ArrayList<>());
+    private static String getEqualityValue(TreeNode filterItem) {
+        return Utilities.unquote(filterItem.getChildType(IdentifierNode.class, 0).getValue()).toLowerCase();
+    }
+
+    private static String describeLogFilter(List<List<String>> groups) {
+        List<String> parts = new ArrayList<>();
+        for (int i = 0; i < groups.size(); i++) {
+            if (!groups.get(i).isEmpty()) {
+                parts.add(LOG_FILTER_COLS.get(i) + " in " + groups.get(i));
+            }
+        }
+        return parts.isEmpty() ? "none" : String.join(", ", parts);
+    }
+
+    private static String getLogKey(Log log) {
+        return log.getBlockNumber() + ":" + log.getLogIndex();
+    }
+
+    private List<Log> getLogs(long from, long to, List<List<String>> groups) throws IOException {
+        LOGGER.info("Getting logs of blocks " + from + " to " + to);
+        countRpc();
+        countBlocks(to - from + 1);
+        EthFilter filter = new EthFilter(DefaultBlockParameter.valueOf(BigInteger.valueOf(from)),
+                DefaultBlockParameter.valueOf(BigInteger.valueOf(to)), groups.get(0));
+        int lastTopic = groups.size() - 1;
+        while (lastTopic > 0 && groups.get(lastTopic).isEmpty()) {
+            lastTopic--;
+        }
+        for (int i = 1; i <= lastTopic; i++) {
+            List<String> topics = groups.get(i);
+            if (topics.isEmpty()) {
+                filter.addNullTopic();
+            } else if (topics.size() == 1) {
+                filter.addSingleTopic(topics.get(0));
+            } else {
+                filter.addOptionalTopics(topics.toArray(new String[topics.size()]));
+            }
+        }
+        EthLog response = web3jClient.ethGetLogs(filter).send();
+        if (response.hasError()) {
+            throw new BlkchnException(response.getError().getMessage());
+        }
+        List<Log> logs = new ArrayList<>();
+        for (EthLog.LogResult<?> result : response.getLogs()) {
+            logs.add((Log) result.get());
         }
+        return logs;
+    }
+
+    /* The block without its transactions, null when the node doesn't have it */
+    private Block getHeader(long blockNumber) {
+        LOGGER.info("Getting header of block - " + blockNumber);
+        countRpc();
+        try {
+            DefaultBlockParameter param = DefaultBlockParameter.valueOf(BigInteger.valueOf(blockNumber));
+            EthBlock block = web3jClient.ethGetBlockByNumber(param, false).send();
+            return block == null ? null : block.getBlock();
+        } catch (IOException e) {
+            throw new BlkchnException("Error getting header of block " + blockNumber, e);
+        }
+    }
+
+    /*
+     * Walks the same blocks as executeRangeNode but hands every block or transaction to the sink as soon as it's
+     * fetched instead of keeping it in dataMap.
+     */
+    @SuppressWarnings({ "unchecked" })
+    protected <T extends Number & Comparable<T>> void streamRangeNode(RangeNode<T> rangeNode, Consumer<Object> sink) {
         RangeOperations<T> rangeOps = (RangeOperations<T>) physicalPlan.getRangeOperations(rangeNode.getTable(),
                 rangeNode.getColumn());
-        String rangeCol = rangeNode.getColumn();
         String rangeTable = rangeNode.getTable();
-        BigInteger height;
-        try {
-            height = getBlockHeight();
-        } catch (Exception e) {
-            throw new BlkchnException("Error getting height of ledger", e);
+        if (EthTables.LOG.equals(rangeTable)) {
+            scanLogs(rangeNode, sink::accept);
+            return;
         }
-        List<DataNode<String>> dataNodes = rangeNode.getRangeList().getRanges().stream().map(range -> {
-
-            List<String> keys = new ArrayList<>();
-            T current = range.getMin().equals(rangeOps.getMinValue()) ? (T) new BigInteger("0") : range.getMin();
-            T max = range.getMax().equals(rangeOps.getMaxValue()) ? (T) rangeOps.subtract((T) height, 1)
-                    : range.getMax();
-            do {
-                if (EthTables.BLOCK.equals(rangeTable) && EthColumns.BLOCKNUMBER.equals(rangeCol)) {
+        for (Range<BigInteger> range : resolveRanges((RangeNode<BigInteger>) (RangeNode<?>) rangeNode)) {
+            T current = (T) range.getMin();
+            T max = (T) range.getMax();
+            long step = 1;
+            if (sampler != null) {
+                sampler.recordRange((BigInteger) current, (BigInteger) max);
+                current = (T) sampler.first((BigInteger) current);
+                step = sampler.getStep();
+            }
+            while (max.compareTo(current) >= 0) {
+                countBlocks(1);
+                if (EthTables.BLOCK.equals(rangeTable)) {
                     try {
-                        if (dataMap.get(current.toString()) != null) {
-                            keys.add(current.toString());
-                        } else {
-                            Block block = getBlockByNumber(current.toString());
-                            dataMap.put(block.getNumber().toString(), block);
-                            keys.add(current.toString());
-                        }
+                        sink.accept(getBlockByNumber(current.toString()));
                     } catch (Exception e) {
-                        LOGGER.warn("block "+current+" not found");
+                        LOGGER.warn("block " + current + " not found");
                     }
-                } else if (EthTables.TRANSACTION.equals(rangeTable) && EthColumns.BLOCKNUMBER.equals(rangeCol)) {
+                } else if (EthTables.TRANSACTION.equals(rangeTable)) {
+                    List<TransactionResult> txnList;
                     try {
-
-                        if (blkTxnHashMap.containsKey(String.valueOf(current))) {
-                            for (String txnHash : blkTxnHashMap.get(String.valueOf(current)))
-                                keys.add(txnHash);
-
-                        } else {
-                            List<?> txnList = getTransactions(current.toString());
-                            for (Transaction txnInfo : (List<Transaction>) txnList) {
-                                dataMap.put(txnInfo.getHash(), txnInfo);
-                                keys.add(txnInfo.getHash());
-                            }
-                        }
+                        txnList = getTransactions(current.toString());
                     } catch (Exception e) {
                         throw new BlkchnException("Error query transaction by number " + current, e);
                     }
-
+                    for (TransactionResult txnResult : txnList) {
+                        sink.accept(txnResult.get());
+                    }
+                } else if (EthTables.BLOCKTRANSACTION.equals(rangeTable)) {
+                    try {
+                        getBlockTransactions(current.toString()).forEach(sink);
+                    } catch (Exception e) {
+                        LOGGER.warn("block " + current + " not found");
+                    }
+                } else if (EthTables.RECEIPT.equals(rangeTable)) {
+                    try {
+                        getBlockReceipts(current.toString()).forEach(sink);
+                    } catch (IOException e) {
+                        throw new BlkchnException("Error query receipts by number " + current, e);
+                    }
                 }
-                current = rangeOps.add(current, 1);
-            } while (max.compareTo(current) >= 0);
-
-            return new DataNode<String>(rangeTable, keys);
-        }).collect(Collectors.toList());
-        DataNode<String> finalDataNode = (DataNode<String>) dataNodes.get(0);
-        if (dataNodes.size() > 1) {
-            for (int i = 1; i < dataNodes.size(); i++) {
-                finalDataNode = mergeDataNodes(finalDataNode, (DataNode<String>) dataNodes.get(i), Operator.OR);
+                current = rangeOps.add(current, step);
             }
         }
-        return (DataNode<String>) finalDataNode;
     }
 
     @Override
@@ -408,31 +1705,22 @@ public class EthQueryExecutor extends AbstractQueryExecutor {
         RangeOperations<T> rangeOps = (RangeOperations<T>) physicalPlan.getRangeOperations(tableName, rangeCol);
         if (EthTables.BLOCK.equals(tableName)) {
             if (EthColumns.BLOCKNUMBER.equals(rangeCol)) {
-                List<RangeNode<T>> dataRanges = keys.stream().map(key -> {
+                LongBitmap blocks = new LongBitmap();
+                for (String key : keys) {
                     Block blockInfo = (Block) dataMap.get(key);
-                    if (auxillaryDataMap.containsKey(EthColumns.BLOCKNUMBER)) {
-                        auxillaryDataMap.get(EthColumns.BLOCKNUMBER).put(key, blockInfo);
-                    } else {
-                        auxillaryDataMap.put(EthColumns.BLOCKNUMBER, new HashMap<>());
-                        auxillaryDataMap.get(EthColumns.BLOCKNUMBER).put(key, blockInfo);
-                    }
-                    T blockNo = (T) blockInfo.getNumber();
-                    RangeNode<T> node = new RangeNode<>(rangeNode.getTable(), rangeCol);
-                    node.getRangeList().addRange(new Range<T>(blockNo, blockNo));
-                    return node;
-                }).collect(Collectors.toList());
+                    auxillaryDataMap.computeIfAbsent(EthColumns.BLOCKNUMBER, k -> new HashMap<>()).put(key, blockInfo);
+                    blocks.add(blockInfo.getNumber().longValue());
+                }
 
-                if (dataRanges.isEmpty() && oper.isAnd()) {
+                if (blocks.isEmpty() && oper.isAnd()) {
                     return filterRangeNodeWithValue(rangeNode, dataNode);
-                } else if (dataRanges.isEmpty() && oper.isOr()) {
+                } else if (blocks.isEmpty() && oper.isOr()) {
                     return rangeNode;
                 }
-                RangeNode<T> dataRangeNodes = dataRanges.get(0);
-                if (dataRanges.size() > 1) {
-                    for (int i = 1; i < dataRanges.size(); i++) {
-                        dataRangeNodes = rangeOps.rangeNodeOr(dataRangeNodes, dataRanges.get(i));
-                    }
-                }
+                // runs of consecutive blocks become one range each, already ordered and disjoint
+                RangeNode<T> dataRangeNodes = new RangeNode<>(rangeNode.getTable(), rangeCol);
+                blocks.forEachRun((first, last) -> dataRangeNodes.getRangeList()
+                        .addRange(new Range<T>((T) BigInteger.valueOf(first), (T) BigInteger.valueOf(last))));
                 if (oper.isAnd()) {
                     return rangeOps.rangeNodeAnd(dataRangeNodes, rangeNode);
                 } else {
@@ -454,272 +1742,105 @@ public class EthQueryExecutor extends AbstractQueryExecutor {
         return emptyRangeNode;
     }
 
+    /*
+     * Keys of the block table are block numbers and merge as bitmaps, in ascending block order. Other keys go through
+     * the list merge of the base executor.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    protected <T> DataNode<T> mergeDataNodes(DataNode<T> first, DataNode<T> second, Operator oper) {
+        LongBitmap firstBlocks = toBlockBitmap(first);
+        LongBitmap secondBlocks = firstBlocks == null ? null : toBlockBitmap(second);
+        if (secondBlocks == null) {
+            return super.mergeDataNodes(first, second, oper);
+        }
+        LongBitmap merged = oper == Operator.AND ? firstBlocks.and(secondBlocks) : firstBlocks.or(secondBlocks);
+        List<T> sample = first.getKeys().isEmpty() ? second.getKeys() : first.getKeys();
+        boolean numeric = !sample.isEmpty() && sample.get(0) instanceof BigInteger;
+        List<Object> keys = new ArrayList<>((int) merged.getCardinality());
+        merged.forEach(number -> keys.add(numeric ? BigInteger.valueOf(number) : String.valueOf(number)));
+        return new DataNode<>(first.getTable(), (List<T>) keys);
+    }
+
+    /* The block numbers keying a node of the block table, null for other tables or keys that aren't numbers */
+    private static LongBitmap toBlockBitmap(DataNode<?> node) {
+        if (!EthTables.BLOCK.equals(node.getTable())) {
+            return null;
+        }
+        LongBitmap blocks = new LongBitmap();
+        for (Object key : node.getKeys()) {
+            long number;
+            try {
+                number = Long.parseLong(key.toString());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (number < 0) {
+                return null;
+            }
+            blocks.add(number);
+        }
+        return blocks;
+    }
+
     @Override
     protected boolean filterField(String fieldName, Object obj, String value, Comparator comparator) {
-        boolean retValue = false;
-        if(value != null)
-            value = Utilities.unquote(value);
-        if (!comparator.isEQ() && !comparator.isNEQ()) {
-            throw new BlkchnException(String.format(
-                    "String values in %s field can only be compared for equivalence and non-equivalence", fieldName));
-        }
-
-        if (obj instanceof Block) {
-            Block blockInfo = (Block) obj;
-            switch (fieldName) {
-                case EthColumns.HASH:
-                    if (comparator.isEQ()) {
-                        retValue = blockInfo.getHash().equals(value);
-                    } else {
-                        retValue = !blockInfo.getHash().equals(value);
-                    }
-                    break;
-                case EthColumns.BLOCKNUMBER:
-                    if (comparator.isEQ()) {
-                        retValue = blockInfo.getNumber().toString().equals(value);
-                    } else {
-                        retValue = !blockInfo.getNumber().toString().equals(value);
-                    }
-                    break;
-                case EthColumns.PARENTHASH:
-                    if (comparator.isEQ()) {
-                        retValue = blockInfo.getParentHash().equals(value);
-                    } else {
-                        retValue = !blockInfo.getParentHash().equals(value);
-                    }
-                    break;
-                case EthColumns.NONCE:
-                    if (comparator.isEQ()) {
-                        retValue = String.valueOf(blockInfo.getNonce()).equals(value);
-                    } else {
-                        retValue = !String.valueOf(blockInfo.getNonce()).equals(value);
-                    }
-                    break;
-                case EthColumns.SHA3UNCLES:
-                    if (comparator.isEQ()) {
-                        retValue = String.valueOf(blockInfo.getSha3Uncles()).equals(value);
-                    } else {
-                        retValue = !String.valueOf(blockInfo.getSha3Uncles()).equals(value);
-                    }
-                    break;
-                case EthColumns.LOGSBLOOM:
-                    if (comparator.isEQ()) {
-                        retValue = String.valueOf(blockInfo.getLogsBloom()).equals(value);
-                    } else {
-                        retValue = !String.valueOf(blockInfo.getLogsBloom()).equals(value);
-                    }
-                    break;
-                case EthColumns.TRANSACTIONSROOT:
-                    if (comparator.isEQ()) {
-                        retValue = String.valueOf(blockInfo.getTransactionsRoot()).equals(value);
-                    } else {
-                        retValue = !String.valueOf(blockInfo.getTransactionsRoot()).equals(value);
-                    }
-                    break;
-                case EthColumns.STATEROOT:
-                    if (comparator.isEQ()) {
-                        retValue = String.valueOf(blockInfo.getStateRoot()).equals(value);
-                    } else {
-                        retValue = !String.valueOf(blockInfo.getStateRoot()).equals(value);
-                    }
-                    break;
-                case EthColumns.RECEIPTSROOT:
-                    if (comparator.isEQ()) {
-                        retValue = String.valueOf(blockInfo.getReceiptsRoot()).equals(value);
-                    } else {
-                        retValue = !String.valueOf(blockInfo.getReceiptsRoot()).equals(value);
-                    }
-                    break;
-                case EthColumns.AUTHOR:
-                    if (comparator.isEQ()) {
-                        retValue = String.valueOf(blockInfo.getAuthor()).equals(value);
-                    } else {
-                        retValue = !String.valueOf(blockInfo.getAuthor()).equals(value);
-                    }
-                    break;
-                case EthColumns.MINER:
-                    if (comparator.isEQ()) {
-                        retValue = String.valueOf(blockInfo.getMiner()).equals(value);
-                    } else {
-                        retValue = !String.valueOf(blockInfo.getMiner()).equals(value);
-                    }
-                    break;
-                case EthColumns.MIXHASH:
-                    if (comparator.isEQ()) {
-                        retValue = String.valueOf(blockInfo.getMixHash()).equals(value);
-                    } else {
-                        retValue = !String.valueOf(blockInfo.getMixHash()).equals(value);
-                    }
-                    break;
-                case EthColumns.TOTALDIFFICULTY:
-                    if (comparator.isEQ()) {
-                        retValue = String.valueOf(blockInfo.getTotalDifficulty()).equals(value);
-                    } else {
-                        retValue = !String.valueOf(blockInfo.getTotalDifficulty()).equals(value);
-                    }
-                    break;
-                case EthColumns.EXTRADATA:
-                    if (comparator.isEQ()) {
-                        retValue = String.valueOf(blockInfo.getExtraData()).equals(value);
-                    } else {
-                        retValue = !String.valueOf(blockInfo.getExtraData()).equals(value);
-                    }
-                    break;
-                case EthColumns.SIZE:
-                    if (comparator.isEQ()) {
-                        retValue = String.valueOf(blockInfo.getSize()).equals(value);
-                    } else {
-                        retValue = !String.valueOf(blockInfo.getSize()).equals(value);
-                    }
-                    break;
-                case EthColumns.TIMESTAMP:
-                    if (comparator.isEQ()) {
-                        retValue = String.valueOf(blockInfo.getTimestamp()).equals(value);
-                    } else {
-                        retValue = !String.valueOf(blockInfo.getTimestamp()).equals(value);
-                    }
-                    break;
-                case EthColumns.GASLIMIT:
-                    if (comparator.isEQ()) {
-                        retValue = blockInfo.getGasLimit().toString().equals(value);
-                    } else {
-                        retValue = !blockInfo.getGasLimit().toString().equals(value);
-                    }
-                    break;
-                case EthColumns.GASUSED:
-                    if (comparator.isEQ()) {
-                        retValue = blockInfo.getGasUsed().toString().equals(value);
-                    } else {
-                        retValue = !blockInfo.getGasUsed().toString().equals(value);
-                    }
-                    break;
-                    /*Data type not supported for other column for where clause*/
-            }
-        } else if (obj instanceof Transaction) {
-            Transaction txnInfo = (Transaction) obj;
-            switch (fieldName) {
-                case EthColumns.FROM:
-                    if (comparator.isEQ()) {
-                        retValue = txnInfo.getFrom().equals(value);
-                    } else {
-                        retValue = !txnInfo.getFrom().equals(value);
-                    }
-                    break;
-                case EthColumns.BLOCKHASH:
-                    if (comparator.isEQ()) {
-                        retValue = txnInfo.getBlockHash().equals(value);
-                    } else {
-                        retValue = !txnInfo.getBlockHash().equals(value);
-                    }
-                    break;
-                case EthColumns.GAS:
-                    if (comparator.isEQ()) {
-                        retValue = String.valueOf(txnInfo.getGas()).equals(value);
-                    } else {
-                        retValue = !String.valueOf(txnInfo.getGas()).equals(value);
-                    }
-                    break;
-                case EthColumns.BLOCKNUMBER:
-                    if (comparator.isEQ()) {
-                        retValue = String.valueOf(txnInfo.getBlockNumber()).equals(value);
-                    } else {
-                        retValue = !String.valueOf(txnInfo.getBlockNumber()).equals(value);
-                    }
-                    break;
-                case EthColumns.CREATES:
-                    if (comparator.isEQ()) {
-                        retValue = String.valueOf(txnInfo.getCreates()).equals(value);
-                    } else {
-                        retValue = !String.valueOf(txnInfo.getCreates()).equals(value);
-                    }
-                    break;
-                case EthColumns.GASPRICE:
-                    if (comparator.isEQ()) {
-                        retValue = String.valueOf(txnInfo.getGasPrice()).equals(value);
-                    } else {
-                        retValue = !String.valueOf(txnInfo.getGasPrice()).equals(value);
-                    }
-                    break;
-                case EthColumns.HASH:
-                    if (comparator.isEQ()) {
-                        retValue = String.valueOf(txnInfo.getHash()).equals(value);
-                    } else {
-                        retValue = !String.valueOf(txnInfo.getHash()).equals(value);
-                    }
-                    break;
-                case EthColumns.INPUT:
-                    if (comparator.isEQ()) {
-                        retValue = String.valueOf(txnInfo.getInput()).equals(value);
-                    } else {
-                        retValue = !String.valueOf(txnInfo.getInput()).equals(value);
-                    }
-                    break;
-                case EthColumns.NONCE:
-                    if (comparator.isEQ()) {
-                        retValue = String.valueOf(txnInfo.getNonce()).equals(value);
-                    } else {
-                        retValue = !String.valueOf(txnInfo.getNonce()).equals(value);
-                    }
-                    break;
-                case EthColumns.PUBLICKEY:
-                    if (comparator.isEQ()) {
-                        retValue = String.valueOf(txnInfo.getPublicKey()).equals(value);
-                    } else {
-                        retValue = !String.valueOf(txnInfo.getPublicKey()).equals(value);
-                    }
-                    break;
-                case EthColumns.R:
-                    if (comparator.isEQ()) {
-                        retValue = String.valueOf(txnInfo.getR()).equals(value);
-                    } else {
-                        retValue = !String.valueOf(txnInfo.getR()).equals(value);
-                    }
-                    break;
-                case EthColumns.RAW:
-                    if (comparator.isEQ()) {
-                        retValue = String.valueOf(txnInfo.getRaw()).equals(value);
-                    } else {
-                        retValue = !String.valueOf(txnInfo.getRaw()).equals(value);
-                    }
-                    break;
-                case EthColumns.S:
-                    if (comparator.isEQ()) {
-                        retValue = String.valueOf(txnInfo.getS()).equals(value);
-                    } else {
-                        retValue = !String.valueOf(txnInfo.getS()).equals(value);
-                    }
-                    break;
-                case EthColumns.TO:
-                    if (comparator.isEQ()) {
-                        retValue = String.valueOf(txnInfo.getTo()).equals(value);
-                    } else {
-                        retValue = !String.valueOf(txnInfo.getTo()).equals(value);
-                    }
-                    break;
-                case EthColumns.TRANSACTIONINDEX:
-                    if (comparator.isEQ()) {
-                        retValue = String.valueOf(txnInfo.getTransactionIndex()).equals(value);
-                    } else {
-                        retValue = !String.valueOf(txnInfo.getTransactionIndex()).equals(value);
-                    }
-                    break;
-                case EthColumns.V:
-                    if (comparator.isEQ()) {
-                        retValue = String.valueOf(txnInfo.getV()).equals(value);
-                    } else {
-                        retValue = !String.valueOf(txnInfo.getGas()).equals(value);
-                    }
-                    break;
-                case EthColumns.VALUE:
-                    if (comparator.isEQ()) {
-                        retValue = String.valueOf(txnInfo.getValue()).equals(value);
-                    } else {
-                        retValue = !String.valueOf(txnInfo.getValue()).equals(value);
-                    }
-                    break;
+        CompiledFilter filter = compiledFilters.get(comparator);
+        if (filter == null || !filter.isFor(fieldName, value, obj.getClass())) {
+            filter = new CompiledFilter(fieldName, value, obj.getClass(),
+                    FilterCompiler.compile(fieldName, obj.getClass(), value, FilterCompiler.Op.of(comparator)));
+            synchronized (this) {
+                Map<Comparator, CompiledFilter> filters = new IdentityHashMap<>(compiledFilters);
+                filters.put(comparator, filter);
+                compiledFilters = filters;
+            }
+        }
+        return filter.predicate.test(obj);
+    }
+
+    private static class CompiledFilter {
+
+        private final String fieldName;
+
+        private final String value;
+
+        private final Class<?> rowType;
+
+        private final Predicate<Object> predicate;
+
+        CompiledFilter(String fieldName, String value, Class<?> rowType, Predicate<Object> predicate) {
+            this.fieldName = fieldName;
+            this.value = value;
+            this.rowType = rowType;
+            this.predicate = predicate;
+        }
+
+        boolean isFor(String fieldName, String value, Class<?> rowType) {
+            return this.rowType == rowType && this.fieldName.equals(fieldName) && Objects.equals(this.value, value);
+        }
+    }
+
+    /*
+     * Charges the estimated heap size of every row kept for the query to the budget. Rows are sized through their
+     * table's columns, the same way result cache entries are.
+     */
+    private class BudgetedDataMap extends ConcurrentHashMap<String, Object> {
+
+        private static final long serialVersionUID = 1L;
+
+        BudgetedDataMap(Map<String, Object> rows) {
+            super(rows);
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            Object previous = super.put(key, value);
+            if (previous == null) {
+                ColumnRegistry.TableColumns<?> columns = ColumnRegistry.findRowType(value.getClass());
+                budget.buffer(ResultCache.estimateSize(columns == null ? value : columns.toRow(value)));
             }
+            return previous;
         }
-        return retValue;
     }
 
     @Override
@@ -738,11 +1859,10 @@ public class EthQueryExecutor extends AbstractQueryExecutor {
                     }
                 }
                 return include;
-            } else if (EthTables.TRANSACTION.equals(dataNode.getTable())
+            } else if (!EthTables.BLOCK.equals(dataNode.getTable())
                     && EthColumns.BLOCKNUMBER.equals(rangeNode.getColumn())) {
                 boolean include = false;
-                Transaction transaction = (Transaction) dataMap.get(key);
-                BigInteger blockNo = transaction.getBlockNumber();
+                BigInteger blockNo = getRowBlockNumber(dataMap.get(key));
                 for (Range<?> range : rangeNode.getRangeList().getRanges()) {
                     if ((((BigInteger) range.getMin()).compareTo(blockNo) == -1
                             && ((BigInteger) range.getMax()).compareTo(blockNo) == 1)
@@ -761,29 +1881,123 @@ public class EthQueryExecutor extends AbstractQueryExecutor {
 
     private List<TransactionResult> getTransactions(String blockNumber) throws IOException, Exception {
         LOGGER.info("Getting details of transactions stored in block - " + blockNumber);
+        countRpc();
         try {
             EthBlock block = web3jClient
                     .ethGetBlockByNumber(DefaultBlockParameter.valueOf(new BigInteger(blockNumber)), true).send();
-
+            if (statistics != null) {
+                statistics.record(block.getBlock());
+            }
             return block.getBlock().getTransactions();
         } catch (Exception e) {
-             return  new ArrayList<>();
+            // a fetch cut short by a cancel or timeout must not pass for an empty block
+            if ((context != null && context.isCancelled()) || Thread.currentThread().isInterrupted()) {
+                throw e;
+            }
+            return new ArrayList<>();
+        }
+    }
+
+    /*
+     * Receipts of every transaction of the block. Uses eth_getBlockReceipts until the node turns out not to have it,
+     * then one JSON-RPC batch of eth_getTransactionReceipt calls over http, or parallel single calls over ipc.
+     */
+    private List<TransactionReceipt> getBlockReceipts(String blockNumber) throws IOException {
+        if (web3jService != null && blockReceiptsSupported) {
+            LOGGER.info("Getting receipts of block - " + blockNumber);
+            countRpc();
+            EthBlockReceipts response = new Request<>("eth_getBlockReceipts",
+                    Arrays.asList(Numeric.encodeQuantity(new BigInteger(blockNumber))), web3jService,
+                    EthBlockReceipts.class).send();
+            if (!response.hasError()) {
+                return response.getReceipts() == null ? new ArrayList<>() : response.getReceipts();
+            }
+            if (response.getError().getCode() != METHOD_NOT_FOUND) {
+                throw new BlkchnException(response.getError().getMessage());
+            }
+            LOGGER.info("Node has no eth_getBlockReceipts, fetching receipts per transaction");
+            blockReceiptsSupported = false;
+        }
+        List<String> hashes = getTransactionHashes(blockNumber);
+        if (web3jService instanceof MeteredHttpService) {
+            LOGGER.info("Getting " + hashes.size() + " receipts of block - " + blockNumber + " in one batch");
+            countRpc();
+            List<Request<?, EthGetTransactionReceipt>> requests = new ArrayList<>();
+            for (String hash : hashes) {
+                requests.add(web3jClient.ethGetTransactionReceipt(hash));
+            }
+            List<TransactionReceipt> receipts = new ArrayList<>();
+            for (EthGetTransactionReceipt response : ((MeteredHttpService) web3jService).sendBatch(requests,
+                    EthGetTransactionReceipt.class)) {
+                if (response.hasError()) {
+                    throw new BlkchnException(response.getError().getMessage());
+                }
+                if (response.getResult() != null) {
+                    receipts.add(response.getResult());
+                }
+            }
+            return receipts;
+        }
+        return parallelMap(hashes, hash -> {
+            try {
+                return getTransactionReceipt(hash);
+            } catch (IOException e) {
+                throw new BlkchnException("Error getting receipt of transaction " + hash, e);
+            }
+        }).stream().filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    private List<String> getTransactionHashes(String blockNumber) throws IOException {
+        LOGGER.info("Getting transaction hashes of block - " + blockNumber);
+        countRpc();
+        EthBlock block = web3jClient.ethGetBlockByNumber(DefaultBlockParameter.valueOf(new BigInteger(blockNumber)),
+                false).send();
+        List<String> hashes = new ArrayList<>();
+        if (block.getBlock() != null) {
+            for (TransactionResult<?> txnResult : block.getBlock().getTransactions()) {
+                hashes.add(txnResult.get().toString());
+            }
         }
+        return hashes;
+    }
+
+    private TransactionReceipt getTransactionReceipt(String transactionHash) throws IOException {
+        LOGGER.info("Getting receipt of transaction - " + transactionHash);
+        countRpc();
+        EthGetTransactionReceipt response = web3jClient.ethGetTransactionReceipt(transactionHash).send();
+        if (response.hasError()) {
+            throw new BlkchnException(response.getError().getMessage());
+        }
+        return response.getResult();
+    }
+
+    /* Rows of the block transaction join, all from the one full block fetch */
+    private List<BlockTransaction> getBlockTransactions(String blockNumber) throws IOException, Exception {
+        Block block = getBlockByNumber(blockNumber);
+        List<BlockTransaction> rows = new ArrayList<>();
+        for (TransactionResult<?> txnResult : block.getTransactions()) {
+            rows.add(new BlockTransaction(block, (Transaction) txnResult.get()));
+        }
+        return rows;
     }
 
     private Block getBlockByNumber(String blockNumber) throws IOException, Exception {
         LOGGER.info("Getting block - " + blockNumber + " Information ");
+        countRpc();
         EthBlock block = web3jClient
                 .ethGetBlockByNumber(DefaultBlockParameter.valueOf(new BigInteger(blockNumber)), true).send();
 
         if (block == null || block.hasError())
             throw new Exception("blockNumber not found : " + blockNumber);
-
+        if (statistics != null) {
+            statistics.record(block.getBlock());
+        }
         return block.getBlock();
     }
 
     private Block getBlockByHash(String blockHash) throws IOException, Exception {
         LOGGER.info("Getting  information of block with hash - " + blockHash);
+        countRpc();
         EthBlock block = web3jClient.ethGetBlockByHash(blockHash, true).send();
         if (block == null || block.hasError())
             throw new Exception("blockHash not found : " + blockHash);
@@ -793,6 +2007,7 @@ public class EthQueryExecutor extends AbstractQueryExecutor {
 
     private Transaction getTransactionByHash(String transactionHash) throws IOException, Exception {
         LOGGER.info("Getting information of Transaction by hash - " + transactionHash);
+        countRpc();
         Transaction transaction = web3jClient.ethGetTransactionByHash(transactionHash).send().getResult();
 
         if (transaction == null)
@@ -801,11 +2016,21 @@ public class EthQueryExecutor extends AbstractQueryExecutor {
         return transaction;
     }
 
+    private Transaction getTransactionByBlockNumberAndIndex(String blockNumber, int transactionIndex)
+            throws IOException {
+        LOGGER.info("Getting information of Transaction by blocknumber - " + blockNumber + " and transactionIndex"
+                + transactionIndex);
+        countRpc();
+        return web3jClient.ethGetTransactionByBlockNumberAndIndex(
+                DefaultBlockParameter.valueOf(new BigInteger(blockNumber)), BigInteger.valueOf(transactionIndex))
+                .send().getResult();
+    }
+
     private Transaction getTransactionByBlockHashAndIndex(String blockHash, BigInteger transactionIndex)
             throws IOException {
         LOGGER.info("Getting information of Transaction by blockhash - " + blockHash + " and transactionIndex"
                 + transactionIndex);
-
+        countRpc();
         Transaction transaction = web3jClient.ethGetTransactionByBlockHashAndIndex(blockHash, transactionIndex).send()
                 .getResult();
         return transaction;
@@ -813,7 +2038,9 @@ public class EthQueryExecutor extends AbstractQueryExecutor {
 
     private BigInteger getBlockHeight() throws IOException {
         LOGGER.info("Getting block height ");
+        countRpc();
         EthBlockNumber block = web3jClient.ethBlockNumber().send();
+        latestBlockSeen.accumulateAndGet(block.getBlockNumber().longValue(), Math::max);
         return block.getBlockNumber();
     }
 
@@ -871,78 +2098,40 @@ public class EthQueryExecutor extends AbstractQueryExecutor {
         }
         DataFrame df = null;
         List<List<Object>> data = new ArrayList<>();
-        if (dataMap.get(dataNode.getKeys().get(0).toString()) instanceof Block) {
-            String[] columns = { EthColumns.BLOCKNUMBER, EthColumns.HASH, EthColumns.PARENTHASH, EthColumns.NONCE,
-                    EthColumns.SHA3UNCLES, EthColumns.LOGSBLOOM, EthColumns.TRANSACTIONSROOT, EthColumns.STATEROOT,
-                    EthColumns.RECEIPTSROOT, EthColumns.AUTHOR, EthColumns.MINER, EthColumns.MIXHASH,
-                    EthColumns.TOTALDIFFICULTY, EthColumns.EXTRADATA, EthColumns.SIZE, EthColumns.GASLIMIT,
-                    EthColumns.GASUSED, EthColumns.TIMESTAMP, EthColumns.TRANSACTIONS, EthColumns.UNCLES,
-                    EthColumns.SEALFIELDS };
-
-            for (Object key : dataNode.getKeys()) {
-                Block blockInfo = (Block) dataMap.get(key.toString());
-                BigInteger blocknumber = blockInfo.getNumber();
-                String hash = blockInfo.getHash();
-                String parenthash = blockInfo.getParentHash();
-                BigInteger nonce = blockInfo.getNonce();
-                String sha3uncles = blockInfo.getSha3Uncles();
-                String logsbloom = blockInfo.getLogsBloom();
-                String transactionsroot = blockInfo.getTransactionsRoot();
-                String stateroot = blockInfo.getStateRoot();
-                String receiptsroot = blockInfo.getReceiptsRoot();
-                String author = blockInfo.getAuthor();
-                String miner = blockInfo.getMiner();
-                String mixhash = blockInfo.getMixHash();
-                BigInteger totaldifficulty = blockInfo.getTotalDifficulty();
-                String extradata = blockInfo.getExtraData();
-                BigInteger size = blockInfo.getSize();
-                BigInteger gaslimit = blockInfo.getGasLimit();
-                BigInteger gasused = blockInfo.getGasUsed();
-                BigInteger timestamp = blockInfo.getTimestamp();
-                List<TransactionResult> transactions = blockInfo.getTransactions();
-                List<String> uncles = blockInfo.getUncles();
-                List<String> sealfields = blockInfo.getSealFields();
-                data.add(Arrays.asList(blocknumber, hash, parenthash, nonce, sha3uncles, logsbloom, transactionsroot,
-                        stateroot, receiptsroot, author, miner, mixhash, totaldifficulty, extradata, size, gaslimit,
-                        gasused, timestamp, transactions, uncles, sealfields));
-            }
-            df = new DataFrame(data, columns, physicalPlan.getColumnAliasMapping());
-            df.setRawData(dataMap.values());
-            return df;
-        } else if (dataMap.get(dataNode.getKeys().get(0).toString()) instanceof Transaction) {
-            String columns[] = { EthColumns.BLOCKHASH, EthColumns.BLOCKNUMBER, EthColumns.CREATES, EthColumns.FROM,
-                    EthColumns.GAS, EthColumns.GASPRICE, EthColumns.HASH, EthColumns.INPUT, EthColumns.NONCE,
-                    EthColumns.PUBLICKEY, EthColumns.R, EthColumns.RAW, EthColumns.S, EthColumns.TO,
-                    EthColumns.TRANSACTIONINDEX, EthColumns.V, EthColumns.VALUE };
+        Object first = dataMap.get(dataNode.getKeys().get(0).toString());
+        if (first instanceof Block || first instanceof Transaction || first instanceof Log
+                || first instanceof TransactionReceipt || first instanceof BlockTransaction) {
+            ColumnRegistry.TableColumns<?> columns = ColumnRegistry.forRow(first);
             for (Object key : dataNode.getKeys()) {
-                Transaction txnInfo = (Transaction) dataMap.get(key.toString());
-                String blockhash = txnInfo.getBlockHash();
-                BigInteger blocknumber = txnInfo.getBlockNumber();
-                String creates = txnInfo.getCreates();
-                String from = txnInfo.getFrom();
-                String gas = txnInfo.getGas().toString();
-                BigInteger gasprice = txnInfo.getGasPrice();
-                String hash = txnInfo.getHash();
-                String input = txnInfo.getInput();
-                BigInteger nonce = txnInfo.getNonce();
-                String publickey = txnInfo.getPublicKey();
-                String r = txnInfo.getR();
-                String raw = txnInfo.getRaw();
-                String s = txnInfo.getS();
-                String to = txnInfo.getTo();
-                BigInteger transactionindex = txnInfo.getTransactionIndex();
-                String v = String.valueOf(txnInfo.getV());
-                BigInteger value = txnInfo.getValue();
-                data.add(Arrays.asList(blockhash, blocknumber, creates, from, gas, gasprice, hash, input, nonce,
-                        publickey, r, raw, s, to, transactionindex, v, value));
-            }
-            df = new DataFrame(data, columns, physicalPlan.getColumnAliasMapping());
+                data.add(columns.toRow(dataMap.get(key.toString())));
+            }
+            df = new DataFrame(data, columns.getColumnNames(), physicalPlan.getColumnAliasMapping());
             df.setRawData(dataMap.values());
             return df;
         } else
             throw new BlkchnException("Cannot create dataframe from unknown object type");
     }
 
+    /* Row layout follows the column order of the table in ColumnRegistry */
+    protected List<Object> toRow(Object obj) {
+        return ColumnRegistry.forRow(obj).toRow(obj);
+    }
+
+    private static BigInteger getRowBlockNumber(Object row) {
+        if (row instanceof Block) {
+            return ((Block) row).getNumber();
+        } else if (row instanceof Transaction) {
+            return ((Transaction) row).getBlockNumber();
+        } else if (row instanceof Log) {
+            return ((Log) row).getBlockNumber();
+        } else if (row instanceof TransactionReceipt) {
+            return ((TransactionReceipt) row).getBlockNumber();
+        } else if (row instanceof BlockTransaction) {
+            return ((BlockTransaction) row).getTransaction().getBlockNumber();
+        }
+        throw new BlkchnException("Cannot get block number of unknown object type");
+    }
+
     public Boolean execute() {
         try {
             executeAndReturn();
@@ -1160,7 +2349,7 @@ public class EthQueryExecutor extends AbstractQueryExecutor {
         if (physicalPlan.getWhereClause().getChildType(GetRowsNode.class, 0).isNone())
             return new DataNode<>(table, new ArrayList<>());
         else
-            throw new BlkchnException(
-                    "WhereClasue evaluates to true and it will process all the block/transaction data. Not supported yet");
+            throw new BlkchnException("WhereClasue evaluates to true and it will process all the block/transaction"
+                    + " data. Not supported yet");
     }
 }
@@ -0,0 +1,245 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.impetus.blkch.BlkchnException;
+import com.impetus.blkch.sql.query.Column;
+import com.impetus.blkch.sql.query.IdentifierNode;
+import com.impetus.blkch.sql.query.OrderItem;
+import com.impetus.blkch.sql.query.OrderingDirection;
+
+/**
+ * External merge sort for ORDER BY over rows that may not fit on the heap. Rows are buffered up to a limit, every full
+ * buffer is sorted and written to a temp file as a run, and reading merges the runs with the last buffer. The heap
+ * holds one buffer, one row per run and the rows returned, so a LIMIT also bounds the output.
+ */
+public class ExternalSorter implements Closeable {
+
+    public static final int DEFAULT_MAX_ROWS = 1000000;
+
+    /* The stream keeps a back reference to every object written until it is reset */
+    private static final int RESET_INTERVAL = 1000;
+
+    private final Comparator<List<Object>> comparator;
+
+    private final int maxRows;
+
+    private final File directory;
+
+    private List<List<Object>> buffer = new ArrayList<>();
+
+    private final List<File> runs = new ArrayList<>();
+
+    private final List<ObjectInputStream> readers = new ArrayList<>();
+
+    public ExternalSorter(Comparator<List<Object>> comparator, int maxRows, File directory) {
+        if (maxRows <= 0) {
+            throw new BlkchnException("Sort buffer must hold at least one row");
+        }
+        this.comparator = comparator;
+        this.maxRows = maxRows;
+        this.directory = directory;
+    }
+
+    /**
+     * Compiles the ORDER BY items against the row layout of a table, null when an item isn't a column of the row.
+     * Nulls sort first, values of one class by their natural order and anything else by its string form.
+     */
+    public static Comparator<List<Object>> compileOrder(List<OrderItem> orderItems, List<String> rowColumns) {
+        Comparator<List<Object>> result = null;
+        for (OrderItem item : orderItems) {
+            if (!item.hasChildType(Column.class)) {
+                return null;
+            }
+            String name = item.getChildType(Column.class, 0).getChildType(IdentifierNode.class, 0).getValue();
+            int index = rowColumns.indexOf(name);
+            if (index < 0) {
+                return null;
+            }
+            OrderingDirection direction = item.getChildType(OrderingDirection.class, 0);
+            Comparator<List<Object>> column = (first, second) -> compareValues(first.get(index), second.get(index));
+            if (direction != null && !direction.isAsc()) {
+                column = column.reversed();
+            }
+            result = result == null ? column : result.thenComparing(column);
+        }
+        return result;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    static int compareValues(Object first, Object second) {
+        if (first == second) {
+            return 0;
+        } else if (first == null) {
+            return -1;
+        } else if (second == null) {
+            return 1;
+        } else if (first instanceof Comparable && first.getClass() == second.getClass()) {
+            return ((Comparable) first).compareTo(second);
+        }
+        return String.valueOf(first).compareTo(String.valueOf(second));
+    }
+
+    public void add(List<Object> row) {
+        buffer.add(row);
+        if (buffer.size() >= maxRows) {
+            spill();
+        }
+    }
+
+    public int getRunCount() {
+        return runs.size();
+    }
+
+    private void spill() {
+        buffer.sort(comparator);
+        File run = null;
+        try {
+            run = File.createTempFile("eth-sort", ".run", directory);
+            try (ObjectOutputStream out = new ObjectOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(run)))) {
+                out.writeInt(buffer.size());
+                for (int i = 0; i < buffer.size(); i++) {
+                    out.writeObject(buffer.get(i));
+                    if ((i + 1) % RESET_INTERVAL == 0) {
+                        out.reset();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if (run != null) {
+                run.delete();
+            }
+            throw new BlkchnException("Error spilling sorted rows to " + directory, e);
+        }
+        runs.add(run);
+        buffer = new ArrayList<>();
+    }
+
+    /**
+     * Returns up to limit rows in order. Rows that compare equal keep the order they were added in.
+     */
+    public List<List<Object>> sorted(long limit) {
+        buffer.sort(comparator);
+        if (runs.isEmpty()) {
+            return limit < buffer.size() ? new ArrayList<>(buffer.subList(0, (int) limit)) : buffer;
+        }
+        PriorityQueue<Run> heap = new PriorityQueue<>((first, second) -> {
+            int cmp = comparator.compare(first.head, second.head);
+            return cmp != 0 ? cmp : Integer.compare(first.position, second.position);
+        });
+        for (int i = 0; i < runs.size(); i++) {
+            offer(heap, new Run(i, read(runs.get(i))));
+        }
+        offer(heap, new Run(runs.size(), buffer.iterator()));
+        List<List<Object>> result = new ArrayList<>();
+        while (!heap.isEmpty() && result.size() < limit) {
+            Run run = heap.poll();
+            result.add(run.head);
+            offer(heap, run);
+        }
+        close();
+        return result;
+    }
+
+    private static void offer(PriorityQueue<Run> heap, Run run) {
+        if (run.rows.hasNext()) {
+            run.head = run.rows.next();
+            heap.add(run);
+        }
+    }
+
+    private Iterator<List<Object>> read(File run) {
+        ObjectInputStream in;
+        int size;
+        try {
+            in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(run)));
+            readers.add(in);
+            size = in.readInt();
+        } catch (IOException e) {
+            throw new BlkchnException("Error reading sorted run " + run, e);
+        }
+        return new Iterator<List<Object>>() {
+
+            private int remaining = size;
+
+            @Override
+            public boolean hasNext() {
+                return remaining > 0;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public List<Object> next() {
+                try {
+                    remaining--;
+                    return (List<Object>) in.readObject();
+                } catch (IOException | ClassNotFoundException e) {
+                    throw new BlkchnException("Error reading sorted run " + run, e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Deletes the runs written so far.
+     */
+    @Override
+    public void close() {
+        for (ObjectInputStream in : readers) {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // the run is deleted below either way
+            }
+        }
+        readers.clear();
+        for (File run : runs) {
+            run.delete();
+        }
+        runs.clear();
+        buffer = new ArrayList<>();
+    }
+
+    private static class Run {
+
+        private final int position;
+
+        private final Iterator<List<Object>> rows;
+
+        private List<Object> head;
+
+        Run(int position, Iterator<List<Object>> rows) {
+            this.position = position;
+            this.rows = rows;
+        }
+    }
+}
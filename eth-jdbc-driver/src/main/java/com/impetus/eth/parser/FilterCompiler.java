@@ -0,0 +1,115 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import com.impetus.blkch.BlkchnException;
+import com.impetus.blkch.sql.query.Comparator;
+import com.impetus.blkch.util.Utilities;
+
+/**
+ * Compiles one filter of the WHERE clause into a predicate bound to the ColumnRegistry getter of its column and its
+ * parsed literal. The column name and the comparator are resolved once, testing a row is a call to the getter and a
+ * comparison.
+ * Quantity columns are compared on the raw hex the node sent, other columns as strings.
+ */
+public class FilterCompiler {
+
+    public enum Op {
+        EQ, NEQ, GT, GTE, LT, LTE;
+
+        public static Op of(Comparator comparator) {
+            if (comparator.isEQ()) {
+                return EQ;
+            } else if (comparator.isNEQ()) {
+                return NEQ;
+            } else if (comparator.isGT()) {
+                return GT;
+            } else if (comparator.isGTE()) {
+                return GTE;
+            } else if (comparator.isLT()) {
+                return LT;
+            } else if (comparator.isLTE()) {
+                return LTE;
+            }
+            throw new BlkchnException("Unsupported comparator " + comparator);
+        }
+    }
+
+    public static Predicate<Object> compile(String fieldName, Class<?> rowType, String value, Op op) {
+        String literal = value == null ? null : Utilities.unquote(value);
+        ColumnRegistry.Column column = ColumnRegistry.forRowType(rowType).getColumn(fieldName);
+        if (literal != null && column != null && column.isQuantity()) {
+            return quantity(column.getRawGetter(), QuantityLiteral.parse(literal), op);
+        }
+        if (op != Op.EQ && op != Op.NEQ) {
+            throw new BlkchnException(String.format(
+                    "String values in %s field can only be compared for equivalence and non-equivalence", fieldName));
+        }
+        if (column == null) {
+            /* Data type not supported for other column for where clause */
+            return row -> false;
+        }
+        boolean ignoreCase = Log.class.isAssignableFrom(rowType) || TransactionReceipt.class.isAssignableFrom(rowType);
+        if (op == Op.EQ) {
+            return ignoreCase ? row -> String.valueOf(column.get(row)).equalsIgnoreCase(literal)
+                    : row -> String.valueOf(column.get(row)).equals(literal);
+        }
+        return ignoreCase ? row -> !String.valueOf(column.get(row)).equalsIgnoreCase(literal)
+                : row -> !String.valueOf(column.get(row)).equals(literal);
+    }
+
+    /* A row without the value only passes a non-equivalence */
+    private static Predicate<Object> quantity(Function<Object, String> raw, QuantityLiteral literal, Op op) {
+        switch (op) {
+            case EQ:
+                return row -> {
+                    String value = raw.apply(row);
+                    return value != null && literal.compareTo(value) == 0;
+                };
+            case GT:
+                return row -> {
+                    String value = raw.apply(row);
+                    return value != null && literal.compareTo(value) > 0;
+                };
+            case GTE:
+                return row -> {
+                    String value = raw.apply(row);
+                    return value != null && literal.compareTo(value) >= 0;
+                };
+            case LT:
+                return row -> {
+                    String value = raw.apply(row);
+                    return value != null && literal.compareTo(value) < 0;
+                };
+            case LTE:
+                return row -> {
+                    String value = raw.apply(row);
+                    return value != null && literal.compareTo(value) <= 0;
+                };
+            default:
+                return row -> {
+                    String value = raw.apply(row);
+                    return value == null || literal.compareTo(value) != 0;
+                };
+        }
+    }
+}
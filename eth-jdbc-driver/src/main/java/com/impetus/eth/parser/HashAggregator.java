@@ -0,0 +1,474 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.impetus.blkch.BlkchnException;
+import com.impetus.blkch.sql.DataFrame;
+import com.impetus.blkch.sql.query.Column;
+import com.impetus.blkch.sql.query.FunctionNode;
+import com.impetus.blkch.sql.query.IdentifierNode;
+import com.impetus.blkch.sql.query.SelectItem;
+import com.impetus.blkch.util.Utilities;
+import com.impetus.eth.jdbc.DriverConstants;
+
+/**
+ * Streaming hash aggregation for GROUP BY queries. Rows are folded into per-group accumulators as they are produced
+ * by the scan and are never retained, so memory is bounded by the number of groups rather than the number of rows.
+ * With spilling enabled, groups past a limit are written out to temp files partitioned by key hash, and each partition
+ * is merged back on its own when the result is built.
+ */
+public class HashAggregator {
+
+    private static final Object SINGLE_GROUP = new Object();
+
+    public static final String ERROR_SUFFIX = "_error";
+
+    public static final int DEFAULT_MAX_GROUPS = 1000000;
+
+    private static final int SPILL_PARTITIONS = 64;
+
+    private final int[] groupIndexes;
+
+    private final List<String> outputColumns = new ArrayList<>();
+
+    /* For every output column either a position in the group key (>= 0) or -(aggregate position + 1) */
+    private final int[] outputSources;
+
+    private final String[] functions;
+
+    /* Literal arguments of each aggregate, e.g. the percentile of approx_percentile */
+    private final String[][] params;
+
+    /* Row index of each aggregate's argument, -1 for count(*) */
+    private final int[] inputIndexes;
+
+    private final Map<String, String> aliasMapping;
+
+    private final Map<Object, Accumulator[]> groups = new LinkedHashMap<>();
+
+    private BlockSampler sampler;
+
+    private int blockIndex;
+
+    private Object currentBlock;
+
+    /* Groups that received rows from the block currently being read */
+    private final List<Accumulator[]> touched = new ArrayList<>();
+
+    private int maxGroups = Integer.MAX_VALUE;
+
+    private File spillDirectory;
+
+    /* One file per key hash partition, created on the first spill */
+    private File[] partitions;
+
+    private ObjectOutputStream[] partitionStreams;
+
+    private HashAggregator(int[] groupIndexes, int[] outputSources, String[] functions, String[][] params,
+            int[] inputIndexes, List<String> outputColumns, Map<String, String> aliasMapping) {
+        this.groupIndexes = groupIndexes;
+        this.outputSources = outputSources;
+        this.functions = functions;
+        this.params = params;
+        this.inputIndexes = inputIndexes;
+        this.outputColumns.addAll(outputColumns);
+        this.aliasMapping = aliasMapping;
+    }
+
+    /**
+     * Compiles the select list against the row layout of a table. Returns null when the query uses something the
+     * streaming operator can't evaluate, in which case the caller falls back to grouping the materialized frame. An
+     * empty group by list aggregates all rows into a single group.
+     */
+    public static HashAggregator compile(List<SelectItem> selectItems, List<String> groupByCols,
+            List<String> rowColumns, Map<String, String> aliasMapping) {
+        int[] groupIndexes = new int[groupByCols.size()];
+        for (int i = 0; i < groupByCols.size(); i++) {
+            groupIndexes[i] = rowColumns.indexOf(groupByCols.get(i));
+            if (groupIndexes[i] < 0) {
+                return null;
+            }
+        }
+        int[] outputSources = new int[selectItems.size()];
+        List<String> outputColumns = new ArrayList<>();
+        List<String> functions = new ArrayList<>();
+        List<String[]> params = new ArrayList<>();
+        List<Integer> inputIndexes = new ArrayList<>();
+        for (int i = 0; i < selectItems.size(); i++) {
+            SelectItem item = selectItems.get(i);
+            if (item.hasChildType(FunctionNode.class)) {
+                FunctionNode function = item.getChildType(FunctionNode.class, 0);
+                String name = function.getChildType(IdentifierNode.class, 0).getValue().toLowerCase();
+                if (!Accumulators.isSupported(name) || function.hasChildType(FunctionNode.class)) {
+                    return null;
+                }
+                int inputIndex = -1;
+                if (function.hasChildType(Column.class)) {
+                    inputIndex = rowColumns.indexOf(columnName(function.getChildType(Column.class, 0)));
+                    if (inputIndex < 0) {
+                        return null;
+                    }
+                } else if (!Accumulators.COUNT.equals(name)) {
+                    return null;
+                }
+                List<IdentifierNode> idents = function.getChildType(IdentifierNode.class);
+                String[] literals = new String[idents.size() - 1];
+                for (int j = 1; j < idents.size(); j++) {
+                    literals[j - 1] = idents.get(j).getValue();
+                }
+                /* Fail fast on bad literals, there is no fallback path for the approximate functions */
+                Accumulators.create(name, literals);
+                outputSources[i] = -(functions.size() + 1);
+                functions.add(name);
+                params.add(literals);
+                inputIndexes.add(inputIndex);
+                outputColumns.add(Utilities.createFunctionColName(function));
+            } else if (item.hasChildType(Column.class)) {
+                String colName = columnName(item.getChildType(Column.class, 0));
+                int groupPos = groupByCols.indexOf(colName);
+                if (groupPos < 0) {
+                    return null;
+                }
+                outputSources[i] = groupPos;
+                outputColumns.add(colName);
+            } else {
+                return null;
+            }
+        }
+        return new HashAggregator(groupIndexes, outputSources, functions.toArray(new String[0]),
+                params.toArray(new String[0][]), inputIndexes.stream().mapToInt(Integer::intValue).toArray(),
+                outputColumns, aliasMapping);
+    }
+
+    private static String columnName(Column column) {
+        return column.getChildType(IdentifierNode.class, 0).getValue();
+    }
+
+    /**
+     * Switches count and sum to estimates scaled by the blocks the sampler skipped. Rows have to arrive grouped by the
+     * block number found at blockIndex, the change of block is what closes the per block totals.
+     */
+    public void enableSampling(BlockSampler sampler, int blockIndex) {
+        this.sampler = sampler;
+        this.blockIndex = blockIndex;
+    }
+
+    /**
+     * Writes the groups out to temp files in the given directory whenever more than maxGroups are held. Partial state
+     * of a sampled block is never split, so with sampling the spill waits for the block to close.
+     */
+    public void enableSpilling(int maxGroups, File directory) {
+        if (maxGroups <= 0) {
+            throw new BlkchnException("Aggregation must hold at least one group in memory");
+        }
+        this.maxGroups = maxGroups;
+        this.spillDirectory = directory;
+    }
+
+    public boolean hasSpilled() {
+        return partitions != null;
+    }
+
+    public void add(List<Object> row) {
+        if (sampler != null) {
+            Object block = row.get(blockIndex);
+            if (!block.equals(currentBlock)) {
+                closeBlock();
+                currentBlock = block;
+            }
+        }
+        Object key = groupKey(row);
+        Accumulator[] accumulators = groups.get(key);
+        if (accumulators == null) {
+            if (groups.size() >= maxGroups && touched.isEmpty()) {
+                spill();
+            }
+            accumulators = newAccumulators();
+            groups.put(key, accumulators);
+        }
+        if (sampler != null) {
+            touched.add(accumulators);
+        }
+        for (int i = 0; i < accumulators.length; i++) {
+            /* count(*) counts the row itself */
+            accumulators[i].add(inputIndexes[i] < 0 ? row : row.get(inputIndexes[i]));
+        }
+    }
+
+    private void closeBlock() {
+        for (Accumulator[] accumulators : touched) {
+            for (Accumulator accumulator : accumulators) {
+                if (accumulator instanceof SampledAccumulator) {
+                    ((SampledAccumulator) accumulator).closeBlock();
+                }
+            }
+        }
+        touched.clear();
+    }
+
+    private Object groupKey(List<Object> row) {
+        switch (groupIndexes.length) {
+            case 0:
+                return SINGLE_GROUP;
+            case 1:
+                return row.get(groupIndexes[0]);
+            default:
+                Object[] key = new Object[groupIndexes.length];
+                for (int i = 0; i < groupIndexes.length; i++) {
+                    key[i] = row.get(groupIndexes[i]);
+                }
+                return Arrays.asList(key);
+        }
+    }
+
+    private Accumulator[] newAccumulators() {
+        Accumulator[] accumulators = new Accumulator[functions.length];
+        for (int i = 0; i < functions.length; i++) {
+            if (sampler != null && isScaled(functions[i])) {
+                accumulators[i] = new SampledAccumulator(Accumulators.COUNT.equals(functions[i]));
+            } else {
+                accumulators[i] = Accumulators.create(functions[i], params[i]);
+            }
+        }
+        return accumulators;
+    }
+
+    /**
+     * Folds the groups of an aggregator compiled from the same query, typically one that ran over another partition of
+     * the range, into this one. The other aggregator is left as it was so it can be merged again later.
+     */
+    public void merge(HashAggregator other) {
+        if (other.hasSpilled()) {
+            throw new BlkchnException("Cannot merge an aggregation that spilled to disk");
+        }
+        for (Map.Entry<Object, Accumulator[]> group : other.groups.entrySet()) {
+            Accumulator[] accumulators = groups.get(group.getKey());
+            if (accumulators == null) {
+                if (groups.size() >= maxGroups && touched.isEmpty()) {
+                    spill();
+                }
+                accumulators = newAccumulators();
+                groups.put(group.getKey(), accumulators);
+            }
+            for (int i = 0; i < accumulators.length; i++) {
+                accumulators[i].merge(group.getValue()[i]);
+            }
+        }
+    }
+
+    private static int partition(Object key) {
+        return Math.floorMod(Objects.hashCode(key), SPILL_PARTITIONS);
+    }
+
+    /*
+     * Appends every group held in memory to the file of its partition and starts over with an empty map. A group key or
+     * aggregate state holding a value that can't be serialized, such as the list of a transactions column, fails the
+     * query rather than the spill directory being blamed.
+     */
+    private void spill() {
+        try {
+            if (partitions == null) {
+                partitions = new File[SPILL_PARTITIONS];
+                partitionStreams = new ObjectOutputStream[SPILL_PARTITIONS];
+            }
+            for (Map.Entry<Object, Accumulator[]> group : groups.entrySet()) {
+                int partition = partition(group.getKey());
+                if (partitionStreams[partition] == null) {
+                    partitions[partition] = File.createTempFile("eth-aggregate", ".part", spillDirectory);
+                    partitionStreams[partition] = new ObjectOutputStream(
+                            new BufferedOutputStream(new FileOutputStream(partitions[partition])));
+                }
+                partitionStreams[partition].writeObject(group.getKey());
+                partitionStreams[partition].writeObject(group.getValue());
+            }
+            for (ObjectOutputStream out : partitionStreams) {
+                if (out != null) {
+                    out.reset();
+                }
+            }
+        } catch (NotSerializableException e) {
+            deleteSpills();
+            throw new BlkchnException("Cannot spill aggregation groups holding values of type " + e.getMessage()
+                    + ", raise " + DriverConstants.AGGREGATE_SPILL_GROUPS + " or group by other columns", e);
+        } catch (IOException e) {
+            deleteSpills();
+            throw new BlkchnException("Error spilling aggregation groups to " + spillDirectory, e);
+        }
+        groups.clear();
+    }
+
+    /* Groups of one partition merged back from its file, in the order they were first written */
+    private Map<Object, Accumulator[]> readPartition(int partition) {
+        Map<Object, Accumulator[]> merged = new LinkedHashMap<>();
+        if (partitions[partition] == null) {
+            return merged;
+        }
+        try (ObjectInputStream in = new ObjectInputStream(
+                new BufferedInputStream(new FileInputStream(partitions[partition])))) {
+            while (true) {
+                Object key;
+                try {
+                    key = in.readObject();
+                } catch (EOFException e) {
+                    break;
+                }
+                Accumulator[] accumulators = (Accumulator[]) in.readObject();
+                Accumulator[] existing = merged.putIfAbsent(key, accumulators);
+                if (existing != null) {
+                    for (int i = 0; i < existing.length; i++) {
+                        existing[i].merge(accumulators[i]);
+                    }
+                }
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            throw new BlkchnException("Error reading spilled aggregation groups", e);
+        }
+        return merged;
+    }
+
+    private void deleteSpills() {
+        if (partitions == null) {
+            return;
+        }
+        for (int i = 0; i < SPILL_PARTITIONS; i++) {
+            try {
+                if (partitionStreams[i] != null) {
+                    partitionStreams[i].close();
+                }
+            } catch (IOException e) {
+                // the file is deleted below either way
+            }
+            if (partitions[i] != null) {
+                partitions[i].delete();
+            }
+        }
+        partitions = null;
+        partitionStreams = null;
+    }
+
+    /**
+     * Drops the groups of an aggregation that won't be completed, with any temp files it spilled.
+     */
+    public void discard() {
+        groups.clear();
+        touched.clear();
+        deleteSpills();
+    }
+
+    private static boolean isScaled(String function) {
+        return Accumulators.COUNT.equals(function) || Accumulators.SUM.equals(function);
+    }
+
+    /**
+     * Names of the columns carrying the 95% confidence half width of each scaled aggregate, empty unless sampling.
+     */
+    public List<String> getErrorColumns() {
+        List<String> errorColumns = new ArrayList<>();
+        if (sampler == null) {
+            return errorColumns;
+        }
+        for (int i = 0; i < outputSources.length; i++) {
+            if (outputSources[i] < 0 && isScaled(functions[-outputSources[i] - 1])) {
+                errorColumns.add(outputColumns.get(i) + ERROR_SUFFIX);
+            }
+        }
+        return errorColumns;
+    }
+
+    public int getGroupCount() {
+        return groups.size();
+    }
+
+    /**
+     * Builds the result. After a spill the groups left in memory are spilled as well and the partitions are read back
+     * one at a time, so groups come out ordered by partition rather than by first appearance; the temp files are
+     * deleted once read.
+     */
+    public DataFrame toDataFrame() {
+        List<List<Object>> data = new ArrayList<>(groups.size());
+        if (!hasSpilled()) {
+            addRows(groups, data);
+        } else {
+            closeBlock();
+            spill();
+            try {
+                for (ObjectOutputStream out : partitionStreams) {
+                    if (out != null) {
+                        out.flush();
+                    }
+                }
+                for (int i = 0; i < SPILL_PARTITIONS; i++) {
+                    addRows(readPartition(i), data);
+                }
+            } catch (IOException e) {
+                throw new BlkchnException("Error reading spilled aggregation groups", e);
+            } finally {
+                deleteSpills();
+            }
+        }
+        List<String> columns = new ArrayList<>(outputColumns);
+        columns.addAll(getErrorColumns());
+        return new DataFrame(data, columns, aliasMapping);
+    }
+
+    private void addRows(Map<Object, Accumulator[]> groups, List<List<Object>> data) {
+        List<String> errorColumns = getErrorColumns();
+        for (Map.Entry<Object, Accumulator[]> group : groups.entrySet()) {
+            List<Object> row = new ArrayList<>(outputSources.length + errorColumns.size());
+            List<Object> errors = new ArrayList<>(errorColumns.size());
+            for (int source : outputSources) {
+                if (source >= 0) {
+                    row.add(groupValue(group.getKey(), source));
+                    continue;
+                }
+                Accumulator accumulator = group.getValue()[-source - 1];
+                if (accumulator instanceof SampledAccumulator) {
+                    SampledAccumulator sampled = (SampledAccumulator) accumulator;
+                    row.add(sampled.estimate(sampler.getPopulationBlocks(), sampler.getSampledBlocks()));
+                    errors.add(sampled.error(sampler.getPopulationBlocks(), sampler.getSampledBlocks()));
+                } else {
+                    row.add(accumulator.result());
+                }
+            }
+            row.addAll(errors);
+            data.add(row);
+        }
+    }
+
+    private Object groupValue(Object key, int position) {
+        if (groupIndexes.length == 1) {
+            return key;
+        }
+        return ((List<?>) key).get(position);
+    }
+}
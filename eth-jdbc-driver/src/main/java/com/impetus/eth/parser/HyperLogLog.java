@@ -0,0 +1,134 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import java.nio.charset.StandardCharsets;
+
+import com.impetus.blkch.BlkchnException;
+
+/**
+ * HyperLogLog distinct counter backing approx_count_distinct. Uses 2^precision one byte registers, so the default
+ * precision of 14 takes 16KB per group and has a standard error of about 0.8%. Two sketches of the same precision
+ * merge by taking the register wise maximum.
+ */
+public class HyperLogLog implements Accumulator {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int DEFAULT_PRECISION = 14;
+
+    private final int precision;
+
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new BlkchnException("HyperLogLog precision should be between 4 and 18");
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    @Override
+    public void add(Object value) {
+        if (value == null) {
+            return;
+        }
+        addHash(hash(value));
+    }
+
+    void addHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        /* Sentinel bit keeps the rank bounded when the remaining bits are all zero */
+        long rest = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    @Override
+    public void merge(Accumulator other) {
+        HyperLogLog that = (HyperLogLog) other;
+        if (that.precision != precision) {
+            throw new BlkchnException("Can't merge HyperLogLog sketches of different precision");
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (that.registers[i] > registers[i]) {
+                registers[i] = that.registers[i];
+            }
+        }
+    }
+
+    @Override
+    public Object result() {
+        return cardinality();
+    }
+
+    public long cardinality() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            /* Linear counting is far more accurate while many registers are still empty */
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+
+    /*
+     * Values are hashed through their string form so that the same number arriving as Integer, Long or BigInteger
+     * counts once.
+     */
+    static long hash(Object value) {
+        byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+        long h = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
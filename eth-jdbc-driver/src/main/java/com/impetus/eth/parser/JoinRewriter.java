@@ -0,0 +1,109 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.impetus.eth.query.EthColumns;
+import com.impetus.eth.query.EthTables;
+
+/**
+ * Turns a join of block and transaction on blocknumber into a query on the blocktransaction table, whose rows are
+ * built from one full block fetch each. Qualified columns lose their qualifier, the block's hash and nonce become
+ * blockhash and blocknonce since transactions have columns of the same name.
+ */
+public class JoinRewriter {
+
+    private static final String TABLE = "(" + EthTables.BLOCK + "|" + EthTables.TRANSACTION + ")";
+
+    private static final String ALIAS = "(?:\\s+(?:as\\s+)?(?!(?:inner|join|on|using)\\b)(\\w+))?";
+
+    private static final Pattern JOIN = Pattern.compile("\\bfrom\\s+" + TABLE + ALIAS + "\\s+(?:inner\\s+)?join\\s+"
+            + TABLE + ALIAS + "\\s+(?:on\\s+(\\w+)\\.(\\w+)\\s*=\\s*(\\w+)\\.(\\w+)|using\\s*\\(\\s*(\\w+)\\s*\\))",
+            Pattern.CASE_INSENSITIVE);
+
+    public static boolean mentionsJoin(String sql) {
+        return sql.toLowerCase().contains("join");
+    }
+
+    /**
+     * The query on blocktransaction, or the query unchanged when it has no block to transaction join on blocknumber.
+     */
+    public static String rewrite(String sql) {
+        if (!mentionsJoin(sql)) {
+            return sql;
+        }
+        Matcher join = JOIN.matcher(sql);
+        if (!join.find() || join.group(1).equalsIgnoreCase(join.group(3))) {
+            return sql;
+        }
+        boolean blockFirst = join.group(1).equalsIgnoreCase(EthTables.BLOCK);
+        String blockQualifier = qualifier(blockFirst ? join.group(1) : join.group(3),
+                blockFirst ? join.group(2) : join.group(4));
+        String txnQualifier = qualifier(blockFirst ? join.group(3) : join.group(1),
+                blockFirst ? join.group(4) : join.group(2));
+        if (join.group(9) != null) {
+            if (!join.group(9).equalsIgnoreCase(EthColumns.BLOCKNUMBER)) {
+                return sql;
+            }
+        } else if (!isBlockNumber(join.group(5), join.group(6), blockQualifier, txnQualifier)
+                || !isBlockNumber(join.group(7), join.group(8), blockQualifier, txnQualifier)
+                || join.group(5).equalsIgnoreCase(join.group(7))) {
+            return sql;
+        }
+        String rewritten = sql.substring(0, join.start()) + "from " + EthTables.BLOCKTRANSACTION
+                + sql.substring(join.end());
+        rewritten = unqualify(rewritten, blockQualifier, true);
+        return unqualify(rewritten, txnQualifier, false);
+    }
+
+    /**
+     * Name in blocktransaction of a column of the block side.
+     */
+    public static String blockColumn(String column) {
+        switch (column.toLowerCase()) {
+            case EthColumns.HASH:
+                return EthColumns.BLOCKHASH;
+            case EthColumns.NONCE:
+                return EthColumns.BLOCKNONCE;
+            default:
+                return column;
+        }
+    }
+
+    private static String qualifier(String table, String alias) {
+        return alias == null ? table : alias;
+    }
+
+    private static boolean isBlockNumber(String qualifier, String column, String blockQualifier,
+            String txnQualifier) {
+        return column.equalsIgnoreCase(EthColumns.BLOCKNUMBER)
+                && (qualifier.equalsIgnoreCase(blockQualifier) || qualifier.equalsIgnoreCase(txnQualifier));
+    }
+
+    private static String unqualify(String sql, String qualifier, boolean blockSide) {
+        Matcher column = Pattern.compile("\\b" + Pattern.quote(qualifier) + "\\.(\\w+)", Pattern.CASE_INSENSITIVE)
+                .matcher(sql);
+        StringBuffer rewritten = new StringBuffer();
+        while (column.find()) {
+            String name = blockSide ? blockColumn(column.group(1)) : column.group(1);
+            column.appendReplacement(rewritten, Matcher.quoteReplacement(name));
+        }
+        column.appendTail(rewritten);
+        return rewritten.toString();
+    }
+}
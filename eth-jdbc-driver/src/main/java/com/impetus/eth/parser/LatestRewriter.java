@@ -0,0 +1,40 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import java.util.regex.Pattern;
+
+/**
+ * Resolves tip relative block numbers in a query, LATEST is the newest block and LATEST - n the block n before it.
+ * The query text with LATEST left in is what identifies a sliding window between executions. A latest inside a quoted
+ * string is not a block number and is kept.
+ */
+public class LatestRewriter {
+
+    private static final Pattern LATEST = Pattern.compile("(?<![\\w'])latest\\b(?:\\s*-\\s*(\\d+))?",
+            Pattern.CASE_INSENSITIVE);
+
+    public static boolean mentionsLatest(String sql) {
+        return SqlText.containsOutsideQuotes(LATEST, sql);
+    }
+
+    public static String rewrite(String sql, long latest) {
+        return SqlText.replaceOutsideQuotes(LATEST, sql, matcher -> {
+            long offset = matcher.group(1) == null ? 0 : Long.parseLong(matcher.group(1));
+            return String.valueOf(Math.max(0, latest - offset));
+        });
+    }
+}
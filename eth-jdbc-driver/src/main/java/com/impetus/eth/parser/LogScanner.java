@@ -0,0 +1,102 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.web3j.protocol.core.methods.response.Log;
+
+import com.impetus.blkch.BlkchnException;
+
+/**
+ * Splits a block range into the chunks eth_getLogs is called with. Providers cap how many blocks or results a single
+ * call may cover, so a chunk the node refuses is halved and retried until it fits, down to a single block.
+ */
+public class LogScanner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LogScanner.class);
+
+    public static final int DEFAULT_CHUNK_SIZE = 2000;
+
+    public interface LogFetcher {
+
+        /* Logs of the inclusive block range, failing when the node refuses the call */
+        List<Log> fetch(long from, long to) throws IOException;
+    }
+
+    private final int chunkSize;
+
+    private long splitCount;
+
+    public LogScanner(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new BlkchnException("Log chunk size has to be positive");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public synchronized long getSplitCount() {
+        return splitCount;
+    }
+
+    /**
+     * The inclusive range cut into consecutive chunks of at most chunkSize blocks, as {from, to} pairs.
+     */
+    public List<long[]> chunks(long from, long to) {
+        List<long[]> chunks = new ArrayList<>();
+        for (long start = from; start <= to; start += chunkSize) {
+            chunks.add(new long[] { start, Math.min(to, start + chunkSize - 1) });
+        }
+        return chunks;
+    }
+
+    /**
+     * Logs of the inclusive range in block order. A call over several blocks the node refused or that failed in
+     * transport is retried as two halves, a failure on a single block is reported. A cancelled query, an exhausted
+     * budget or an interrupted call is passed on as it is, without splitting.
+     */
+    public List<Log> scan(LogFetcher fetcher, long from, long to) {
+        try {
+            return fetcher.fetch(from, to);
+        } catch (QueryContext.CancelledException | QueryBudget.ExceededException e) {
+            throw e;
+        } catch (IOException | BlkchnException e) {
+            if (e instanceof InterruptedIOException || Thread.currentThread().isInterrupted()) {
+                throw new BlkchnException("Interrupted getting logs of blocks " + from + " to " + to, e);
+            }
+            if (from >= to) {
+                throw new BlkchnException("Error getting logs of block " + from, e);
+            }
+            LOGGER.info("Splitting log range " + from + "-" + to + " after: " + e.getMessage());
+            synchronized (this) {
+                splitCount++;
+            }
+            long middle = from + (to - from) / 2;
+            List<Log> logs = new ArrayList<>(scan(fetcher, from, middle));
+            logs.addAll(scan(fetcher, middle + 1, to));
+            return logs;
+        }
+    }
+}
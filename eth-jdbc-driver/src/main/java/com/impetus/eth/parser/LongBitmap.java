@@ -0,0 +1,430 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Compressed set of non negative longs such as block numbers, split the Roaring way into chunks of 65536 values
+ * sharing their upper bits. A chunk is a sorted array of its lower 16 bits while it holds up to 4096 values and a
+ * 1024 word bitmap above that, so contiguous block ranges cost 8 KB per 65536 blocks and AND / OR run word by word.
+ * Not thread safe.
+ */
+public class LongBitmap {
+
+    /* Largest chunk kept as a sorted array, past it the bitmap is smaller */
+    static final int ARRAY_MAX = 4096;
+
+    private static final int WORDS = 1024;
+
+    private long[] highs = new long[4];
+
+    private Chunk[] chunks = new Chunk[4];
+
+    private int size;
+
+    public static LongBitmap ofRange(long from, long to) {
+        LongBitmap bitmap = new LongBitmap();
+        bitmap.addRange(from, to);
+        return bitmap;
+    }
+
+    public void add(long value) {
+        checkValue(value);
+        chunkFor(value >>> 16).add((char) value);
+    }
+
+    /**
+     * Adds every value of the inclusive range.
+     */
+    public void addRange(long from, long to) {
+        checkValue(from);
+        for (long high = from >>> 16; high <= to >>> 16 && from <= to; high++) {
+            int lo = high == from >>> 16 ? (int) (from & 0xFFFF) : 0;
+            int hi = high == to >>> 16 ? (int) (to & 0xFFFF) : 0xFFFF;
+            chunkFor(high).addRange(lo, hi);
+        }
+    }
+
+    public boolean contains(long value) {
+        if (value < 0) {
+            return false;
+        }
+        int index = Arrays.binarySearch(highs, 0, size, value >>> 16);
+        return index >= 0 && chunks[index].contains((char) value);
+    }
+
+    public long getCardinality() {
+        long cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += chunks[i].cardinality;
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public LongBitmap and(LongBitmap other) {
+        LongBitmap result = new LongBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (highs[i] < other.highs[j]) {
+                i++;
+            } else if (highs[i] > other.highs[j]) {
+                j++;
+            } else {
+                result.append(highs[i], chunks[i].and(other.chunks[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public LongBitmap or(LongBitmap other) {
+        LongBitmap result = new LongBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && highs[i] < other.highs[j])) {
+                result.append(highs[i], chunks[i].copy());
+                i++;
+            } else if (i == size || highs[i] > other.highs[j]) {
+                result.append(other.highs[j], other.chunks[j].copy());
+                j++;
+            } else {
+                result.append(highs[i], chunks[i].or(other.chunks[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The values of this set that aren't in the other one.
+     */
+    public LongBitmap andNot(LongBitmap other) {
+        LongBitmap result = new LongBitmap();
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.highs[j] < highs[i]) {
+                j++;
+            }
+            result.append(highs[i], j < other.size && other.highs[j] == highs[i] ? chunks[i].andNot(other.chunks[j])
+                    : chunks[i].copy());
+        }
+        return result;
+    }
+
+    /**
+     * Calls the consumer with every value in ascending order.
+     */
+    public void forEach(LongConsumer consumer) {
+        for (int i = 0; i < size; i++) {
+            chunks[i].forEach(highs[i] << 16, consumer);
+        }
+    }
+
+    /**
+     * Calls the consumer with the first and last value of every run of consecutive values, in ascending order.
+     */
+    public void forEachRun(RunConsumer consumer) {
+        long[] run = { -1, -2 };
+        forEach(value -> {
+            if (value != run[1] + 1) {
+                if (run[0] >= 0) {
+                    consumer.accept(run[0], run[1]);
+                }
+                run[0] = value;
+            }
+            run[1] = value;
+        });
+        if (run[0] >= 0) {
+            consumer.accept(run[0], run[1]);
+        }
+    }
+
+    public long[] toArray() {
+        long[] values = new long[(int) getCardinality()];
+        int[] next = { 0 };
+        forEach(value -> values[next[0]++] = value);
+        return values;
+    }
+
+    public interface RunConsumer {
+        void accept(long first, long last);
+    }
+
+    private static void checkValue(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Bitmap values can't be negative: " + value);
+        }
+    }
+
+    private Chunk chunkFor(long high) {
+        int index = Arrays.binarySearch(highs, 0, size, high);
+        if (index >= 0) {
+            return chunks[index];
+        }
+        index = -index - 1;
+        grow();
+        System.arraycopy(highs, index, highs, index + 1, size - index);
+        System.arraycopy(chunks, index, chunks, index + 1, size - index);
+        highs[index] = high;
+        chunks[index] = new Chunk();
+        size++;
+        return chunks[index];
+    }
+
+    /* Adds a chunk above all the ones present, empty chunks are dropped */
+    private void append(long high, Chunk chunk) {
+        if (chunk.cardinality == 0) {
+            return;
+        }
+        grow();
+        highs[size] = high;
+        chunks[size] = chunk;
+        size++;
+    }
+
+    private void grow() {
+        if (size == highs.length) {
+            highs = Arrays.copyOf(highs, size * 2);
+            chunks = Arrays.copyOf(chunks, size * 2);
+        }
+    }
+
+    /* The values sharing one upper part, as a sorted array or, past ARRAY_MAX, a bitmap */
+    private static class Chunk {
+
+        private char[] values = new char[4];
+
+        private long[] words;
+
+        private int cardinality;
+
+        void add(char low) {
+            if (words != null) {
+                long bit = 1L << low;
+                if ((words[low >>> 6] & bit) == 0) {
+                    words[low >>> 6] |= bit;
+                    cardinality++;
+                }
+                return;
+            }
+            int index = Arrays.binarySearch(values, 0, cardinality, low);
+            if (index >= 0) {
+                return;
+            }
+            if (cardinality == ARRAY_MAX) {
+                toWords();
+                add(low);
+                return;
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(cardinality * 2, ARRAY_MAX));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = low;
+            cardinality++;
+        }
+
+        void addRange(int lo, int hi) {
+            if (words == null && cardinality + hi - lo + 1 <= ARRAY_MAX) {
+                for (int low = lo; low <= hi; low++) {
+                    add((char) low);
+                }
+                return;
+            }
+            if (words == null) {
+                toWords();
+            }
+            int first = lo >>> 6;
+            int last = hi >>> 6;
+            for (int word = first; word <= last; word++) {
+                long mask = -1L;
+                if (word == first) {
+                    mask &= -1L << lo;
+                }
+                if (word == last) {
+                    mask &= -1L >>> (63 - (hi & 63));
+                }
+                words[word] |= mask;
+            }
+            recount();
+        }
+
+        boolean contains(char low) {
+            if (words != null) {
+                return (words[low >>> 6] & (1L << low)) != 0;
+            }
+            return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+        }
+
+        Chunk and(Chunk other) {
+            Chunk result = new Chunk();
+            if (words != null && other.words != null) {
+                result.words = new long[WORDS];
+                for (int i = 0; i < WORDS; i++) {
+                    result.words[i] = words[i] & other.words[i];
+                }
+                result.recount();
+                result.shrink();
+                return result;
+            }
+            Chunk array = words == null ? this : other;
+            Chunk probe = array == this ? other : this;
+            result.values = new char[Math.max(array.cardinality, 1)];
+            for (int i = 0; i < array.cardinality; i++) {
+                if (probe.contains(array.values[i])) {
+                    result.values[result.cardinality++] = array.values[i];
+                }
+            }
+            return result;
+        }
+
+        Chunk or(Chunk other) {
+            if (words == null && other.words == null && cardinality + other.cardinality <= ARRAY_MAX) {
+                Chunk result = new Chunk();
+                result.values = new char[Math.max(cardinality + other.cardinality, 1)];
+                int i = 0;
+                int j = 0;
+                while (i < cardinality || j < other.cardinality) {
+                    char next;
+                    if (j == other.cardinality || (i < cardinality && values[i] < other.values[j])) {
+                        next = values[i++];
+                    } else if (i == cardinality || values[i] > other.values[j]) {
+                        next = other.values[j++];
+                    } else {
+                        next = values[i++];
+                        j++;
+                    }
+                    result.values[result.cardinality++] = next;
+                }
+                return result;
+            }
+            Chunk result = new Chunk();
+            result.words = new long[WORDS];
+            result.setWords(this);
+            result.setWords(other);
+            result.recount();
+            return result;
+        }
+
+        Chunk andNot(Chunk other) {
+            Chunk result = new Chunk();
+            if (words != null) {
+                result.words = words.clone();
+                if (other.words != null) {
+                    for (int i = 0; i < WORDS; i++) {
+                        result.words[i] &= ~other.words[i];
+                    }
+                } else {
+                    for (int i = 0; i < other.cardinality; i++) {
+                        char low = other.values[i];
+                        result.words[low >>> 6] &= ~(1L << low);
+                    }
+                }
+                result.recount();
+                result.shrink();
+                return result;
+            }
+            result.values = new char[Math.max(cardinality, 1)];
+            for (int i = 0; i < cardinality; i++) {
+                if (!other.contains(values[i])) {
+                    result.values[result.cardinality++] = values[i];
+                }
+            }
+            return result;
+        }
+
+        Chunk copy() {
+            Chunk copy = new Chunk();
+            copy.cardinality = cardinality;
+            copy.values = words == null ? Arrays.copyOf(values, Math.max(cardinality, 1)) : null;
+            copy.words = words == null ? null : words.clone();
+            return copy;
+        }
+
+        void forEach(long base, LongConsumer consumer) {
+            if (words == null) {
+                for (int i = 0; i < cardinality; i++) {
+                    consumer.accept(base | values[i]);
+                }
+                return;
+            }
+            for (int i = 0; i < WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    consumer.accept(base | (i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        private void setWords(Chunk chunk) {
+            if (chunk.words != null) {
+                for (int i = 0; i < WORDS; i++) {
+                    words[i] |= chunk.words[i];
+                }
+            } else {
+                for (int i = 0; i < chunk.cardinality; i++) {
+                    words[chunk.values[i] >>> 6] |= 1L << chunk.values[i];
+                }
+            }
+        }
+
+        private void toWords() {
+            long[] bits = new long[WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                bits[values[i] >>> 6] |= 1L << values[i];
+            }
+            words = bits;
+            values = null;
+        }
+
+        private void recount() {
+            cardinality = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+        }
+
+        /* Goes back to a sorted array once the bitmap holds few enough values */
+        private void shrink() {
+            if (cardinality > ARRAY_MAX) {
+                return;
+            }
+            char[] array = new char[Math.max(cardinality, 1)];
+            int next = 0;
+            for (int i = 0; i < WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    array[next++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            values = array;
+            words = null;
+        }
+    }
+}
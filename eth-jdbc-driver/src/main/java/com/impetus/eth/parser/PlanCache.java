@@ -0,0 +1,310 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.antlr.v4.runtime.CommonTokenStream;
+
+import com.impetus.blkch.BlkchnErrorListener;
+import com.impetus.blkch.sql.generated.BlkchnSqlLexer;
+import com.impetus.blkch.sql.generated.BlkchnSqlParser;
+import com.impetus.blkch.sql.generated.BlkchnSqlParser.SingleStatementContext;
+import com.impetus.blkch.sql.parser.BlockchainVisitor;
+import com.impetus.blkch.sql.parser.CaseInsensitiveCharStream;
+import com.impetus.blkch.sql.parser.LogicalPlan;
+import com.impetus.blkch.sql.parser.LogicalPlan.SQLType;
+import com.impetus.blkch.util.placeholder.InsertPlaceholderHandler;
+import com.impetus.blkch.util.placeholder.PlaceholderHandler;
+import com.impetus.blkch.util.placeholder.QueryPlaceholderHandler;
+
+/**
+ * Bounded LRU cache of parse trees keyed by normalized SQL. Numeric literals are replaced by placeholders before the
+ * lookup, so queries differing only in block numbers share one entry and skip ANTLR entirely. Parse trees are never
+ * modified after parsing; every lookup runs a fresh visitor over the shared tree and binds the literals through the
+ * placeholder handlers, so callers always get a plan of their own.
+ * <p>
+ * A hit saves lexing and parsing only. The BlockchainVisitor pass and the placeholder binding still run on every
+ * lookup: binding and execution change a LogicalPlan in place and the plan has no way to copy itself, so a bound plan
+ * can't be shared between queries.
+ */
+public class PlanCache {
+
+    public static final int DEFAULT_SIZE = 256;
+
+    private final Map<String, Template> templates;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    public PlanCache(final int maxSize) {
+        this.templates = Collections.synchronizedMap(new LinkedHashMap<String, Template>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Template> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    public LogicalPlan getLogicalPlan(String sql) {
+        if (sql.indexOf('?') >= 0) {
+            /* Real placeholders are bound by prepared statements, never guess at them */
+            return visit(parse(sql));
+        }
+        ParameterizedSql parameterized = parameterize(sql);
+        Template template = lookup(parameterized.getText(), true);
+        if (template.parameterized) {
+            return template.bind(parameterized.getValues());
+        }
+        return lookup(normalize(sql), false).bind(Collections.emptyList());
+    }
+
+    private Template lookup(String key, boolean parameterized) {
+        Template template = templates.get(key);
+        if (template != null) {
+            hits.incrementAndGet();
+            return template;
+        }
+        misses.incrementAndGet();
+        template = Template.compile(key, parameterized);
+        templates.put(key, template);
+        return template;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public int size() {
+        return templates.size();
+    }
+
+    public void clear() {
+        templates.clear();
+    }
+
+    static SingleStatementContext parse(String sql) {
+        BlkchnSqlLexer lexer = new BlkchnSqlLexer(new CaseInsensitiveCharStream(sql));
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(BlkchnErrorListener.INSTANCE);
+        BlkchnSqlParser parser = new BlkchnSqlParser(new CommonTokenStream(lexer));
+        parser.removeErrorListeners();
+        parser.addErrorListener(BlkchnErrorListener.INSTANCE);
+        return parser.singleStatement();
+    }
+
+    static LogicalPlan visit(SingleStatementContext tree) {
+        return (LogicalPlan) new BlockchainVisitor().visitSingleStatement(tree);
+    }
+
+    static PlaceholderHandler placeholderHandler(LogicalPlan logicalPlan) {
+        if (logicalPlan.getType() == SQLType.QUERY) {
+            return new QueryPlaceholderHandler(logicalPlan);
+        } else if (logicalPlan.getType() == SQLType.INSERT) {
+            return new InsertPlaceholderHandler(logicalPlan);
+        }
+        return null;
+    }
+
+    /**
+     * Collapses whitespace outside of quoted strings.
+     */
+    public static String normalize(String sql) {
+        StringBuilder builder = new StringBuilder(sql.length());
+        char quote = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (quote != 0) {
+                builder.append(c);
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (Character.isWhitespace(c)) {
+                if (builder.length() > 0 && builder.charAt(builder.length() - 1) != ' ') {
+                    builder.append(' ');
+                }
+            } else {
+                if (c == '\'' || c == '"') {
+                    quote = c;
+                }
+                builder.append(c);
+            }
+        }
+        int end = builder.length();
+        while (end > 0 && (builder.charAt(end - 1) == ' ' || builder.charAt(end - 1) == ';')) {
+            end--;
+        }
+        return builder.substring(0, end);
+    }
+
+    /**
+     * Normalizes the query and replaces its unsigned numeric literals by placeholders. Literals inside quotes, part of
+     * identifiers or following a minus sign are kept.
+     */
+    public static ParameterizedSql parameterize(String sql) {
+        String normalized = normalize(sql);
+        StringBuilder builder = new StringBuilder(normalized.length());
+        List<Object> values = new ArrayList<>();
+        char quote = 0;
+        int i = 0;
+        while (i < normalized.length()) {
+            char c = normalized.charAt(i);
+            if (quote != 0) {
+                builder.append(c);
+                if (c == quote) {
+                    quote = 0;
+                }
+                i++;
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+                builder.append(c);
+                i++;
+            } else if (Character.isDigit(c) && isLiteralStart(normalized, i)) {
+                int end = i;
+                while (end < normalized.length()
+                        && (Character.isDigit(normalized.charAt(end)) || normalized.charAt(end) == '.')) {
+                    end++;
+                }
+                if (end < normalized.length() && Character.isLetter(normalized.charAt(end))) {
+                    /* Something like 0x.. or 1e5, leave it to the lexer */
+                    builder.append(normalized, i, end);
+                } else {
+                    values.add(toValue(normalized.substring(i, end)));
+                    builder.append('?');
+                }
+                i = end;
+            } else {
+                builder.append(c);
+                i++;
+            }
+        }
+        return new ParameterizedSql(builder.toString(), values);
+    }
+
+    private static boolean isLiteralStart(String sql, int index) {
+        if (index == 0) {
+            return true;
+        }
+        char previous = sql.charAt(index - 1);
+        if (previous == ' ') {
+            return index < 2 || sql.charAt(index - 2) != '-';
+        }
+        return !(Character.isLetterOrDigit(previous) || previous == '_' || previous == '.' || previous == '-'
+                || previous == '$');
+    }
+
+    private static Object toValue(String literal) {
+        if (literal.indexOf('.') >= 0) {
+            return new BigDecimal(literal);
+        }
+        BigInteger value = new BigInteger(literal);
+        return value.bitLength() < 64 ? (Object) value.longValue() : value;
+    }
+
+    public static final class ParameterizedSql {
+
+        private final String text;
+
+        private final List<Object> values;
+
+        ParameterizedSql(String text, List<Object> values) {
+            this.text = text;
+            this.values = Collections.unmodifiableList(values);
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public List<Object> getValues() {
+            return values;
+        }
+    }
+
+    private static final class Template {
+
+        private final SingleStatementContext tree;
+
+        /* False when the placeholder form didn't parse or bind, callers then look up the literal text instead */
+        private final boolean parameterized;
+
+        private Template(SingleStatementContext tree, boolean parameterized) {
+            this.tree = tree;
+            this.parameterized = parameterized;
+        }
+
+        static Template compile(String sql, boolean parameterized) {
+            if (!parameterized || sql.indexOf('?') < 0) {
+                return new Template(parse(sql), true);
+            }
+            try {
+                SingleStatementContext tree = parse(sql);
+                PlaceholderHandler handler = placeholderHandler(visit(tree));
+                if (handler != null) {
+                    handler.setPlaceholderIndex();
+                    /* Every literal taken out must come back as a placeholder of the plan */
+                    if (handler.getIndexListCount() == countPlaceholders(sql)) {
+                        return new Template(tree, true);
+                    }
+                }
+            } catch (RuntimeException e) {
+                /* Literal in a position the grammar doesn't accept a placeholder */
+            }
+            return new Template(null, false);
+        }
+
+        LogicalPlan bind(List<Object> values) {
+            LogicalPlan logicalPlan = visit(tree);
+            if (!values.isEmpty()) {
+                PlaceholderHandler handler = placeholderHandler(logicalPlan);
+                handler.setPlaceholderIndex();
+                handler.alterLogicalPlan(values.toArray());
+            }
+            return logicalPlan;
+        }
+
+        private static int countPlaceholders(String sql) {
+            int count = 0;
+            char quote = 0;
+            for (int i = 0; i < sql.length(); i++) {
+                char c = sql.charAt(i);
+                if (quote != 0) {
+                    quote = c == quote ? 0 : quote;
+                } else if (c == '\'' || c == '"') {
+                    quote = c;
+                } else if (c == '?') {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+}
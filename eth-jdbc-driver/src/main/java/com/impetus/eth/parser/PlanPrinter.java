@@ -0,0 +1,161 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.impetus.blkch.sql.parser.PhysicalPlan;
+import com.impetus.blkch.sql.parser.TreeNode;
+import com.impetus.blkch.sql.query.Comparator;
+import com.impetus.blkch.sql.query.DataNode;
+import com.impetus.blkch.sql.query.DirectAPINode;
+import com.impetus.blkch.sql.query.FilterItem;
+import com.impetus.blkch.sql.query.GetRowsNode;
+import com.impetus.blkch.sql.query.IdentifierNode;
+import com.impetus.blkch.sql.query.LogicalOperation;
+import com.impetus.blkch.sql.query.RangeNode;
+import com.impetus.blkch.util.Range;
+import com.impetus.blkch.util.RangeOperations;
+import com.impetus.eth.query.EthTables;
+
+/**
+ * Renders a filter tree as indented text lines for EXPLAIN, one node per line.
+ */
+public class PlanPrinter {
+
+    private static final String INDENT = "  ";
+
+    private final PhysicalPlan physicalPlan;
+
+    private final BigInteger height;
+
+    private final ChainStatistics statistics;
+
+    /**
+     * @param height current chain height used to resolve open ended ranges, null to leave them open
+     * @param statistics source of transaction estimates, may be null
+     */
+    public PlanPrinter(PhysicalPlan physicalPlan, BigInteger height, ChainStatistics statistics) {
+        this.physicalPlan = physicalPlan;
+        this.height = height;
+        this.statistics = statistics;
+    }
+
+    public List<String> print(TreeNode node) {
+        List<String> lines = new ArrayList<>();
+        print(node, "", lines);
+        return lines;
+    }
+
+    private void print(TreeNode node, String indent, List<String> lines) {
+        if (node instanceof LogicalOperation) {
+            lines.add(indent + (((LogicalOperation) node).isAnd() ? "AND" : "OR"));
+            for (TreeNode child : node.getChildNodes()) {
+                print(child, indent + INDENT, lines);
+            }
+        } else if (node instanceof RangeNode) {
+            lines.add(indent + describeRange((RangeNode<?>) node));
+        } else if (node instanceof DirectAPINode) {
+            DirectAPINode direct = (DirectAPINode) node;
+            lines.add(indent + String.format("Direct API %s.%s = %s", direct.getTable(), direct.getColumn(),
+                    direct.getValue()));
+        } else if (node instanceof DataNode) {
+            DataNode<?> data = (DataNode<?>) node;
+            lines.add(indent + String.format("Fetched %s keys: %d", data.getTable(), data.getKeys().size()));
+        } else if (node instanceof FilterItem) {
+            lines.add(indent + "Filter " + text(node).trim());
+        } else if (node instanceof GetRowsNode) {
+            lines.add(indent + "Get rows");
+        } else {
+            lines.add(indent + node.getClass().getSimpleName());
+            for (TreeNode child : node.getChildNodes()) {
+                print(child, indent + INDENT, lines);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Number & Comparable<T>> String describeRange(RangeNode<T> node) {
+        RangeOperations<T> rangeOps = (RangeOperations<T>) physicalPlan.getRangeOperations(node.getTable(),
+                node.getColumn());
+        List<String> ranges = new ArrayList<>();
+        BigInteger blocks = BigInteger.ZERO;
+        double transactions = 0;
+        boolean estimated = statistics != null && (EthTables.TRANSACTION.equals(node.getTable())
+                || EthTables.RECEIPT.equals(node.getTable()) || EthTables.BLOCKTRANSACTION.equals(node.getTable()));
+        boolean bounded = true;
+        for (Range<T> range : node.getRangeList().getRanges()) {
+            BigInteger min = rangeOps.getMinValue().equals(range.getMin()) ? BigInteger.ZERO
+                    : new BigInteger(range.getMin().toString());
+            BigInteger max = null;
+            if (!rangeOps.getMaxValue().equals(range.getMax())) {
+                max = new BigInteger(range.getMax().toString());
+            } else if (height != null) {
+                max = height.subtract(BigInteger.ONE);
+            }
+            ranges.add(min + "-" + (max == null ? "latest" : max.toString()));
+            if (max == null) {
+                bounded = false;
+            } else if (max.compareTo(min) >= 0) {
+                blocks = blocks.add(max.subtract(min).add(BigInteger.ONE));
+                Double estimate = estimated ? statistics.estimateTransactions(min.longValue(), max.longValue()) : null;
+                if (estimate == null) {
+                    estimated = false;
+                } else {
+                    transactions += estimate;
+                }
+            }
+        }
+        String description = String.format("Range scan %s.%s %s (%s blocks", node.getTable(), node.getColumn(),
+                ranges, bounded ? blocks.toString() : "unbounded");
+        if (bounded && estimated) {
+            description += String.format(", est. %d transactions", Math.round(transactions));
+        }
+        return description + ")";
+    }
+
+    private static String text(TreeNode node) {
+        if (node instanceof IdentifierNode) {
+            return " " + ((IdentifierNode) node).getValue();
+        } else if (node instanceof Comparator) {
+            return " " + symbol((Comparator) node);
+        }
+        StringBuilder text = new StringBuilder();
+        for (TreeNode child : node.getChildNodes()) {
+            text.append(text(child));
+        }
+        return text.toString();
+    }
+
+    private static String symbol(Comparator comparator) {
+        if (comparator.isEQ()) {
+            return "=";
+        } else if (comparator.isNEQ()) {
+            return "<>";
+        } else if (comparator.isGT()) {
+            return ">";
+        } else if (comparator.isGTE()) {
+            return ">=";
+        } else if (comparator.isLT()) {
+            return "<";
+        } else if (comparator.isLTE()) {
+            return "<=";
+        }
+        return String.valueOf(comparator);
+    }
+}
@@ -0,0 +1,101 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+import com.impetus.blkch.BlkchnException;
+
+/**
+ * Literal of a comparison on a quantity column, parsed once per query. Nodes send quantities as hex strings without
+ * leading zeros, so the literal is kept as hex digits in the same form and a row value is compared digit by digit on
+ * its raw string without decoding it into a BigInteger.
+ */
+public final class QuantityLiteral {
+
+    /* Lower case hex digits of the integral part without leading zeros, empty for zero */
+    private final String digits;
+
+    private final boolean negative;
+
+    /* The literal lies strictly between digits and digits + 1 */
+    private final boolean fraction;
+
+    private QuantityLiteral(String digits, boolean negative, boolean fraction) {
+        this.digits = digits;
+        this.negative = negative;
+        this.fraction = fraction;
+    }
+
+    /**
+     * Parses a decimal or 0x prefixed hex literal.
+     */
+    public static QuantityLiteral parse(String value) {
+        String text = value.trim();
+        if (text.startsWith("0x") || text.startsWith("0X")) {
+            String hex = text.substring(2).toLowerCase();
+            int start = 0;
+            while (start < hex.length() && hex.charAt(start) == '0') {
+                start++;
+            }
+            for (int i = start; i < hex.length(); i++) {
+                if (Character.digit(hex.charAt(i), 16) < 0) {
+                    throw new BlkchnException(value + " is not a number");
+                }
+            }
+            return new QuantityLiteral(hex.substring(start), false, false);
+        }
+        BigDecimal decimal;
+        try {
+            decimal = new BigDecimal(text);
+        } catch (NumberFormatException e) {
+            throw new BlkchnException(value + " is not a number");
+        }
+        if (decimal.signum() < 0) {
+            return new QuantityLiteral("", true, false);
+        }
+        BigInteger floor = decimal.setScale(0, RoundingMode.FLOOR).toBigInteger();
+        boolean fraction = decimal.compareTo(new BigDecimal(floor)) != 0;
+        return new QuantityLiteral(floor.signum() == 0 ? "" : floor.toString(16), false, fraction);
+    }
+
+    /**
+     * Sign of the raw hex quantity minus this literal.
+     */
+    public int compareTo(String raw) {
+        if (negative) {
+            return 1;
+        }
+        int start = raw.startsWith("0x") || raw.startsWith("0X") ? 2 : 0;
+        while (start < raw.length() && raw.charAt(start) == '0') {
+            start++;
+        }
+        int length = raw.length() - start;
+        if (length != digits.length()) {
+            return length < digits.length() ? -1 : 1;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = Character.toLowerCase(raw.charAt(start + i));
+            char d = digits.charAt(i);
+            if (c != d) {
+                return c < d ? -1 : 1;
+            }
+        }
+        return fraction ? -1 : 0;
+    }
+}
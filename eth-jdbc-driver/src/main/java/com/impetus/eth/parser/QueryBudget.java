@@ -0,0 +1,210 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.impetus.blkch.BlkchnException;
+import com.impetus.eth.jdbc.DriverConstants;
+
+/**
+ * Limits on what one query may consume: blocks scanned, rpc calls, estimated heap bytes of the rows it buffers and
+ * wall time. A limit of 0 means unlimited. The limits set on a connection or statement are a template, every run
+ * gets its own counters from {@link #forQuery()}. Counters are shared by the threads of a parallel scan.
+ */
+public class QueryBudget {
+
+    public static final long UNLIMITED = 0;
+
+    /* Program limit exceeded */
+    public static final String SQL_STATE = "54000";
+
+    private final long maxBlocks;
+
+    private final long maxRpcCalls;
+
+    private final long maxBufferedBytes;
+
+    private final long maxMillis;
+
+    private final AtomicLong blocks;
+
+    private final AtomicLong rpcCalls;
+
+    private final AtomicLong bufferedBytes = new AtomicLong();
+
+    private final long startNanos;
+
+    /* Set once a limit is hit, so a check whose exception got swallowed by a scan is reported again */
+    private volatile String exceeded;
+
+    public QueryBudget(long maxBlocks, long maxRpcCalls, long maxBufferedBytes, long maxMillis) {
+        this(maxBlocks, maxRpcCalls, maxBufferedBytes, maxMillis, new AtomicLong(), new AtomicLong(),
+                System.nanoTime());
+    }
+
+    private QueryBudget(long maxBlocks, long maxRpcCalls, long maxBufferedBytes, long maxMillis, AtomicLong blocks,
+            AtomicLong rpcCalls, long startNanos) {
+        this.maxBlocks = maxBlocks;
+        this.maxRpcCalls = maxRpcCalls;
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.maxMillis = maxMillis;
+        this.blocks = blocks;
+        this.rpcCalls = rpcCalls;
+        this.startNanos = startNanos;
+    }
+
+    public static QueryBudget fromProperties(Properties properties) {
+        return new QueryBudget(getLong(properties, DriverConstants.MAX_SCAN_BLOCKS),
+                getLong(properties, DriverConstants.MAX_RPC_CALLS),
+                getLong(properties, DriverConstants.MAX_BUFFERED_BYTES),
+                getLong(properties, DriverConstants.MAX_QUERY_MILLIS));
+    }
+
+    private static long getLong(Properties properties, String key) {
+        return properties == null ? UNLIMITED
+                : Long.parseLong(properties.getProperty(key, String.valueOf(UNLIMITED)));
+    }
+
+    /**
+     * The same limits with fresh counters and the clock started now.
+     */
+    public QueryBudget forQuery() {
+        return new QueryBudget(maxBlocks, maxRpcCalls, maxBufferedBytes, maxMillis);
+    }
+
+    /**
+     * A budget for one part of a query whose rows are released before the next part runs, such as one block of a
+     * stream. It shares the block, rpc call and time counters of this budget and counts buffered bytes on its own.
+     */
+    public QueryBudget forPart() {
+        return new QueryBudget(maxBlocks, maxRpcCalls, maxBufferedBytes, maxMillis, blocks, rpcCalls, startNanos);
+    }
+
+    public boolean isUnlimited() {
+        return maxBlocks <= 0 && maxRpcCalls <= 0 && maxBufferedBytes <= 0 && maxMillis <= 0;
+    }
+
+    public boolean limitsBufferedBytes() {
+        return maxBufferedBytes > 0;
+    }
+
+    /**
+     * Rejects a query up front when the blocks its ranges cover already exceed the limit.
+     */
+    public void checkEstimate(long estimatedBlocks) {
+        if (maxBlocks > 0 && estimatedBlocks > maxBlocks) {
+            fail(String.format("Query would scan about %d blocks, the limit is %d. Narrow the block range",
+                    estimatedBlocks, maxBlocks));
+        }
+    }
+
+    public void blocks(long count) {
+        if (blocks.addAndGet(count) > maxBlocks && maxBlocks > 0) {
+            fail(String.format("Query scanned more than %d blocks", maxBlocks));
+        }
+        check();
+    }
+
+    public void rpc() {
+        if (rpcCalls.incrementAndGet() > maxRpcCalls && maxRpcCalls > 0) {
+            fail(String.format("Query made more than %d rpc calls", maxRpcCalls));
+        }
+        check();
+    }
+
+    public void buffer(long bytes) {
+        if (bufferedBytes.addAndGet(bytes) > maxBufferedBytes && maxBufferedBytes > 0) {
+            fail(String.format("Query buffered more than %d bytes of rows", maxBufferedBytes));
+        }
+    }
+
+    /**
+     * Throws if a limit was hit earlier or the wall time ran out.
+     */
+    public void check() {
+        checkExceeded();
+        if (maxMillis > 0 && (System.nanoTime() - startNanos) / 1000000 > maxMillis) {
+            fail(String.format("Query ran for more than %d ms", maxMillis));
+        }
+    }
+
+    /**
+     * Throws again if a limit was hit earlier, for checks whose exception was swallowed along the way.
+     */
+    public void checkExceeded() {
+        if (exceeded != null) {
+            throw new ExceededException(exceeded);
+        }
+    }
+
+    private void fail(String message) {
+        exceeded = message;
+        throw new ExceededException(message);
+    }
+
+    public long getBlocks() {
+        return blocks.get();
+    }
+
+    public long getRpcCalls() {
+        return rpcCalls.get();
+    }
+
+    public long getBufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    public long getMaxBlocks() {
+        return maxBlocks;
+    }
+
+    public long getMaxRpcCalls() {
+        return maxRpcCalls;
+    }
+
+    public long getMaxBufferedBytes() {
+        return maxBufferedBytes;
+    }
+
+    public long getMaxMillis() {
+        return maxMillis;
+    }
+
+    /**
+     * Reports an exception thrown by a query run under a budget. An exceeded limit, possibly wrapped by the scan that
+     * hit it, becomes an SQLException with SQLState 54000; anything else is rethrown as it is.
+     */
+    public static SQLException toSQLException(BlkchnException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ExceededException) {
+                return new SQLException(cause.getMessage(), SQL_STATE, e);
+            }
+        }
+        throw e;
+    }
+
+    public static class ExceededException extends BlkchnException {
+
+        private static final long serialVersionUID = 1L;
+
+        public ExceededException(String message) {
+            super(message);
+        }
+    }
+}
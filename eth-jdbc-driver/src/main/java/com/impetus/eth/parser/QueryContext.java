@@ -0,0 +1,174 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.impetus.blkch.BlkchnException;
+
+/**
+ * Deadline and cancellation of one query run. The executor checks it before every rpc call and every block it reads,
+ * and the threads working for the query register themselves while they do, so that cancelling interrupts the ones
+ * blocked in a wait. A timer cancels the run when its timeout fires, also while no check is reached.
+ */
+public class QueryContext {
+
+    /* Query canceled */
+    public static final String SQL_STATE = "57014";
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "eth-query-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final long timeoutMillis;
+
+    /* Threads working for the query, with how many times each entered */
+    private final Map<Thread, Integer> threads = new HashMap<>();
+
+    private volatile boolean cancelled;
+
+    private volatile boolean timedOut;
+
+    private ScheduledFuture<?> timeout;
+
+    /**
+     * @param timeoutMillis time the run may take from its first {@link #enter()}, 0 for no limit
+     */
+    public QueryContext(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Registers the calling thread as working for the query and starts the clock on the first call.
+     */
+    public synchronized void enter() {
+        if (timeoutMillis > 0 && timeout == null) {
+            timeout = TIMER.schedule(this::timeOut, timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        threads.merge(Thread.currentThread(), 1, Integer::sum);
+        check();
+    }
+
+    /**
+     * Unregisters the calling thread. An interrupt sent by this context is cleared, so pool threads go back clean.
+     */
+    public synchronized void exit() {
+        Thread thread = Thread.currentThread();
+        Integer entered = threads.get(thread);
+        if (entered != null && entered > 1) {
+            threads.put(thread, entered - 1);
+            return;
+        }
+        threads.remove(thread);
+        if (cancelled) {
+            Thread.interrupted();
+        }
+    }
+
+    public void check() {
+        if (cancelled) {
+            throw new CancelledException(getMessage(), timedOut);
+        }
+    }
+
+    private void timeOut() {
+        timedOut = true;
+        cancel();
+    }
+
+    /**
+     * Makes the next check of every thread of the query fail and interrupts the ones registered.
+     */
+    public synchronized void cancel() {
+        if (cancelled) {
+            return;
+        }
+        cancelled = true;
+        for (Thread thread : threads.keySet()) {
+            thread.interrupt();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Stops the timer once the run is over.
+     */
+    public synchronized void close() {
+        if (timeout != null) {
+            timeout.cancel(false);
+        }
+    }
+
+    private String getMessage() {
+        return timedOut ? "Query timed out after " + timeoutMillis + " ms" : "Query was cancelled";
+    }
+
+    /**
+     * The exception reported for a failure of a run that was cancelled, whatever the failure looked like where it
+     * surfaced; an interrupted node call usually shows up as an IO error.
+     */
+    public CancelledException cancelled(Throwable cause) {
+        if (cause instanceof CancelledException) {
+            return (CancelledException) cause;
+        }
+        return new CancelledException(getMessage(), timedOut, cause);
+    }
+
+    /**
+     * SQLTimeoutException for a run that timed out, SQLException with SQLState 57014 for one that was cancelled.
+     */
+    public static SQLException toSQLException(CancelledException e) {
+        return e.isTimeout() ? new SQLTimeoutException(e.getMessage(), SQL_STATE, e)
+                : new SQLException(e.getMessage(), SQL_STATE, e);
+    }
+
+    public static class CancelledException extends BlkchnException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final boolean timeout;
+
+        public CancelledException(String message, boolean timeout) {
+            super(message);
+            this.timeout = timeout;
+        }
+
+        public CancelledException(String message, boolean timeout, Throwable cause) {
+            super(message, cause);
+            this.timeout = timeout;
+        }
+
+        public boolean isTimeout() {
+            return timeout;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import com.impetus.blkch.sql.DataFrame;
+
+/**
+ * Per operator costs of one query run, collected for EXPLAIN ANALYZE. Operators run one after another, so rpc calls,
+ * cache hits and rows are charged to whichever operator is currently open, also when they come from the threads of a
+ * parallel range scan.
+ */
+public class QueryProfile {
+
+    public static final String[] COLUMNS = { "operator", "wall_ms", "rpc_calls", "bytes_received", "rows_in",
+            "rows_out", "cache_hits" };
+
+    private final List<Operator> operators = new ArrayList<>();
+
+    private final LongSupplier bytesReceived;
+
+    private Operator current;
+
+    /**
+     * @param bytesReceived running count of bytes read from the node, returning -1 when the transport can't count
+     */
+    public QueryProfile(LongSupplier bytesReceived) {
+        this.bytesReceived = bytesReceived;
+    }
+
+    public synchronized void begin(String name, long rowsIn) {
+        if (current != null) {
+            end(-1);
+        }
+        current = new Operator(name, rowsIn, System.nanoTime(), bytesReceived.getAsLong());
+        operators.add(current);
+    }
+
+    public synchronized void end(long rowsOut) {
+        if (current == null) {
+            return;
+        }
+        current.nanos = System.nanoTime() - current.startNanos;
+        long bytes = bytesReceived.getAsLong();
+        current.bytes = bytes < 0 || current.startBytes < 0 ? -1 : bytes - current.startBytes;
+        current.rowsOut = rowsOut;
+        current = null;
+    }
+
+    public synchronized void rpc() {
+        if (current != null) {
+            current.rpcs++;
+        }
+    }
+
+    public synchronized void cacheHit() {
+        if (current != null) {
+            current.cacheHits++;
+        }
+    }
+
+    public synchronized void rowIn() {
+        if (current != null) {
+            current.rowsIn = Math.max(current.rowsIn, 0) + 1;
+        }
+    }
+
+    public synchronized List<Operator> getOperators() {
+        return Collections.unmodifiableList(operators);
+    }
+
+    public synchronized DataFrame toDataFrame() {
+        end(-1);
+        List<List<Object>> rows = new ArrayList<>();
+        for (Operator op : operators) {
+            rows.add(Arrays.asList(op.name, op.nanos / 1e6, op.rpcs, nullIfUnknown(op.bytes), nullIfUnknown(op.rowsIn),
+                    nullIfUnknown(op.rowsOut), op.cacheHits));
+        }
+        return new DataFrame(rows, COLUMNS, new HashMap<>());
+    }
+
+    public static Map<String, Integer> getColumnTypeMap() {
+        Map<String, Integer> typeMap = new LinkedHashMap<>();
+        for (String column : COLUMNS) {
+            typeMap.put(column, Types.BIGINT);
+        }
+        typeMap.put("operator", Types.VARCHAR);
+        typeMap.put("wall_ms", Types.DOUBLE);
+        return typeMap;
+    }
+
+    private static Long nullIfUnknown(long value) {
+        return value < 0 ? null : value;
+    }
+
+    public static class Operator {
+
+        private final String name;
+
+        private final long startNanos;
+
+        private final long startBytes;
+
+        private long nanos;
+
+        private long bytes = -1;
+
+        private long rpcs;
+
+        private long cacheHits;
+
+        private long rowsIn;
+
+        private long rowsOut = -1;
+
+        private Operator(String name, long rowsIn, long startNanos, long startBytes) {
+            this.name = name;
+            this.rowsIn = rowsIn;
+            this.startNanos = startNanos;
+            this.startBytes = startBytes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getRpcs() {
+            return rpcs;
+        }
+
+        public long getCacheHits() {
+            return cacheHits;
+        }
+
+        public long getRowsIn() {
+            return rowsIn;
+        }
+
+        public long getRowsOut() {
+            return rowsOut;
+        }
+    }
+}
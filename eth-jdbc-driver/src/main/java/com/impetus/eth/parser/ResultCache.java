@@ -0,0 +1,163 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.impetus.blkch.sql.DataFrame;
+
+/**
+ * Results of queries that only read finalized blocks, keyed by chain, normalized SQL and bound parameters. Such a
+ * result can't change anymore, so a repeated query is answered without touching the node. Entries are evicted least
+ * recently used first once their estimated size passes the memory bound.
+ */
+public class ResultCache {
+
+    public static final long DEFAULT_SIZE = 64L * 1024 * 1024;
+
+    public static final long DEFAULT_FINALITY_DEPTH = 64;
+
+    private final long maxBytes;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long bytes;
+
+    private long hitCount;
+
+    private long missCount;
+
+    public ResultCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public static String key(String chainId, String sql, Object[] parameters) {
+        String key = chainId + '\n' + PlanCache.normalize(sql);
+        return parameters == null ? key : key + '\n' + Arrays.deepToString(parameters);
+    }
+
+    /**
+     * Whether a query reading up to the given block is final with the chain at the given latest block.
+     */
+    public static boolean isFinal(long[] blockBounds, long latestBlock, long finalityDepth) {
+        return blockBounds != null && blockBounds[1] != Long.MAX_VALUE
+                && blockBounds[1] <= latestBlock - finalityDepth;
+    }
+
+    public synchronized Entry get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            missCount++;
+        } else {
+            hitCount++;
+        }
+        return entry;
+    }
+
+    public synchronized void put(String key, DataFrame dataframe, Map<String, Integer> columnTypes) {
+        // a hit only needs the rows, the node objects they were read from would be kept without being counted
+        dataframe.setRawData(null);
+        long size = estimateSize(key, dataframe);
+        if (size > maxBytes) {
+            return;
+        }
+        Entry previous = entries.put(key, new Entry(dataframe, columnTypes, size));
+        bytes += size - (previous == null ? 0 : previous.size);
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (bytes > maxBytes) {
+            bytes -= eldest.next().size;
+            eldest.remove();
+        }
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /* Rough heap footprint, enough to keep the cache near its bound */
+    static long estimateSize(String key, DataFrame dataframe) {
+        long size = 64 + 2L * key.length() + 48L * dataframe.getColumnNamesMap().size();
+        for (List<Object> row : dataframe.getData()) {
+            size += 16 + estimateSize(row);
+        }
+        return size;
+    }
+
+    static long estimateSize(Object value) {
+        if (value == null) {
+            return 4;
+        } else if (value instanceof String) {
+            return 40 + 2L * ((String) value).length();
+        } else if (value instanceof BigInteger) {
+            return 40 + ((BigInteger) value).bitLength() / 8;
+        } else if (value instanceof Number || value instanceof Boolean) {
+            return 24;
+        } else if (value instanceof Collection) {
+            long size = 24;
+            for (Object element : (Collection<?>) value) {
+                size += 8 + estimateSize(element);
+            }
+            return size;
+        }
+        return 256;
+    }
+
+    public static class Entry {
+
+        private final DataFrame dataframe;
+
+        private final Map<String, Integer> columnTypes;
+
+        private final long size;
+
+        Entry(DataFrame dataframe, Map<String, Integer> columnTypes, long size) {
+            this.dataframe = dataframe;
+            this.columnTypes = columnTypes;
+            this.size = size;
+        }
+
+        public DataFrame getDataFrame() {
+            return dataframe;
+        }
+
+        public Map<String, Integer> getColumnTypes() {
+            return columnTypes;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import java.math.BigDecimal;
+
+/**
+ * Scales a count or sum computed over sampled blocks up to the whole range and estimates its error. Blocks are the
+ * sampling unit, so the per block totals of the group are what the variance is taken over; blocks in which the group
+ * had no rows count as zeros through the number of sampled blocks.
+ */
+public class SampledAccumulator implements Accumulator {
+
+    private static final long serialVersionUID = 1L;
+
+    /* Two sided 95% confidence */
+    private static final double Z = 1.96;
+
+    private final boolean count;
+
+    private double blockTotal;
+
+    private boolean inBlock;
+
+    private double total;
+
+    private double sumOfSquares;
+
+    public SampledAccumulator(boolean count) {
+        this.count = count;
+    }
+
+    @Override
+    public void add(Object value) {
+        if (value == null) {
+            return;
+        }
+        blockTotal += count ? 1 : toDouble(value);
+        inBlock = true;
+    }
+
+    /**
+     * Closes the current block, returns false if nothing was added since the last call.
+     */
+    public boolean closeBlock() {
+        if (!inBlock) {
+            return false;
+        }
+        total += blockTotal;
+        sumOfSquares += blockTotal * blockTotal;
+        blockTotal = 0;
+        inBlock = false;
+        return true;
+    }
+
+    @Override
+    public void merge(Accumulator other) {
+        SampledAccumulator that = (SampledAccumulator) other;
+        that.closeBlock();
+        closeBlock();
+        total += that.total;
+        sumOfSquares += that.sumOfSquares;
+    }
+
+    /* Without the sample sizes this is just the total over the sampled blocks */
+    @Override
+    public Object result() {
+        closeBlock();
+        return count ? (Object) Math.round(total) : total;
+    }
+
+    public Object estimate(long populationBlocks, long sampledBlocks) {
+        closeBlock();
+        double estimate = sampledBlocks == 0 ? 0 : total * populationBlocks / sampledBlocks;
+        if (count) {
+            long rounded = Math.round(estimate);
+            return rounded <= Integer.MAX_VALUE ? (Object) (int) rounded : (Object) rounded;
+        }
+        return estimate;
+    }
+
+    /**
+     * Half width of the 95% confidence interval of the estimate, null when fewer than two blocks were sampled.
+     */
+    public Double error(long populationBlocks, long sampledBlocks) {
+        closeBlock();
+        if (sampledBlocks < 2) {
+            return null;
+        }
+        double n = sampledBlocks;
+        double variance = Math.max(0, (sumOfSquares - total * total / n) / (n - 1));
+        double finiteCorrection = Math.max(0, 1 - n / populationBlocks);
+        return Z * populationBlocks * Math.sqrt(finiteCorrection * variance / n);
+    }
+
+    private static double toDouble(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return new BigDecimal(value.toString()).doubleValue();
+    }
+}
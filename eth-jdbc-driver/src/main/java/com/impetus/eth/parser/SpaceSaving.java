@@ -0,0 +1,207 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.impetus.blkch.BlkchnException;
+
+/**
+ * Space-Saving heavy hitter summary backing approx_top_k. It monitors a fixed number of counters, a few times k, and
+ * when a new value arrives while all are taken it evicts the smallest one and inherits its count as the error. Any
+ * value occurring more than total / capacity times is guaranteed to be monitored. Summaries merge as described by
+ * Agarwal et al, counting an absent value at the other side's minimum when that side is full. The counters also form a
+ * min-heap on their count, so an increment or an eviction costs log capacity instead of a scan of every counter.
+ */
+public class SpaceSaving implements Accumulator {
+
+    private static final long serialVersionUID = 1L;
+
+    static final int CAPACITY_FACTOR = 10;
+
+    private final int k;
+
+    private final int capacity;
+
+    private final Map<Object, Counter> counters;
+
+    /* Heap ordered by count, the smallest counter first */
+    private final Counter[] heap;
+
+    private int size;
+
+    public SpaceSaving(int k) {
+        if (k <= 0) {
+            throw new BlkchnException("approx_top_k needs a positive k, found " + k);
+        }
+        this.k = k;
+        this.capacity = k * CAPACITY_FACTOR;
+        this.counters = new HashMap<>(capacity * 2);
+        this.heap = new Counter[capacity];
+    }
+
+    @Override
+    public void add(Object value) {
+        if (value == null) {
+            return;
+        }
+        Counter counter = counters.get(value);
+        if (counter != null) {
+            counter.count++;
+            siftDown(counter.index);
+        } else if (size < capacity) {
+            counter = new Counter(value, 1, 0);
+            counters.put(value, counter);
+            counter.index = size;
+            heap[size++] = counter;
+            siftUp(counter.index);
+        } else {
+            Counter evicted = heap[0];
+            counters.remove(evicted.value);
+            counter = new Counter(value, evicted.count + 1, evicted.count);
+            counters.put(value, counter);
+            counter.index = 0;
+            heap[0] = counter;
+            siftDown(0);
+        }
+    }
+
+    private long floor() {
+        return size < capacity ? 0 : heap[0].count;
+    }
+
+    @Override
+    public void merge(Accumulator other) {
+        SpaceSaving that = (SpaceSaving) other;
+        long thisFloor = floor();
+        long thatFloor = that.floor();
+        List<Counter> merged = new ArrayList<>(counters.size() + that.counters.size());
+        for (Counter mine : counters.values()) {
+            Counter theirs = that.counters.get(mine.value);
+            if (theirs == null) {
+                merged.add(new Counter(mine.value, mine.count + thatFloor, mine.error + thatFloor));
+            } else {
+                merged.add(new Counter(mine.value, mine.count + theirs.count, mine.error + theirs.error));
+            }
+        }
+        for (Counter theirs : that.counters.values()) {
+            if (!counters.containsKey(theirs.value)) {
+                merged.add(new Counter(theirs.value, theirs.count + thisFloor, theirs.error + thisFloor));
+            }
+        }
+        sortByCount(merged);
+        counters.clear();
+        Arrays.fill(heap, null);
+        size = Math.min(merged.size(), capacity);
+        /* Largest first, so the reversed prefix is already a valid min-heap */
+        for (int i = 0; i < size; i++) {
+            Counter counter = merged.get(size - 1 - i);
+            counter.index = i;
+            heap[i] = counter;
+            counters.put(counter.value, counter);
+        }
+    }
+
+    /**
+     * Returns the k most frequent values with their estimated counts, most frequent first. Estimates never
+     * undercount and overcount by at most the error kept with each counter.
+     */
+    @Override
+    public Object result() {
+        List<Counter> sorted = new ArrayList<>(counters.values());
+        sortByCount(sorted);
+        Map<Object, Long> topK = new LinkedHashMap<>();
+        for (Counter counter : sorted) {
+            if (topK.size() == k) {
+                break;
+            }
+            topK.put(counter.value, counter.count);
+        }
+        return topK;
+    }
+
+    public long getError(Object value) {
+        Counter counter = counters.get(value);
+        return counter == null ? floor() : counter.error;
+    }
+
+    private static void sortByCount(List<Counter> list) {
+        list.sort((a, b) -> Long.compare(b.count, a.count));
+    }
+
+    private void siftUp(int index) {
+        Counter counter = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent].count <= counter.count) {
+                break;
+            }
+            place(heap[parent], index);
+            index = parent;
+        }
+        place(counter, index);
+    }
+
+    private void siftDown(int index) {
+        Counter counter = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                child++;
+            }
+            if (counter.count <= heap[child].count) {
+                break;
+            }
+            place(heap[child], index);
+            index = child;
+        }
+        place(counter, index);
+    }
+
+    private void place(Counter counter, int index) {
+        heap[index] = counter;
+        counter.index = index;
+    }
+
+    /* A monitored value with its estimated count, the overestimate it may carry and its position in the heap */
+    private static class Counter implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Object value;
+
+        private long count;
+
+        private final long error;
+
+        private int index;
+
+        Counter(Object value, long count, long error) {
+            this.value = value;
+            this.count = count;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Pattern matching over query text for the rewriters that run before parsing. Matches starting inside a single or
+ * double quoted string are skipped, so a literal that reads like a predicate is never rewritten.
+ */
+final class SqlText {
+
+    private final String sql;
+
+    private final Matcher matcher;
+
+    private int scanned;
+
+    private char quote;
+
+    private int from;
+
+    private SqlText(Pattern pattern, String sql) {
+        this.sql = sql;
+        this.matcher = pattern.matcher(sql);
+    }
+
+    static boolean containsOutsideQuotes(Pattern pattern, String sql) {
+        return new SqlText(pattern, sql).find();
+    }
+
+    /**
+     * Replaces every match outside quotes with what the function makes of it.
+     */
+    static String replaceOutsideQuotes(Pattern pattern, String sql, Function<Matcher, String> replacement) {
+        SqlText text = new SqlText(pattern, sql);
+        StringBuilder rewritten = new StringBuilder();
+        int copied = 0;
+        while (text.find()) {
+            rewritten.append(sql, copied, text.matcher.start()).append(replacement.apply(text.matcher));
+            copied = text.matcher.end();
+        }
+        return rewritten.append(sql, copied, sql.length()).toString();
+    }
+
+    private boolean find() {
+        while (matcher.find(from)) {
+            for (; scanned < matcher.start(); scanned++) {
+                char c = sql.charAt(scanned);
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '\'' || c == '"') {
+                    quote = c;
+                }
+            }
+            if (quote != 0) {
+                // the match starts inside a literal, look again after it
+                from = sql.indexOf(quote, scanned);
+                if (from < 0) {
+                    return false;
+                }
+                continue;
+            }
+            // quoted values in a match are whole literals, so the scan resumes outside quotes
+            scanned = matcher.end();
+            from = matcher.end();
+            return true;
+        }
+        return false;
+    }
+}
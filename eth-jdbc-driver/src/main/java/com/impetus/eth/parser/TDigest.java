@@ -0,0 +1,203 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import com.impetus.blkch.BlkchnException;
+
+/**
+ * Merging t-digest backing approx_percentile. Incoming values are buffered and periodically merged into about
+ * compression / 2 centroids, sized by the arcsine scale function so the ones near the tails stay small. Digests
+ * merge by feeding the other side's centroids through the same buffer.
+ */
+public class TDigest implements Accumulator {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final double DEFAULT_COMPRESSION = 100;
+
+    private final double compression;
+
+    private final double quantile;
+
+    private double[] means;
+
+    private double[] weights;
+
+    private int centroids;
+
+    private final double[] bufferMeans;
+
+    private final double[] bufferWeights;
+
+    private int buffered;
+
+    private double totalWeight;
+
+    private double min = Double.POSITIVE_INFINITY;
+
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public TDigest(double quantile) {
+        this(quantile, DEFAULT_COMPRESSION);
+    }
+
+    public TDigest(double quantile, double compression) {
+        if (quantile < 0 || quantile > 1) {
+            throw new BlkchnException("Percentile should be between 0 and 1, found " + quantile);
+        }
+        this.quantile = quantile;
+        this.compression = compression;
+        int capacity = (int) Math.ceil(2 * compression) + 10;
+        this.means = new double[capacity];
+        this.weights = new double[capacity];
+        this.bufferMeans = new double[5 * capacity];
+        this.bufferWeights = new double[5 * capacity];
+    }
+
+    @Override
+    public void add(Object value) {
+        if (value == null) {
+            return;
+        }
+        add(toDouble(value), 1);
+    }
+
+    public void add(double value, double weight) {
+        if (buffered == bufferMeans.length) {
+            compress();
+        }
+        bufferMeans[buffered] = value;
+        bufferWeights[buffered] = weight;
+        buffered++;
+        totalWeight += weight;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    @Override
+    public void merge(Accumulator other) {
+        TDigest that = (TDigest) other;
+        that.compress();
+        for (int i = 0; i < that.centroids; i++) {
+            add(that.means[i], that.weights[i]);
+        }
+    }
+
+    @Override
+    public Object result() {
+        return totalWeight == 0 ? null : quantile(quantile);
+    }
+
+    public double quantile(double q) {
+        compress();
+        if (centroids == 1) {
+            return means[0];
+        }
+        double target = q * totalWeight;
+        double cumulative = 0;
+        double previousCenter = 0;
+        double previousMean = min;
+        for (int i = 0; i < centroids; i++) {
+            double center = cumulative + weights[i] / 2;
+            if (target < center) {
+                double span = center - previousCenter;
+                return span == 0 ? means[i]
+                        : previousMean + (target - previousCenter) / span * (means[i] - previousMean);
+            }
+            cumulative += weights[i];
+            previousCenter = center;
+            previousMean = means[i];
+        }
+        double span = totalWeight - previousCenter;
+        return span == 0 ? max : previousMean + (target - previousCenter) / span * (max - previousMean);
+    }
+
+    public int getCentroidCount() {
+        compress();
+        return centroids;
+    }
+
+    private void compress() {
+        if (buffered == 0) {
+            return;
+        }
+        int n = centroids + buffered;
+        double[] allMeans = Arrays.copyOf(means, n);
+        double[] allWeights = Arrays.copyOf(weights, n);
+        System.arraycopy(bufferMeans, 0, allMeans, centroids, buffered);
+        System.arraycopy(bufferWeights, 0, allWeights, centroids, buffered);
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(allMeans[a], allMeans[b]));
+        double[] newMeans = new double[means.length];
+        double[] newWeights = new double[weights.length];
+        int count = 0;
+        double soFar = 0;
+        double curMean = allMeans[order[0]];
+        double curWeight = allWeights[order[0]];
+        for (int i = 1; i < n; i++) {
+            double mean = allMeans[order[i]];
+            double weight = allWeights[order[i]];
+            double proposed = curWeight + weight;
+            if (scale((soFar + proposed) / totalWeight) - scale(soFar / totalWeight) <= 1) {
+                curMean += (mean - curMean) * weight / proposed;
+                curWeight = proposed;
+            } else {
+                if (count == newMeans.length) {
+                    newMeans = Arrays.copyOf(newMeans, count * 2);
+                    newWeights = Arrays.copyOf(newWeights, count * 2);
+                }
+                newMeans[count] = curMean;
+                newWeights[count] = curWeight;
+                count++;
+                soFar += curWeight;
+                curMean = mean;
+                curWeight = weight;
+            }
+        }
+        if (count == newMeans.length) {
+            newMeans = Arrays.copyOf(newMeans, count + 1);
+            newWeights = Arrays.copyOf(newWeights, count + 1);
+        }
+        newMeans[count] = curMean;
+        newWeights[count] = curWeight;
+        means = newMeans;
+        weights = newWeights;
+        centroids = count + 1;
+        buffered = 0;
+    }
+
+    /* k1 scale function, one unit of k per centroid keeps their number below compression / 2 */
+    private double scale(double q) {
+        return compression / (2 * Math.PI) * Math.asin(2 * Math.min(1, q) - 1);
+    }
+
+    private static double toDouble(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        try {
+            return new BigDecimal(value.toString()).doubleValue();
+        } catch (NumberFormatException e) {
+            throw new BlkchnException("approx_percentile needs a numeric column, found " + value, e);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.LongUnaryOperator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Block timestamps seen while translating time predicates, used to find the block range of a time window by binary
+ * search. Block timestamps strictly increase with the block number, so every cached block narrows later searches.
+ * Blocks close to the tip can still be replaced by a reorg and are never cached.
+ */
+public class TimestampIndex implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimestampIndex.class);
+
+    public static final long UNCONFIRMED_BLOCKS = 64;
+
+    private TreeMap<Long, Long> blockByTimestamp = new TreeMap<>();
+
+    public static TimestampIndex load(File file) {
+        if (file.exists()) {
+            try {
+                return new ObjectMapper().readValue(file, TimestampIndex.class);
+            } catch (IOException e) {
+                LOGGER.warn("Ignoring unreadable timestamp index in " + file + ": " + e.getMessage());
+            }
+        }
+        return new TimestampIndex();
+    }
+
+    public synchronized void save(File file) throws IOException {
+        if (file.getAbsoluteFile().getParentFile() != null) {
+            file.getAbsoluteFile().getParentFile().mkdirs();
+        }
+        new ObjectMapper().writeValue(file, this);
+    }
+
+    /**
+     * First block whose timestamp is at or after the given one, or height when the window starts after the tip.
+     * 
+     * @param timestampOf fetches the timestamp of a block number from the node
+     */
+    public long firstBlockAtOrAfter(long timestamp, long height, LongUnaryOperator timestampOf) {
+        long lo = 0;
+        long hi = height;
+        synchronized (this) {
+            Map.Entry<Long, Long> below = blockByTimestamp.lowerEntry(timestamp);
+            if (below != null && below.getValue() < height) {
+                lo = below.getValue() + 1;
+            }
+            Map.Entry<Long, Long> above = blockByTimestamp.ceilingEntry(timestamp);
+            if (above != null && above.getValue() < hi) {
+                hi = above.getValue();
+            }
+        }
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            long midTimestamp = timestampOf.applyAsLong(mid);
+            if (mid < height - UNCONFIRMED_BLOCKS) {
+                synchronized (this) {
+                    blockByTimestamp.put(midTimestamp, mid);
+                }
+            }
+            if (midTimestamp >= timestamp) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Last block whose timestamp is at or before the given one, or -1 when the window ends before genesis.
+     */
+    public long lastBlockAtOrBefore(long timestamp, long height, LongUnaryOperator timestampOf) {
+        return firstBlockAtOrAfter(timestamp + 1, height, timestampOf) - 1;
+    }
+
+    public synchronized int size() {
+        return blockByTimestamp.size();
+    }
+
+    public synchronized Map<Long, Long> getBlockByTimestamp() {
+        return new TreeMap<>(blockByTimestamp);
+    }
+
+    public synchronized void setBlockByTimestamp(TreeMap<Long, Long> blockByTimestamp) {
+        this.blockByTimestamp = blockByTimestamp;
+    }
+}
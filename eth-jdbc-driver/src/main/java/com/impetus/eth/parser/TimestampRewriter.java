@@ -0,0 +1,141 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.function.LongSupplier;
+import java.util.function.LongUnaryOperator;
+import java.util.regex.Pattern;
+
+import com.impetus.blkch.BlkchnException;
+import com.impetus.eth.query.EthColumns;
+
+/**
+ * Replaces timestamp comparisons in a query with the equivalent block number comparisons so that time windows are
+ * pushed down as block ranges. Values are epoch seconds or quoted UTC dates like '2018-06-01' or '2018-06-01 12:00:00'.
+ * Text inside quoted strings is left alone.
+ */
+public class TimestampRewriter {
+
+    private static final String VALUE = "('[^']*'|\\d+)";
+
+    private static final Pattern BETWEEN = Pattern.compile(
+            "(\\w+\\.)?\\b" + EthColumns.TIMESTAMP + "\\s+between\\s+" + VALUE + "\\s+and\\s+" + VALUE,
+            Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern COMPARISON = Pattern.compile(
+            "(\\w+\\.)?\\b" + EthColumns.TIMESTAMP + "\\s*(>=|<=|=|>|<)\\s*" + VALUE, Pattern.CASE_INSENSITIVE);
+
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd[ ]['T']HH:mm[:ss]");
+
+    private final TimestampIndex index;
+
+    private final LongSupplier heightSupplier;
+
+    private final LongUnaryOperator timestampOf;
+
+    private long height = -1;
+
+    /**
+     * @param heightSupplier current number of blocks on the chain
+     * @param timestampOf fetches the timestamp of a block number
+     */
+    public TimestampRewriter(TimestampIndex index, LongSupplier heightSupplier, LongUnaryOperator timestampOf) {
+        this.index = index;
+        this.heightSupplier = heightSupplier;
+        this.timestampOf = timestampOf;
+    }
+
+    public static boolean mentionsTimestamp(String sql) {
+        return sql.toLowerCase().contains(EthColumns.TIMESTAMP);
+    }
+
+    public String rewrite(String sql) {
+        if (!mentionsTimestamp(sql)) {
+            return sql;
+        }
+        String rewritten = SqlText.replaceOutsideQuotes(BETWEEN, sql, between -> window(column(between.group(1)),
+                first(parse(between.group(2))), last(parse(between.group(3)))));
+        return SqlText.replaceOutsideQuotes(COMPARISON, rewritten, comparison -> {
+            String column = column(comparison.group(1));
+            long value = parse(comparison.group(3));
+            switch (comparison.group(2)) {
+                case ">=":
+                    return column + " >= " + first(value);
+                case ">":
+                    return column + " >= " + first(value + 1);
+                case "<=":
+                    return upTo(column, last(value));
+                case "<":
+                    return upTo(column, last(value - 1));
+                default:
+                    return window(column, first(value), last(value));
+            }
+        });
+    }
+
+    /**
+     * Reads epoch seconds or a quoted UTC date, with optional time of day.
+     */
+    public static long parse(String value) {
+        String text = value.startsWith("'") ? value.substring(1, value.length() - 1).trim() : value;
+        if (text.matches("\\d+")) {
+            return Long.parseLong(text);
+        }
+        try {
+            if (text.endsWith("Z")) {
+                return Instant.parse(text).getEpochSecond();
+            } else if (text.length() <= 10) {
+                return LocalDate.parse(text).atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+            }
+            return LocalDateTime.parse(text, DATE_TIME).toEpochSecond(ZoneOffset.UTC);
+        } catch (DateTimeParseException e) {
+            throw new BlkchnException("Can't read timestamp value " + value, e);
+        }
+    }
+
+    private String column(String qualifier) {
+        return (qualifier == null ? "" : qualifier) + EthColumns.BLOCKNUMBER;
+    }
+
+    private String window(String column, long first, long last) {
+        return "(" + column + " >= " + first + " and " + upTo(column, last) + ")";
+    }
+
+    private String upTo(String column, long last) {
+        return last < 0 ? column + " < 0" : column + " <= " + last;
+    }
+
+    private long first(long timestamp) {
+        return index.firstBlockAtOrAfter(timestamp, height(), timestampOf);
+    }
+
+    private long last(long timestamp) {
+        return index.lastBlockAtOrBefore(timestamp, height(), timestampOf);
+    }
+
+    private long height() {
+        if (height < 0) {
+            height = heightSupplier.getAsLong();
+        }
+        return height;
+    }
+}
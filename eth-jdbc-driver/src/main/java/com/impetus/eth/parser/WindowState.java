@@ -0,0 +1,107 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.parser;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.LongFunction;
+
+/**
+ * Partial aggregates per block of a sliding window query, kept by a statement between executions so that a re-run
+ * only reads the blocks that entered the window. The hash each block had when it was read tells a reorganised tail
+ * apart from blocks that are still on the chain.
+ */
+public class WindowState {
+
+    private final String sql;
+
+    private final TreeMap<Long, HashAggregator> partials = new TreeMap<>();
+
+    private final LongObjectMap<String> hashes = new LongObjectMap<>();
+
+    public WindowState(String sql) {
+        this.sql = sql;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public int size() {
+        return partials.size();
+    }
+
+    public void put(long blockNumber, String hash, HashAggregator partial) {
+        partials.put(blockNumber, partial);
+        hashes.put(blockNumber, hash);
+    }
+
+    /* Drops the blocks that fell out of the inclusive window */
+    public void retain(long from, long to) {
+        List<Long> outside = new ArrayList<>(partials.headMap(from).keySet());
+        outside.addAll(partials.tailMap(to, false).keySet());
+        for (Long blockNumber : outside) {
+            remove(blockNumber);
+        }
+    }
+
+    public List<Long> missing(long from, long to) {
+        List<Long> missing = new ArrayList<>();
+        for (long blockNumber = from; blockNumber <= to; blockNumber++) {
+            if (!partials.containsKey(blockNumber)) {
+                missing.add(blockNumber);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Drops blocks from the top while their hash on the chain differs from the one they were read with. Gives up and
+     * drops everything after maxDepth mismatches. Returns the number of blocks dropped.
+     */
+    public int rollback(LongFunction<String> hashOf, int maxDepth) {
+        int dropped = 0;
+        while (!partials.isEmpty()) {
+            long last = partials.lastKey();
+            if (hashes.get(last).equals(hashOf.apply(last))) {
+                break;
+            }
+            remove(last);
+            if (++dropped >= maxDepth) {
+                dropped += partials.size();
+                clear();
+            }
+        }
+        return dropped;
+    }
+
+    /* The partial aggregates in block order */
+    public Collection<HashAggregator> getPartials() {
+        return partials.values();
+    }
+
+    public void clear() {
+        partials.clear();
+        hashes.clear();
+    }
+
+    private void remove(long blockNumber) {
+        partials.remove(blockNumber);
+        hashes.remove(blockNumber);
+    }
+}
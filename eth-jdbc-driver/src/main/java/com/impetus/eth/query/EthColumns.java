@@ -52,6 +52,20 @@ public class EthColumns
     public static final String NONCE = "nonce";
     public static final String PARENTHASH = "parenthash";
     public static final String HASH = "hash";
+    public static final String ADDRESS = "address";
+    public static final String TOPICS = "topics";
+    public static final String TOPIC0 = "topic0";
+    public static final String TOPIC1 = "topic1";
+    public static final String TOPIC2 = "topic2";
+    public static final String TOPIC3 = "topic3";
+    public static final String DATA = "data";
+    public static final String TXHASH = "txhash";
+    public static final String LOGINDEX = "logindex";
+    public static final String CUMULATIVEGASUSED = "cumulativegasused";
+    public static final String CONTRACTADDRESS = "contractaddress";
+    public static final String STATUS = "status";
+    public static final String LOGS = "logs";
+    public static final String BLOCKNONCE = "blocknonce";
 
     public static final String STRINGTYPE = "String";
     public static final String FLOATTYPE = "Float";
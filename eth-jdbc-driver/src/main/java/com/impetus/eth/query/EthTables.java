@@ -20,4 +20,10 @@ public class EthTables
     public static final String BLOCK = "block";
     
     public static final String TRANSACTION = "transaction";
+
+    public static final String LOG = "log";
+
+    public static final String RECEIPT = "receipt";
+
+    public static final String BLOCKTRANSACTION = "blocktransaction";
 }
@@ -0,0 +1,114 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.web3j.protocol.core.methods.response.Transaction;
+
+import com.impetus.eth.parser.AddressIndex;
+import com.impetus.test.catagory.UnitTest;
+
+@Category(UnitTest.class)
+public class TestAddressIndex extends TestCase {
+
+    private static final String ALICE = "0xAAAA000000000000000000000000000000000001";
+
+    private static final String BOB = "0xbbbb000000000000000000000000000000000002";
+
+    private static Transaction transaction(int index, String from, String to) {
+        Transaction transaction = new Transaction();
+        transaction.setTransactionIndex("0x" + Integer.toHexString(index));
+        transaction.setFrom(from);
+        transaction.setTo(to);
+        return transaction;
+    }
+
+    @Test
+    public void testLookupByRange() {
+        AddressIndex index = new AddressIndex(100);
+        index.indexBlock(100, Arrays.asList(transaction(0, ALICE, BOB), transaction(1, BOB, null)));
+        index.indexBlock(101, Collections.emptyList());
+        index.indexBlock(102, Arrays.asList(transaction(7, BOB, ALICE)));
+        index.indexBlock(103, Arrays.asList(transaction(300, ALICE, ALICE)));
+
+        long[] alice = index.lookup(ALICE.toLowerCase(), 0, 1000);
+        assertEquals(3, alice.length);
+        assertEquals(100, AddressIndex.blockNumber(alice[0]));
+        assertEquals(0, AddressIndex.txIndex(alice[0]));
+        assertEquals(102, AddressIndex.blockNumber(alice[1]));
+        assertEquals(7, AddressIndex.txIndex(alice[1]));
+        assertEquals(300, AddressIndex.txIndex(alice[2]));
+
+        assertEquals(3, index.lookup(BOB, 100, 102).length);
+        assertEquals(1, index.lookup(BOB, 101, 102).length);
+        assertEquals(0, index.lookup("0x01", 0, 1000).length);
+        assertEquals(104, index.getIndexedUpTo());
+    }
+
+    @Test
+    public void testBlocksMustComeInOrder() {
+        AddressIndex index = new AddressIndex(10);
+        try {
+            index.indexBlock(11, Collections.emptyList());
+            fail("Expected out of order block to be rejected");
+        } catch (RuntimeException e) {
+            assertEquals(10, index.getIndexedUpTo());
+        }
+    }
+
+    @Test
+    public void testCatchUpStopsShortOfTip() {
+        AddressIndex index = new AddressIndex(0);
+        List<Long> fetched = new ArrayList<>();
+        int indexed = index.catchUp(number -> {
+            fetched.add(number);
+            return Arrays.asList(transaction(0, ALICE, BOB));
+        }, 100, 1000);
+        assertEquals(100 - AddressIndex.UNCONFIRMED_BLOCKS, indexed);
+        assertEquals(0, index.catchUp(number -> Collections.emptyList(), 100, 1000));
+        assertEquals(10, index.catchUp(number -> Collections.emptyList(), 200, 10));
+        assertEquals(Long.valueOf(0), fetched.get(0));
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        AddressIndex index = new AddressIndex(5000000);
+        for (int block = 5000000; block < 5001000; block++) {
+            index.indexBlock(block, Arrays.asList(transaction(block % 50, ALICE, BOB)));
+        }
+        File file = File.createTempFile("address-index", ".bin");
+        try {
+            index.save(file);
+            assertTrue(file.length() < 1000 * 8);
+            AddressIndex loaded = AddressIndex.load(file, 0);
+            assertEquals(5000000, loaded.getStartBlock());
+            assertEquals(5001000, loaded.getIndexedUpTo());
+            assertTrue(Arrays.equals(index.lookup(BOB, 5000100, 5000199), loaded.lookup(BOB, 5000100, 5000199)));
+            assertEquals(100, loaded.lookup(ALICE, 5000100, 5000199).length);
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.test;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.impetus.eth.parser.BetweenRewriter;
+import com.impetus.test.catagory.UnitTest;
+
+@Category(UnitTest.class)
+public class TestBetweenRewriter extends TestCase {
+
+    @Test
+    public void testRewrite() {
+        assertEquals("select * from block where (blocknumber >= 100 and blocknumber <= 200)",
+                BetweenRewriter.rewrite("select * from block where blocknumber between 100 and 200"));
+        assertEquals("select * from block where (blocknumber < ? or blocknumber > ?) and gasused > 5",
+                BetweenRewriter.rewrite("select * from block where blocknumber NOT BETWEEN ? AND ? and gasused > 5"));
+        assertEquals("select * from block", BetweenRewriter.rewrite("select * from block"));
+    }
+
+    @Test
+    public void testLiteralsAreKept() {
+        String sql = "select * from transaction where input = 'x between 1 and 2'";
+        assertEquals(sql, BetweenRewriter.rewrite(sql));
+        assertEquals("select * from transaction where input = \"a between 1 and 2\" and (blocknumber >= 1 and "
+                + "blocknumber <= 2) and hash = 'it''s between 3 and 4'",
+                BetweenRewriter.rewrite("select * from transaction where input = \"a between 1 and 2\" and blocknumber"
+                        + " between 1 and 2 and hash = 'it''s between 3 and 4'"));
+    }
+}
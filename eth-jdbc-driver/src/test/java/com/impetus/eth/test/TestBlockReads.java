@@ -0,0 +1,123 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.test;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.impetus.blkch.sql.DataFrame;
+import com.impetus.eth.parser.EthQueryExecutor;
+import com.impetus.eth.test.util.CreateLogicalPlan;
+import com.impetus.eth.test.util.MockNode;
+import com.impetus.test.catagory.UnitTest;
+
+@Category(UnitTest.class)
+public class TestBlockReads extends TestCase {
+
+    private static final String OVERLAPPING = "select blocknumber, hash from block"
+            + " where blocknumber between 100 and 200 or blocknumber between 150 and 300";
+
+    private static EthQueryExecutor executor(String sql, MockNode node) {
+        return new EthQueryExecutor(CreateLogicalPlan.getLogicalPlan(sql), node.getWeb3j(), null);
+    }
+
+    private static void assertReadOnce(MockNode node, long from, long to) {
+        for (long blockNumber = from; blockNumber <= to; blockNumber++) {
+            assertEquals("reads of block " + blockNumber, 1, node.getBlockReads(blockNumber));
+        }
+        assertEquals(0, node.getBlockReads(from - 1));
+        assertEquals(0, node.getBlockReads(to + 1));
+    }
+
+    private static void assertBlocks(DataFrame dataframe, long from, long to) {
+        List<List<Object>> rows = dataframe.getData();
+        assertEquals(to - from + 1, rows.size());
+        int blockNumber = dataframe.getColumnNamesMap().get("blocknumber");
+        for (int i = 0; i < rows.size(); i++) {
+            assertEquals(BigInteger.valueOf(from + i), rows.get(i).get(blockNumber));
+        }
+    }
+
+    @Test
+    public void testOverlappingRangesReadEachBlockOnce() throws Exception {
+        MockNode node = new MockNode(0, true);
+        DataFrame dataframe = executor(OVERLAPPING, node).executeQuery();
+        assertBlocks(dataframe, 100, 300);
+        assertReadOnce(node, 100, 300);
+        assertEquals(201, node.getCalls("eth_getBlockByNumber"));
+    }
+
+    @Test
+    public void testOverlappingRangesOnPoolReadEachBlockOnce() throws Exception {
+        MockNode node = new MockNode(0, true);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            EthQueryExecutor executor = executor(OVERLAPPING, node);
+            executor.setQueryPool(pool);
+            assertBlocks(executor.executeQuery(), 100, 300);
+        } finally {
+            pool.shutdown();
+        }
+        assertReadOnce(node, 100, 300);
+    }
+
+    @Test
+    public void testTouchingRangesReadEachBlockOnce() throws Exception {
+        MockNode node = new MockNode(0, true);
+        DataFrame dataframe = executor("select blocknumber, hash from block where blocknumber between 100 and 150"
+                + " or blocknumber between 151 and 200", node).executeQuery();
+        assertBlocks(dataframe, 100, 200);
+        assertReadOnce(node, 100, 200);
+        assertEquals(101, node.getCalls("eth_getBlockByNumber"));
+    }
+
+    /*
+     * A read that fails with an error, not an exception, still fails the query instead of leaving the block pending,
+     * and the next run reads that block again while the blocks already read come from the first run.
+     */
+    @Test
+    public void testFailedReadIsRetried() throws Exception {
+        MockNode node = new MockNode(0, true);
+        node.failOnce(150, new NodeCrash());
+        EthQueryExecutor executor = executor(OVERLAPPING, node);
+        try {
+            executor.executeQuery();
+            fail("Expected the failed read to fail the query");
+        } catch (NodeCrash e) {
+            assertEquals(1, node.getBlockReads(150));
+        }
+        executor.setValidated(true);
+        assertBlocks(executor.executeQuery(), 100, 300);
+        assertEquals(2, node.getBlockReads(150));
+        assertReadOnce(node, 100, 149);
+        assertReadOnce(node, 151, 300);
+    }
+
+    private static class NodeCrash extends Error {
+
+        private static final long serialVersionUID = 1L;
+
+        NodeCrash() {
+            super("Node client crashed");
+        }
+    }
+}
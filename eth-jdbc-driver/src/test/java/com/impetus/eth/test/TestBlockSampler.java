@@ -0,0 +1,124 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.impetus.blkch.sql.DataFrame;
+import com.impetus.blkch.sql.query.Column;
+import com.impetus.blkch.sql.query.FunctionNode;
+import com.impetus.blkch.sql.query.IdentifierNode;
+import com.impetus.blkch.sql.query.SelectItem;
+import com.impetus.blkch.sql.query.StarNode;
+import com.impetus.eth.parser.BlockSampler;
+import com.impetus.eth.parser.HashAggregator;
+import com.impetus.test.catagory.UnitTest;
+
+@Category(UnitTest.class)
+public class TestBlockSampler extends TestCase {
+
+    @Test
+    public void testTableSampleClause() {
+        String sql = "select count(*) from transaction tablesample (1.5 PERCENT) where blocknumber > 100";
+        assertEquals(1.5, BlockSampler.extractPercent(sql), 0.0);
+        assertEquals("select count(*) from transaction where blocknumber > 100", BlockSampler.stripClause(sql));
+        assertNull(BlockSampler.extractPercent("select * from block where blocknumber = 1"));
+    }
+
+    @Test
+    public void testSystematicSample() {
+        BlockSampler sampler = new BlockSampler(10, new Random(7));
+        assertEquals(10, sampler.getStep());
+        BigInteger first = sampler.first(BigInteger.valueOf(1000));
+        assertTrue(first.intValue() >= 1000 && first.intValue() < 1010);
+        assertEquals(first.add(BigInteger.TEN), sampler.first(first.add(BigInteger.ONE)));
+        sampler.recordRange(BigInteger.valueOf(1000), BigInteger.valueOf(1999));
+        assertEquals(1000, sampler.getPopulationBlocks());
+        assertEquals(100, sampler.getSampledBlocks());
+    }
+
+    @Test
+    public void testScaledCountAndSum() {
+        BlockSampler sampler = new BlockSampler(10, new Random(7));
+        sampler.recordRange(BigInteger.ZERO, BigInteger.valueOf(999));
+        List<String> rowColumns = Arrays.asList("blocknumber", "value");
+        HashAggregator aggregator = HashAggregator.compile(Arrays.asList(createCountStar(),
+            createFunctionItem("sum", "value")), Arrays.<String> asList(), rowColumns, new HashMap<String, String>());
+        aggregator.enableSampling(sampler, 0);
+        for (BigInteger block = sampler.first(BigInteger.ZERO); block.intValue() < 1000; block = block
+                .add(BigInteger.TEN)) {
+            aggregator.add(Arrays.asList(block, BigInteger.valueOf(5)));
+            aggregator.add(Arrays.asList(block, BigInteger.valueOf(block.testBit(0) ? 1 : 3)));
+        }
+        assertEquals(Arrays.asList("count(*)_error", "sum(value)_error"), aggregator.getErrorColumns());
+        DataFrame df = aggregator.toDataFrame();
+        List<Object> row = df.getData().get(0);
+        assertEquals(2000, row.get(0));
+        assertEquals(sampler.first(BigInteger.ZERO).testBit(0) ? 6000 : 8000, (Double) row.get(1), 1e-9);
+        /* Every sampled block has the same totals, so there is no sampling variance */
+        assertEquals(0.0, (Double) row.get(2), 1e-9);
+        assertEquals(0.0, (Double) row.get(3), 1e-9);
+    }
+
+    @Test
+    public void testErrorShrinksWithVariance() {
+        BlockSampler sampler = new BlockSampler(50, new Random(1));
+        sampler.recordRange(BigInteger.ZERO, BigInteger.valueOf(99));
+        HashAggregator aggregator = HashAggregator.compile(Arrays.asList(createCountStar()), Arrays.<String> asList(),
+            Arrays.asList("blocknumber"), new HashMap<String, String>());
+        aggregator.enableSampling(sampler, 0);
+        for (BigInteger block = sampler.first(BigInteger.ZERO); block.intValue() < 100; block = block.add(BigInteger
+                .valueOf(2))) {
+            int rows = block.intValue() % 4 < 2 ? 1 : 3;
+            for (int i = 0; i < rows; i++) {
+                aggregator.add(Arrays.asList((Object) block));
+            }
+        }
+        List<Object> row = aggregator.toDataFrame().getData().get(0);
+        assertEquals(200, row.get(0));
+        Double error = (Double) row.get(1);
+        assertTrue(error > 0 && error < 50);
+    }
+
+    private static SelectItem createCountStar() {
+        FunctionNode function = new FunctionNode();
+        function.addChildNode(new IdentifierNode("count"));
+        function.addChildNode(new StarNode());
+        SelectItem selectItem = new SelectItem();
+        selectItem.addChildNode(function);
+        return selectItem;
+    }
+
+    private static SelectItem createFunctionItem(String func, String colName) {
+        FunctionNode function = new FunctionNode();
+        function.addChildNode(new IdentifierNode(func));
+        Column column = new Column();
+        column.addChildNode(new IdentifierNode(colName));
+        function.addChildNode(column);
+        SelectItem selectItem = new SelectItem();
+        selectItem.addChildNode(function);
+        return selectItem;
+    }
+}
@@ -0,0 +1,100 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.impetus.eth.parser.BlockTailer;
+import com.impetus.test.catagory.UnitTest;
+
+@Category(UnitTest.class)
+public class TestBlockTailer extends TestCase {
+
+    private final Map<Long, String> chain = new HashMap<>();
+
+    private final List<Long> queried = new ArrayList<>();
+
+    private BlockTailer tailer(long first, long last) {
+        return new BlockTailer(first, last, chain::get, number -> {
+            queried.add(number);
+            return Arrays.asList(Arrays.<Object> asList(number, chain.get(number)));
+        }, 4);
+    }
+
+    private void extend(long from, long to, String branch) {
+        for (long number = from; number <= to; number++) {
+            chain.put(number, branch + number);
+        }
+    }
+
+    @Test
+    public void testEmitsNewBlocksOnce() {
+        extend(0, 12, "a");
+        BlockTailer tailer = tailer(10, Long.MAX_VALUE);
+        List<List<Object>> rows = new ArrayList<>();
+        tailer.poll(12, rows::add);
+        tailer.poll(12, rows::add);
+        assertEquals(3, rows.size());
+        assertEquals(Arrays.<Object> asList(10L, "a10", BlockTailer.INSERT), rows.get(0));
+        assertEquals(Arrays.asList(10L, 11L, 12L), queried);
+        extend(13, 13, "a");
+        tailer.poll(13, rows::add);
+        assertEquals(Arrays.<Object> asList(13L, "a13", BlockTailer.INSERT), rows.get(3));
+        assertEquals(14, tailer.getNextBlock());
+    }
+
+    @Test
+    public void testRetractsReorganisedBlocks() {
+        extend(0, 12, "a");
+        BlockTailer tailer = tailer(10, Long.MAX_VALUE);
+        tailer.poll(12, row -> {
+        });
+        extend(11, 13, "b");
+        List<List<Object>> rows = new ArrayList<>();
+        tailer.poll(13, rows::add);
+        assertEquals(5, rows.size());
+        assertEquals(Arrays.<Object> asList(12L, "a12", BlockTailer.RETRACT), rows.get(0));
+        assertEquals(Arrays.<Object> asList(11L, "a11", BlockTailer.RETRACT), rows.get(1));
+        assertEquals(Arrays.<Object> asList(11L, "b11", BlockTailer.INSERT), rows.get(2));
+        assertEquals(Arrays.<Object> asList(13L, "b13", BlockTailer.INSERT), rows.get(4));
+    }
+
+    @Test
+    public void testShorterBranchAndLastBlock() {
+        extend(0, 12, "a");
+        BlockTailer tailer = tailer(10, 12);
+        tailer.poll(12, row -> {
+        });
+        assertTrue(tailer.isFinished());
+        chain.remove(12L);
+        chain.put(11L, "c11");
+        List<List<Object>> rows = new ArrayList<>();
+        tailer.poll(11, rows::add);
+        assertEquals(3, rows.size());
+        assertEquals(BlockTailer.RETRACT, rows.get(0).get(2));
+        assertEquals(Arrays.<Object> asList(11L, "c11", BlockTailer.INSERT), rows.get(2));
+        assertFalse(tailer.isFinished());
+    }
+}
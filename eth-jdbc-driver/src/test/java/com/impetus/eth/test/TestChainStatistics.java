@@ -0,0 +1,95 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.test;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.impetus.eth.parser.ChainStatistics;
+import com.impetus.test.catagory.UnitTest;
+
+@Category(UnitTest.class)
+public class TestChainStatistics extends TestCase {
+
+    @Test
+    public void testEstimatesByBucket() {
+        ChainStatistics stats = new ChainStatistics(1000);
+        stats.record(10, 2, 1000);
+        stats.record(20, 4, 3000);
+        stats.record(1500, 100, 50000);
+
+        assertEquals(3.0, stats.transactionsPerBlock(500), 0.0);
+        assertEquals(100.0, stats.transactionsPerBlock(1999), 0.0);
+        assertEquals(300.0 + 100 * 100, stats.estimateTransactions(900, 1099), 0.0001);
+        assertEquals(2000.0 * 10, stats.estimateBytes(0, 9), 0.0001);
+        assertEquals(1501, stats.getHeight());
+    }
+
+    @Test
+    public void testUnsampledBucketsUseChainAverage() {
+        ChainStatistics stats = new ChainStatistics(1000);
+        assertNull(stats.estimateTransactions(0, 10));
+        assertEquals(40, stats.blocksFor(40, 0));
+        stats.record(10, 10, 0);
+        stats.record(20, 30, 0);
+        assertEquals(20.0, stats.transactionsPerBlock(5000), 0.0);
+        assertEquals(20.0 * 100, stats.estimateTransactions(5000, 5099), 0.0001);
+        assertEquals(3, stats.blocksFor(40, 5000));
+    }
+
+    @Test
+    public void testIncrementalRefresh() {
+        ChainStatistics stats = new ChainStatistics(100);
+        List<BigInteger> fetched = new ArrayList<>();
+        assertEquals(10, stats.refresh(number -> {
+            fetched.add(number);
+            return null;
+        }, 250, 10));
+        for (BigInteger number : fetched) {
+            assertTrue(number.intValue() >= 200 && number.intValue() < 250);
+        }
+        fetched.clear();
+        stats.refresh(number -> {
+            fetched.add(number);
+            return null;
+        }, 250, 1000);
+        assertEquals(3 * ChainStatistics.SAMPLES_PER_BUCKET - 10, fetched.size());
+        assertEquals(0, stats.refresh(number -> null, 250, 1000));
+        assertEquals(ChainStatistics.SAMPLES_PER_BUCKET, stats.refresh(number -> null, 350, 1000));
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        ChainStatistics stats = new ChainStatistics(1000);
+        stats.record(10, 7, 700);
+        File file = File.createTempFile("chain-stats", ".json");
+        try {
+            stats.save(file);
+            ChainStatistics loaded = ChainStatistics.load(file);
+            assertEquals(7.0, loaded.transactionsPerBlock(10), 0.0);
+            assertEquals(11, loaded.getHeight());
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.test;
+
+import java.math.BigInteger;
+import java.sql.Types;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.web3j.protocol.core.methods.response.Transaction;
+
+import com.impetus.eth.parser.BlockTransaction;
+import com.impetus.eth.parser.ColumnRegistry;
+import com.impetus.eth.parser.ColumnRegistry.Column;
+import com.impetus.eth.parser.ColumnRegistry.TableColumns;
+import com.impetus.eth.query.EthColumns;
+import com.impetus.eth.query.EthTables;
+import com.impetus.test.catagory.UnitTest;
+
+@Category(UnitTest.class)
+public class TestColumnRegistry extends TestCase {
+
+    @Test
+    public void testColumnIndexesFollowRowOrder() {
+        for (String table : new String[] { EthTables.BLOCK, EthTables.TRANSACTION, EthTables.LOG, EthTables.RECEIPT,
+                EthTables.BLOCKTRANSACTION }) {
+            TableColumns<?> columns = ColumnRegistry.getTable(table);
+            assertEquals(columns.getColumns().size(), columns.getColumnNames().size());
+            for (int i = 0; i < columns.getColumns().size(); i++) {
+                assertEquals(i, columns.getColumns().get(i).getIndex());
+                assertEquals(columns.getColumnNames().get(i), columns.getColumns().get(i).getName());
+            }
+        }
+    }
+
+    @Test
+    public void testColumnTypes() {
+        TableColumns<?> block = ColumnRegistry.getTable(EthTables.BLOCK);
+        assertEquals(BigInteger.class, block.getColumn(EthColumns.BLOCKNUMBER).getJavaType());
+        assertEquals(Types.BIGINT, block.getColumn(EthColumns.BLOCKNUMBER).getSqlType());
+        assertTrue(block.getColumn(EthColumns.TIMESTAMP).isQuantity());
+        assertEquals(Types.VARCHAR, block.getColumn(EthColumns.HASH).getSqlType());
+        assertFalse(block.getColumn(EthColumns.HASH).isQuantity());
+        assertEquals(Types.JAVA_OBJECT, block.getColumn(EthColumns.TRANSACTIONS).getSqlType());
+        assertNull(block.getColumn("nosuchcolumn"));
+    }
+
+    @Test
+    public void testBlockTransactionRenamesBlockNonce() {
+        TableColumns<?> blockTransaction = ColumnRegistry.getTable(EthTables.BLOCKTRANSACTION);
+        assertTrue(blockTransaction.hasColumn(EthColumns.BLOCKNONCE));
+        assertTrue(blockTransaction.hasColumn(EthColumns.NONCE));
+        assertTrue(blockTransaction.getColumn(EthColumns.BLOCKNONCE).isQuantity());
+        assertSame(blockTransaction, ColumnRegistry.forRowType(BlockTransaction.class));
+    }
+
+    @Test
+    public void testToRow() {
+        Transaction transaction = new Transaction();
+        transaction.setHash("0xabc");
+        transaction.setFrom("0x01");
+        transaction.setBlockNumber("0x10");
+        TableColumns<?> columns = ColumnRegistry.forRow(transaction);
+        assertEquals(EthTables.TRANSACTION, columns.getName());
+        List<Object> row = columns.toRow(transaction);
+        assertEquals(columns.getColumns().size(), row.size());
+        Column hash = columns.getColumn(EthColumns.HASH);
+        assertEquals("0xabc", row.get(hash.getIndex()));
+        assertEquals(BigInteger.valueOf(16), row.get(columns.getColumn(EthColumns.BLOCKNUMBER).getIndex()));
+        assertEquals("0x10", columns.getColumn(EthColumns.BLOCKNUMBER).getRawGetter().apply(transaction));
+        assertEquals("0x01", columns.getColumn(EthColumns.FROM).get(transaction));
+    }
+
+    @Test
+    public void testUnknownRowType() {
+        try {
+            ColumnRegistry.forRow("not a row");
+            fail("Expected unknown row type to be rejected");
+        } catch (RuntimeException e) {
+            assertEquals("Cannot create row from unknown object type", e.getMessage());
+        }
+    }
+}
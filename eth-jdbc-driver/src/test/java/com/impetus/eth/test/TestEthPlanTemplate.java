@@ -0,0 +1,48 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.test;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.impetus.blkch.sql.parser.LogicalPlan;
+import com.impetus.blkch.sql.parser.LogicalPlan.SQLType;
+import com.impetus.eth.parser.EthPlanTemplate;
+import com.impetus.test.catagory.UnitTest;
+
+@Category(UnitTest.class)
+public class TestEthPlanTemplate extends TestCase {
+
+    @Test
+    public void testBindProducesIndependentPlans() {
+        EthPlanTemplate template = EthPlanTemplate
+                .compile("select blocknumber, hash from block where blocknumber = ? or blocknumber = ?");
+        LogicalPlan first = template.bind(new Object[] { 10, 11 });
+        LogicalPlan second = template.bind(new Object[] { 20, 21 });
+        assertNotSame(first, second);
+        assertNotSame(template.getPrototype(), first);
+        assertEquals(SQLType.QUERY, first.getType());
+        assertEquals(SQLType.QUERY, second.getType());
+    }
+
+    @Test
+    public void testBindWithoutPlaceholders() {
+        EthPlanTemplate template = EthPlanTemplate.compile("select * from block where blocknumber = 10");
+        assertNotSame(template.bind(null), template.bind(new Object[0]));
+    }
+}
@@ -191,5 +191,16 @@ public class TestEthPreparedStatement {
 
     }
 
-
+    @Test
+    public void testPreparedStatementResolvesLatest() throws Exception {
+        EthConnection connection = Mockito.mock(EthConnection.class);
+        Mockito.when(connection.getLatestBlockNumber()).thenReturn(1000L);
+        String sql = "select hash from block where blocknumber between latest - 10 and latest and gasused > ?";
+        EthPreparedStatement stmt = new EthPreparedStatement(connection, sql, 0, 0);
+        Field f = EthPreparedStatement.class.getDeclaredField("sql");
+        f.setAccessible(true);
+        assertEquals("select hash from block where (blocknumber >= 990 and blocknumber <= 1000) and gasused > ?",
+                f.get(stmt));
+        stmt.close();
+    }
 }
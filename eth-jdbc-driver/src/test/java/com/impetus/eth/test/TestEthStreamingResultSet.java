@@ -0,0 +1,108 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.test;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mockito.Mockito;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.methods.response.EthBlockNumber;
+
+import com.impetus.blkch.sql.DataFrame;
+import com.impetus.eth.jdbc.EthStreamingResultSet;
+import com.impetus.eth.parser.BlockTailer;
+import com.impetus.eth.parser.QueryContext;
+import com.impetus.test.catagory.UnitTest;
+
+@Category(UnitTest.class)
+public class TestEthStreamingResultSet extends TestCase {
+
+    /*
+     * A node without block filters at height 100 whose chain never moves, so the stream hands over block 100 and then
+     * waits for the next poll.
+     */
+    private static Web3j node() throws IOException {
+        Web3j web3j = Mockito.mock(Web3j.class);
+        Request<?, ?> filter = Mockito.mock(Request.class);
+        Mockito.when(filter.send()).thenThrow(new IOException("Method not found"));
+        Mockito.doReturn(filter).when(web3j).ethNewBlockFilter();
+        EthBlockNumber height = new EthBlockNumber();
+        height.setResult("0x64");
+        Request<?, ?> blockNumber = Mockito.mock(Request.class);
+        Mockito.doReturn(height).when(blockNumber).send();
+        Mockito.doReturn(blockNumber).when(web3j).ethBlockNumber();
+        return web3j;
+    }
+
+    private static ResultSet stream(QueryContext context) throws IOException {
+        List<String> columns = Arrays.asList("blocknumber", "hash");
+        DataFrame schema = new DataFrame(new ArrayList<List<Object>>(), columns, new HashMap<String, String>());
+        schema.getColumnNamesMap().put(EthStreamingResultSet.OP_COLUMN, columns.size());
+        Map<String, Integer> types = new HashMap<>();
+        types.put("blocknumber", Types.BIGINT);
+        types.put("hash", Types.VARCHAR);
+        types.put(EthStreamingResultSet.OP_COLUMN, Types.VARCHAR);
+        BlockTailer tailer = new BlockTailer(100, Long.MAX_VALUE, number -> "0x" + Long.toHexString(number),
+                number -> Arrays.asList(Arrays.<Object> asList(number, "0x" + Long.toHexString(number))), 4);
+        return new EthStreamingResultSet(schema, ResultSet.CONCUR_READ_ONLY, "block", types, node(), tailer, 60000,
+                context);
+    }
+
+    @Test
+    public void testCancelStopsStream() throws Exception {
+        QueryContext context = new QueryContext(0);
+        ResultSet rs = stream(context);
+        assertTrue(rs.next());
+        assertEquals(100L, rs.getLong("blocknumber"));
+        context.cancel();
+        try {
+            rs.next();
+            fail("A cancelled stream should not wait for more blocks");
+        } catch (SQLException e) {
+            assertFalse(e instanceof SQLTimeoutException);
+            assertEquals(QueryContext.SQL_STATE, e.getSQLState());
+        }
+        assertFalse(rs.next());
+        rs.close();
+    }
+
+    @Test
+    public void testTimeoutStopsStream() throws Exception {
+        ResultSet rs = stream(new QueryContext(200));
+        assertTrue(rs.next());
+        try {
+            rs.next();
+            fail("A stream past its timeout should not wait for more blocks");
+        } catch (SQLTimeoutException e) {
+            assertEquals(QueryContext.SQL_STATE, e.getSQLState());
+        }
+        rs.close();
+    }
+}
@@ -0,0 +1,105 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.test;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.impetus.blkch.sql.query.Column;
+import com.impetus.blkch.sql.query.IdentifierNode;
+import com.impetus.blkch.sql.query.OrderItem;
+import com.impetus.eth.parser.ExternalSorter;
+import com.impetus.test.catagory.UnitTest;
+
+@Category(UnitTest.class)
+public class TestExternalSorter extends TestCase {
+
+    private static final File TMP = new File(System.getProperty("java.io.tmpdir"));
+
+    private static final Comparator<List<Object>> BY_VALUE = (first, second) -> ((BigInteger) first.get(0))
+            .compareTo((BigInteger) second.get(0));
+
+    private static List<Object> row(long value, int position) {
+        return Arrays.asList(BigInteger.valueOf(value), position);
+    }
+
+    @Test
+    public void testMergesSpilledRuns() {
+        Random random = new Random(7);
+        List<Long> expected = new ArrayList<>();
+        try (ExternalSorter sorter = new ExternalSorter(BY_VALUE, 100, TMP)) {
+            for (int i = 0; i < 1050; i++) {
+                long value = random.nextInt(500);
+                expected.add(value);
+                sorter.add(row(value, i));
+            }
+            assertEquals(10, sorter.getRunCount());
+            Collections.sort(expected);
+            List<List<Object>> sorted = sorter.sorted(Long.MAX_VALUE);
+            assertEquals(1050, sorted.size());
+            for (int i = 0; i < sorted.size(); i++) {
+                assertEquals(BigInteger.valueOf(expected.get(i)), sorted.get(i).get(0));
+                if (i > 0 && sorted.get(i).get(0).equals(sorted.get(i - 1).get(0))) {
+                    /* Equal rows keep the order they were added in */
+                    assertTrue((Integer) sorted.get(i).get(1) > (Integer) sorted.get(i - 1).get(1));
+                }
+            }
+            assertEquals(0, sorter.getRunCount());
+        }
+    }
+
+    @Test
+    public void testLimitStopsMerge() {
+        try (ExternalSorter sorter = new ExternalSorter(BY_VALUE.reversed(), 3, TMP)) {
+            for (int i = 0; i < 20; i++) {
+                sorter.add(row(i, i));
+            }
+            List<List<Object>> top = sorter.sorted(2);
+            assertEquals(2, top.size());
+            assertEquals(BigInteger.valueOf(19), top.get(0).get(0));
+            assertEquals(BigInteger.valueOf(18), top.get(1).get(0));
+        }
+    }
+
+    @Test
+    public void testCompileOrder() {
+        OrderItem item = new OrderItem();
+        Column column = new Column();
+        column.addChildNode(new IdentifierNode("gas"));
+        item.addChildNode(column);
+        Comparator<List<Object>> order = ExternalSorter.compileOrder(Arrays.asList(item),
+                Arrays.asList("hash", "gas"));
+        assertTrue(order.compare(Arrays.asList("0x1", "21000"), Arrays.asList("0x0", "30000")) < 0);
+        assertTrue(order.compare(Arrays.asList("0x1", null), Arrays.asList("0x0", "30000")) < 0);
+
+        OrderItem unknown = new OrderItem();
+        Column other = new Column();
+        other.addChildNode(new IdentifierNode("cnt"));
+        unknown.addChildNode(other);
+        assertNull(ExternalSorter.compileOrder(Arrays.asList(unknown), Arrays.asList("hash", "gas")));
+    }
+}
@@ -0,0 +1,78 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.test;
+
+import java.util.function.Predicate;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.web3j.protocol.core.methods.response.EthBlock.Block;
+import org.web3j.protocol.core.methods.response.Transaction;
+
+import com.impetus.blkch.BlkchnException;
+import com.impetus.eth.parser.BlockTransaction;
+import com.impetus.eth.parser.FilterCompiler;
+import com.impetus.eth.parser.FilterCompiler.Op;
+import com.impetus.test.catagory.UnitTest;
+
+@Category(UnitTest.class)
+public class TestFilterCompiler extends TestCase {
+
+    private static Transaction transaction(int index, String from) {
+        Transaction transaction = new Transaction();
+        transaction.setTransactionIndex("0x" + Integer.toHexString(index));
+        transaction.setBlockNumber("0x100");
+        transaction.setFrom(from);
+        return transaction;
+    }
+
+    @Test
+    public void testQuantityComparisons() {
+        Predicate<Object> after = FilterCompiler.compile("transactionindex", Transaction.class, "16", Op.GT);
+        assertTrue(after.test(transaction(17, "0xa")));
+        assertFalse(after.test(transaction(16, "0xa")));
+        Predicate<Object> upTo = FilterCompiler.compile("transactionindex", Transaction.class, "0x10", Op.LTE);
+        assertTrue(upTo.test(transaction(16, "0xa")));
+        assertFalse(upTo.test(transaction(255, "0xa")));
+        Predicate<Object> block = FilterCompiler.compile("blocknumber", Transaction.class, "'256'", Op.EQ);
+        assertTrue(block.test(transaction(0, "0xa")));
+        Predicate<Object> missing = FilterCompiler.compile("transactionindex", Transaction.class, "1", Op.NEQ);
+        assertTrue(missing.test(new Transaction()));
+    }
+
+    @Test
+    public void testStringComparisons() {
+        Predicate<Object> from = FilterCompiler.compile("from", Transaction.class, "'0xa'", Op.EQ);
+        assertTrue(from.test(transaction(0, "0xa")));
+        assertFalse(from.test(transaction(0, "0xb")));
+        assertTrue(FilterCompiler.compile("from", Transaction.class, "'0xa'", Op.NEQ).test(transaction(0, "0xb")));
+        try {
+            FilterCompiler.compile("from", Transaction.class, "'0xa'", Op.GT);
+            fail("Expected a range comparison on a string column to be rejected");
+        } catch (BlkchnException e) {
+            assertTrue(e.getMessage().contains("from"));
+        }
+    }
+
+    @Test
+    public void testBlockTransactionDelegates() {
+        Predicate<Object> index = FilterCompiler.compile("transactionindex", BlockTransaction.class, "2", Op.GTE);
+        assertTrue(index.test(new BlockTransaction(new Block(), transaction(2, "0xa"))));
+        assertFalse(index.test(new BlockTransaction(new Block(), transaction(1, "0xa"))));
+    }
+}
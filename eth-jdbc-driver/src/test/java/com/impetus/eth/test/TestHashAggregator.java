@@ -0,0 +1,169 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.test;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.impetus.blkch.BlkchnException;
+import com.impetus.blkch.sql.DataFrame;
+import com.impetus.blkch.sql.query.Column;
+import com.impetus.blkch.sql.query.FunctionNode;
+import com.impetus.blkch.sql.query.IdentifierNode;
+import com.impetus.blkch.sql.query.SelectItem;
+import com.impetus.eth.parser.Accumulator;
+import com.impetus.eth.parser.Accumulators;
+import com.impetus.eth.parser.HashAggregator;
+import com.impetus.test.catagory.UnitTest;
+
+@Category(UnitTest.class)
+public class TestHashAggregator extends TestCase {
+
+    private List<String> rowColumns = Arrays.asList("miner", "gasused", "blocknumber");
+
+    @Test
+    public void testSumOverflowPromotesToBigInteger() {
+        Accumulator sum = Accumulators.create(Accumulators.SUM);
+        sum.add(BigInteger.valueOf(Long.MAX_VALUE));
+        sum.add(BigInteger.valueOf(Long.MAX_VALUE));
+        assertEquals(BigInteger.valueOf(Long.MAX_VALUE).shiftLeft(1), sum.result());
+    }
+
+    @Test
+    public void testMergeCount() {
+        Accumulator first = Accumulators.create(Accumulators.COUNT);
+        Accumulator second = Accumulators.create(Accumulators.COUNT);
+        first.add("a");
+        second.add("b");
+        second.add(null);
+        first.merge(second);
+        assertEquals(2, first.result());
+    }
+
+    @Test
+    public void testGroupByMiner() {
+        List<SelectItem> selectItems = Arrays.asList(createColumnItem("miner"), createFunctionItem("count",
+            "blocknumber"), createFunctionItem("max", "gasused"));
+        HashAggregator aggregator = HashAggregator.compile(selectItems, Arrays.asList("miner"), rowColumns,
+            new HashMap<String, String>());
+        aggregator.add(Arrays.asList("0xa", BigInteger.valueOf(10), BigInteger.valueOf(1)));
+        aggregator.add(Arrays.asList("0xb", BigInteger.valueOf(30), BigInteger.valueOf(2)));
+        aggregator.add(Arrays.asList("0xa", BigInteger.valueOf(20), BigInteger.valueOf(3)));
+        assertEquals(2, aggregator.getGroupCount());
+        DataFrame df = aggregator.toDataFrame();
+        assertEquals("0xa", df.getData().get(0).get(0));
+        assertEquals(2, df.getData().get(0).get(1));
+        assertEquals(BigInteger.valueOf(20), df.getData().get(0).get(2));
+    }
+
+    @Test
+    public void testSpilledGroupsAreMerged() {
+        List<SelectItem> selectItems = Arrays.asList(createColumnItem("miner"), createFunctionItem("count",
+            "blocknumber"), createFunctionItem("max", "gasused"));
+        HashAggregator aggregator = HashAggregator.compile(selectItems, Arrays.asList("miner"), rowColumns,
+            new HashMap<String, String>());
+        aggregator.enableSpilling(10, new File(System.getProperty("java.io.tmpdir")));
+        for (int i = 0; i < 1000; i++) {
+            aggregator.add(Arrays.asList("0x" + (i % 100), BigInteger.valueOf(i), BigInteger.valueOf(i)));
+        }
+        assertTrue(aggregator.hasSpilled());
+        assertTrue(aggregator.getGroupCount() <= 10);
+        DataFrame df = aggregator.toDataFrame();
+        assertEquals(100, df.getData().size());
+        for (List<Object> row : df.getData()) {
+            int miner = Integer.parseInt(((String) row.get(0)).substring(2));
+            assertEquals(10, row.get(1));
+            assertEquals(BigInteger.valueOf(900 + miner), row.get(2));
+        }
+        assertFalse(aggregator.hasSpilled());
+    }
+
+    @Test
+    public void testSpilledNullKey() {
+        List<SelectItem> selectItems = Arrays.asList(createColumnItem("miner"), createFunctionItem("count",
+            "blocknumber"));
+        HashAggregator aggregator = HashAggregator.compile(selectItems, Arrays.asList("miner"), rowColumns,
+            new HashMap<String, String>());
+        aggregator.enableSpilling(10, new File(System.getProperty("java.io.tmpdir")));
+        for (int i = 0; i < 1000; i++) {
+            aggregator.add(Arrays.asList(i % 50 == 0 ? null : "0x" + (i % 50), BigInteger.valueOf(i),
+                BigInteger.valueOf(i)));
+        }
+        assertTrue(aggregator.hasSpilled());
+        DataFrame df = aggregator.toDataFrame();
+        assertEquals(50, df.getData().size());
+        boolean nullGroup = false;
+        for (List<Object> row : df.getData()) {
+            nullGroup |= row.get(0) == null;
+            assertEquals(20, row.get(1));
+        }
+        assertTrue(nullGroup);
+    }
+
+    @Test
+    public void testUnserializableKeyFailsSpill() {
+        List<SelectItem> selectItems = Arrays.asList(createColumnItem("miner"), createFunctionItem("count",
+            "blocknumber"));
+        HashAggregator aggregator = HashAggregator.compile(selectItems, Arrays.asList("miner"), rowColumns,
+            new HashMap<String, String>());
+        aggregator.enableSpilling(10, new File(System.getProperty("java.io.tmpdir")));
+        try {
+            for (int i = 0; i < 100; i++) {
+                aggregator.add(Arrays.asList(new Object(), BigInteger.valueOf(i), BigInteger.valueOf(i)));
+            }
+            fail("Expected spilling a key that can't be serialized to fail");
+        } catch (BlkchnException e) {
+            assertTrue(e.getMessage().contains("java.lang.Object"));
+            assertFalse(aggregator.hasSpilled());
+        }
+    }
+
+    @Test
+    public void testUngroupedColumnIsNotSupported() {
+        List<SelectItem> selectItems = Arrays.asList(createColumnItem("gasused"));
+        assertNull(HashAggregator.compile(selectItems, Arrays.asList("miner"), rowColumns,
+            new HashMap<String, String>()));
+    }
+
+    private static SelectItem createColumnItem(String colName) {
+        SelectItem selectItem = new SelectItem();
+        selectItem.addChildNode(createColumn(colName));
+        return selectItem;
+    }
+
+    private static SelectItem createFunctionItem(String func, String colName) {
+        FunctionNode function = new FunctionNode();
+        function.addChildNode(new IdentifierNode(func));
+        function.addChildNode(createColumn(colName));
+        SelectItem selectItem = new SelectItem();
+        selectItem.addChildNode(function);
+        return selectItem;
+    }
+
+    private static Column createColumn(String colName) {
+        Column column = new Column();
+        column.addChildNode(new IdentifierNode(colName));
+        return column;
+    }
+}
@@ -0,0 +1,54 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.test;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.impetus.eth.parser.JoinRewriter;
+import com.impetus.test.catagory.UnitTest;
+
+@Category(UnitTest.class)
+public class TestJoinRewriter extends TestCase {
+
+    @Test
+    public void testJoinWithAliases() {
+        String sql = "select b.timestamp, b.miner, b.hash, t.hash, t.value from block b join transaction t "
+                + "on b.blocknumber = t.blocknumber where b.blocknumber > 100 and b.blocknumber < 200";
+        assertEquals("select timestamp, miner, blockhash, hash, value from blocktransaction "
+                + "where blocknumber > 100 and blocknumber < 200", JoinRewriter.rewrite(sql));
+    }
+
+    @Test
+    public void testJoinWithTableNamesAndUsing() {
+        String sql = "SELECT transaction.from, block.nonce FROM transaction INNER JOIN block USING (blocknumber) "
+                + "WHERE blocknumber = 5";
+        assertEquals("SELECT from, blocknonce from blocktransaction WHERE blocknumber = 5",
+                JoinRewriter.rewrite(sql));
+    }
+
+    @Test
+    public void testOtherQueriesAreUnchanged() {
+        String plain = "select * from block where blocknumber = 5";
+        assertEquals(plain, JoinRewriter.rewrite(plain));
+        String otherKey = "select * from block b join transaction t on b.hash = t.blockhash where b.blocknumber = 5";
+        assertEquals(otherKey, JoinRewriter.rewrite(otherKey));
+        String selfJoin = "select * from block a join block b on a.blocknumber = b.blocknumber";
+        assertEquals(selfJoin, JoinRewriter.rewrite(selfJoin));
+    }
+}
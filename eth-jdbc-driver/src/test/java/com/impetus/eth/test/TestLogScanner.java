@@ -0,0 +1,112 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.web3j.protocol.core.methods.response.Log;
+
+import com.impetus.blkch.BlkchnException;
+import com.impetus.eth.parser.LogScanner;
+import com.impetus.eth.parser.QueryBudget;
+import com.impetus.eth.parser.QueryContext;
+import com.impetus.test.catagory.UnitTest;
+
+@Category(UnitTest.class)
+public class TestLogScanner extends TestCase {
+
+    @Test
+    public void testChunks() {
+        LogScanner scanner = new LogScanner(1000);
+        List<long[]> chunks = scanner.chunks(500, 2600);
+        assertEquals(3, chunks.size());
+        assertEquals(500, chunks.get(0)[0]);
+        assertEquals(1499, chunks.get(0)[1]);
+        assertEquals(2500, chunks.get(2)[0]);
+        assertEquals(2600, chunks.get(2)[1]);
+        assertTrue(scanner.chunks(10, 9).isEmpty());
+    }
+
+    @Test
+    public void testSplitsRangesTheNodeRefuses() {
+        LogScanner scanner = new LogScanner(1000);
+        List<long[]> calls = new ArrayList<>();
+        List<Log> logs = scanner.scan((from, to) -> {
+            calls.add(new long[] { from, to });
+            if (to - from >= 300) {
+                throw new BlkchnException("query returned more than 10000 results");
+            }
+            return Collections.nCopies((int) (to - from + 1), new Log());
+        }, 0, 999);
+        assertEquals(1000, logs.size());
+        assertEquals(3, scanner.getSplitCount());
+        assertEquals(0, calls.get(0)[0]);
+        assertEquals(999, calls.get(0)[1]);
+        for (long[] call : calls.subList(1, calls.size())) {
+            assertTrue(call[1] - call[0] < 500);
+        }
+    }
+
+    @Test
+    public void testSingleBlockFailureIsReported() {
+        LogScanner scanner = new LogScanner(10);
+        try {
+            scanner.scan((from, to) -> {
+                throw new IOException("timeout");
+            }, 5, 6);
+            fail("Expected failure on a single block");
+        } catch (BlkchnException e) {
+            assertEquals(1, scanner.getSplitCount());
+        }
+    }
+
+    @Test
+    public void testCancelAndBudgetAreNotSplit() {
+        LogScanner scanner = new LogScanner(1000);
+        try {
+            scanner.scan((from, to) -> {
+                throw new QueryContext.CancelledException("Query was cancelled", false);
+            }, 0, 999);
+            fail("Expected the cancellation to be passed on");
+        } catch (QueryContext.CancelledException e) {
+            assertEquals(0, scanner.getSplitCount());
+        }
+        try {
+            scanner.scan((from, to) -> {
+                throw new QueryBudget.ExceededException("Query made more than 10 rpc calls");
+            }, 0, 999);
+            fail("Expected the exceeded budget to be passed on");
+        } catch (QueryBudget.ExceededException e) {
+            assertEquals(0, scanner.getSplitCount());
+        }
+        try {
+            scanner.scan((from, to) -> {
+                throw new InterruptedIOException("interrupted");
+            }, 0, 999);
+            fail("Expected the interrupted call to be reported");
+        } catch (BlkchnException e) {
+            assertEquals(0, scanner.getSplitCount());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.impetus.eth.parser.LongBitmap;
+import com.impetus.test.catagory.UnitTest;
+
+@Category(UnitTest.class)
+public class TestLongBitmap extends TestCase {
+
+    @Test
+    public void testRangesAcrossChunks() {
+        LongBitmap first = LongBitmap.ofRange(5000000, 6000000);
+        LongBitmap second = LongBitmap.ofRange(5500000, 7000000);
+        assertEquals(1000001, first.getCardinality());
+        assertTrue(first.contains(5065536));
+        assertFalse(first.contains(4999999));
+        assertFalse(first.contains(-1));
+
+        LongBitmap and = first.and(second);
+        assertEquals(500001, and.getCardinality());
+        assertTrue(and.contains(5500000));
+        assertFalse(and.contains(5499999));
+        assertEquals(2000001, first.or(second).getCardinality());
+        assertEquals(500000, first.andNot(second).getCardinality());
+        assertTrue(first.andNot(first).isEmpty());
+
+        List<long[]> runs = new ArrayList<>();
+        first.andNot(LongBitmap.ofRange(5500000, 5500010)).forEachRun((from, to) -> runs.add(new long[] { from, to }));
+        assertEquals(2, runs.size());
+        assertEquals(5000000, runs.get(0)[0]);
+        assertEquals(5499999, runs.get(0)[1]);
+        assertEquals(5500011, runs.get(1)[0]);
+        assertEquals(6000000, runs.get(1)[1]);
+    }
+
+    @Test
+    public void testMatchesSortedSet() {
+        Random random = new Random(7);
+        LongBitmap[] bitmaps = { new LongBitmap(), new LongBitmap() };
+        List<TreeSet<Long>> sets = new ArrayList<>();
+        for (int b = 0; b < 2; b++) {
+            TreeSet<Long> set = new TreeSet<>();
+            // dense enough in the first chunks to turn into bitmaps, sparse after
+            for (int i = 0; i < 20000; i++) {
+                long value = i < 15000 ? random.nextInt(140000) : random.nextInt(Integer.MAX_VALUE);
+                bitmaps[b].add(value);
+                set.add(value);
+            }
+            sets.add(set);
+        }
+        assertEquals(sets.get(0).size(), bitmaps[0].getCardinality());
+        assertSameValues(sets.get(0), bitmaps[0]);
+
+        TreeSet<Long> and = new TreeSet<>(sets.get(0));
+        and.retainAll(sets.get(1));
+        assertSameValues(and, bitmaps[0].and(bitmaps[1]));
+        TreeSet<Long> or = new TreeSet<>(sets.get(0));
+        or.addAll(sets.get(1));
+        assertSameValues(or, bitmaps[0].or(bitmaps[1]));
+        TreeSet<Long> andNot = new TreeSet<>(sets.get(0));
+        andNot.removeAll(sets.get(1));
+        assertSameValues(andNot, bitmaps[0].andNot(bitmaps[1]));
+    }
+
+    @Test
+    public void testResultsDontShareChunks() {
+        LongBitmap first = LongBitmap.ofRange(0, 10);
+        LongBitmap union = first.or(new LongBitmap());
+        union.add(20);
+        assertFalse(first.contains(20));
+        assertEquals(12, union.getCardinality());
+    }
+
+    private static void assertSameValues(TreeSet<Long> expected, LongBitmap actual) {
+        long[] values = actual.toArray();
+        assertEquals(expected.size(), values.length);
+        int i = 0;
+        for (long value : expected) {
+            assertEquals(value, values[i++]);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.impetus.eth.parser.LongObjectMap;
+import com.impetus.test.catagory.UnitTest;
+
+@Category(UnitTest.class)
+public class TestLongObjectMap extends TestCase {
+
+    @Test
+    public void testPutGetRemove() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+        assertNull(map.put(5000000, "a"));
+        assertEquals("a", map.put(5000000, "b"));
+        assertEquals("b", map.get(5000000));
+        assertTrue(map.containsKey(5000000));
+        assertNull(map.get(5000001));
+        assertEquals("b", map.remove(5000000));
+        assertNull(map.remove(5000000));
+        assertTrue(map.isEmpty());
+        try {
+            map.put(1, null);
+            fail("Expected null values to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals(0, map.size());
+        }
+    }
+
+    @Test
+    public void testMatchesHashMap() {
+        Random random = new Random(11);
+        LongObjectMap<Long> map = new LongObjectMap<>(4);
+        Map<Long, Long> expected = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            // a narrow key space so that removals hit probe chains
+            long key = 7000000 + random.nextInt(5000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (long key = 7000000; key < 7005000; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+        map.clear();
+        assertNull(map.get(7000000));
+    }
+}
@@ -0,0 +1,116 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.test;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.impetus.blkch.BlkchnException;
+import com.impetus.blkch.sql.DataFrame;
+import com.impetus.eth.parser.EthQueryExecutor;
+import com.impetus.eth.test.util.CreateLogicalPlan;
+import com.impetus.eth.test.util.MockNode;
+import com.impetus.test.catagory.UnitTest;
+
+@Category(UnitTest.class)
+public class TestParallelEvaluation extends TestCase {
+
+    private ForkJoinPool pool;
+
+    @Override
+    protected void setUp() throws Exception {
+        pool = new ForkJoinPool(4);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        pool.shutdownNow();
+    }
+
+    private static EthQueryExecutor executor(String sql, MockNode node, ForkJoinPool pool) {
+        EthQueryExecutor executor = new EthQueryExecutor(CreateLogicalPlan.getLogicalPlan(sql), node.getWeb3j(),
+                null);
+        executor.setWeb3jService(node.getService());
+        executor.setQueryPool(pool);
+        return executor;
+    }
+
+    /* Runs the query serially and on the pool, each against a node of its own, and expects the same rows */
+    private List<List<Object>> assertSameAsSerial(String sql, int transactionsPerBlock) throws Exception {
+        List<List<Object>> serial = executor(sql, new MockNode(transactionsPerBlock, true), null).executeQuery()
+                .getData();
+        MockNode node = new MockNode(transactionsPerBlock, true);
+        node.setLatency(1);
+        List<List<Object>> parallel = executor(sql, node, pool).executeQuery().getData();
+        assertEquals(serial, parallel);
+        return parallel;
+    }
+
+    @Test
+    public void testOrBranches() throws Exception {
+        List<List<Object>> rows = assertSameAsSerial("select blocknumber, hash from block"
+                + " where blocknumber between 100 and 120 or hash = '" + MockNode.blockHash(300) + "'", 0);
+        assertEquals(22, rows.size());
+    }
+
+    @Test
+    public void testDisjointRanges() throws Exception {
+        String sql = "select hash, blocknumber from transaction where blocknumber between 300 and 305"
+                + " or blocknumber between 100 and 110 or blocknumber between 200 and 210";
+        List<List<Object>> rows = assertSameAsSerial(sql, 2);
+        assertEquals(2 * (11 + 11 + 6), rows.size());
+        DataFrame dataframe = executor(sql, new MockNode(2, true), pool).executeQuery();
+        int blockNumber = dataframe.getColumnNamesMap().get("blocknumber");
+        BigInteger previous = BigInteger.ZERO;
+        for (List<Object> row : dataframe.getData()) {
+            BigInteger current = (BigInteger) row.get(blockNumber);
+            assertTrue(current.compareTo(previous) >= 0);
+            previous = current;
+        }
+    }
+
+    @Test
+    public void testFailingBranchCancelsTheRest() throws Exception {
+        MockNode node = new MockNode(1, true);
+        node.setLatency(5);
+        node.failOnce(100, new IOException("Connection reset"));
+        EthQueryExecutor executor = executor("select txhash from receipt where blocknumber between 100 and 149"
+                + " or blocknumber between 200 and 249 or blocknumber between 300 and 349"
+                + " or blocknumber between 400 and 449 or blocknumber between 500 and 549"
+                + " or blocknumber between 600 and 649 or blocknumber between 700 and 749"
+                + " or blocknumber between 800 and 849", node, pool);
+        try {
+            executor.executeQuery();
+            fail("Expected the failed receipt read to fail the query");
+        } catch (BlkchnException e) {
+            assertTrue(e.getMessage().contains("100"));
+        }
+        /*
+         * The ranges running next to the failed one finish, at most one more may start before the rest are dropped.
+         * Wait for the running ones to end before counting.
+         */
+        Thread.sleep(1000);
+        int calls = node.getCalls("eth_getBlockReceipts");
+        assertTrue("Expected the ranges not yet started to be dropped, read " + calls, calls <= 1 + 4 * 50);
+    }
+}
@@ -0,0 +1,63 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.impetus.eth.parser.PlanCache;
+import com.impetus.eth.parser.PlanCache.ParameterizedSql;
+import com.impetus.test.catagory.UnitTest;
+
+@Category(UnitTest.class)
+public class TestPlanCache extends TestCase {
+
+    @Test
+    public void testNormalize() {
+        assertEquals("select * from block where hash = 'a  b'",
+            PlanCache.normalize("  select *\n\tfrom   block where hash = 'a  b' ;"));
+    }
+
+    @Test
+    public void testParameterizeNumbers() {
+        ParameterizedSql sql = PlanCache.parameterize(
+            "select count(*) from transaction where blocknumber > 100 and blocknumber < 18446744073709551616");
+        assertEquals("select count(*) from transaction where blocknumber > ? and blocknumber < ?", sql.getText());
+        assertEquals(Arrays.asList((Object) 100L, new BigInteger("18446744073709551616")), sql.getValues());
+    }
+
+    @Test
+    public void testSameShapeSameKey() {
+        assertEquals(PlanCache.parameterize("select * from block where blocknumber = 1").getText(),
+            PlanCache.parameterize("select * from block\n where  blocknumber = 2").getText());
+    }
+
+    @Test
+    public void testLiteralsKept() {
+        ParameterizedSql sql = PlanCache.parameterize("select col1, approx_percentile(gasprice, 0.5) from transaction"
+                + " where hash = '0x12' and x > -5 and 0xff = y");
+        assertEquals(
+            "select col1, approx_percentile(gasprice, ?) from transaction where hash = '0x12' and x > -5 and 0xff = y",
+            sql.getText());
+        assertEquals(Arrays.asList((Object) new BigDecimal("0.5")), sql.getValues());
+    }
+}
@@ -0,0 +1,75 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.test;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.impetus.blkch.BlkchnException;
+import com.impetus.eth.parser.BetweenRewriter;
+import com.impetus.eth.parser.QuantityLiteral;
+import com.impetus.test.catagory.UnitTest;
+
+@Category(UnitTest.class)
+public class TestQuantityLiteral extends TestCase {
+
+    @Test
+    public void testCompareDecimalLiteral() {
+        QuantityLiteral literal = QuantityLiteral.parse("100000000000000000000");
+        assertEquals(0, literal.compareTo("0x56bc75e2d63100000"));
+        assertEquals(0, literal.compareTo("0x56BC75E2D63100000"));
+        assertEquals(1, literal.compareTo("0x56bc75e2d63100001"));
+        assertEquals(-1, literal.compareTo("0x56bc75e2d630fffff"));
+        assertEquals(-1, literal.compareTo("0xde0b6b3a7640000"));
+        assertEquals(1, literal.compareTo("0x100000000000000000"));
+    }
+
+    @Test
+    public void testZeroAndLeadingZeros() {
+        QuantityLiteral zero = QuantityLiteral.parse("0");
+        assertEquals(0, zero.compareTo("0x0"));
+        assertEquals(1, zero.compareTo("0x1"));
+        QuantityLiteral nonce = QuantityLiteral.parse("66");
+        assertEquals(0, nonce.compareTo("0x0000000000000042"));
+        assertEquals(0, QuantityLiteral.parse("0x0042").compareTo("0x42"));
+    }
+
+    @Test
+    public void testFractionAndNegativeLiterals() {
+        QuantityLiteral half = QuantityLiteral.parse("1.5");
+        assertEquals(-1, half.compareTo("0x1"));
+        assertEquals(1, half.compareTo("0x2"));
+        assertEquals(1, QuantityLiteral.parse("-3").compareTo("0x0"));
+        try {
+            QuantityLiteral.parse("abc");
+            fail("Expected a non numeric literal to be rejected");
+        } catch (BlkchnException e) {
+            assertTrue(e.getMessage().contains("abc"));
+        }
+    }
+
+    @Test
+    public void testBetweenRewrite() {
+        assertEquals("select * from transaction where (value >= 10 and value <= 20) and blocknumber = 5",
+                BetweenRewriter.rewrite("select * from transaction where value between 10 and 20 and blocknumber = 5"));
+        assertEquals("select * from block where (t.gasused < ? or t.gasused > ?)",
+                BetweenRewriter.rewrite("select * from block where t.gasused NOT BETWEEN ? AND ?"));
+        String plain = "select * from block where blocknumber = 1";
+        assertSame(plain, BetweenRewriter.rewrite(plain));
+    }
+}
@@ -0,0 +1,141 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.test;
+
+import java.sql.SQLException;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.impetus.blkch.BlkchnException;
+import com.impetus.eth.jdbc.DriverConstants;
+import com.impetus.eth.parser.QueryBudget;
+import com.impetus.test.catagory.UnitTest;
+
+@Category(UnitTest.class)
+public class TestQueryBudget extends TestCase {
+
+    @Test
+    public void testEstimateRejectsWideRange() {
+        QueryBudget budget = new QueryBudget(1000, 0, 0, 0).forQuery();
+        budget.checkEstimate(1000);
+        try {
+            budget.checkEstimate(7000000);
+            fail("Expected the estimate to be rejected");
+        } catch (QueryBudget.ExceededException e) {
+            assertTrue(e.getMessage().contains("7000000"));
+        }
+    }
+
+    @Test
+    public void testLimitsAreEnforcedWhileRunning() {
+        QueryBudget budget = new QueryBudget(10, 3, 100, 0).forQuery();
+        budget.rpc();
+        budget.rpc();
+        budget.rpc();
+        try {
+            budget.rpc();
+            fail("Expected the fourth rpc call to be rejected");
+        } catch (QueryBudget.ExceededException e) {
+            assertEquals(4, budget.getRpcCalls());
+        }
+        /* Once exceeded every check fails, also when the first exception was swallowed */
+        try {
+            budget.checkExceeded();
+            fail("Expected the exceeded limit to be reported again");
+        } catch (QueryBudget.ExceededException e) {
+            assertTrue(e.getMessage().contains("rpc calls"));
+        }
+
+        QueryBudget fresh = budget.forQuery();
+        fresh.blocks(10);
+        fresh.buffer(100);
+        try {
+            fresh.buffer(1);
+            fail("Expected buffering past the limit to be rejected");
+        } catch (QueryBudget.ExceededException e) {
+            assertEquals(101, fresh.getBufferedBytes());
+        }
+    }
+
+    @Test
+    public void testPartsShareCounters() {
+        QueryBudget stream = new QueryBudget(10, 3, 100, 0).forQuery();
+        QueryBudget first = stream.forPart();
+        first.rpc();
+        first.rpc();
+        first.blocks(4);
+        first.buffer(100);
+        QueryBudget second = stream.forPart();
+        second.buffer(100);
+        assertEquals(100, second.getBufferedBytes());
+        assertEquals(4, second.getBlocks());
+        second.rpc();
+        try {
+            second.rpc();
+            fail("Expected the rpc calls of both parts to count against one limit");
+        } catch (QueryBudget.ExceededException e) {
+            assertEquals(4, stream.getRpcCalls());
+        }
+    }
+
+    @Test
+    public void testWallTime() throws Exception {
+        QueryBudget budget = new QueryBudget(0, 0, 0, 1).forQuery();
+        Thread.sleep(5);
+        try {
+            budget.check();
+            fail("Expected the query to run out of time");
+        } catch (QueryBudget.ExceededException e) {
+            assertTrue(e.getMessage().contains("1 ms"));
+        }
+    }
+
+    @Test
+    public void testUnlimitedByDefault() {
+        QueryBudget budget = QueryBudget.fromProperties(new Properties());
+        assertTrue(budget.isUnlimited());
+        budget.checkEstimate(Long.MAX_VALUE);
+        budget.blocks(Long.MAX_VALUE / 2);
+
+        Properties properties = new Properties();
+        properties.setProperty(DriverConstants.MAX_SCAN_BLOCKS, "50000");
+        QueryBudget limited = QueryBudget.fromProperties(properties);
+        assertFalse(limited.isUnlimited());
+        assertEquals(50000, limited.getMaxBlocks());
+        assertFalse(limited.limitsBufferedBytes());
+    }
+
+    @Test
+    public void testToSQLException() {
+        BlkchnException wrapped = new BlkchnException("Error query transaction by number 12",
+                new QueryBudget.ExceededException("Query scanned more than 10 blocks"));
+        SQLException e = QueryBudget.toSQLException(wrapped);
+        assertEquals("Query scanned more than 10 blocks", e.getMessage());
+        assertEquals(QueryBudget.SQL_STATE, e.getSQLState());
+
+        BlkchnException other = new BlkchnException("block not found");
+        try {
+            QueryBudget.toSQLException(other);
+            fail("Expected other exceptions to be rethrown");
+        } catch (BlkchnException rethrown) {
+            assertSame(other, rethrown);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.test;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.impetus.eth.parser.EthQueryExecutor;
+import com.impetus.eth.parser.QueryContext;
+import com.impetus.eth.test.util.CreateLogicalPlan;
+import com.impetus.eth.test.util.MockNode;
+import com.impetus.test.catagory.UnitTest;
+
+@Category(UnitTest.class)
+public class TestQueryContext extends TestCase {
+
+    @Test
+    public void testTimeoutFailsTheNextCheck() throws Exception {
+        QueryContext context = new QueryContext(50);
+        context.enter();
+        try {
+            Thread.sleep(5000);
+            fail("Expected the timeout to interrupt the sleep");
+        } catch (InterruptedException e) {
+            assertTrue(context.isTimedOut());
+        } finally {
+            context.exit();
+            context.close();
+        }
+        assertFalse(Thread.currentThread().isInterrupted());
+        try {
+            context.check();
+            fail("Expected a timed out query to fail its check");
+        } catch (QueryContext.CancelledException e) {
+            assertTrue(e.isTimeout());
+            SQLException sqlException = QueryContext.toSQLException(e);
+            assertTrue(sqlException instanceof SQLTimeoutException);
+            assertEquals(QueryContext.SQL_STATE, sqlException.getSQLState());
+        }
+    }
+
+    @Test
+    public void testCancelInterruptsRegisteredThreads() throws Exception {
+        QueryContext context = new QueryContext(0);
+        CountDownLatch entered = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        Thread worker = new Thread(() -> {
+            context.enter();
+            try {
+                entered.countDown();
+                Thread.sleep(5000);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            } finally {
+                context.exit();
+            }
+        });
+        worker.start();
+        entered.await();
+        context.cancel();
+        worker.join(5000);
+        assertTrue(interrupted.get());
+        assertFalse(context.isTimedOut());
+
+        QueryContext.CancelledException cancelled = context.cancelled(new RuntimeException("socket closed"));
+        assertFalse(cancelled.isTimeout());
+        assertEquals("socket closed", cancelled.getCause().getMessage());
+        SQLException sqlException = QueryContext.toSQLException(cancelled);
+        assertFalse(sqlException instanceof SQLTimeoutException);
+        assertEquals(QueryContext.SQL_STATE, sqlException.getSQLState());
+    }
+
+    @Test
+    public void testNoTimeout() {
+        QueryContext context = new QueryContext(0);
+        context.enter();
+        context.enter();
+        context.exit();
+        context.check();
+        context.exit();
+        context.close();
+        assertFalse(context.isCancelled());
+    }
+
+    /* The transaction scan swallows failed block fetches, one cut short by the timeout must still fail the query */
+    @Test
+    public void testTimedOutScanIsNotTruncated() throws Exception {
+        MockNode node = new MockNode(2, true);
+        node.setLatency(20);
+        EthQueryExecutor executor = new EthQueryExecutor(CreateLogicalPlan.getLogicalPlan(
+                "select hash from transaction where blocknumber between 100 and 199"), node.getWeb3j(), null);
+        QueryContext context = new QueryContext(200);
+        executor.setContext(context);
+        try {
+            executor.executeQuery();
+            fail("Expected the timed out scan to fail instead of returning the blocks it got to");
+        } catch (QueryContext.CancelledException e) {
+            assertTrue(e.isTimeout());
+        } finally {
+            context.close();
+        }
+        assertTrue(node.getCalls("eth_getBlockByNumber") < 100);
+    }
+}
@@ -0,0 +1,76 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.impetus.blkch.sql.DataFrame;
+import com.impetus.eth.parser.QueryProfile;
+import com.impetus.test.catagory.UnitTest;
+
+@Category(UnitTest.class)
+public class TestQueryProfile extends TestCase {
+
+    @Test
+    public void testOperatorCounters() {
+        AtomicLong bytes = new AtomicLong(100);
+        QueryProfile profile = new QueryProfile(bytes::get);
+        profile.begin("range scan", -1);
+        profile.rpc();
+        profile.rpc();
+        profile.cacheHit();
+        bytes.addAndGet(2048);
+        profile.end(40);
+        profile.begin("order by", 40);
+        profile.end(40);
+        profile.rpc();
+
+        List<QueryProfile.Operator> operators = profile.getOperators();
+        assertEquals(2, operators.size());
+        QueryProfile.Operator scan = operators.get(0);
+        assertEquals("range scan", scan.getName());
+        assertEquals(2, scan.getRpcs());
+        assertEquals(1, scan.getCacheHits());
+        assertEquals(2048, scan.getBytes());
+        assertEquals(40, scan.getRowsOut());
+        assertEquals(0, operators.get(1).getRpcs());
+        assertEquals(40, operators.get(1).getRowsIn());
+    }
+
+    @Test
+    public void testStreamedRowsAndUnknownBytes() {
+        QueryProfile profile = new QueryProfile(() -> -1);
+        profile.begin("streaming aggregate", -1);
+        for (int i = 0; i < 5; i++) {
+            profile.rowIn();
+        }
+        profile.end(1);
+
+        DataFrame df = profile.toDataFrame();
+        assertEquals(QueryProfile.COLUMNS.length, df.getColumnNamesMap().size());
+        List<Object> row = df.getData().get(0);
+        assertEquals("streaming aggregate", row.get(df.getColumnNamesMap().get("operator")));
+        assertEquals(5L, row.get(df.getColumnNamesMap().get("rows_in")));
+        assertEquals(1L, row.get(df.getColumnNamesMap().get("rows_out")));
+        assertNull(row.get(df.getColumnNamesMap().get("bytes_received")));
+    }
+}
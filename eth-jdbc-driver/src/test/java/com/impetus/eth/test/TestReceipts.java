@@ -0,0 +1,131 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.web3j.protocol.ObjectMapperFactory;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import com.impetus.blkch.sql.DataFrame;
+import com.impetus.eth.parser.EthBlockReceipts;
+import com.impetus.eth.parser.EthQueryExecutor;
+import com.impetus.eth.test.util.CreateLogicalPlan;
+import com.impetus.eth.test.util.MockNode;
+import com.impetus.test.catagory.UnitTest;
+
+@Category(UnitTest.class)
+public class TestReceipts extends TestCase {
+
+    private static final String RECEIPTS = "select txhash, blocknumber, blockhash, transactionindex, gasused,"
+            + " cumulativegasused, status from receipt where blocknumber between 100 and 102";
+
+    private static DataFrame query(String sql, MockNode node) {
+        EthQueryExecutor executor = new EthQueryExecutor(CreateLogicalPlan.getLogicalPlan(sql), node.getWeb3j(),
+                null);
+        executor.setWeb3jService(node.getService());
+        return executor.executeQuery();
+    }
+
+    /* Three blocks of three transactions, each receipt mapped onto its columns */
+    private static void assertReceipts(DataFrame dataframe) {
+        List<List<Object>> rows = dataframe.getData();
+        Map<String, Integer> columns = dataframe.getColumnNamesMap();
+        assertEquals(9, rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            List<Object> row = rows.get(i);
+            long blockNumber = 100 + i / 3;
+            int index = i % 3;
+            assertEquals(MockNode.transactionHash(blockNumber, index), row.get(columns.get("txhash")));
+            assertEquals(BigInteger.valueOf(blockNumber), row.get(columns.get("blocknumber")));
+            assertEquals(MockNode.blockHash(blockNumber), row.get(columns.get("blockhash")));
+            assertEquals(BigInteger.valueOf(index), row.get(columns.get("transactionindex")));
+            assertEquals(BigInteger.valueOf(21000), row.get(columns.get("gasused")));
+            assertEquals(BigInteger.valueOf(21000L * (index + 1)), row.get(columns.get("cumulativegasused")));
+            assertEquals("0x1", row.get(columns.get("status")));
+        }
+    }
+
+    @Test
+    public void testParseBlockReceipts() throws Exception {
+        String json = "{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":[{\"transactionHash\":\""
+                + MockNode.transactionHash(100, 0) + "\",\"transactionIndex\":\"0x0\",\"blockHash\":\""
+                + MockNode.blockHash(100) + "\",\"blockNumber\":\"0x64\",\"cumulativeGasUsed\":\"0x5208\","
+                + "\"gasUsed\":\"0x5208\",\"status\":\"0x1\",\"logs\":[],\"effectiveGasPrice\":\"0x1\"}]}";
+        EthBlockReceipts response = ObjectMapperFactory.getObjectMapper().readValue(json, EthBlockReceipts.class);
+        assertFalse(response.hasError());
+        assertEquals(1, response.getReceipts().size());
+        TransactionReceipt receipt = response.getReceipts().get(0);
+        assertEquals(MockNode.transactionHash(100, 0), receipt.getTransactionHash());
+        assertEquals(BigInteger.valueOf(100), receipt.getBlockNumber());
+        assertEquals(BigInteger.valueOf(21000), receipt.getGasUsed());
+
+        EthBlockReceipts rejected = ObjectMapperFactory.getObjectMapper().readValue("{\"jsonrpc\":\"2.0\",\"id\":1,"
+                + "\"error\":{\"code\":-32601,\"message\":\"the method eth_getBlockReceipts does not exist\"}}",
+                EthBlockReceipts.class);
+        assertTrue(rejected.hasError());
+        assertEquals(MockNode.METHOD_NOT_FOUND, rejected.getError().getCode());
+    }
+
+    @Test
+    public void testBlockReceipts() throws Exception {
+        MockNode node = new MockNode(3, true);
+        assertReceipts(query(RECEIPTS, node));
+        assertEquals(3, node.getCalls("eth_getBlockReceipts"));
+        assertEquals(0, node.getCalls("eth_getBlockByNumber"));
+        assertEquals(0, node.getCalls("eth_getTransactionReceipt"));
+    }
+
+    @Test
+    public void testBatchedFallback() throws Exception {
+        MockNode node = new MockNode(3, true);
+        node.setBlockReceipts(false);
+        assertReceipts(query(RECEIPTS, node));
+        /* Rejected once, then the node is known not to have it */
+        assertEquals(1, node.getCalls("eth_getBlockReceipts"));
+        assertEquals(3, node.getCalls("eth_getBlockByNumber"));
+        assertEquals(3, node.getBatches());
+        assertEquals(9, node.getCalls("eth_getTransactionReceipt"));
+    }
+
+    @Test
+    public void testSingleCallFallbackOverIpc() throws Exception {
+        MockNode node = new MockNode(3, false);
+        node.setBlockReceipts(false);
+        assertReceipts(query(RECEIPTS, node));
+        assertEquals(1, node.getCalls("eth_getBlockReceipts"));
+        assertEquals(0, node.getBatches());
+        assertEquals(9, node.getCalls("eth_getTransactionReceipt"));
+    }
+
+    @Test
+    public void testStreamingAggregate() throws Exception {
+        MockNode node = new MockNode(3, true);
+        DataFrame dataframe = query("select count(txhash), sum(gasused) from receipt"
+                + " where blocknumber between 100 and 102", node);
+        List<Object> row = dataframe.getData().get(0);
+        assertEquals(9, new BigDecimal(String.valueOf(row.get(0))).longValue());
+        assertEquals(9 * 21000, new BigDecimal(String.valueOf(row.get(1))).longValue());
+        assertEquals(3, node.getCalls("eth_getBlockReceipts"));
+    }
+}
@@ -0,0 +1,128 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.test;
+
+import java.math.BigInteger;
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+import com.impetus.blkch.sql.DataFrame;
+import com.impetus.eth.jdbc.DriverConstants;
+import com.impetus.eth.jdbc.EthConnection;
+import com.impetus.eth.jdbc.EthStatement;
+import com.impetus.eth.parser.ResultCache;
+import com.impetus.test.catagory.UnitTest;
+
+@Category(UnitTest.class)
+public class TestResultCache extends TestCase {
+
+    private static DataFrame dataframe(int rows) {
+        List<List<Object>> data = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            data.add(Arrays.<Object> asList(BigInteger.valueOf(i), "0x" + Integer.toHexString(i)));
+        }
+        return new DataFrame(data, Arrays.asList("blocknumber", "hash"), new HashMap<String, String>());
+    }
+
+    @Test
+    public void testKey() {
+        assertEquals(ResultCache.key("1", "select *  from block\n where blocknumber = 5;", null),
+                ResultCache.key("1", "select * from block where blocknumber = 5", null));
+        assertFalse(ResultCache.key("1", "select * from block", null).equals(
+                ResultCache.key("3", "select * from block", null)));
+        assertFalse(ResultCache.key("1", "select * from block where blocknumber = ?", new Object[] { 5 }).equals(
+                ResultCache.key("1", "select * from block where blocknumber = ?", new Object[] { 6 })));
+    }
+
+    @Test
+    public void testOnlyFinalRanges() {
+        assertTrue(ResultCache.isFinal(new long[] { 0, 1000 }, 1064, 64));
+        assertFalse(ResultCache.isFinal(new long[] { 0, 1001 }, 1064, 64));
+        assertFalse(ResultCache.isFinal(new long[] { 0, Long.MAX_VALUE }, 1064, 64));
+        assertFalse(ResultCache.isFinal(null, 1064, 64));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedBySize() {
+        ResultCache cache = new ResultCache(30000);
+        cache.put("a", dataframe(100), Collections.singletonMap("hash", Types.VARCHAR));
+        cache.put("b", dataframe(100), null);
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("a"));
+        cache.put("c", dataframe(100), null);
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertTrue(cache.getBytes() <= 30000);
+        assertEquals(Types.VARCHAR, cache.get("a").getColumnTypes().get("hash").intValue());
+        assertEquals(100, cache.get("a").getDataFrame().getData().size());
+
+        cache.put("huge", dataframe(10000), null);
+        assertNull(cache.get("huge"));
+        assertEquals(2, cache.size());
+        assertEquals(5, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testSampledConnectionSkipsCache() throws Exception {
+        String sql = "select * from block where blocknumber = 5";
+        ResultCache cache = new ResultCache(1000000);
+        cache.put("key", dataframe(3), Collections.singletonMap("hash", Types.VARCHAR));
+
+        EthConnection exact = Mockito.mock(EthConnection.class);
+        Mockito.when(exact.getInfo()).thenReturn(new Properties());
+        Mockito.when(exact.getResultCacheKey(Matchers.anyString(), Matchers.any(Object[].class))).thenReturn("key");
+        Mockito.when(exact.getResultCache()).thenReturn(cache);
+        ResultSet cached = new EthStatement(exact, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)
+                .executeQuery(sql);
+        int rows = 0;
+        while (cached.next()) {
+            rows++;
+        }
+        assertEquals(3, rows);
+
+        Properties info = new Properties();
+        info.setProperty(DriverConstants.SAMPLE_PERCENT, "10");
+        EthConnection sampled = Mockito.mock(EthConnection.class);
+        Mockito.when(sampled.getInfo()).thenReturn(info);
+        Mockito.when(sampled.getResultCacheKey(Matchers.anyString(), Matchers.any(Object[].class))).thenReturn("key");
+        Mockito.when(sampled.getResultCache()).thenReturn(cache);
+        try {
+            new EthStatement(sampled, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY).executeQuery(sql);
+        } catch (Exception e) {
+            // there is no node behind the mock, only the cache matters here
+        }
+        Mockito.verify(sampled, Mockito.never()).getResultCacheKey(Matchers.anyString(),
+                Matchers.any(Object[].class));
+        Mockito.verify(sampled, Mockito.never()).cacheResult(Matchers.anyString(), Matchers.any(long[].class),
+                Matchers.anyLong(), Matchers.any(DataFrame.class), Matchers.<Map<String, Integer>> any());
+    }
+}
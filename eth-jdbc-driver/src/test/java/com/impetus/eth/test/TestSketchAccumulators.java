@@ -0,0 +1,200 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.impetus.blkch.BlkchnException;
+import com.impetus.blkch.sql.DataFrame;
+import com.impetus.blkch.sql.query.Column;
+import com.impetus.blkch.sql.query.FunctionNode;
+import com.impetus.blkch.sql.query.IdentifierNode;
+import com.impetus.blkch.sql.query.SelectItem;
+import com.impetus.eth.parser.Accumulator;
+import com.impetus.eth.parser.Accumulators;
+import com.impetus.eth.parser.HashAggregator;
+import com.impetus.eth.parser.HyperLogLog;
+import com.impetus.eth.parser.SpaceSaving;
+import com.impetus.eth.parser.TDigest;
+import com.impetus.test.catagory.UnitTest;
+
+@Category(UnitTest.class)
+public class TestSketchAccumulators extends TestCase {
+
+    @Test
+    public void testHyperLogLogEstimate() {
+        HyperLogLog hll = new HyperLogLog();
+        for (int i = 0; i < 100000; i++) {
+            hll.add("0x" + Integer.toHexString(i));
+            hll.add("0x" + Integer.toHexString(i));
+        }
+        assertEquals(100000, hll.cardinality(), 3000);
+    }
+
+    @Test
+    public void testHyperLogLogMergeIsUnion() {
+        HyperLogLog first = new HyperLogLog();
+        HyperLogLog second = new HyperLogLog();
+        for (int i = 0; i < 20000; i++) {
+            first.add(BigInteger.valueOf(i));
+            second.add(BigInteger.valueOf(i + 10000));
+        }
+        first.merge(second);
+        assertEquals(30000, first.cardinality(), 900);
+    }
+
+    @Test
+    public void testHyperLogLogSmallCardinality() {
+        HyperLogLog hll = new HyperLogLog();
+        hll.add(1);
+        hll.add(1L);
+        hll.add(BigInteger.ONE);
+        hll.add(2);
+        assertEquals(2L, hll.result());
+    }
+
+    @Test
+    public void testTDigestPercentiles() {
+        TDigest digest = new TDigest(0.95);
+        for (int i = 1; i <= 100000; i++) {
+            digest.add(BigInteger.valueOf(i));
+        }
+        assertEquals(95000, (Double) digest.result(), 500);
+        assertEquals(50000, digest.quantile(0.5), 500);
+        assertTrue(digest.getCentroidCount() < 250);
+    }
+
+    @Test
+    public void testTDigestMerge() {
+        TDigest first = new TDigest(0.99);
+        TDigest second = new TDigest(0.99);
+        for (int i = 0; i < 50000; i++) {
+            first.add(i * 2);
+            second.add(i * 2 + 1);
+        }
+        first.merge(second);
+        assertEquals(99000, (Double) first.result(), 500);
+    }
+
+    @Test
+    public void testSpaceSavingTopK() {
+        SpaceSaving topK = new SpaceSaving(3);
+        for (int i = 0; i < 10000; i++) {
+            topK.add("noise" + i);
+            if (i % 2 == 0) {
+                topK.add("0xa");
+            }
+            if (i % 4 == 0) {
+                topK.add("0xb");
+            }
+            if (i % 8 == 0) {
+                topK.add("0xc");
+            }
+        }
+        @SuppressWarnings("unchecked")
+        List<Object> keys = Arrays.asList(((Map<Object, Long>) topK.result()).keySet().toArray());
+        assertEquals(Arrays.asList((Object) "0xa", "0xb", "0xc"), keys);
+    }
+
+    @Test
+    public void testSpaceSavingEvictsSmallest() {
+        /* k = 1 monitors 10 counters, value i is seen i + 1 times */
+        SpaceSaving topK = new SpaceSaving(1);
+        for (int i = 9; i >= 0; i--) {
+            for (int n = 0; n <= i; n++) {
+                topK.add("0x" + i);
+            }
+        }
+        topK.add("0xnew");
+        assertEquals(1, topK.getError("0xnew"));
+        assertEquals(2, topK.getError("0x0"));
+        topK.add("0xnewer");
+        assertEquals(2, topK.getError("0xnewer"));
+        assertEquals(0, topK.getError("0x9"));
+        @SuppressWarnings("unchecked")
+        Map<Object, Long> result = (Map<Object, Long>) topK.result();
+        assertEquals(Long.valueOf(10), result.get("0x9"));
+    }
+
+    @Test
+    public void testSpaceSavingMerge() {
+        SpaceSaving first = new SpaceSaving(1);
+        SpaceSaving second = new SpaceSaving(1);
+        for (int i = 0; i < 100; i++) {
+            first.add(i % 3 == 0 ? "0xa" : "0xb");
+            second.add(i % 3 == 0 ? "0xb" : "0xa");
+        }
+        first.merge(second);
+        @SuppressWarnings("unchecked")
+        Map<Object, Long> result = (Map<Object, Long>) first.result();
+        assertEquals(Long.valueOf(100), result.get("0xa"));
+    }
+
+    @Test
+    public void testApproxPercentileParam() {
+        Accumulator accumulator = Accumulators.create(Accumulators.APPROX_PERCENTILE, new String[] { "0.5" });
+        accumulator.add(1);
+        accumulator.add(3);
+        accumulator.add(5);
+        assertEquals(3.0, (Double) accumulator.result(), 0.001);
+        try {
+            Accumulators.create(Accumulators.APPROX_PERCENTILE, new String[] { "1.5" });
+            fail("Percentile outside [0, 1] should be rejected");
+        } catch (BlkchnException e) {
+        }
+    }
+
+    @Test
+    public void testUngroupedApproximateAggregates() {
+        List<SelectItem> selectItems = Arrays.asList(createFunctionItem("approx_count_distinct", "from"),
+            createFunctionItem("approx_top_k", "to", "1"));
+        HashAggregator aggregator = HashAggregator.compile(selectItems, Arrays.<String> asList(),
+            Arrays.asList("from", "to"), new HashMap<String, String>());
+        HashAggregator partition = HashAggregator.compile(selectItems, Arrays.<String> asList(),
+            Arrays.asList("from", "to"), new HashMap<String, String>());
+        aggregator.add(Arrays.asList("0x1", "0x9"));
+        aggregator.add(Arrays.asList("0x2", "0x9"));
+        partition.add(Arrays.asList("0x1", "0x8"));
+        aggregator.merge(partition);
+        DataFrame df = aggregator.toDataFrame();
+        assertEquals(1, df.getData().size());
+        assertEquals(2L, df.getData().get(0).get(0));
+        assertTrue(((Map<?, ?>) df.getData().get(0).get(1)).containsKey("0x9"));
+    }
+
+    private static SelectItem createFunctionItem(String func, String colName, String... literals) {
+        FunctionNode function = new FunctionNode();
+        function.addChildNode(new IdentifierNode(func));
+        Column column = new Column();
+        column.addChildNode(new IdentifierNode(colName));
+        function.addChildNode(column);
+        for (String literal : literals) {
+            function.addChildNode(new IdentifierNode(literal));
+        }
+        SelectItem selectItem = new SelectItem();
+        selectItem.addChildNode(function);
+        return selectItem;
+    }
+}
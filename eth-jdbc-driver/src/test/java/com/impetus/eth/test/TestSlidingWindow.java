@@ -0,0 +1,76 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.impetus.eth.parser.LatestRewriter;
+import com.impetus.eth.parser.WindowState;
+import com.impetus.test.catagory.UnitTest;
+
+@Category(UnitTest.class)
+public class TestSlidingWindow extends TestCase {
+
+    @Test
+    public void testLatestRewrite() {
+        String sql = "select count(*), miner from block where blocknumber > LATEST - 500 and blocknumber <= latest "
+                + "group by miner";
+        assertTrue(LatestRewriter.mentionsLatest(sql));
+        assertEquals("select count(*), miner from block where blocknumber > 9500 and blocknumber <= 10000 "
+                + "group by miner", LatestRewriter.rewrite(sql, 10000));
+        assertEquals("select * from block where blocknumber >= 0", LatestRewriter.rewrite(
+                "select * from block where blocknumber >= latest-20", 10));
+        assertFalse(LatestRewriter.mentionsLatest("select * from transaction where input = 'latest'"));
+        assertEquals("select * from transaction where input = 'the latest - 5' and blocknumber = 10",
+                LatestRewriter.rewrite("select * from transaction where input = 'the latest - 5' and blocknumber = "
+                        + "latest", 10));
+    }
+
+    @Test
+    public void testRetainAndMissing() {
+        WindowState window = new WindowState("q");
+        for (long block = 100; block <= 110; block++) {
+            window.put(block, "h" + block, null);
+        }
+        window.retain(105, 115);
+        assertEquals(6, window.size());
+        assertEquals(Arrays.asList(111L, 112L, 113L, 114L, 115L), window.missing(105, 115));
+    }
+
+    @Test
+    public void testRollbackDropsReorganisedTail() {
+        WindowState window = new WindowState("q");
+        Map<Long, String> chain = new HashMap<>();
+        for (long block = 1; block <= 10; block++) {
+            window.put(block, "h" + block, null);
+            chain.put(block, block >= 8 ? "fork" + block : "h" + block);
+        }
+        assertEquals(3, window.rollback(chain::get, 64));
+        assertEquals(Arrays.asList(8L, 9L, 10L), window.missing(1, 10));
+        assertEquals(0, window.rollback(chain::get, 64));
+
+        chain.replaceAll((block, hash) -> "deep" + block);
+        assertEquals(7, window.rollback(chain::get, 2));
+        assertEquals(0, window.size());
+    }
+}
@@ -0,0 +1,104 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongUnaryOperator;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.impetus.eth.parser.TimestampIndex;
+import com.impetus.eth.parser.TimestampRewriter;
+import com.impetus.test.catagory.UnitTest;
+
+@Category(UnitTest.class)
+public class TestTimestampIndex extends TestCase {
+
+    /* Block n of the fake chain is mined at 1000 + 15n */
+    private static final LongUnaryOperator CHAIN = n -> 1000 + 15 * n;
+
+    @Test
+    public void testBinarySearch() {
+        TimestampIndex index = new TimestampIndex();
+        assertEquals(10, index.firstBlockAtOrAfter(1150, 10000, CHAIN));
+        assertEquals(11, index.firstBlockAtOrAfter(1151, 10000, CHAIN));
+        assertEquals(10, index.lastBlockAtOrBefore(1164, 10000, CHAIN));
+        assertEquals(0, index.firstBlockAtOrAfter(0, 10000, CHAIN));
+        assertEquals(-1, index.lastBlockAtOrBefore(999, 10000, CHAIN));
+        assertEquals(10000, index.firstBlockAtOrAfter(1000 + 15 * 10000, 10000, CHAIN));
+    }
+
+    @Test
+    public void testCachedBlocksNarrowSearch() {
+        TimestampIndex index = new TimestampIndex();
+        AtomicInteger fetches = new AtomicInteger();
+        LongUnaryOperator counting = n -> {
+            fetches.incrementAndGet();
+            return CHAIN.applyAsLong(n);
+        };
+        index.firstBlockAtOrAfter(1000 + 15 * 5000, 1000000, counting);
+        int cold = fetches.getAndSet(0);
+        assertTrue(index.size() > 0);
+        index.firstBlockAtOrAfter(1000 + 15 * 5000, 1000000, counting);
+        assertEquals(0, fetches.get());
+        assertTrue(cold >= 19);
+    }
+
+    @Test
+    public void testTipBlocksAreNotCached() {
+        TimestampIndex index = new TimestampIndex();
+        index.firstBlockAtOrAfter(1000 + 15 * 99, 100, CHAIN);
+        for (long block : index.getBlockByTimestamp().values()) {
+            assertTrue(block < 100 - TimestampIndex.UNCONFIRMED_BLOCKS);
+        }
+    }
+
+    @Test
+    public void testRewrite() {
+        TimestampRewriter rewriter = new TimestampRewriter(new TimestampIndex(), () -> 10000, CHAIN);
+        assertEquals("select * from block where blocknumber >= 10 and blocknumber <= 20",
+                rewriter.rewrite("select * from block where timestamp >= 1150 and timestamp < 1315"));
+        assertEquals("select count(*) from block where (blocknumber >= 10 and blocknumber <= 20) or blocknumber = 5",
+                rewriter.rewrite(
+                        "select count(*) from block where timestamp between 1150 and 1300 or blocknumber = 5"));
+        assertEquals("select * from block b where b.blocknumber >= 11",
+                rewriter.rewrite("select * from block b where b.timestamp > 1150"));
+        assertEquals("select * from block where blocknumber < 0",
+                rewriter.rewrite("select * from block where timestamp < 1000"));
+        assertEquals("select timestamp from block where blocknumber = 1",
+                rewriter.rewrite("select timestamp from block where blocknumber = 1"));
+    }
+
+    @Test
+    public void testLiteralsAreKept() {
+        TimestampRewriter rewriter = new TimestampRewriter(new TimestampIndex(), () -> 10000, CHAIN);
+        assertEquals("select * from transaction where input = 'timestamp > 5' and blocknumber >= 11",
+                rewriter.rewrite("select * from transaction where input = 'timestamp > 5' and timestamp > 1150"));
+        String sql = "select * from transaction where input = \"timestamp between 1150 and 1300\"";
+        assertEquals(sql, rewriter.rewrite(sql));
+    }
+
+    @Test
+    public void testParseDates() {
+        assertEquals(1527811200L, TimestampRewriter.parse("'2018-06-01'"));
+        assertEquals(1527811200L + 12 * 3600, TimestampRewriter.parse("'2018-06-01 12:00:00'"));
+        assertEquals(1527811200L + 12 * 3600, TimestampRewriter.parse("'2018-06-01T12:00:00Z'"));
+        assertEquals(1527811200L, TimestampRewriter.parse("1527811200"));
+    }
+}
@@ -0,0 +1,248 @@
+/******************************************************************************* 
+* * Copyright 2018 Impetus Infotech.
+* *
+* * Licensed under the Apache License, Version 2.0 (the "License");
+* * you may not use this file except in compliance with the License.
+* * You may obtain a copy of the License at
+* *
+* * http://www.apache.org/licenses/LICENSE-2.0
+* *
+* * Unless required by applicable law or agreed to in writing, software
+* * distributed under the License is distributed on an "AS IS" BASIS,
+* * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* * See the License for the specific language governing permissions and
+* * limitations under the License.
+******************************************************************************/
+package com.impetus.eth.test.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.EthBlock.Block;
+import org.web3j.protocol.core.methods.response.EthBlock.TransactionResult;
+import org.web3j.protocol.core.methods.response.EthGetTransactionReceipt;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import com.impetus.eth.jdbc.MeteredHttpService;
+import com.impetus.eth.parser.EthBlockReceipts;
+
+/**
+ * A node behind a Mockito-mocked transport that serves a chain where every block holds the same number of
+ * transactions. It counts the calls it answers, per method and for blocks per block number, and can fail the next
+ * read of a block or take a while for every block it serves.
+ */
+public class MockNode {
+
+    public static final int METHOD_NOT_FOUND = -32601;
+
+    private final int transactionsPerBlock;
+
+    private final Web3jService service;
+
+    private final Web3j web3j;
+
+    private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+
+    private final Map<Long, AtomicInteger> blockReads = new ConcurrentHashMap<>();
+
+    private final Map<Long, Throwable> failures = new ConcurrentHashMap<>();
+
+    private final AtomicInteger batches = new AtomicInteger();
+
+    private volatile boolean blockReceipts = true;
+
+    private volatile long latency;
+
+    /**
+     * @param http
+     *            whether the transport is a {@link MeteredHttpService}, which takes JSON-RPC batches
+     */
+    @SuppressWarnings("unchecked")
+    public MockNode(int transactionsPerBlock, boolean http) throws IOException {
+        this.transactionsPerBlock = transactionsPerBlock;
+        this.service = http ? Mockito.mock(MeteredHttpService.class) : Mockito.mock(Web3jService.class);
+        Mockito.when(service.send(Matchers.any(Request.class), Matchers.any(Class.class)))
+                .thenAnswer(invocation -> respond((Request<?, ?>) invocation.getArguments()[0]));
+        if (http) {
+            Mockito.when(((MeteredHttpService) service).sendBatch(Matchers.anyList(), Matchers.any(Class.class)))
+                    .thenAnswer(invocation -> {
+                        batches.incrementAndGet();
+                        List<Response<?>> responses = new ArrayList<>();
+                        for (Object request : (List<?>) invocation.getArguments()[0]) {
+                            responses.add(respond((Request<?, ?>) request));
+                        }
+                        return responses;
+                    });
+        }
+        this.web3j = Web3j.build(service);
+    }
+
+    public Web3j getWeb3j() {
+        return web3j;
+    }
+
+    public Web3jService getService() {
+        return service;
+    }
+
+    /**
+     * Makes the node answer eth_getBlockReceipts or reject it as an unknown method.
+     */
+    public void setBlockReceipts(boolean supported) {
+        this.blockReceipts = supported;
+    }
+
+    /**
+     * Makes every call for a block, its header, transactions or receipts, take the given time.
+     */
+    public void setLatency(long millis) {
+        this.latency = millis;
+    }
+
+    /**
+     * Fails the next read of the block, or of its receipts, with the given exception or error.
+     */
+    public void failOnce(long blockNumber, Throwable failure) {
+        failures.put(blockNumber, failure);
+    }
+
+    public int getCalls(String method) {
+        AtomicInteger count = calls.get(method);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Number of eth_getBlockByNumber calls for the block, with or without its transactions.
+     */
+    public int getBlockReads(long blockNumber) {
+        AtomicInteger count = blockReads.get(blockNumber);
+        return count == null ? 0 : count.get();
+    }
+
+    public int getBatches() {
+        return batches.get();
+    }
+
+    public static String blockHash(long blockNumber) {
+        return String.format("0x%064x", blockNumber);
+    }
+
+    public static String transactionHash(long blockNumber, int index) {
+        return String.format("0x%056x%08x", blockNumber, index);
+    }
+
+    private Response<?> respond(Request<?, ?> request) throws Throwable {
+        String method = request.getMethod();
+        calls.computeIfAbsent(method, m -> new AtomicInteger()).incrementAndGet();
+        List<?> params = request.getParams();
+        switch (method) {
+        case "eth_getBlockByNumber": {
+            long blockNumber = Long.decode(String.valueOf(params.get(0)));
+            blockReads.computeIfAbsent(blockNumber, n -> new AtomicInteger()).incrementAndGet();
+            serve(blockNumber);
+            EthBlock response = new EthBlock();
+            response.setResult(block(blockNumber, Boolean.TRUE.equals(params.get(1))));
+            return response;
+        }
+        case "eth_getBlockByHash": {
+            String hash = String.valueOf(params.get(0));
+            long blockNumber = Long.parseLong(hash.substring(2), 16);
+            serve(blockNumber);
+            EthBlock response = new EthBlock();
+            response.setResult(block(blockNumber, Boolean.TRUE.equals(params.get(1))));
+            return response;
+        }
+        case "eth_getBlockReceipts": {
+            EthBlockReceipts response = new EthBlockReceipts();
+            if (!blockReceipts) {
+                response.setError(new Response.Error(METHOD_NOT_FOUND, "the method " + method + " does not exist"));
+                return response;
+            }
+            long blockNumber = Long.decode(String.valueOf(params.get(0)));
+            serve(blockNumber);
+            List<TransactionReceipt> receipts = new ArrayList<>();
+            for (int index = 0; index < transactionsPerBlock; index++) {
+                receipts.add(receipt(blockNumber, index));
+            }
+            response.setResult(receipts);
+            return response;
+        }
+        case "eth_getTransactionReceipt": {
+            String hash = String.valueOf(params.get(0));
+            EthGetTransactionReceipt response = new EthGetTransactionReceipt();
+            response.setResult(receipt(Long.parseLong(hash.substring(2, 58), 16),
+                    Integer.parseInt(hash.substring(58), 16)));
+            return response;
+        }
+        default:
+            throw new IOException("Method " + method + " not mocked");
+        }
+    }
+
+    private void serve(long blockNumber) throws Throwable {
+        if (latency > 0) {
+            Thread.sleep(latency);
+        }
+        Throwable failure = failures.remove(blockNumber);
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private Block block(long blockNumber, boolean fullTransactions) {
+        Block block = new Block();
+        block.setNumber(hex(blockNumber));
+        block.setHash(blockHash(blockNumber));
+        block.setParentHash(blockHash(blockNumber - 1));
+        block.setTimestamp(hex(1500000000L + 15 * blockNumber));
+        List<TransactionResult> transactions = new ArrayList<>();
+        for (int index = 0; index < transactionsPerBlock; index++) {
+            String hash = transactionHash(blockNumber, index);
+            if (fullTransactions) {
+                EthBlock.TransactionObject transaction = new EthBlock.TransactionObject();
+                transaction.setHash(hash);
+                transaction.setBlockNumber(hex(blockNumber));
+                transaction.setTransactionIndex(hex(index));
+                transaction.setFrom(String.format("0x%040x", index));
+                transaction.setTo(String.format("0x%040x", index + 1));
+                transactions.add(transaction);
+            } else {
+                transactions.add(new EthBlock.TransactionHash(hash));
+            }
+        }
+        block.setTransactions(Collections.unmodifiableList(transactions));
+        return block;
+    }
+
+    private static TransactionReceipt receipt(long blockNumber, int index) {
+        TransactionReceipt receipt = new TransactionReceipt();
+        receipt.setTransactionHash(transactionHash(blockNumber, index));
+        receipt.setTransactionIndex(hex(index));
+        receipt.setBlockHash(blockHash(blockNumber));
+        receipt.setBlockNumber(hex(blockNumber));
+        receipt.setGasUsed(hex(21000));
+        receipt.setCumulativeGasUsed(hex(21000L * (index + 1)));
+        receipt.setStatus("0x1");
+        receipt.setFrom(String.format("0x%040x", index));
+        receipt.setTo(String.format("0x%040x", index + 1));
+        receipt.setLogs(new ArrayList<>());
+        return receipt;
+    }
+
+    private static String hex(long value) {
+        return "0x" + Long.toHexString(value);
+    }
+}